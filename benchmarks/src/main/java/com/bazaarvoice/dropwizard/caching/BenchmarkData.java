@@ -0,0 +1,61 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import com.google.common.base.Charsets;
+import com.sun.jersey.core.util.StringKeyIgnoreCaseMultivaluedMap;
+import com.sun.jersey.core.util.UnmodifiableMultivaluedMap;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import javax.ws.rs.core.MultivaluedMap;
+
+/**
+ * Representative requests and responses shared by the benchmarks.
+ */
+public class BenchmarkData {
+    public static final DateTime DATE = new DateTime(2014, 7, 1, 12, 0, 0, 0, DateTimeZone.UTC);
+
+    /**
+     * Build a cached response with the headers of a typical JSON API response and a body of the given size.
+     */
+    public static CachedResponse response(int bodySize) {
+        StringKeyIgnoreCaseMultivaluedMap<String> headers = new StringKeyIgnoreCaseMultivaluedMap<String>();
+        headers.add("Content-Type", "application/json");
+        headers.add("Cache-Control", "max-age=300, s-maxage=600");
+        headers.add("Date", HttpHeaderUtils.dateToString(DATE));
+        headers.add("Expires", HttpHeaderUtils.dateToString(DATE.plusSeconds(600)));
+        headers.add("Vary", "Accept, Accept-Language");
+        headers.add("X-Request-Id", "0f8fad5b-d9cb-469f-a165-70867728950e");
+
+        MultivaluedMap<String, String> immutableHeaders = new UnmodifiableMultivaluedMap<String, String>(headers);
+        return new CachedResponse(200, immutableHeaders, body(bodySize));
+    }
+
+    /**
+     * Build a response body of the given size filled with repeated JSON fragments.
+     */
+    public static byte[] body(int size) {
+        byte[] pattern = "{\"id\":12345,\"name\":\"product name\"},".getBytes(Charsets.UTF_8);
+        byte[] body = new byte[size];
+
+        for (int i = 0; i < size; i += 1) {
+            body[i] = pattern[i % pattern.length];
+        }
+
+        return body;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import com.google.common.collect.ImmutableSet;
+import com.sun.jersey.api.core.DefaultResourceConfig;
+import com.sun.jersey.core.header.InBoundHeaders;
+import com.sun.jersey.server.impl.application.WebApplicationImpl;
+import com.sun.jersey.spi.container.ContainerRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for {@link CacheRequestContext#build}, which runs for every request to a cached resource method.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CacheRequestContextBenchmark {
+    /**
+     * Number of headers listed in the {@link Vary} annotation of the resource method.
+     */
+    @Param({"0", "2"})
+    public int varyCount;
+
+    private ContainerRequest _request;
+    private Set<String> _vary;
+
+    @Setup
+    public void setup() {
+        InBoundHeaders headers = new InBoundHeaders();
+        headers.add("Accept", "application/json, text/plain, */*");
+        headers.add("Accept-Language", "en-US,en;q=0.8,fr;q=0.6");
+        headers.add("Accept-Encoding", "gzip, deflate");
+        headers.add("Cache-Control", "max-age=0");
+        headers.add("User-Agent", "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36");
+
+        // A minimal application is enough to provide the header and entity readers a request needs
+        WebApplicationImpl application = new WebApplicationImpl();
+        application.initiate(new DefaultResourceConfig(PlaceholderResource.class));
+
+        _request = new ContainerRequest(application, "GET",
+                URI.create("http://localhost:8080/"),
+                URI.create("http://localhost:8080/api/products?category=shoes&page=2&limit=50"),
+                headers, new ByteArrayInputStream(new byte[0]));
+
+        _vary = varyCount == 0
+                ? ImmutableSet.<String>of()
+                : HttpHeaderUtils.headerNames("Accept", "Accept-Language");
+    }
+
+    @Benchmark
+    public CacheRequestContext build() {
+        return CacheRequestContext.build(_request, "products", _vary, false);
+    }
+
+    @Path("/")
+    public static class PlaceholderResource {
+        @GET
+        public String get() {
+            return "";
+        }
+    }
+}
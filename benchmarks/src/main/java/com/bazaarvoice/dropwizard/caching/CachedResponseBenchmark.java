@@ -0,0 +1,68 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import org.joda.time.DateTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.ws.rs.core.Response;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for replaying a {@link CachedResponse} on a cache hit and weighing it for the local cache.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CachedResponseBenchmark {
+    @Param({"256", "65536"})
+    public int bodySize;
+
+    private CachedResponse _response;
+    private DateTime _now;
+
+    @Setup
+    public void setup() {
+        _response = BenchmarkData.response(bodySize);
+        _now = BenchmarkData.DATE.plusSeconds(30);
+
+        // Parse the lazily evaluated fields up front, as they would be for an entry that has been served before
+        _response.getExpires();
+    }
+
+    @Benchmark
+    public Response response() {
+        return _response.response(_now).build();
+    }
+
+    @Benchmark
+    public int weigh() {
+        return CachedResponseWeigher.INSTANCE.weigh("GET:/api/products?category=shoes#2jmj7l5rSw0yVb/vlWAYkK/YBwk=", _response);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.sun.jersey.core.header.OutBoundHeaders;
+
+import javax.ws.rs.core.MultivaluedMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the weight {@link CachedResponseWeigher} gives a local cache full of responses with the heap the cache
+ * actually retains.
+ * <p/>
+ * The result depends on the JVM, its heap layout and the garbage collector, so it is a tool for checking the weigher
+ * constants after a change rather than a test. Run with a fixed heap so the measurement is not disturbed by resizing:
+ * <code>java -Xms1g -Xmx1g -cp benchmarks/target/benchmarks.jar com.bazaarvoice.dropwizard.caching.CachedResponseWeigherHeapCheck</code>
+ */
+public class CachedResponseWeigherHeapCheck {
+    private static final int ENTRIES = 20000;
+
+    public static void main(String[] args) {
+        long before = usedHeap();
+
+        Cache<String, CachedResponse> cache = CacheBuilder.newBuilder()
+                .weigher(CachedResponseWeigher.INSTANCE)
+                .maximumWeight(Long.MAX_VALUE)
+                .expireAfterWrite(1, TimeUnit.HOURS)
+                .build();
+        long estimated = 0;
+
+        for (int i = 0; i < ENTRIES; i++) {
+            String key = "GET#http://localhost/resource/" + i;
+            CachedResponse response = response(i, 100 + (i % 200));
+
+            // Materialize the values that are parsed when a response is served
+            response.getDate();
+            response.hasExpiration();
+
+            cache.put(key, response);
+            estimated += CachedResponseWeigher.INSTANCE.weigh(key, response);
+        }
+
+        long measured = usedHeap() - before;
+
+        System.out.printf("entries:   %d%n", cache.size());
+        System.out.printf("estimated: %d bytes%n", estimated);
+        System.out.printf("measured:  %d bytes%n", measured);
+        System.out.printf("ratio:     %.3f%n", (double) measured / estimated);
+    }
+
+    private static CachedResponse response(int index, int contentLength) {
+        MultivaluedMap<String, Object> headers = new OutBoundHeaders();
+        headers.add(copy("Date"), copy("Sat, 18 Oct 2014 12:00:00 GMT"));
+        headers.add(copy("Expires"), copy("Sat, 18 Oct 2014 13:00:00 GMT"));
+        headers.add(copy("Cache-Control"), copy("max-age=3600"));
+        headers.add(copy("Content-Type"), copy("application/json"));
+        headers.add(copy("ETag"), "\"" + index + "\"");
+        headers.add(copy("Vary"), copy("Accept"));
+        headers.add(copy("Vary"), copy("Accept-Encoding"));
+        return CachedResponse.build(200, headers, new byte[contentLength]);
+    }
+
+    /**
+     * Copy of a string that does not share its characters with the original, as with headers read off the wire.
+     */
+    private static String copy(String value) {
+        return new String(value.toCharArray());
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+
+        return used;
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import com.sun.jersey.core.util.MultivaluedMapImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for cache key generation in {@link ResponseCache}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ResponseCacheBenchmark {
+    private CacheRequestContext _request;
+    private CacheRequestContext _requestWithoutQuery;
+
+    @Setup
+    public void setup() {
+        _request = new CacheRequestContext("GET",
+                URI.create("http://localhost:8080/api/products?category=shoes&page=2&limit=50&utm_source=newsletter"),
+                new MultivaluedMapImpl(), "2jmj7l5rSw0yVb/vlWAYkK/YBwk=", "products");
+        _requestWithoutQuery = new CacheRequestContext("GET",
+                URI.create("http://localhost:8080/api/products/12345"),
+                new MultivaluedMapImpl(), "2jmj7l5rSw0yVb/vlWAYkK/YBwk=");
+    }
+
+    @Benchmark
+    public String buildKey() {
+        return ResponseCache.buildKey(_request);
+    }
+
+    @Benchmark
+    public String buildKeyWithoutQuery() {
+        return ResponseCache.buildKey(_requestWithoutQuery);
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching.memcached;
+
+import com.bazaarvoice.dropwizard.caching.BenchmarkData;
+import com.bazaarvoice.dropwizard.caching.CachedResponse;
+import net.spy.memcached.CachedData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for converting responses to and from the memcached wire format with {@link CachedResponseTranscoder}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CachedResponseTranscoderBenchmark {
+    @Param({"256", "65536"})
+    public int bodySize;
+
+    private CachedResponse _response;
+    private CachedData _encoded;
+
+    @Setup
+    public void setup() {
+        _response = BenchmarkData.response(bodySize);
+        _encoded = CachedResponseTranscoder.INSTANCE.encode(_response);
+    }
+
+    @Benchmark
+    public CachedData encode() {
+        return CachedResponseTranscoder.INSTANCE.encode(_response);
+    }
+
+    @Benchmark
+    public CachedResponse decode() {
+        return CachedResponseTranscoder.INSTANCE.decode(_encoded);
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.ForwardingCache;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Local cache with a memory budget that follows heap pressure.
+ * <p/>
+ * The budget starts at the maximum. After each garbage collection, the occupancy of the old generation is checked. If
+ * it is above the pressure threshold, the budget shrinks and a matching share of the cached entries is evicted at
+ * random. Once occupancy drops below the recovery threshold, the budget grows back by the same factor per collection.
+ * While the budget is below the maximum, new entries that do not fit are not cached.
+ */
+class AdaptiveCache extends ForwardingCache<String, CachedResponse> {
+    private static final Logger LOG = LoggerFactory.getLogger(AdaptiveCache.class);
+
+    private final Cache<String, CachedResponse> _delegate;
+    private final long _maximumBudget;
+    private final long _minimumBudget;
+    private final double _pressureThreshold;
+    private final double _recoveryThreshold;
+    private final double _shrinkFactor;
+    private final AtomicLong _budget;
+    private final AtomicLong _weight = new AtomicLong();
+    private final Counter _pressureEvictions;
+
+    /**
+     * @param cacheBuilder      builder for the underlying cache, with any expiration already set
+     * @param maximumBudget     largest budget, in bytes
+     * @param minimumBudget     smallest budget, in bytes
+     * @param pressureThreshold old generation occupancy after a collection at which the budget shrinks
+     * @param recoveryThreshold old generation occupancy after a collection below which the budget grows
+     * @param shrinkFactor      factor the budget is multiplied by when it shrinks
+     */
+    AdaptiveCache(CacheBuilder<Object, Object> cacheBuilder, long maximumBudget, long minimumBudget, double pressureThreshold,
+                  double recoveryThreshold, double shrinkFactor, MetricRegistry metricRegistry) {
+        this(cacheBuilder, maximumBudget, minimumBudget, pressureThreshold, recoveryThreshold, shrinkFactor, metricRegistry, null);
+    }
+
+    /**
+     * @param removalListener also notified of every entry removed from the underlying cache, if not null
+     */
+    AdaptiveCache(CacheBuilder<Object, Object> cacheBuilder, long maximumBudget, long minimumBudget, double pressureThreshold,
+                  double recoveryThreshold, double shrinkFactor, MetricRegistry metricRegistry,
+                  @Nullable final RemovalListener<String, CachedResponse> removalListener) {
+        checkNotNull(cacheBuilder);
+        checkArgument(maximumBudget >= minimumBudget && minimumBudget >= 0, "budget must be >= 0 and minimum <= maximum (minimum: %s, maximum: %s)", minimumBudget, maximumBudget);
+        checkArgument(recoveryThreshold < pressureThreshold, "recoveryThreshold must be < pressureThreshold (recovery: %s, pressure: %s)", recoveryThreshold, pressureThreshold);
+        checkArgument(shrinkFactor > 0 && shrinkFactor < 1, "shrinkFactor must be > 0 and < 1 (value: %s)", shrinkFactor);
+        checkNotNull(metricRegistry);
+
+        _maximumBudget = maximumBudget;
+        _minimumBudget = minimumBudget;
+        _pressureThreshold = pressureThreshold;
+        _recoveryThreshold = recoveryThreshold;
+        _shrinkFactor = shrinkFactor;
+        _budget = new AtomicLong(maximumBudget);
+
+        _delegate = cacheBuilder
+                .weigher(CachedResponseWeigher.INSTANCE)
+                .maximumWeight(maximumBudget)
+                .removalListener(new RemovalListener<String, CachedResponse>() {
+                    @Override
+                    public void onRemoval(RemovalNotification<String, CachedResponse> notification) {
+                        if (notification.getKey() != null && notification.getValue() != null) {
+                            _weight.addAndGet(-weigh(notification.getKey(), notification.getValue()));
+                        }
+
+                        if (removalListener != null) {
+                            removalListener.onRemoval(notification);
+                        }
+                    }
+                })
+                .build();
+
+        metricRegistry.register(MetricRegistry.name(ResponseCache.class, "local-budget"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return _budget.get();
+            }
+        });
+
+        _pressureEvictions = metricRegistry.counter(MetricRegistry.name(ResponseCache.class, "local-pressure-evictions"));
+    }
+
+    @Override
+    protected Cache<String, CachedResponse> delegate() {
+        return _delegate;
+    }
+
+    @Override
+    public void put(String key, CachedResponse value) {
+        int weight = weigh(key, value);
+
+        if (isAdmitted(weight)) {
+            _weight.addAndGet(weight);
+            _delegate.put(key, value);
+        } else {
+            // The replacement does not fit, so drop any older response rather than keep serving it
+            _delegate.invalidate(key);
+        }
+    }
+
+    @Override
+    public CachedResponse get(final String key, final Callable<? extends CachedResponse> valueLoader) throws ExecutionException {
+        final AtomicBoolean loaded = new AtomicBoolean();
+
+        CachedResponse value = _delegate.get(key, new Callable<CachedResponse>() {
+            @Override
+            public CachedResponse call() throws Exception {
+                CachedResponse response = valueLoader.call();
+
+                if (response != null) {
+                    loaded.set(true);
+                    _weight.addAndGet(weigh(key, response));
+                }
+
+                return response;
+            }
+        });
+
+        if (loaded.get() && !isAdmitted(0)) {
+            // The budget shrank and the loaded entry does not fit, so only this request gets the response
+            _delegate.invalidate(key);
+        }
+
+        return value;
+    }
+
+    /**
+     * Current budget, in bytes.
+     */
+    long getBudget() {
+        return _budget.get();
+    }
+
+    /**
+     * Approximate weight of the cached entries, in bytes.
+     */
+    long getWeight() {
+        return _weight.get();
+    }
+
+    /**
+     * Update the budget after a garbage collection.
+     *
+     * @param occupancy fraction of the old generation in use after the collection
+     */
+    synchronized void onCollection(double occupancy) {
+        long budget = _budget.get();
+
+        if (occupancy >= _pressureThreshold) {
+            long shrunk = Math.max(_minimumBudget, (long) (budget * _shrinkFactor));
+            _budget.set(shrunk);
+            trim(shrunk);
+
+            if (shrunk < budget) {
+                LOG.info("Shrinking local cache budget under memory pressure: occupancy={}, budget={}", occupancy, shrunk);
+            }
+        } else if (occupancy < _recoveryThreshold && budget < _maximumBudget) {
+            long grown = Math.min(_maximumBudget, (long) Math.ceil(budget / _shrinkFactor));
+            _budget.set(grown);
+            LOG.info("Growing local cache budget: occupancy={}, budget={}", occupancy, grown);
+        }
+    }
+
+    /**
+     * Register for garbage collection notifications that update the budget.
+     */
+    void listenForCollections() {
+        final MemoryPoolMXBean oldGeneration = findOldGeneration();
+
+        if (oldGeneration == null) {
+            LOG.warn("No old generation memory pool found. The local cache budget will not adapt to memory pressure.");
+            return;
+        }
+
+        NotificationListener listener = new NotificationListener() {
+            @Override
+            public void handleNotification(Notification notification, Object handback) {
+                MemoryUsage usage = oldGeneration.getCollectionUsage();
+
+                if (usage != null) {
+                    long max = usage.getMax() > 0 ? usage.getMax() : usage.getCommitted();
+
+                    if (max > 0) {
+                        onCollection((double) usage.getUsed() / max);
+                    }
+                }
+            }
+        };
+
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (collector instanceof NotificationEmitter && Arrays.asList(collector.getMemoryPoolNames()).contains(oldGeneration.getName())) {
+                ((NotificationEmitter) collector).addNotificationListener(listener, null, null);
+            }
+        }
+    }
+
+    private boolean isAdmitted(int weight) {
+        long budget = _budget.get();
+
+        // At the maximum budget, the underlying cache evicts entries to make room
+        return budget >= _maximumBudget || _weight.get() + weight <= budget;
+    }
+
+    /**
+     * Evict a random share of the entries so the remaining weight fits the budget.
+     */
+    private void trim(long budget) {
+        long weight = _weight.get();
+
+        if (weight <= budget) {
+            return;
+        }
+
+        double evictFraction = 1 - (double) budget / weight;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        for (Iterator<String> keys = _delegate.asMap().keySet().iterator(); keys.hasNext(); ) {
+            keys.next();
+
+            if (random.nextDouble() < evictFraction) {
+                keys.remove();
+                _pressureEvictions.inc();
+            }
+        }
+    }
+
+    private static int weigh(String key, CachedResponse value) {
+        return CachedResponseWeigher.INSTANCE.weigh(key, value);
+    }
+
+    /**
+     * The heap pool that holds long-lived objects, such as cached responses. Collectors report its occupancy after
+     * each collection.
+     */
+    private static MemoryPoolMXBean findOldGeneration() {
+        MemoryPoolMXBean largest = null;
+
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() != MemoryType.HEAP || !pool.isCollectionUsageThresholdSupported()) {
+                continue;
+            }
+
+            if (pool.getName().contains("Old") || pool.getName().contains("Tenured")) {
+                return pool;
+            }
+
+            if (largest == null || pool.getUsage().getMax() > largest.getUsage().getMax()) {
+                largest = pool;
+            }
+        }
+
+        return largest;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+
+import javax.annotation.Nullable;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Configuration options for sizing the local cache as a fraction of the heap, shrinking under memory pressure. See
+ * {@link AdaptiveCache}.
+ */
+public class AdaptiveSizeConfiguration {
+    private boolean _enabled;
+    private double _heapFraction = 0.25;
+    private double _minimumFraction = 0.1;
+    private double _pressureThreshold = 0.8;
+    private double _recoveryThreshold = 0.6;
+    private double _shrinkFactor = 0.5;
+
+    /**
+     * If true, the local cache budget is set from the heap size instead of <code>maximumSize</code>.
+     */
+    public boolean isEnabled() {
+        return _enabled;
+    }
+
+    @JsonProperty
+    public void setEnabled(boolean enabled) {
+        _enabled = enabled;
+    }
+
+    /**
+     * Largest budget, as a fraction of the maximum heap size.
+     */
+    public double getHeapFraction() {
+        return _heapFraction;
+    }
+
+    @JsonProperty
+    public void setHeapFraction(double heapFraction) {
+        checkArgument(heapFraction > 0 && heapFraction <= 1, "heapFraction must be > 0 and <= 1 (value: %s)", heapFraction);
+        _heapFraction = heapFraction;
+    }
+
+    /**
+     * Smallest budget, as a fraction of the largest budget.
+     */
+    public double getMinimumFraction() {
+        return _minimumFraction;
+    }
+
+    @JsonProperty
+    public void setMinimumFraction(double minimumFraction) {
+        checkArgument(minimumFraction >= 0 && minimumFraction <= 1, "minimumFraction must be >= 0 and <= 1 (value: %s)", minimumFraction);
+        _minimumFraction = minimumFraction;
+    }
+
+    /**
+     * Old generation occupancy after a garbage collection at which the budget shrinks.
+     */
+    public double getPressureThreshold() {
+        return _pressureThreshold;
+    }
+
+    @JsonProperty
+    public void setPressureThreshold(double pressureThreshold) {
+        checkArgument(pressureThreshold > 0 && pressureThreshold <= 1, "pressureThreshold must be > 0 and <= 1 (value: %s)", pressureThreshold);
+        _pressureThreshold = pressureThreshold;
+    }
+
+    /**
+     * Old generation occupancy after a garbage collection below which a shrunk budget grows back.
+     */
+    public double getRecoveryThreshold() {
+        return _recoveryThreshold;
+    }
+
+    @JsonProperty
+    public void setRecoveryThreshold(double recoveryThreshold) {
+        checkArgument(recoveryThreshold >= 0 && recoveryThreshold < 1, "recoveryThreshold must be >= 0 and < 1 (value: %s)", recoveryThreshold);
+        _recoveryThreshold = recoveryThreshold;
+    }
+
+    /**
+     * Factor the budget is multiplied by each time it shrinks, and divided by each time it grows.
+     */
+    public double getShrinkFactor() {
+        return _shrinkFactor;
+    }
+
+    @JsonProperty
+    public void setShrinkFactor(double shrinkFactor) {
+        checkArgument(shrinkFactor > 0 && shrinkFactor < 1, "shrinkFactor must be > 0 and < 1 (value: %s)", shrinkFactor);
+        _shrinkFactor = shrinkFactor;
+    }
+
+    /**
+     * Largest budget, in bytes, for the maximum heap size of this JVM.
+     */
+    long maximumBudget() {
+        return (long) (Runtime.getRuntime().maxMemory() * _heapFraction);
+    }
+
+    Cache<String, CachedResponse> buildCache(CacheBuilder<Object, Object> cacheBuilder, MetricRegistry metricRegistry,
+                                             @Nullable RemovalListener<String, CachedResponse> removalListener) {
+        long maximumBudget = maximumBudget();
+        long minimumBudget = (long) (maximumBudget * _minimumFraction);
+
+        AdaptiveCache cache = new AdaptiveCache(cacheBuilder, maximumBudget, minimumBudget, _pressureThreshold, _recoveryThreshold,
+                _shrinkFactor, metricRegistry, removalListener);
+        cache.listenForCollections();
+        return cache;
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Byte range of a response body, as requested with the HTTP <code>Range</code> header.
+ * <p/>
+ * See http://www.w3.org/Protocols/rfc2616/rfc2616-sec14.html#sec14.35
+ */
+class ByteRange {
+    /**
+     * Requests with more ranges than this are answered with the full response, since many small ranges cost more to
+     * serve than the full body.
+     */
+    static final int MAX_RANGES = 16;
+
+    private static final String BYTES_UNIT = "bytes=";
+    private static final Splitter RANGE_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
+
+    private final int _first;
+    private final int _last;
+
+    ByteRange(int first, int last) {
+        checkArgument(first >= 0 && first <= last, "invalid byte range: %s-%s", first, last);
+        _first = first;
+        _last = last;
+    }
+
+    /**
+     * Parse a <code>Range</code> header against a body of known length.
+     *
+     * @param header range header value
+     * @param length length of the full body
+     * @return absent if the header should be ignored and the full body returned (syntax errors, other units, too many
+     * ranges), an empty list if none of the ranges can be satisfied, otherwise the satisfiable ranges in request order
+     */
+    static Optional<List<ByteRange>> parse(String header, int length) {
+        if (!header.regionMatches(true, 0, BYTES_UNIT, 0, BYTES_UNIT.length())) {
+            return Optional.absent();
+        }
+
+        List<String> specs = RANGE_SPLITTER.splitToList(header.substring(BYTES_UNIT.length()));
+
+        if (specs.isEmpty() || specs.size() > MAX_RANGES) {
+            return Optional.absent();
+        }
+
+        ImmutableList.Builder<ByteRange> ranges = ImmutableList.builder();
+
+        for (String spec : specs) {
+            int dash = spec.indexOf('-');
+
+            if (dash < 0) {
+                return Optional.absent();
+            }
+
+            try {
+                String firstString = spec.substring(0, dash).trim();
+                String lastString = spec.substring(dash + 1).trim();
+
+                if (firstString.isEmpty()) {
+                    // Suffix range: last N bytes
+                    long suffix = Long.parseLong(lastString);
+
+                    if (suffix < 0) {
+                        return Optional.absent();
+                    }
+
+                    if (suffix > 0 && length > 0) {
+                        ranges.add(new ByteRange((int) Math.max(length - suffix, 0), length - 1));
+                    }
+                } else {
+                    long first = Long.parseLong(firstString);
+                    long last = lastString.isEmpty() ? Long.MAX_VALUE : Long.parseLong(lastString);
+
+                    if (first < 0 || last < first) {
+                        return Optional.absent();
+                    }
+
+                    if (first < length) {
+                        ranges.add(new ByteRange((int) first, (int) Math.min(last, length - 1)));
+                    }
+                }
+            } catch (NumberFormatException ex) {
+                return Optional.absent();
+            }
+        }
+
+        return Optional.<List<ByteRange>>of(ranges.build());
+    }
+
+    int getFirst() {
+        return _first;
+    }
+
+    int getLast() {
+        return _last;
+    }
+
+    int getLength() {
+        return _last - _first + 1;
+    }
+
+    /**
+     * Value of the <code>Content-Range</code> header for this range.
+     */
+    String contentRange(int totalLength) {
+        return "bytes " + _first + "-" + _last + "/" + totalLength;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof ByteRange)) {
+            return false;
+        }
+
+        ByteRange other = (ByteRange) obj;
+        return _first == other._first && _last == other._last;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * _first + _last;
+    }
+
+    @Override
+    public String toString() {
+        return _first + "-" + _last;
+    }
+}
@@ -18,15 +18,19 @@ package com.bazaarvoice.dropwizard.caching;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonValue;
 import com.google.common.base.Function;
+import com.google.common.base.Functions;
 import com.google.common.base.Optional;
 import com.google.common.base.Predicate;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
 
 import javax.annotation.Nullable;
 import java.util.List;
+import java.util.Map;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -87,13 +91,42 @@ public class CacheControlConfiguration {
                 );
     }
 
+    /**
+     * Build a function that maps a cache group name to the cache-control options for specific response status codes.
+     * See {@link CacheControlConfigurationItem#getStatusMaxAge()}.
+     */
+    public Function<String, Map<Integer, String>> buildStatusMapper() {
+        final List<CacheControlMap> maps = FluentIterable
+                .from(_items)
+                .transform(new Function<CacheControlConfigurationItem, CacheControlMap>() {
+                    public CacheControlMap apply(CacheControlConfigurationItem input) {
+                        return new CacheControlMap(input);
+                    }
+                })
+                .toList();
+
+        return new Function<String, Map<Integer, String>>() {
+            public Map<Integer, String> apply(String input) {
+                for (CacheControlMap map : maps) {
+                    if (map.groupMatcher.apply(input)) {
+                        return map.statusOptions;
+                    }
+                }
+
+                return ImmutableMap.of();
+            }
+        };
+    }
+
     private static class CacheControlMap {
         public final Predicate<String> groupMatcher;
         public final String options;
+        public final Map<Integer, String> statusOptions;
 
         public CacheControlMap(CacheControlConfigurationItem item) {
             this.groupMatcher = item.buildGroupMatcher();
             this.options = item.buildCacheControl().toString();
+            this.statusOptions = ImmutableMap.copyOf(Maps.transformValues(item.buildStatusCacheControl(), Functions.toStringFunction()));
         }
     }
 }
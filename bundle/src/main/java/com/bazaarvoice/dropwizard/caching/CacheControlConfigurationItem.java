@@ -49,6 +49,7 @@ public class CacheControlConfigurationItem {
     private Set<String> _privateFields = ImmutableSet.of();
     private Set<String> _noCacheFields = ImmutableSet.of();
     private Map<String, String> _cacheExtensions = ImmutableMap.of();
+    private Map<Integer, Duration> _statusMaxAge = ImmutableMap.of();
 
     public Optional<Pattern> getGroupRegex() {
         return _groupRegex;
@@ -137,6 +138,50 @@ public class CacheControlConfigurationItem {
         _cacheExtensions = ImmutableMap.copyOf(cacheExtensions);
     }
 
+    /**
+     * Max-age to use for responses with specific status codes, instead of {@link #getMaxAge()}. Responses with these
+     * status codes are cached even if they are not cacheable by default, which allows for short-lived negative
+     * caching of responses like 404.
+     */
+    public Map<Integer, Duration> getStatusMaxAge() {
+        return _statusMaxAge;
+    }
+
+    @JsonProperty
+    public void setStatusMaxAge(Map<Integer, Duration> statusMaxAge) {
+        checkNotNull(statusMaxAge);
+
+        for (Map.Entry<Integer, Duration> entry : statusMaxAge.entrySet()) {
+            checkArgument(entry.getKey() >= 100 && entry.getKey() < 600, "statusMaxAge status code must be a valid HTTP status (value: %s)", entry.getKey());
+            checkArgument(entry.getValue() != null && entry.getValue().getQuantity() >= 0, "statusMaxAge must be >= 0 (status: %s)", entry.getKey());
+        }
+
+        _statusMaxAge = ImmutableMap.copyOf(statusMaxAge);
+    }
+
+    /**
+     * Build the cache-control options for each status code with its own max-age.
+     *
+     * @return map from status code to cache-control options
+     */
+    public Map<Integer, CacheControl> buildStatusCacheControl() {
+        ImmutableMap.Builder<Integer, CacheControl> result = ImmutableMap.builder();
+
+        for (Map.Entry<Integer, Duration> entry : _statusMaxAge.entrySet()) {
+            CacheControl cacheControl = buildCacheControl();
+            int maxAge = (int) entry.getValue().toSeconds();
+            cacheControl.setMaxAge(maxAge);
+
+            if (cacheControl.getSMaxAge() >= 0) {
+                cacheControl.setSMaxAge(maxAge);
+            }
+
+            result.put(entry.getKey(), cacheControl);
+        }
+
+        return result.build();
+    }
+
     public CacheControl buildCacheControl() {
         CacheControl cacheControl = new CacheControl();
         cacheControl.setNoTransform(false); // Default is true
@@ -203,12 +248,20 @@ public class CacheControlConfigurationItem {
     }
 
     public Predicate<String> buildGroupMatcher() {
+        return buildGroupMatcher(_group, _groupRegex);
+    }
+
+    /**
+     * Build a cache group name matcher from a group name pattern, where '*' matches any characters, or a regular
+     * expression. Matches all groups if neither is present.
+     */
+    static Predicate<String> buildGroupMatcher(Optional<String> group, Optional<Pattern> groupRegex) {
         Predicate<String> matcher;
 
-        if (_groupRegex.isPresent()) {
-            matcher = regexMatcher(_groupRegex.get());
+        if (groupRegex.isPresent()) {
+            matcher = regexMatcher(groupRegex.get());
         } else {
-            matcher = groupNameMatcher(_group.or("*"));
+            matcher = groupNameMatcher(group.or("*"));
         }
 
         return matcher;
@@ -18,6 +18,52 @@ package com.bazaarvoice.dropwizard.caching;
 import javax.ws.rs.core.CacheControl;
 
 class CacheControlUtils {
+    private static final ParsedHeaderCache<CacheControl> PARSED = new ParsedHeaderCache<CacheControl>(1000) {
+        @Override
+        protected CacheControl parse(String value) {
+            return CacheControl.valueOf(value);
+        }
+    };
+
+    /**
+     * Parse a response cache-control header.
+     *
+     * @return a new cache-control instance that the caller is free to modify
+     * @throws IllegalArgumentException if the header can not be parsed
+     */
+    public static CacheControl valueOf(String value) {
+        return copyOf(PARSED.get(value));
+    }
+
+    /**
+     * Parse a response cache-control header, returning an instance shared with other callers that parsed the same
+     * header. The returned value must not be modified or exposed outside of this package.
+     *
+     * @throws IllegalArgumentException if the header can not be parsed
+     */
+    static CacheControl sharedValueOf(String value) {
+        return PARSED.get(value);
+    }
+
+    /**
+     * Create a copy of a cache-control instance that does not share any mutable state with the original.
+     */
+    public static CacheControl copyOf(CacheControl cacheControl) {
+        CacheControl copy = new CacheControl();
+        copy.setPrivate(cacheControl.isPrivate());
+        copy.setNoCache(cacheControl.isNoCache());
+        copy.setNoStore(cacheControl.isNoStore());
+        copy.setNoTransform(cacheControl.isNoTransform());
+        copy.setMustRevalidate(cacheControl.isMustRevalidate());
+        copy.setProxyRevalidate(cacheControl.isProxyRevalidate());
+        copy.setMaxAge(cacheControl.getMaxAge());
+        copy.setSMaxAge(cacheControl.getSMaxAge());
+        copy.getPrivateFields().addAll(cacheControl.getPrivateFields());
+        copy.getNoCacheFields().addAll(cacheControl.getNoCacheFields());
+        copy.getCacheExtension().putAll(cacheControl.getCacheExtension());
+        return copy;
+    }
+
     /**
      * Get the max age for a shared cache.
      *
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Ordering;
+import io.dropwizard.servlets.tasks.Task;
+import org.joda.time.DateTime;
+
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Lists.newArrayList;
+
+/**
+ * Admin task that lists the largest or oldest entries in the local response cache.
+ * <p/>
+ * Usage: <code>POST /tasks/cache-entries?sort=weight|age&amp;limit=20&amp;group=name</code>
+ * <ul>
+ * <li>sort: order entries by estimated weight (default) or by age, descending</li>
+ * <li>limit: maximum number of entries to print (default 20)</li>
+ * <li>group: only list entries for the cache group (optional, empty for methods without an explicit group)</li>
+ * </ul>
+ * Each line contains the weight in bytes, age in seconds, status code and cache key of an entry. Ages are measured with
+ * the clock of the response cache, the same way as the <code>Age</code> header of a cache hit.
+ */
+public class CacheEntriesTask extends Task {
+    private static final int DEFAULT_LIMIT = 20;
+
+    private static final Ordering<EntryInfo> BY_WEIGHT = new Ordering<EntryInfo>() {
+        @Override
+        public int compare(EntryInfo left, EntryInfo right) {
+            return Long.compare(left.weight, right.weight);
+        }
+    };
+
+    private static final Ordering<EntryInfo> BY_AGE = new Ordering<EntryInfo>() {
+        @Override
+        public int compare(EntryInfo left, EntryInfo right) {
+            return Long.compare(left.age, right.age);
+        }
+    };
+
+    private final ResponseCache _cache;
+
+    public CacheEntriesTask(ResponseCache cache) {
+        super("cache-entries");
+        _cache = checkNotNull(cache);
+    }
+
+    @Override
+    public void execute(ImmutableMultimap<String, String> parameters, PrintWriter output) throws Exception {
+        String sort = Iterables.getFirst(parameters.get("sort"), "weight");
+        String limitParam = Iterables.getFirst(parameters.get("limit"), null);
+        String group = Iterables.getFirst(parameters.get("group"), null);
+        Ordering<EntryInfo> ordering;
+
+        if ("weight".equalsIgnoreCase(sort)) {
+            ordering = BY_WEIGHT;
+        } else if ("age".equalsIgnoreCase(sort)) {
+            ordering = BY_AGE;
+        } else {
+            output.println("Invalid sort option: " + sort);
+            return;
+        }
+
+        int limit;
+
+        try {
+            limit = limitParam == null ? DEFAULT_LIMIT : Integer.parseInt(limitParam);
+        } catch (NumberFormatException ex) {
+            output.println("Invalid limit: " + limitParam);
+            return;
+        }
+
+        DateTime now = _cache.clock().now();
+        List<EntryInfo> entries = newArrayList();
+
+        for (Map.Entry<String, CachedResponse> entry : _cache.localEntries().entrySet()) {
+            if (group == null || ResponseCache.groupOf(entry.getKey()).equals(group)) {
+                entries.add(new EntryInfo(entry.getKey(), entry.getValue(), now));
+            }
+        }
+
+        for (EntryInfo entry : ordering.greatestOf(entries, Math.max(limit, 0))) {
+            output.printf("%d\t%d\t%d\t%s%n", entry.weight, entry.age, entry.statusCode, entry.key);
+        }
+    }
+
+    private static class EntryInfo {
+        final String key;
+        final long weight;
+        final long age;
+        final int statusCode;
+
+        EntryInfo(String key, CachedResponse response, DateTime now) {
+            this.key = key;
+            this.weight = CachedResponseWeigher.INSTANCE.weigh(key, response);
+            // Same age a cache hit reports, or 0 for responses dated in the future, which are served without one
+            this.age = Math.max(HttpHeaderUtils.ageSeconds(response.getDate(), now), 0);
+            this.statusCode = response.getStatusCode();
+        }
+    }
+}
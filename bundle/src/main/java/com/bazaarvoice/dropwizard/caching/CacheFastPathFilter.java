@@ -0,0 +1,159 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.sun.jersey.spi.container.ContainerResponse;
+import org.eclipse.jetty.server.HttpOutput;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Servlet filter that serves local cache hits before Jersey routes the request.
+ * <p/>
+ * Only GET requests for paths in the {@link CacheRoutes} table are looked up. The table is filled by the caching
+ * resource method dispatchers, so the filter uses the same cache group and vary headers to build the cache key. Local
+ * misses, responses that must be loaded from the store and anything the route table can not vouch for are passed on
+ * to Jersey unchanged.
+ * <p/>
+ * Hits are written with Jetty's {@link HttpOutput#sendContent(ByteBuffer)} when the response stream supports it, which
+ * passes the cached buffer to the connection without copying it into the response buffer first.
+ */
+class CacheFastPathFilter implements Filter {
+    /**
+     * Request attribute set when the filter decided that the request should refresh the cached response early, so the
+     * caching dispatcher does not decide again.
+     */
+    static final String EARLY_REFRESH_ATTRIBUTE = CacheFastPathFilter.class.getName() + ".earlyRefresh";
+
+    private final ResponseCache _cache;
+    private final CacheRoutes _routes;
+    private final Map<String, VaryNormalizer> _varyNormalizers;
+    private final Counter _hits;
+
+    CacheFastPathFilter(ResponseCache cache, CacheRoutes routes, Map<String, VaryNormalizer> varyNormalizers, MetricRegistry metricRegistry) {
+        _cache = checkNotNull(cache);
+        _routes = checkNotNull(routes);
+        _varyNormalizers = checkNotNull(varyNormalizers);
+        _hits = metricRegistry.counter(MetricRegistry.name(ResponseCache.class, "fast-path-hits"));
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        // Nothing to do
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        CacheRoutes.Route route = null;
+
+        if (request instanceof HttpServletRequest && response instanceof HttpServletResponse) {
+            HttpServletRequest httpRequest = (HttpServletRequest) request;
+
+            if (httpRequest.getMethod().equals("GET")) {
+                route = _routes.get(httpRequest.getRequestURI());
+            }
+        }
+
+        if (route == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        CacheRequestContext cacheRequest;
+
+        try {
+            cacheRequest = CacheRequestContext.build((HttpServletRequest) request, route.group, route.vary, _varyNormalizers);
+        } catch (IllegalArgumentException ex) {
+            // Request URI that java.net.URI rejects. Jersey is more lenient.
+            chain.doFilter(request, response);
+            return;
+        }
+
+        ResponseCache.LocalLookup lookup = _cache.getLocal(cacheRequest);
+
+        if (lookup.response.isPresent()) {
+            _hits.inc();
+            write(lookup.response.get(), (HttpServletResponse) response);
+            return;
+        }
+
+        if (lookup.earlyRefresh) {
+            request.setAttribute(EARLY_REFRESH_ATTRIBUTE, Boolean.TRUE);
+        }
+
+        chain.doFilter(request, response);
+    }
+
+    @Override
+    public void destroy() {
+        // Nothing to do
+    }
+
+    private static void write(Response response, HttpServletResponse httpResponse) throws IOException {
+        httpResponse.setStatus(response.getStatus());
+
+        for (Map.Entry<String, List<Object>> header : response.getMetadata().entrySet()) {
+            for (Object value : header.getValue()) {
+                if (value != null) {
+                    if (CachingBundle.SINGLETON_HEADERS.contains(header.getKey())) {
+                        httpResponse.setHeader(header.getKey(), ContainerResponse.getHeaderValue(value));
+                    } else {
+                        httpResponse.addHeader(header.getKey(), ContainerResponse.getHeaderValue(value));
+                    }
+                }
+            }
+        }
+
+        Object entity = response.getEntity();
+        ByteBuffer content;
+
+        if (entity instanceof byte[]) {
+            content = ByteBuffer.wrap((byte[]) entity);
+        } else if (entity instanceof CachedContent) {
+            content = ((CachedContent) entity).buffer();
+        } else {
+            return;
+        }
+
+        httpResponse.setContentLength(content.remaining());
+        ServletOutputStream output = httpResponse.getOutputStream();
+
+        if (output instanceof HttpOutput) {
+            ((HttpOutput) output).sendContent(content);
+        } else if (entity instanceof byte[]) {
+            output.write((byte[]) entity);
+        } else {
+            ((CachedContent) entity).write(output);
+        }
+    }
+}
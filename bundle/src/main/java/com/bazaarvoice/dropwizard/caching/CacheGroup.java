@@ -29,7 +29,8 @@ import java.lang.annotation.Target;
 @Retention(RetentionPolicy.RUNTIME)
 public @interface CacheGroup {
     /**
-     * Name of the cache group to associate with the resource method.
+     * Name of the cache group to associate with the resource method. The name is part of the cache key, so it may only
+     * contain letters, digits, '.', '_' and '-'.
      */
     String value();
 }
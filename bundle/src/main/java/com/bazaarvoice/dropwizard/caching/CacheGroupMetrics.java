@@ -0,0 +1,114 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import com.google.common.base.Supplier;
+
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Metrics for a single {@link CacheGroup}.
+ * <p/>
+ * Metrics are registered under <code>ResponseCache.group.&lt;name&gt;</code>. Resource methods without an explicit group
+ * are reported under <code>ResponseCache.{@value #UNGROUPED}</code>, outside the names any group can use.
+ */
+class CacheGroupMetrics {
+    static final String UNGROUPED = "ungrouped";
+
+    private final Counter _hits;
+    private final Counter _misses;
+    private final Counter _localHits;
+    private final Counter _storeHits;
+    private final Counter _bytesServed;
+
+    /**
+     * Register metrics for a group.
+     *
+     * @param metricRegistry registry to add the metrics to
+     * @param group          cache group name or empty string for resource methods without an explicit group
+     * @param localStats     supplier of local cache statistics by group name
+     */
+    public CacheGroupMetrics(MetricRegistry metricRegistry, final String group, final Supplier<Map<String, LocalStats>> localStats) {
+        checkNotNull(metricRegistry);
+        checkNotNull(group);
+        checkNotNull(localStats);
+
+        _hits = metricRegistry.counter(name(group, "hits"));
+        _misses = metricRegistry.counter(name(group, "misses"));
+        _localHits = metricRegistry.counter(name(group, "local-hits"));
+        _storeHits = metricRegistry.counter(name(group, "store-hits"));
+        _bytesServed = metricRegistry.counter(name(group, "bytes-served"));
+
+        metricRegistry.register(name(group, "hit-ratio"), new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                long hits = _hits.getCount();
+                return Ratio.of(hits, hits + _misses.getCount());
+            }
+        });
+
+        metricRegistry.register(name(group, "local-count"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                LocalStats stats = localStats.get().get(group);
+                return stats == null ? 0 : stats.count;
+            }
+        });
+
+        metricRegistry.register(name(group, "local-weight"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                LocalStats stats = localStats.get().get(group);
+                return stats == null ? 0 : stats.weight;
+            }
+        });
+    }
+
+    public void hit(boolean fromStore, int bytes) {
+        _hits.inc();
+        _bytesServed.inc(bytes);
+
+        if (fromStore) {
+            _storeHits.inc();
+        } else {
+            _localHits.inc();
+        }
+    }
+
+    public void miss() {
+        _misses.inc();
+    }
+
+    private static String name(String group, String metric) {
+        return group.isEmpty()
+                ? MetricRegistry.name(ResponseCache.class, UNGROUPED, metric)
+                : MetricRegistry.name(ResponseCache.class, "group", group, metric);
+    }
+
+    /**
+     * Number and total weight of the entries for a group that are held in the local cache.
+     */
+    static class LocalStats {
+        long count;
+        long weight;
+    }
+}
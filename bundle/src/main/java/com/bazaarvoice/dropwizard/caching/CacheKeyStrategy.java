@@ -0,0 +1,46 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import java.net.URI;
+
+import static com.google.common.base.Strings.isNullOrEmpty;
+
+/**
+ * Builds the part of the cache key that identifies the requested resource, normally the path and query string.
+ * <p/>
+ * The request method, the hash of the vary headers and the cache group are added to the key by {@link ResponseCache}.
+ * Two requests that produce the same resource key must produce the same response. The resource key must not contain
+ * the '#' character.
+ */
+public interface CacheKeyStrategy {
+    /**
+     * Raw path and query string of the request, as sent by the client.
+     */
+    CacheKeyStrategy RAW = new CacheKeyStrategy() {
+        @Override
+        public String buildResourceKey(CacheRequestContext request) {
+            URI requestUri = request.getRequestUri();
+            String query = requestUri.getRawQuery();
+
+            return isNullOrEmpty(query)
+                    ? requestUri.getRawPath()
+                    : requestUri.getRawPath() + '?' + query;
+        }
+    };
+
+    String buildResourceKey(CacheRequestContext request);
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMultimap;
+import io.dropwizard.servlets.tasks.Task;
+import org.joda.time.DateTime;
+
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Admin task that prints the cached response for one or more cache keys.
+ * <p/>
+ * Usage: <code>POST /tasks/cache-lookup?key=GET:/path#hash&amp;store=true</code>
+ * <ul>
+ * <li>key: cache key to look up, as listed by the cache-entries task (may be repeated)</li>
+ * <li>store: if true, keys that are not in the local cache are also looked up in the store (default false)</li>
+ * </ul>
+ */
+public class CacheLookupTask extends Task {
+    private final ResponseCache _cache;
+
+    public CacheLookupTask(ResponseCache cache) {
+        super("cache-lookup");
+        _cache = checkNotNull(cache);
+    }
+
+    @Override
+    public void execute(ImmutableMultimap<String, String> parameters, PrintWriter output) throws Exception {
+        boolean checkStore = parameters.containsEntry("store", "true");
+        DateTime now = _cache.clock().now();
+
+        for (String key : parameters.get("key")) {
+            CachedResponse response = _cache.localEntries().get(key);
+            String source = "local";
+
+            if (response == null && checkStore) {
+                Optional<CachedResponse> storeResponse = _cache.storeGet(key);
+                response = storeResponse.orNull();
+                source = "store";
+            }
+
+            output.println("key: " + key);
+
+            if (response == null) {
+                output.println("not found");
+            } else {
+                output.println("source: " + source);
+                output.println("status: " + response.getStatusCode());
+                output.println("age: " + HttpHeaderUtils.toAge(response.getDate(), now));
+                output.println("expires: " + (response.hasExpiration() ? HttpHeaderUtils.dateToString(response.getExpires().get()) : "never"));
+                output.println("size: " + response.getContentLength());
+                output.println("weight: " + CachedResponseWeigher.INSTANCE.weigh(key, response));
+
+                for (Map.Entry<String, List<String>> header : response.getResponseHeaders().entrySet()) {
+                    for (String value : header.getValue()) {
+                        output.println(header.getKey() + ": " + value);
+                    }
+                }
+            }
+
+            output.println();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import com.google.common.collect.ImmutableMultimap;
+import io.dropwizard.servlets.tasks.Task;
+
+import java.io.PrintWriter;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Admin task that removes responses from the cache.
+ * <p/>
+ * Usage: <code>POST /tasks/cache-purge?key=GET:/path#hash&amp;group=name&amp;all=true</code>
+ * <ul>
+ * <li>key: remove the response from the local cache and the store (may be repeated)</li>
+ * <li>group: remove all responses for the cache group from the local cache (may be repeated)</li>
+ * <li>all: if true, remove all responses from the local cache</li>
+ * </ul>
+ * Groups and all responses can only be purged from the local cache, since stores can not be enumerated.
+ */
+public class CachePurgeTask extends Task {
+    private final ResponseCache _cache;
+
+    public CachePurgeTask(ResponseCache cache) {
+        super("cache-purge");
+        _cache = checkNotNull(cache);
+    }
+
+    @Override
+    public void execute(ImmutableMultimap<String, String> parameters, PrintWriter output) throws Exception {
+        for (String key : parameters.get("key")) {
+            _cache.invalidate(key);
+            output.println("Purged key: " + key);
+        }
+
+        for (String group : parameters.get("group")) {
+            int count = _cache.invalidateGroup(group);
+            output.println("Purged group: " + group + " (" + count + " local entries)");
+        }
+
+        if (parameters.containsEntry("all", "true")) {
+            _cache.invalidateAll();
+            output.println("Purged all local entries");
+        }
+    }
+}
@@ -16,24 +16,32 @@
 package com.bazaarvoice.dropwizard.caching;
 
 import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
 import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
 import com.sun.jersey.core.util.Base64;
+import com.sun.jersey.core.util.StringKeyIgnoreCaseMultivaluedMap;
 import com.sun.jersey.spi.container.ContainerRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.core.MultivaluedMap;
 import java.io.ByteArrayInputStream;
 import java.net.URI;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Enumeration;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Strings.isNullOrEmpty;
 import static com.google.common.net.HttpHeaders.CACHE_CONTROL;
+import static com.google.common.net.HttpHeaders.IF_RANGE;
 import static com.google.common.net.HttpHeaders.PRAGMA;
+import static com.google.common.net.HttpHeaders.RANGE;
 
 /**
  * Cache related context information for a request.
@@ -45,63 +53,129 @@ public class CacheRequestContext {
     private final URI _requestUri;
     private final MultivaluedMap<String, String> _headers;
     private final String _requestHash;
+    private final String _cacheGroup;
 
     private transient RequestCacheControl _cacheControl;
     private transient Boolean _pragmaNoCache;
+    private transient boolean _missAwaited;
 
     public CacheRequestContext(String requestMethod, URI requestUri, MultivaluedMap<String, String> headers, String requestHash) {
+        this(requestMethod, requestUri, headers, requestHash, "");
+    }
+
+    public CacheRequestContext(String requestMethod, URI requestUri, MultivaluedMap<String, String> headers, String requestHash, String cacheGroup) {
         _requestMethod = checkNotNull(requestMethod);
         _requestUri = checkNotNull(requestUri);
         _headers = checkNotNull(headers);
         _requestHash = checkNotNull(requestHash);
+        _cacheGroup = checkNotNull(cacheGroup);
     }
 
     public static CacheRequestContext build(ContainerRequest request, Set<String> vary, boolean includeBody) {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+        return build(request, "", vary, includeBody);
+    }
 
-            for (String header : vary) {
-                List<String> headerValues = request.getRequestHeader(header);
+    public static CacheRequestContext build(ContainerRequest request, String cacheGroup, Set<String> vary, boolean includeBody) {
+        return build(request, cacheGroup, vary, ImmutableMap.<String, VaryNormalizer>of(), includeBody);
+    }
 
-                if (headerValues != null && headerValues.size() > 0) {
-                    digest.update(header.getBytes(Charsets.UTF_8));
-                    digest.update((byte) 0xFD);
+    /**
+     * @param varyNormalizers normalizers for the values of the vary headers, by header name. Headers without a
+     *                        normalizer are hashed as sent.
+     */
+    public static CacheRequestContext build(ContainerRequest request, String cacheGroup, Set<String> vary,
+                                            Map<String, VaryNormalizer> varyNormalizers, boolean includeBody) {
+        MessageDigest digest = newDigest();
+        updateDigest(digest, request.getRequestHeaders(), vary, varyNormalizers);
 
-                    for (String value : headerValues) {
-                        digest.update(value.getBytes(Charsets.UTF_8));
-                        digest.update((byte) 0xFE);
-                    }
+        if (includeBody) {
+            byte[] requestBody = request.getEntity(byte[].class);
 
-                    digest.update((byte) 0xFF);
-                }
+            if (requestBody == null) {
+                requestBody = new byte[0];
             }
 
-            if (includeBody) {
-                byte[] requestBody = request.getEntity(byte[].class);
+            if (requestBody.length > 0) {
+                digest.update("Body".getBytes(Charsets.UTF_8));
+                digest.update((byte) 0xFD);
 
-                if (requestBody == null) {
-                    requestBody = new byte[0];
-                }
+                digest.update(requestBody);
+                digest.update((byte) 0xFF);
+            }
 
-                if (requestBody.length > 0) {
-                    digest.update("Body".getBytes(Charsets.UTF_8));
-                    digest.update((byte) 0xFD);
+            request.setEntityInputStream(new ByteArrayInputStream(requestBody));
+        }
 
-                    digest.update(requestBody);
-                    digest.update((byte) 0xFF);
-                }
+        String hash = new String(Base64.encode(digest.digest()), Charsets.US_ASCII);
+        return new CacheRequestContext(request.getMethod(), request.getRequestUri(), request.getRequestHeaders(), hash, cacheGroup);
+    }
+
+    /**
+     * Build the context of a request before Jersey handles it. The request body can not be part of the key.
+     *
+     * @param varyNormalizers normalizers for the values of the vary headers, by header name
+     */
+    static CacheRequestContext build(HttpServletRequest request, String cacheGroup, Set<String> vary,
+                                     Map<String, VaryNormalizer> varyNormalizers) {
+        MultivaluedMap<String, String> headers = new StringKeyIgnoreCaseMultivaluedMap<String>();
+
+        for (Enumeration<String> names = request.getHeaderNames(); names.hasMoreElements(); ) {
+            String name = names.nextElement();
 
-                request.setEntityInputStream(new ByteArrayInputStream(requestBody));
+            for (Enumeration<String> values = request.getHeaders(name); values.hasMoreElements(); ) {
+                headers.add(name, values.nextElement());
             }
+        }
+
+        String requestUrl = request.getRequestURL().toString();
+        String query = request.getQueryString();
 
-            String hash = new String(Base64.encode(digest.digest()), Charsets.US_ASCII);
-            return new CacheRequestContext(request.getMethod(), request.getRequestUri(), request.getRequestHeaders(), hash);
+        if (query != null) {
+            requestUrl = requestUrl + '?' + query;
+        }
+
+        MessageDigest digest = newDigest();
+        updateDigest(digest, headers, vary, varyNormalizers);
+
+        String hash = new String(Base64.encode(digest.digest()), Charsets.US_ASCII);
+        return new CacheRequestContext(request.getMethod(), URI.create(requestUrl), headers, hash, cacheGroup);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
         } catch (NoSuchAlgorithmException ex) {
             // This error should not occur since SHA-1 must be included with every java distribution
             throw Throwables.propagate(ex);
         }
     }
 
+    private static void updateDigest(MessageDigest digest, MultivaluedMap<String, String> headers, Set<String> vary,
+                                     Map<String, VaryNormalizer> varyNormalizers) {
+        for (String header : vary) {
+            List<String> headerValues = headers.get(header);
+
+            if (headerValues != null && headerValues.size() > 0) {
+                digest.update(header.getBytes(Charsets.UTF_8));
+                digest.update((byte) 0xFD);
+
+                VaryNormalizer normalizer = varyNormalizers.get(header);
+
+                if (normalizer != null) {
+                    digest.update(normalizer.normalize(headerValues).getBytes(Charsets.UTF_8));
+                    digest.update((byte) 0xFE);
+                } else {
+                    for (String value : headerValues) {
+                        digest.update(value.getBytes(Charsets.UTF_8));
+                        digest.update((byte) 0xFE);
+                    }
+                }
+
+                digest.update((byte) 0xFF);
+            }
+        }
+    }
+
     public URI getRequestUri() {
         return _requestUri;
     }
@@ -114,6 +188,15 @@ public class CacheRequestContext {
         return _requestHash;
     }
 
+    /**
+     * Name of the {@link CacheGroup} the resource method handling the request belongs to.
+     *
+     * @return cache group name or empty string if the resource method has no explicit group
+     */
+    public String getCacheGroup() {
+        return _cacheGroup;
+    }
+
     /**
      * Get the cache control options set for the request.
      * <p/>
@@ -144,6 +227,20 @@ public class CacheRequestContext {
         return _cacheControl;
     }
 
+    /**
+     * Get the <code>Range</code> header, if set.
+     */
+    public Optional<String> getRange() {
+        return Optional.fromNullable(_headers.getFirst(RANGE));
+    }
+
+    /**
+     * Get the <code>If-Range</code> header, if set.
+     */
+    public Optional<String> getIfRange() {
+        return Optional.fromNullable(_headers.getFirst(IF_RANGE));
+    }
+
     /**
      * True if the <code>Pragma: no-cache</code> header is set on the request.
      * <p/>
@@ -168,4 +265,16 @@ public class CacheRequestContext {
 
         return _pragmaNoCache;
     }
+
+    /**
+     * True if the request missed the cache and the response store was asked to coordinate the regeneration of the
+     * response (see {@link ResponseStore#awaitMiss}).
+     */
+    boolean isMissAwaited() {
+        return _missAwaited;
+    }
+
+    void setMissAwaited() {
+        _missAwaited = true;
+    }
 }
@@ -15,15 +15,23 @@
  */
 package com.bazaarvoice.dropwizard.caching;
 
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.google.common.base.Function;
 import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
 import com.google.common.base.Predicates;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.sun.jersey.api.core.HttpContext;
 import com.sun.jersey.api.model.AbstractResourceMethod;
+import com.sun.jersey.api.model.AbstractSubResourceMethod;
+import com.sun.jersey.api.uri.UriTemplate;
 import com.sun.jersey.spi.container.ContainerRequest;
 import com.sun.jersey.spi.container.ContainerResponse;
 import com.sun.jersey.spi.container.ContainerResponseWriter;
@@ -32,15 +40,21 @@ import com.sun.jersey.spi.container.ResourceMethodDispatchProvider;
 import com.sun.jersey.spi.dispatch.RequestDispatcher;
 import io.dropwizard.jersey.caching.CacheControl;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.ext.Provider;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Arrays;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.net.HttpHeaders.CACHE_CONTROL;
 import static com.google.common.net.HttpHeaders.VARY;
@@ -50,27 +64,121 @@ import static com.google.common.net.HttpHeaders.VARY;
  */
 @Provider
 public class CacheResourceMethodDispatchAdapter implements ResourceMethodDispatchAdapter {
+    /**
+     * Status codes of responses that are cached without an explicit status policy.
+     * <p/>
+     * See http://www.w3.org/Protocols/rfc2616/rfc2616-sec13.html#sec13.4. 206 (partial content) is excluded, since the
+     * cache key does not include the requested range.
+     */
+    private static final Set<Integer> DEFAULT_CACHEABLE_STATUS = ImmutableSet.of(200, 203, 300, 301, 410);
+
+    private static final Function<String, Map<Integer, String>> NO_STATUS_CACHE_CONTROL = new Function<String, Map<Integer, String>>() {
+        public Map<Integer, String> apply(String input) {
+            return ImmutableMap.of();
+        }
+    };
+
+    private static final Supplier<HttpServletRequest> NO_SERVLET_REQUEST = Suppliers.ofInstance(null);
+
+    /**
+     * Cache group names end up in store keys, so they are limited to characters that are valid in any key.
+     */
+    private static final Pattern CACHE_GROUP_NAME = Pattern.compile("[A-Za-z0-9._-]+");
+
     private final ResponseCache _cache;
     private final Function<String, Optional<String>> _cacheControlMapper;
+    private final Function<String, Map<Integer, String>> _statusCacheControlMapper;
+    private final Map<String, VaryNormalizer> _varyNormalizers;
+    private final Optional<CacheRoutes> _routes;
+    private final CaptureMetrics _captureMetrics;
+
+    /**
+     * Proxy for the servlet request being handled, used to read the early refresh decision of the servlet filter fast
+     * path. Null when not running in a servlet container.
+     */
+    @Context
+    private HttpServletRequest _servletRequest;
 
     public CacheResourceMethodDispatchAdapter(ResponseCache cache, Function<String, Optional<String>> cacheControlMapper) {
+        this(cache, cacheControlMapper, new MetricRegistry());
+    }
+
+    public CacheResourceMethodDispatchAdapter(ResponseCache cache, Function<String, Optional<String>> cacheControlMapper, MetricRegistry metricRegistry) {
+        this(cache, cacheControlMapper, NO_STATUS_CACHE_CONTROL, metricRegistry);
+    }
+
+    /**
+     * @param statusCacheControlMapper maps a cache group name to the cache-control header for specific response status
+     *                                 codes (see {@link CacheControlConfiguration#buildStatusMapper()})
+     */
+    public CacheResourceMethodDispatchAdapter(ResponseCache cache, Function<String, Optional<String>> cacheControlMapper,
+                                              Function<String, Map<Integer, String>> statusCacheControlMapper, MetricRegistry metricRegistry) {
+        this(cache, cacheControlMapper, statusCacheControlMapper, ImmutableMap.<String, VaryNormalizer>of(), metricRegistry);
+    }
+
+    /**
+     * @param varyNormalizers normalizers for the values of vary headers, by header name (see
+     *                        {@link CachingConfiguration#buildVaryNormalizers()})
+     */
+    public CacheResourceMethodDispatchAdapter(ResponseCache cache, Function<String, Optional<String>> cacheControlMapper,
+                                              Function<String, Map<Integer, String>> statusCacheControlMapper,
+                                              Map<String, VaryNormalizer> varyNormalizers, MetricRegistry metricRegistry) {
+        this(cache, cacheControlMapper, statusCacheControlMapper, varyNormalizers, Optional.<CacheRoutes>absent(), metricRegistry);
+    }
+
+    /**
+     * @param routes table of cached request paths to fill for the servlet filter fast path, if enabled
+     */
+    CacheResourceMethodDispatchAdapter(ResponseCache cache, Function<String, Optional<String>> cacheControlMapper,
+                                       Function<String, Map<Integer, String>> statusCacheControlMapper,
+                                       Map<String, VaryNormalizer> varyNormalizers, Optional<CacheRoutes> routes,
+                                       MetricRegistry metricRegistry) {
         _cache = checkNotNull(cache);
         _cacheControlMapper = checkNotNull(cacheControlMapper);
+        _statusCacheControlMapper = checkNotNull(statusCacheControlMapper);
+        _varyNormalizers = checkNotNull(varyNormalizers);
+        _routes = checkNotNull(routes);
+        _captureMetrics = new CaptureMetrics(checkNotNull(metricRegistry));
     }
 
     public ResourceMethodDispatchProvider adapt(ResourceMethodDispatchProvider provider) {
-        return new DispatchProvider(provider, _cache, _cacheControlMapper);
+        Supplier<HttpServletRequest> servletRequest = new Supplier<HttpServletRequest>() {
+            @Override
+            public HttpServletRequest get() {
+                return _servletRequest;
+            }
+        };
+
+        return new DispatchProvider(provider, _cache, _cacheControlMapper, _statusCacheControlMapper, _varyNormalizers, _routes, servletRequest,
+                _captureMetrics);
     }
 
     public static class DispatchProvider implements ResourceMethodDispatchProvider {
         private final ResourceMethodDispatchProvider _provider;
         private final ResponseCache _cache;
         private final Function<String, Optional<String>> _cacheControlMapper;
+        private final Function<String, Map<Integer, String>> _statusCacheControlMapper;
+        private final Map<String, VaryNormalizer> _varyNormalizers;
+        private final Optional<CacheRoutes> _routes;
+        private final Supplier<HttpServletRequest> _servletRequest;
+        private final CaptureMetrics _captureMetrics;
 
         public DispatchProvider(ResourceMethodDispatchProvider provider, ResponseCache cache, Function<String, Optional<String>> cacheControlMapper) {
+            this(provider, cache, cacheControlMapper, NO_STATUS_CACHE_CONTROL, ImmutableMap.<String, VaryNormalizer>of(), Optional.<CacheRoutes>absent(),
+                    NO_SERVLET_REQUEST, new CaptureMetrics(new MetricRegistry()));
+        }
+
+        DispatchProvider(ResourceMethodDispatchProvider provider, ResponseCache cache, Function<String, Optional<String>> cacheControlMapper,
+                         Function<String, Map<Integer, String>> statusCacheControlMapper, Map<String, VaryNormalizer> varyNormalizers,
+                         Optional<CacheRoutes> routes, Supplier<HttpServletRequest> servletRequest, CaptureMetrics captureMetrics) {
             _provider = checkNotNull(provider);
             _cache = checkNotNull(cache);
             _cacheControlMapper = checkNotNull(cacheControlMapper);
+            _statusCacheControlMapper = checkNotNull(statusCacheControlMapper);
+            _varyNormalizers = checkNotNull(varyNormalizers);
+            _routes = checkNotNull(routes);
+            _servletRequest = checkNotNull(servletRequest);
+            _captureMetrics = checkNotNull(captureMetrics);
         }
 
         @Override
@@ -89,42 +197,101 @@ public class CacheResourceMethodDispatchAdapter implements ResourceMethodDispatc
             }
 
             boolean includeBodyInCacheKey = includeBodyInCacheKeyAnn != null && includeBodyInCacheKeyAnn.enabled();
+            String routeTemplate = routeTemplate(abstractResourceMethod);
+
+            if (_routes.isPresent() && abstractResourceMethod.getHttpMethod().equals("GET")) {
+                _routes.get().register(routeTemplate);
+            }
 
             if (groupNameAnn != null || abstractResourceMethod.isAnnotationPresent(CacheControl.class)) {
                 String groupName = groupNameAnn == null ? "" : groupNameAnn.value();
-                dispatcher = new CachingDispatcher(dispatcher, _cache, _cacheControlMapper.apply(groupName), vary, includeBodyInCacheKey);
+                checkArgument(groupNameAnn == null || CACHE_GROUP_NAME.matcher(groupName).matches(),
+                        "Invalid cache group name on %s: '%s' (allowed characters: letters, digits, '.', '_', '-')",
+                        abstractResourceMethod.getMethod(), groupName);
+
+                // Bind the group metrics now so they are registered before the first request arrives
+                _cache.groupMetrics(groupName);
+                dispatcher = new CachingDispatcher(dispatcher, _cache, groupName, _cacheControlMapper.apply(groupName),
+                        _statusCacheControlMapper.apply(groupName), vary, _varyNormalizers, includeBodyInCacheKey, _routes, routeTemplate, _servletRequest,
+                        _captureMetrics);
             } else if (abstractResourceMethod.getHttpMethod().equals("GET")) {
                 Optional<String> cacheControlOverride = _cacheControlMapper.apply("");
+                Map<Integer, String> statusCacheControl = _statusCacheControlMapper.apply("");
 
-                if (cacheControlOverride != null && cacheControlOverride.isPresent()) {
-                    dispatcher = new CachingDispatcher(dispatcher, _cache, cacheControlOverride, vary, includeBodyInCacheKey);
+                if ((cacheControlOverride != null && cacheControlOverride.isPresent()) || !statusCacheControl.isEmpty()) {
+                    _cache.groupMetrics("");
+                    dispatcher = new CachingDispatcher(dispatcher, _cache, "", cacheControlOverride != null ? cacheControlOverride : Optional.<String>absent(),
+                            statusCacheControl, vary, _varyNormalizers, includeBodyInCacheKey, _routes, routeTemplate, _servletRequest, _captureMetrics);
+                } else if (_routes.isPresent()) {
+                    dispatcher = new RouteTrackingDispatcher(dispatcher, _routes.get());
                 }
             }
 
             return dispatcher;
         }
+
+        /**
+         * Key of the resource class and path template of a resource method, so methods that Jersey picks between for
+         * the same path have the same key.
+         */
+        private static String routeTemplate(AbstractResourceMethod abstractResourceMethod) {
+            String template = abstractResourceMethod.getResource().getResourceClass().getName();
+
+            if (abstractResourceMethod instanceof AbstractSubResourceMethod) {
+                String path = ((AbstractSubResourceMethod) abstractResourceMethod).getPath().getValue();
+                template += " " + new UriTemplate(path).getPattern().getRegex();
+            }
+
+            return template;
+        }
     }
 
     public static class CachingDispatcher implements RequestDispatcher {
         private final RequestDispatcher _dispatcher;
         private final ResponseCache _cache;
+        private final String _cacheGroup;
         private final Optional<String> _cacheControlHeader;
+        private final Map<Integer, String> _statusCacheControl;
         private final Set<String> _vary;
         private final String _varyHeader;
+        private final Map<String, VaryNormalizer> _varyNormalizers;
         private final boolean _includeBodyInCacheKey;
+        private final Optional<CacheRoutes> _routes;
+        private final String _routeTemplate;
+        private final Supplier<HttpServletRequest> _servletRequest;
+        private final CaptureMetrics _captureMetrics;
 
         public CachingDispatcher(RequestDispatcher dispatcher, ResponseCache cache, Optional<String> cacheControlHeader, Set<String> vary, boolean includeBodyInCacheKey) {
+            this(dispatcher, cache, "", cacheControlHeader, ImmutableMap.<Integer, String>of(), vary, ImmutableMap.<String, VaryNormalizer>of(),
+                    includeBodyInCacheKey, Optional.<CacheRoutes>absent(), "", NO_SERVLET_REQUEST, new CaptureMetrics(new MetricRegistry()));
+        }
+
+        CachingDispatcher(RequestDispatcher dispatcher, ResponseCache cache, String cacheGroup, Optional<String> cacheControlHeader,
+                          Map<Integer, String> statusCacheControl, Set<String> vary, Map<String, VaryNormalizer> varyNormalizers,
+                          boolean includeBodyInCacheKey, Optional<CacheRoutes> routes, String routeTemplate,
+                          Supplier<HttpServletRequest> servletRequest, CaptureMetrics captureMetrics) {
             _dispatcher = checkNotNull(dispatcher);
             _cache = checkNotNull(cache);
+            _cacheGroup = checkNotNull(cacheGroup);
             _cacheControlHeader = checkNotNull(cacheControlHeader);
+            _statusCacheControl = checkNotNull(statusCacheControl);
             _vary = checkNotNull(vary);
             _varyHeader = vary.size() == 0 ? "" : Joiner.on(", ").join(_vary);
+            _varyNormalizers = checkNotNull(varyNormalizers);
             _includeBodyInCacheKey = includeBodyInCacheKey;
+            _routes = checkNotNull(routes);
+            _routeTemplate = checkNotNull(routeTemplate);
+            _servletRequest = checkNotNull(servletRequest);
+            _captureMetrics = checkNotNull(captureMetrics);
         }
 
         @Override
         public void dispatch(Object resource, HttpContext context) {
             try {
+                if (_routes.isPresent()) {
+                    learnRoute((ContainerRequest) context.getRequest());
+                }
+
                 if (_vary.contains("*")) {
                     // Response varies on aspects besides the HTTP request headers. Therefore, the
                     // response can not be provided from a cache.
@@ -133,15 +300,15 @@ public class CacheResourceMethodDispatchAdapter implements ResourceMethodDispatc
                     return;
                 }
 
-                CacheRequestContext request = CacheRequestContext.build((ContainerRequest) context.getRequest(), _vary, _includeBodyInCacheKey);
-                Optional<Response> cacheResponse = _cache.get(request);
+                CacheRequestContext request = CacheRequestContext.build((ContainerRequest) context.getRequest(), _cacheGroup, _vary, _varyNormalizers, _includeBodyInCacheKey);
+                Optional<Response> cacheResponse = _cache.get(request, isEarlyRefreshDecided());
 
                 if (cacheResponse.isPresent()) {
                     // Throw an exception to try and prevent other dispatchers, plugins, etc from modifying the response
                     throw new WebApplicationException(cacheResponse.get());
                 } else {
                     ContainerResponse response = (ContainerResponse) context.getResponse();
-                    response.setContainerResponseWriter(new CachingResponseWriter(response.getContainerResponseWriter(), request, _cache, _cacheControlHeader));
+                    response.setContainerResponseWriter(new CachingResponseWriter(response.getContainerResponseWriter(), request, _cache, _cacheControlHeader, _statusCacheControl, _captureMetrics));
                     _dispatcher.dispatch(resource, context);
                     context.getResponse().getHttpHeaders().add(VARY, _varyHeader);
                 }
@@ -149,25 +316,87 @@ public class CacheResourceMethodDispatchAdapter implements ResourceMethodDispatc
                 throw Throwables.propagate(ex);
             }
         }
+
+        private boolean isEarlyRefreshDecided() {
+            HttpServletRequest servletRequest = _routes.isPresent() ? _servletRequest.get() : null;
+            return servletRequest != null && servletRequest.getAttribute(CacheFastPathFilter.EARLY_REFRESH_ATTRIBUTE) != null;
+        }
+
+        private void learnRoute(ContainerRequest request) {
+            if (request.getMethod().equals("GET")) {
+                String path = request.getRequestUri().getRawPath();
+
+                if (_vary.contains("*") || _includeBodyInCacheKey || _routes.get().isShared(_routeTemplate)) {
+                    _routes.get().exclude(path);
+                } else {
+                    _routes.get().learn(path, _cacheGroup, _vary);
+                }
+            }
+        }
+    }
+
+    /**
+     * Dispatcher for GET resource methods without caching. Keeps the fast path from serving paths these methods share
+     * with caching resource methods.
+     */
+    private static class RouteTrackingDispatcher implements RequestDispatcher {
+        private final RequestDispatcher _dispatcher;
+        private final CacheRoutes _routes;
+
+        RouteTrackingDispatcher(RequestDispatcher dispatcher, CacheRoutes routes) {
+            _dispatcher = checkNotNull(dispatcher);
+            _routes = checkNotNull(routes);
+        }
+
+        @Override
+        public void dispatch(Object resource, HttpContext context) {
+            _routes.forget(context.getRequest().getRequestUri().getRawPath());
+            _dispatcher.dispatch(resource, context);
+        }
+    }
+
+    /**
+     * Metrics for responses generated by the resource method and captured for the cache.
+     */
+    static class CaptureMetrics {
+        final Timer captureTimer;
+        final Histogram captureSizes;
+
+        CaptureMetrics(MetricRegistry metricRegistry) {
+            captureTimer = metricRegistry.timer(MetricRegistry.name(CacheResourceMethodDispatchAdapter.class, "capture"));
+            captureSizes = metricRegistry.histogram(MetricRegistry.name(CacheResourceMethodDispatchAdapter.class, "capture-size"));
+        }
     }
 
-    private static class CachingResponseWriter implements ContainerResponseWriter {
+    static class CachingResponseWriter implements ContainerResponseWriter {
         private final ContainerResponseWriter _wrapped;
         private final ResponseCache _cache;
         private final CacheRequestContext _request;
         private final Optional<String> _cacheControlHeader;
+        private final Map<Integer, String> _statusCacheControl;
+        private final CaptureMetrics _captureMetrics;
+        private final long _dispatchStartNanos;
+        private Timer.Context _captureTimer;
         private ContainerResponse _response;
         private ByteArrayOutputStream _buffer;
 
-        public CachingResponseWriter(ContainerResponseWriter wrapped, CacheRequestContext request, ResponseCache cache, Optional<String> cacheControlHeader) {
+        public CachingResponseWriter(ContainerResponseWriter wrapped, CacheRequestContext request, ResponseCache cache, Optional<String> cacheControlHeader,
+                                     Map<Integer, String> statusCacheControl, CaptureMetrics captureMetrics) {
             _wrapped = checkNotNull(wrapped);
             _request = checkNotNull(request);
             _cache = checkNotNull(cache);
             _cacheControlHeader = checkNotNull(cacheControlHeader);
+            _statusCacheControl = checkNotNull(statusCacheControl);
+            _captureMetrics = checkNotNull(captureMetrics);
+
+            // The compute time stored with the response covers the resource method invocation as well
+            _dispatchStartNanos = System.nanoTime();
         }
 
         @Override
         public OutputStream writeStatusAndHeaders(long contentLength, ContainerResponse response) throws IOException {
+            // Capture time covers the serialization of the response entity into the buffer
+            _captureTimer = _captureMetrics.captureTimer.time();
             _response = response;
             _buffer = new ByteArrayOutputStream(contentLength < 0 ? 128 : (int) contentLength);
             return _buffer;
@@ -178,18 +407,26 @@ public class CacheResourceMethodDispatchAdapter implements ResourceMethodDispatc
             byte[] content = _buffer.toByteArray();
             int statusCode = _response.getStatus();
 
-            // See http://www.w3.org/Protocols/rfc2616/rfc2616-sec13.html#sec13.4
-            if (statusCode == 200 || statusCode == 203 || statusCode == 206 || statusCode == 300 || statusCode == 301 || statusCode == 410) {
-                if (_cacheControlHeader.isPresent()) {
+            _captureTimer.stop();
+            _captureMetrics.captureSizes.update(content.length);
+            long computeNanos = System.nanoTime() - _dispatchStartNanos;
+
+            String statusCacheControl = _statusCacheControl.get(statusCode);
+
+            if (statusCacheControl != null || DEFAULT_CACHEABLE_STATUS.contains(statusCode)) {
+                Optional<String> cacheControlHeader = statusCacheControl != null ? Optional.of(statusCacheControl) : _cacheControlHeader;
+
+                if (cacheControlHeader.isPresent()) {
                     // This needs to be done here and not in the RequestDispatcher to ensure that it overrides any other
                     // options set
-                    _response.getHttpHeaders().putSingle(CACHE_CONTROL, _cacheControlHeader.get());
+                    _response.getHttpHeaders().putSingle(CACHE_CONTROL, cacheControlHeader.get());
                 }
 
                 CacheResponseContext response = new CacheResponseContext(_response);
-                _cache.put(_request, response, content);
+                _cache.put(_request, response, content, TimeUnit.NANOSECONDS.toMillis(computeNanos));
             } else {
                 _response.getHttpHeaders().remove(CACHE_CONTROL);
+                _cache.release(_request);
             }
 
             // This must be done after the cache put to ensure all the headers are set correctly
@@ -62,18 +62,24 @@ public class CacheResponseContext {
 
     /**
      * Get the cache control options specified in the response.
-     * <p/>
-     * Although {@link CacheControl} is mutable, the returned value should be treated as immutable.
      *
-     * @return response cache control options
+     * @return copy of the response cache control options
      */
     public CacheControl getCacheControl() {
+        return CacheControlUtils.copyOf(sharedCacheControl());
+    }
+
+    /**
+     * Same as {@link #getCacheControl()}, but returns the parsed header shared with other responses instead of a copy.
+     * The returned value must not be modified.
+     */
+    CacheControl sharedCacheControl() {
         if (_cacheControl == null) {
             List<Object> headerValues = _httpContext.getHttpHeaders().get(CACHE_CONTROL);
 
             if (headerValues != null) {
                 try {
-                    _cacheControl = CacheControl.valueOf(HttpHeaderUtils.transformAndJoin(headerValues));
+                    _cacheControl = CacheControlUtils.sharedValueOf(HttpHeaderUtils.transformAndJoin(headerValues));
                 } catch (Exception ex) {
                     LOG.debug("Failed to parse cache-control header: value='{}'", headerValues, ex);
                 }
@@ -93,7 +99,7 @@ public class CacheResponseContext {
      * @return response shared cache max age, in seconds, or -1
      */
     public int getSharedCacheMaxAge() {
-        return CacheControlUtils.getSharedCacheMaxAge(getCacheControl());
+        return CacheControlUtils.getSharedCacheMaxAge(sharedCacheControl());
     }
 
     /**
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ConcurrentHashMultiset;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Multiset;
+
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Request paths known to be handled by a caching resource method, learned as Jersey dispatches GET requests.
+ * <p/>
+ * The servlet filter fast path uses the cache group and vary headers recorded for a path to compute the cache key of a
+ * request before Jersey routes it. A path seen with different cache settings, with an uncached resource method or with
+ * settings the fast path can not reproduce (vary on <code>*</code>, request body in the key) is marked ambiguous and
+ * always goes through Jersey.
+ * <p/>
+ * The GET resource methods are registered by path template as Jersey creates their dispatchers. When more than one
+ * method shares a template, for instance methods that only differ in the media type they produce, the method that
+ * handles a request depends on more than its path, so the paths of that template are never learned.
+ */
+class CacheRoutes {
+    private static final Route AMBIGUOUS = new Route("", ImmutableSet.<String>of());
+
+    private final Cache<String, Route> _routes;
+    private final Multiset<String> _templates = ConcurrentHashMultiset.create();
+
+    /**
+     * @param maximumRoutes number of paths to remember
+     */
+    CacheRoutes(long maximumRoutes) {
+        checkArgument(maximumRoutes >= 0, "maximumRoutes must be >= 0 (value: %s)", maximumRoutes);
+        _routes = CacheBuilder.newBuilder().maximumSize(maximumRoutes).build();
+    }
+
+    /**
+     * Record a resource method that handles GET requests.
+     *
+     * @param template resource class and path template of the resource method
+     */
+    void register(String template) {
+        checkNotNull(template);
+        _templates.add(template);
+    }
+
+    /**
+     * True if more than one registered GET resource method has the path template.
+     *
+     * @param template resource class and path template of the resource method
+     */
+    boolean isShared(String template) {
+        return _templates.count(template) > 1;
+    }
+
+    /**
+     * Record that a caching resource method handled a GET request for a path.
+     *
+     * @param path  raw request path
+     * @param group cache group of the resource method
+     * @param vary  request headers the cached response varies on
+     */
+    void learn(String path, String group, Set<String> vary) {
+        checkNotNull(path);
+        checkNotNull(group);
+        checkNotNull(vary);
+
+        Route route = _routes.getIfPresent(path);
+
+        if (route == null) {
+            _routes.put(path, new Route(group, vary));
+        } else if (route != AMBIGUOUS && !route.matches(group, vary)) {
+            _routes.put(path, AMBIGUOUS);
+        }
+    }
+
+    /**
+     * Record that a GET request for a path was handled in a way the fast path can not serve.
+     *
+     * @param path raw request path
+     */
+    void exclude(String path) {
+        checkNotNull(path);
+        _routes.put(path, AMBIGUOUS);
+    }
+
+    /**
+     * Record that a resource method without caching handled a GET request for a path. Only paths that were learned
+     * before are marked, so uncached paths do not fill the table.
+     *
+     * @param path raw request path
+     */
+    void forget(String path) {
+        checkNotNull(path);
+
+        Route route = _routes.getIfPresent(path);
+
+        if (route != null && route != AMBIGUOUS) {
+            _routes.put(path, AMBIGUOUS);
+        }
+    }
+
+    /**
+     * Cache settings for a path, or null if the path has not been learned or is ambiguous.
+     *
+     * @param path raw request path
+     */
+    Route get(String path) {
+        Route route = _routes.getIfPresent(path);
+        return route == AMBIGUOUS ? null : route;
+    }
+
+    static class Route {
+        final String group;
+        final Set<String> vary;
+
+        Route(String group, Set<String> vary) {
+            this.group = group;
+            this.vary = vary;
+        }
+
+        boolean matches(String group, Set<String> vary) {
+            return this.group.equals(group) && this.vary.equals(vary);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableMultimap;
+import io.dropwizard.servlets.tasks.Task;
+
+import java.io.PrintWriter;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Admin task that prints statistics for the local response cache.
+ * <p/>
+ * Usage: <code>POST /tasks/cache-stats</code>
+ */
+public class CacheStatsTask extends Task {
+    private final ResponseCache _cache;
+
+    public CacheStatsTask(ResponseCache cache) {
+        super("cache-stats");
+        _cache = checkNotNull(cache);
+    }
+
+    @Override
+    public void execute(ImmutableMultimap<String, String> parameters, PrintWriter output) throws Exception {
+        long count = 0;
+        long weight = 0;
+
+        for (Map.Entry<String, CachedResponse> entry : _cache.localEntries().entrySet()) {
+            count += 1;
+            weight += CachedResponseWeigher.INSTANCE.weigh(entry.getKey(), entry.getValue());
+        }
+
+        CacheStats stats = _cache.localStats();
+
+        output.printf("entries: %d%n", count);
+        output.printf("weight: %d%n", weight);
+        output.printf("requests: %d%n", stats.requestCount());
+        output.printf("hits: %d%n", stats.hitCount());
+        output.printf("misses: %d%n", stats.missCount());
+        output.printf("hit-rate: %.4f%n", stats.hitRate());
+        output.printf("loads: %d%n", stats.loadCount());
+        output.printf("average-load-millis: %.3f%n", stats.averageLoadPenalty() / 1000000.0);
+        output.printf("evictions: %d%n", stats.evictionCount());
+    }
+}
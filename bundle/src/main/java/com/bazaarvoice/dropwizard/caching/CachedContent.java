@@ -0,0 +1,93 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Response entity for a cached body held in a direct buffer.
+ * <p/>
+ * {@link CacheFastPathFilter} hands the buffer to Jetty as is. Through Jersey, the body is copied to the response
+ * stream in small chunks instead of as one heap array, and {@link Writer} reports its length so the response is not
+ * sent chunked.
+ */
+final class CachedContent implements StreamingOutput {
+    private static final int CHUNK_SIZE = 8192;
+
+    private final ByteBuffer _content;
+
+    CachedContent(ByteBuffer content) {
+        _content = checkNotNull(content);
+    }
+
+    /**
+     * New view of the body, positioned at its start.
+     */
+    ByteBuffer buffer() {
+        return _content.duplicate();
+    }
+
+    int length() {
+        return _content.remaining();
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException {
+        ByteBuffer content = buffer();
+        byte[] chunk = new byte[Math.min(CHUNK_SIZE, content.remaining())];
+
+        while (content.hasRemaining()) {
+            int length = Math.min(chunk.length, content.remaining());
+            content.get(chunk, 0, length);
+            output.write(chunk, 0, length);
+        }
+    }
+
+    /**
+     * Writer for {@link CachedContent} entities that sets the content length.
+     */
+    @Provider
+    static class Writer implements MessageBodyWriter<CachedContent> {
+        @Override
+        public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+            return CachedContent.class.isAssignableFrom(type);
+        }
+
+        @Override
+        public long getSize(CachedContent content, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+            return content.length();
+        }
+
+        @Override
+        public void writeTo(CachedContent content, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+                            MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream)
+                throws IOException, WebApplicationException {
+            content.write(entityStream);
+        }
+    }
+}
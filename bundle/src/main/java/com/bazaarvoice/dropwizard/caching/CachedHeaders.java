@@ -0,0 +1,132 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Immutable list of response headers, shared by cached responses with identical headers.
+ * <p/>
+ * Names and values are held in a single array of alternating names and values, with the values of a header kept
+ * together. Lookups by name are case-insensitive scans, which beat a hash map for the handful of headers on a typical
+ * response. Instances are interned through {@link #intern()}.
+ */
+final class CachedHeaders {
+    private static final Interner<CachedHeaders> INTERNER = Interners.newWeakInterner();
+
+    private final String[] _fields;
+    private final int _hash;
+
+    private CachedHeaders(String[] fields) {
+        _fields = fields;
+        _hash = Arrays.hashCode(fields);
+    }
+
+    /**
+     * @param fields alternating header names and values
+     */
+    static CachedHeaders of(List<String> fields) {
+        checkNotNull(fields);
+        checkArgument(fields.size() % 2 == 0, "fields must alternate names and values (size: %s)", fields.size());
+
+        return new CachedHeaders(fields.toArray(new String[fields.size()]));
+    }
+
+    /**
+     * Canonical instance of these headers. If identical headers are in use by another response, that instance is
+     * returned.
+     */
+    CachedHeaders intern() {
+        return INTERNER.intern(this);
+    }
+
+    /**
+     * Number of header values.
+     */
+    int size() {
+        return _fields.length / 2;
+    }
+
+    String name(int index) {
+        return _fields[index * 2];
+    }
+
+    String value(int index) {
+        return _fields[index * 2 + 1];
+    }
+
+    /**
+     * First value of a header, or null if the header is not set.
+     */
+    String getFirst(String name) {
+        for (int i = 0; i < _fields.length; i += 2) {
+            if (_fields[i].equalsIgnoreCase(name)) {
+                return _fields[i + 1];
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * All values of a header, or null if the header is not set.
+     */
+    List<String> get(String name) {
+        ImmutableList.Builder<String> values = null;
+
+        for (int i = 0; i < _fields.length; i += 2) {
+            if (_fields[i].equalsIgnoreCase(name)) {
+                if (values == null) {
+                    values = ImmutableList.builder();
+                }
+
+                values.add(_fields[i + 1]);
+            }
+        }
+
+        return values == null ? null : values.build();
+    }
+
+    @Override
+    public int hashCode() {
+        return _hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        } else if (!(obj instanceof CachedHeaders)) {
+            return false;
+        }
+
+        CachedHeaders other = (CachedHeaders) obj;
+        return _hash == other._hash && Arrays.equals(_fields, other._fields);
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(_fields);
+    }
+}
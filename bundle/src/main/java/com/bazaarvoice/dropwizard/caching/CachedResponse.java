@@ -16,10 +16,12 @@
 package com.bazaarvoice.dropwizard.caching;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
 import com.sun.jersey.core.util.StringKeyIgnoreCaseMultivaluedMap;
 import com.sun.jersey.core.util.UnmodifiableMultivaluedMap;
 import com.sun.jersey.spi.container.ContainerResponse;
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -27,19 +29,28 @@ import javax.ws.rs.core.CacheControl;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
-import java.util.Arrays;
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.net.HttpHeaders.CACHE_CONTROL;
 import static com.google.common.net.HttpHeaders.DATE;
 import static com.google.common.net.HttpHeaders.EXPIRES;
+import static com.google.common.net.HttpHeaders.LAST_MODIFIED;
 
 /**
  * Response loaded from the cache.
+ * <p/>
+ * Headers are held in a flat {@link CachedHeaders} list that is interned, so responses with the same headers share one
+ * copy. The per-response date, expires and last-modified headers are kept out of that list as epoch milliseconds, as
+ * long as they are in the standard RFC 1123 format and can be reproduced exactly.
+ * <p/>
+ * The body is held in a {@link ByteBuffer}. Responses built from an array wrap it, and the local cache may move the
+ * body to a direct buffer outside the heap (see {@link #withDirectContent()}).
  */
 public class CachedResponse {
     private static final Logger LOG = LoggerFactory.getLogger(CachedResponse.class);
@@ -52,26 +63,93 @@ public class CachedResponse {
      */
     public static final Set<String> NON_CACHEABLE_HEADERS = HttpHeaderUtils.headerNames("Age");
 
-    private transient DateTime _date;
-    private transient Optional<CacheControl> _cacheControl;
-    private transient Optional<DateTime> _expires;
+    /**
+     * Value of the date fields when the header is not held as a date.
+     */
+    private static final long NO_DATE = Long.MIN_VALUE;
 
     private final int _statusCode;
-    private final MultivaluedMap<String, String> _responseHeaders;
-    private final byte[] _responseContent;
+    private final CachedHeaders _headers;
+    private final long _date;
+    private final boolean _dateHeader;
+    private final long _expires;
+    private final long _lastModified;
+    private final long _expiration;
+    private final CacheControl _cacheControl;
+    private final ByteBuffer _content;
+    private final int _computeMillis;
+    private final boolean _contentShared;
 
     public CachedResponse(int statusCode, MultivaluedMap<String, String> headers, byte[] content) {
+        this(statusCode, headers, content, 0);
+    }
+
+    /**
+     * @param computeMillis time the resource method took to generate the response, or 0 if unknown
+     */
+    public CachedResponse(int statusCode, MultivaluedMap<String, String> headers, byte[] content, int computeMillis) {
+        this(statusCode, headers, content, computeMillis, HttpClock.SYSTEM.now());
+    }
+
+    /**
+     * @param now date of the response if it has no date header
+     */
+    public CachedResponse(int statusCode, MultivaluedMap<String, String> headers, byte[] content, int computeMillis, DateTime now) {
+        this(statusCode, HeaderFields.of(checkNotNull(headers)), content, computeMillis, now);
+    }
+
+    private CachedResponse(int statusCode, HeaderFields fields, byte[] content, int computeMillis, DateTime now) {
+        checkArgument(computeMillis >= 0, "computeMillis must be >= 0 (value: %s)", computeMillis);
         _statusCode = statusCode;
-        _responseHeaders = checkNotNull(headers);
-        _responseContent = checkNotNull(content);
+        _content = ByteBuffer.wrap(checkNotNull(content));
+        _computeMillis = computeMillis;
+        _contentShared = false;
+
+        _headers = CachedHeaders.of(fields.fields).intern();
+
+        _dateHeader = fields.date != NO_DATE;
+        _date = _dateHeader ? fields.date : parseDate(DATE, _headers.getFirst(DATE), now.getMillis());
+        _expires = fields.expires;
+        _lastModified = fields.lastModified;
+        _cacheControl = parseCacheControl(_headers.get(CACHE_CONTROL));
+
+        long expiration = NO_DATE;
+
+        if (_cacheControl != null) {
+            int maxAge = CacheControlUtils.getSharedCacheMaxAge(_cacheControl);
+
+            if (maxAge >= 0) {
+                expiration = _date + maxAge * 1000L;
+            } else if (_expires != NO_DATE) {
+                expiration = _expires;
+            } else {
+                expiration = parseDate(EXPIRES, _headers.getFirst(EXPIRES), NO_DATE);
+            }
+        }
+
+        _expiration = expiration;
+    }
+
+    private CachedResponse(CachedResponse response, ByteBuffer content, boolean contentShared) {
+        _statusCode = response._statusCode;
+        _headers = response._headers;
+        _date = response._date;
+        _dateHeader = response._dateHeader;
+        _expires = response._expires;
+        _lastModified = response._lastModified;
+        _expiration = response._expiration;
+        _cacheControl = response._cacheControl;
+        _content = checkNotNull(content);
+        _computeMillis = response._computeMillis;
+        _contentShared = contentShared;
     }
 
     @Override
     public int hashCode() {
         int hash = 234290234;
         hash = (31 * hash) + _statusCode;
-        hash = (31 * hash) + hashCode(_responseHeaders);
-        hash = (31 * hash) + Arrays.hashCode(_responseContent);
+        hash = (31 * hash) + hashCode(getResponseHeaders());
+        hash = (31 * hash) + _content.hashCode();
         return hash;
     }
 
@@ -85,25 +163,47 @@ public class CachedResponse {
 
         CachedResponse other = (CachedResponse) obj;
         return _statusCode == other._statusCode &&
-                Arrays.equals(_responseContent, other._responseContent) &&
-                equals(_responseHeaders, other._responseHeaders);
+                _content.equals(other._content) &&
+                equals(getResponseHeaders(), other.getResponseHeaders());
     }
 
     public static CachedResponse build(int statusCode, MultivaluedMap<String, Object> headers, byte[] content) {
+        return build(statusCode, headers, content, 0);
+    }
+
+    public static CachedResponse build(int statusCode, MultivaluedMap<String, Object> headers, byte[] content, int computeMillis) {
+        return build(statusCode, headers, content, computeMillis, HttpClock.SYSTEM.now());
+    }
+
+    /**
+     * @param now date of the response if it has no date header
+     */
+    public static CachedResponse build(int statusCode, MultivaluedMap<String, Object> headers, byte[] content, int computeMillis, DateTime now) {
         checkNotNull(headers);
-        return new CachedResponse(statusCode, copyHeaders(headers.entrySet()), content);
+        checkNotNull(now);
+        return new CachedResponse(statusCode, copyHeaders(headers.entrySet()), content, computeMillis, now);
     }
 
     public Response.ResponseBuilder response(DateTime now) {
         Response.ResponseBuilder responseBuilder = Response
                 .status(getStatusCode())
-                .entity(getResponseContent())
+                .entity(_content.isDirect() ? new CachedContent(getContent()) : getResponseContent())
                 .header("Age", HttpHeaderUtils.toAge(getDate(), now));
 
-        for (Map.Entry<String, List<String>> header : getResponseHeaders().entrySet()) {
-            for (String headerValue : header.getValue()) {
-                responseBuilder.header(header.getKey(), headerValue);
-            }
+        for (int i = 0; i < _headers.size(); i++) {
+            responseBuilder.header(_headers.name(i), _headers.value(i));
+        }
+
+        if (_dateHeader) {
+            responseBuilder.header(DATE, HttpHeaderUtils.dateToString(_date));
+        }
+
+        if (_expires != NO_DATE) {
+            responseBuilder.header(EXPIRES, HttpHeaderUtils.dateToString(_expires));
+        }
+
+        if (_lastModified != NO_DATE) {
+            responseBuilder.header(LAST_MODIFIED, HttpHeaderUtils.dateToString(_lastModified));
         }
 
         return responseBuilder;
@@ -157,126 +257,297 @@ public class CachedResponse {
         return hash;
     }
 
-    private static MultivaluedMap<String, String> copyHeaders(Iterable<Map.Entry<String, List<Object>>> headers) {
-        StringKeyIgnoreCaseMultivaluedMap<String> copy = new StringKeyIgnoreCaseMultivaluedMap<String>();
+    private static HeaderFields copyHeaders(Iterable<Map.Entry<String, List<Object>>> headers) {
+        HeaderFields fields = new HeaderFields();
 
         for (Map.Entry<String, List<Object>> header : headers) {
             if (!NON_CACHEABLE_HEADERS.contains(header.getKey())) {
+                List<String> values = Lists.newArrayListWithCapacity(header.getValue().size());
+
                 for (Object headerValue : header.getValue()) {
-                    copy.add(header.getKey(), ContainerResponse.getHeaderValue(headerValue));
+                    values.add(ContainerResponse.getHeaderValue(headerValue));
                 }
+
+                fields.add(header.getKey(), values);
             }
         }
 
-        return new UnmodifiableMultivaluedMap<String, String>(copy);
+        return fields;
+    }
+
+    private static long parseDate(String name, String value, long defaultValue) {
+        if (value != null) {
+            try {
+                return HttpHeaderUtils.parseDate(value).getMillis();
+            } catch (Exception ex) {
+                LOG.debug("Failed to parse {} header: value={}", name, value, ex);
+            }
+        }
+
+        return defaultValue;
+    }
+
+    private static CacheControl parseCacheControl(List<String> headerValues) {
+        if (headerValues != null) {
+            try {
+                return CacheControlUtils.sharedValueOf(HttpHeaderUtils.join(headerValues));
+            } catch (Exception ex) {
+                LOG.debug("Failed to parse cache-control header: value='{}'", headerValues, ex);
+            }
+        }
+
+        return null;
     }
 
     /**
      * True if this response has a configured expiration time.
      */
     public boolean hasExpiration() {
-        return getExpires().isPresent();
+        return _expiration != NO_DATE;
     }
 
     /**
-     * True if the response has an expiration time and that expiration is after the provided instant.
+     * True if the response has an expiration time and that expiration is not after the provided instant.
      */
     public boolean isExpired(DateTime now) {
-        return hasExpiration() && getExpires().get().isAfter(now);
+        return hasExpiration() && _expiration <= now.getMillis();
     }
 
     /**
      * Get the date the response was generated.
      * <p/>
-     * Retrieves the {@link HttpHeaders#DATE} header or current time if no date header is found.
+     * Retrieves the {@link HttpHeaders#DATE} header or, if there is no date header, the time given when the
+     * response was created.
      *
      * @return response date
      */
     public DateTime getDate() {
-        if (_date == null) {
-            String dateString = _responseHeaders.getFirst(DATE);
-
-            if (dateString != null) {
-                try {
-                    _date = HttpHeaderUtils.parseDate(dateString);
-                } catch (Exception ex) {
-                    LOG.debug("Failed to parse date header: value={}", dateString, ex);
-                }
-            }
-
-            if (_date == null) {
-                _date = DateTime.now();
-            }
-        }
-
-        return _date;
+        return new DateTime(_date, DateTimeZone.UTC);
     }
 
     /**
      * Get the {@link HttpHeaders#CACHE_CONTROL} header, if set.
      *
-     * @return cache-control header or absent if cache-control header is not set
+     * @return copy of the cache-control header or absent if cache-control header is not set
      */
     public Optional<CacheControl> getCacheControl() {
-        if (_cacheControl == null) {
-            List<String> headerValues = _responseHeaders.get(CACHE_CONTROL);
+        return _cacheControl != null
+                ? Optional.of(CacheControlUtils.copyOf(_cacheControl))
+                : Optional.<CacheControl>absent();
+    }
 
-            _cacheControl = Optional.absent();
+    /**
+     * Same as {@link #getCacheControl()}, but returns the parsed header shared with other responses instead of a copy.
+     * The returned value must not be modified.
+     */
+    Optional<CacheControl> sharedCacheControl() {
+        return Optional.fromNullable(_cacheControl);
+    }
 
-            if (headerValues != null) {
-                try {
-                    _cacheControl = Optional.of(CacheControl.valueOf(HttpHeaderUtils.join(headerValues)));
-                } catch (Exception ex) {
-                    LOG.debug("Failed to parse cache-control header: value='{}'", headerValues, ex);
-                }
-            }
+    public Optional<DateTime> getExpires() {
+        return hasExpiration()
+                ? Optional.of(new DateTime(_expiration, DateTimeZone.UTC))
+                : Optional.<DateTime>absent();
+    }
+
+    /**
+     * Response body as an array. The array is the one the response was built from; a body held in a direct buffer is
+     * copied on each call, so prefer {@link #getContent()} when reading the body.
+     */
+    public byte[] getResponseContent() {
+        if (_content.hasArray()) {
+            return _content.array();
         }
 
-        return _cacheControl;
+        byte[] content = new byte[_content.capacity()];
+        _content.duplicate().get(content);
+        return content;
     }
 
-    public Optional<DateTime> getExpires() {
-        if (_expires == null) {
-            CacheControl cacheControl = getCacheControl().orNull();
+    /**
+     * Read-only view of the response body. The view shares the cached bytes, so reading it does not copy the body.
+     */
+    public ByteBuffer getContent() {
+        return _content.asReadOnlyBuffer();
+    }
 
-            _expires = Optional.absent();
+    public int getContentLength() {
+        return _content.capacity();
+    }
 
-            if (cacheControl != null) {
-                int maxAge = CacheControlUtils.getSharedCacheMaxAge(cacheControl);
+    /**
+     * Buffer holding the body. Callers must not change its position or limit.
+     */
+    ByteBuffer contentBuffer() {
+        return _content;
+    }
 
-                if (maxAge >= 0) {
-                    _expires = Optional.of(getDate().plusSeconds(maxAge));
-                } else {
-                    String expiresString = _responseHeaders.getFirst(EXPIRES);
+    /**
+     * True if the body is held in a direct buffer outside the heap.
+     */
+    boolean isContentDirect() {
+        return _content.isDirect();
+    }
 
-                    if (expiresString != null) {
-                        try {
-                            _expires = Optional.of(HttpHeaderUtils.parseDate(expiresString));
-                        } catch (Exception ex) {
-                            LOG.debug("Failed to parse expires header: value={}", expiresString, ex);
-                        }
-                    }
-                }
-            }
+    /**
+     * Copy of this response with its body moved to a direct buffer, or this response if the body already is direct.
+     */
+    CachedResponse withDirectContent() {
+        if (_content.isDirect()) {
+            return this;
         }
 
-        return _expires;
+        ByteBuffer content = ByteBuffer.allocateDirect(_content.capacity());
+        content.put(_content.duplicate());
+        content.clear();
+        return new CachedResponse(this, content, false);
     }
 
-    public byte[] getResponseContent() {
-        return _responseContent;
+    /**
+     * Copy of this response whose content is a buffer pooled by {@link DeduplicatingCache}, which other cached
+     * responses may also hold.
+     *
+     * @param content buffer with the same bytes as the content of this response
+     */
+    CachedResponse withSharedContent(ByteBuffer content) {
+        return new CachedResponse(this, content, true);
     }
 
     /**
-     * Immutable map from response header name (case insensitive) to list of header values.
+     * True if the content buffer is pooled by {@link DeduplicatingCache}, which counts its size once for all the
+     * responses holding it.
+     */
+    boolean isContentShared() {
+        return _contentShared;
+    }
+
+    /**
+     * Headers other than those held as dates.
+     */
+    CachedHeaders getHeaders() {
+        return _headers;
+    }
+
+    /**
+     * Immutable map from response header name (case insensitive) to list of header values. The map is built on each
+     * call; use {@link #getFirstHeader(String)} to look up a single header.
      *
      * @return response headers
      */
     public MultivaluedMap<String, String> getResponseHeaders() {
-        return _responseHeaders;
+        StringKeyIgnoreCaseMultivaluedMap<String> headers = new StringKeyIgnoreCaseMultivaluedMap<String>();
+
+        for (int i = 0; i < _headers.size(); i++) {
+            headers.add(_headers.name(i), _headers.value(i));
+        }
+
+        if (_dateHeader) {
+            headers.add(DATE, HttpHeaderUtils.dateToString(_date));
+        }
+
+        if (_expires != NO_DATE) {
+            headers.add(EXPIRES, HttpHeaderUtils.dateToString(_expires));
+        }
+
+        if (_lastModified != NO_DATE) {
+            headers.add(LAST_MODIFIED, HttpHeaderUtils.dateToString(_lastModified));
+        }
+
+        return new UnmodifiableMultivaluedMap<String, String>(headers);
+    }
+
+    /**
+     * First value of a response header (case insensitive).
+     *
+     * @return header value or null if the header is not set
+     */
+    public String getFirstHeader(String name) {
+        checkNotNull(name);
+
+        if (_dateHeader && DATE.equalsIgnoreCase(name)) {
+            return HttpHeaderUtils.dateToString(_date);
+        } else if (_expires != NO_DATE && EXPIRES.equalsIgnoreCase(name)) {
+            return HttpHeaderUtils.dateToString(_expires);
+        } else if (_lastModified != NO_DATE && LAST_MODIFIED.equalsIgnoreCase(name)) {
+            return HttpHeaderUtils.dateToString(_lastModified);
+        }
+
+        return _headers.getFirst(name);
     }
 
     public int getStatusCode() {
         return _statusCode;
     }
+
+    /**
+     * Time the resource method took to generate the response. This is not part of the HTTP response and is not
+     * considered by {@link #equals(Object)}.
+     *
+     * @return compute time in milliseconds, or 0 if unknown
+     */
+    public int getComputeMillis() {
+        return _computeMillis;
+    }
+
+    /**
+     * Headers split into the flat name and value list and the dates held as milliseconds.
+     */
+    private static final class HeaderFields {
+        final List<String> fields = Lists.newArrayList();
+        long date = NO_DATE;
+        long expires = NO_DATE;
+        long lastModified = NO_DATE;
+
+        static HeaderFields of(MultivaluedMap<String, String> headers) {
+            HeaderFields fields = new HeaderFields();
+
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                fields.add(header.getKey(), header.getValue());
+            }
+
+            return fields;
+        }
+
+        void add(String name, List<String> values) {
+            if (values.size() == 1) {
+                if (date == NO_DATE && DATE.equalsIgnoreCase(name)) {
+                    date = toMillis(values.get(0));
+
+                    if (date != NO_DATE) {
+                        return;
+                    }
+                } else if (expires == NO_DATE && EXPIRES.equalsIgnoreCase(name)) {
+                    expires = toMillis(values.get(0));
+
+                    if (expires != NO_DATE) {
+                        return;
+                    }
+                } else if (lastModified == NO_DATE && LAST_MODIFIED.equalsIgnoreCase(name)) {
+                    lastModified = toMillis(values.get(0));
+
+                    if (lastModified != NO_DATE) {
+                        return;
+                    }
+                }
+            }
+
+            for (String value : values) {
+                fields.add(name);
+                fields.add(value);
+            }
+        }
+
+        /**
+         * Milliseconds since the epoch of a date that formats back to the same text, or {@link #NO_DATE}.
+         */
+        private static long toMillis(String value) {
+            try {
+                long millis = HttpHeaderUtils.parseDate(value).getMillis();
+                return HttpHeaderUtils.dateToString(millis).equals(value) ? millis : NO_DATE;
+            } catch (Exception ex) {
+                LOG.debug("Failed to parse date header: value={}", value, ex);
+                return NO_DATE;
+            }
+        }
+    }
 }
@@ -18,41 +18,100 @@ package com.bazaarvoice.dropwizard.caching;
 import com.google.common.cache.Weigher;
 
 import javax.annotation.Nonnull;
-import java.util.List;
-import java.util.Map;
+import java.nio.ByteBuffer;
 
 /**
- * Weigher that attempts to estimate the size of the cached response in bytes.
+ * Weigher that estimates the heap retained by a cached response, in bytes.
+ * <p/>
+ * The estimate models the objects that make up an entry of the local cache: the cache entry itself, the key, the
+ * response, its interned header list and its body. Interned headers are counted by every response holding them, as the
+ * weight of an entry is fixed when it is cached and could not move to another holder. Bodies pooled by {@link DeduplicatingCache} are not counted here: the pool charges
+ * them once, however many responses hold them. Sizes assume a 64-bit JVM with compressed object references, the default
+ * for heaps below 32 GB, and strings backed by a char array. The estimate can be checked against measured heap use with
+ * <code>CachedResponseWeigherHeapCheck</code> in the benchmarks module.
+ * <p/>
+ * A body held in a direct buffer is counted at its length plus the heap objects that track the buffer, so the memory
+ * limits of the local cache cover direct bodies as well.
  */
 public class CachedResponseWeigher implements Weigher<String, CachedResponse> {
-    private static final int CHAR_BYTES = 2;
     public static final CachedResponseWeigher INSTANCE = new CachedResponseWeigher();
 
+    private static final int OBJECT_HEADER = 12;
+    private static final int ARRAY_HEADER = 16;
+    private static final int REFERENCE = 4;
+    private static final int CHAR_BYTES = 2;
+
+    /**
+     * Local cache entry with access and write times, its weighted value reference and its slot in the segment table.
+     */
+    private static final int CACHE_ENTRY = align(OBJECT_HEADER + 7 * REFERENCE + 4 + 2 * 8) + align(OBJECT_HEADER + REFERENCE + 4) + REFERENCE;
+
+    /**
+     * The response object, with its dates held as longs.
+     */
+    private static final int RESPONSE = align(OBJECT_HEADER + 3 * REFERENCE + 4 * 8 + 2 * 4 + 2);
+
+    /**
+     * Header list object and its weak entry in the interner.
+     */
+    private static final int HEADERS = align(OBJECT_HEADER + REFERENCE + 4)
+            + align(OBJECT_HEADER + 6 * REFERENCE + 4) + REFERENCE;
+
+    /**
+     * Buffer object wrapping a heap body array.
+     */
+    private static final int HEAP_BUFFER = align(OBJECT_HEADER + 5 * 4 + 8 + REFERENCE + 3);
+
+    /**
+     * Direct buffer object, with the cleaner and deallocator that free its memory.
+     */
+    private static final int DIRECT_BUFFER = align(OBJECT_HEADER + 5 * 4 + 8 + 4 * REFERENCE + 3)
+            + align(OBJECT_HEADER + 7 * REFERENCE) + align(OBJECT_HEADER + 2 * 8 + 4);
+
     private CachedResponseWeigher() {
         // Private constructor to prevent instances being created
     }
 
     @Override
     public int weigh(@Nonnull String key, @Nonnull CachedResponse value) {
-        int weight = 0;
+        long weight = CACHE_ENTRY + stringSize(key) + RESPONSE;
 
-        // This just an estimate for weighing purposes, not a precise calculation of memory use.
+        CachedHeaders headers = value.getHeaders();
+        weight += HEADERS + align(ARRAY_HEADER + 2 * headers.size() * REFERENCE);
 
-        // Size of the key
-        weight += key.length() * CHAR_BYTES;
+        for (int i = 0; i < headers.size(); i++) {
+            // The values of a header repeat the same name
+            if (i == 0 || headers.name(i) != headers.name(i - 1)) {
+                weight += stringSize(headers.name(i));
+            }
 
-        // Size of the headers
-        for (Map.Entry<String, List<String>> header : value.getResponseHeaders().entrySet()) {
-            weight += header.getKey().length() * CHAR_BYTES;
+            weight += stringSize(headers.value(i));
+        }
 
-            for (String headerValue : header.getValue()) {
-                weight += headerValue.length() * CHAR_BYTES;
-            }
+        // Pooled bodies are charged by the pool
+        if (!value.isContentShared()) {
+            weight += weighContent(value.contentBuffer());
         }
 
-        // Size of the body
-        weight += value.getResponseContent().length;
+        return (int) Math.min(weight, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Estimate the memory retained by a response body, in bytes.
+     */
+    static int weighContent(ByteBuffer content) {
+        long weight = content.isDirect()
+                ? DIRECT_BUFFER + content.capacity()
+                : HEAP_BUFFER + align(ARRAY_HEADER + content.capacity());
+
+        return (int) Math.min(weight, Integer.MAX_VALUE);
+    }
+
+    private static int stringSize(String value) {
+        return align(OBJECT_HEADER + REFERENCE + 4) + align(ARRAY_HEADER + value.length() * CHAR_BYTES);
+    }
 
-        return weight;
+    private static int align(int size) {
+        return (size + 7) & ~7;
     }
 }
@@ -32,13 +32,15 @@ import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpServletResponseWrapper;
 import javax.ws.rs.core.HttpHeaders;
 import java.io.IOException;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
  * Bundle that sets up request caching for an application's resources.
  */
 public class CachingBundle implements ConfiguredBundle<CachingBundleConfiguration> {
-    private static final Set<String> SINGLETON_HEADERS = HttpHeaderUtils.headerNames(
+    static final Set<String> SINGLETON_HEADERS = HttpHeaderUtils.headerNames(
             // Jetty sets the Date header automatically to the current time after the request has been
             // processed. Any other attempts to set the date header result in duplicate date headers. The
             // caching layer needs to be able to set the date header to the date the cached response was
@@ -54,9 +56,20 @@ public class CachingBundle implements ConfiguredBundle<CachingBundleConfiguratio
     @Override
     public void run(CachingBundleConfiguration configuration, Environment environment) {
         Function<String, Optional<String>> cacheControlMapper = configuration.getCacheControl().buildMapper();
+        Function<String, Map<Integer, String>> statusCacheControlMapper = configuration.getCacheControl().buildStatusMapper();
+        Map<String, VaryNormalizer> varyNormalizers = configuration.getCache().buildVaryNormalizers();
         ResponseCache responseCache = configuration.getCache().buildCache(environment.metrics());
+        FastPathConfiguration fastPath = configuration.getCache().getFastPath();
+        Optional<CacheRoutes> routes = fastPath.isEnabled() ? Optional.of(fastPath.buildRoutes()) : Optional.<CacheRoutes>absent();
 
-        environment.jersey().register(new CacheResourceMethodDispatchAdapter(responseCache, cacheControlMapper));
+        environment.jersey().register(new CacheResourceMethodDispatchAdapter(responseCache, cacheControlMapper, statusCacheControlMapper,
+                varyNormalizers, routes, environment.metrics()));
+        environment.jersey().register(new CachedContent.Writer());
+
+        environment.admin().addTask(new CacheStatsTask(responseCache));
+        environment.admin().addTask(new CacheEntriesTask(responseCache));
+        environment.admin().addTask(new CacheLookupTask(responseCache));
+        environment.admin().addTask(new CachePurgeTask(responseCache));
 
         environment.servlets().addFilter("dropwizard-cache", new Filter() {
             @Override
@@ -85,5 +98,13 @@ public class CachingBundle implements ConfiguredBundle<CachingBundleConfiguratio
                 // Nothing to do
             }
         }).addMappingForUrlPatterns(null, false, "*");
+
+        if (routes.isPresent()) {
+            List<String> urlPatterns = fastPath.getUrlPatterns();
+
+            environment.servlets()
+                    .addFilter("dropwizard-cache-fast-path", new CacheFastPathFilter(responseCache, routes.get(), varyNormalizers, environment.metrics()))
+                    .addMappingForUrlPatterns(null, true, urlPatterns.toArray(new String[urlPatterns.size()]));
+        }
     }
 }
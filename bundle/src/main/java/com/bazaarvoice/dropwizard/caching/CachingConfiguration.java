@@ -17,8 +17,22 @@ package com.bazaarvoice.dropwizard.caching;
 
 import com.codahale.metrics.MetricRegistry;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Function;
+import com.google.common.base.Predicate;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Maps;
 
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Lists.newArrayList;
 
 /**
  * Configuration options for {@link CachingBundle}.
@@ -26,6 +40,12 @@ import static com.google.common.base.Preconditions.checkNotNull;
 public class CachingConfiguration {
     private LocalCacheConfiguration _local = new LocalCacheConfiguration();
     private ResponseStoreFactory _storeFactory = ResponseStoreFactory.NULL_STORE_FACTORY;
+    private CircuitBreakerConfiguration _circuitBreaker = new CircuitBreakerConfiguration();
+    private double _earlyRefreshBeta;
+    private Map<String, VaryNormalizerConfiguration> _varyNormalizers = ImmutableMap.of();
+    private CacheKeyStrategyFactory _keyStrategy = new RawCacheKeyStrategyFactory();
+    private List<GroupKeyStrategyConfiguration> _groupKeyStrategies = ImmutableList.of();
+    private FastPathConfiguration _fastPath = new FastPathConfiguration();
 
     public LocalCacheConfiguration getLocal() {
         return _local;
@@ -45,7 +65,129 @@ public class CachingConfiguration {
         _storeFactory = checkNotNull(storeFactory);
     }
 
+    public CircuitBreakerConfiguration getCircuitBreaker() {
+        return _circuitBreaker;
+    }
+
+    @JsonProperty
+    public void setCircuitBreaker(CircuitBreakerConfiguration circuitBreaker) {
+        _circuitBreaker = checkNotNull(circuitBreaker);
+    }
+
+    /**
+     * Scale of the probabilistic early refresh of cached responses. Larger values refresh earlier. 0 disables early
+     * refresh.
+     */
+    public double getEarlyRefreshBeta() {
+        return _earlyRefreshBeta;
+    }
+
+    @JsonProperty
+    public void setEarlyRefreshBeta(double earlyRefreshBeta) {
+        checkArgument(earlyRefreshBeta >= 0, "earlyRefreshBeta must be >= 0 (value: %s)", earlyRefreshBeta);
+        _earlyRefreshBeta = earlyRefreshBeta;
+    }
+
+    /**
+     * Normalization to apply to the values of headers listed in {@link Vary}, by header name.
+     */
+    public Map<String, VaryNormalizerConfiguration> getVaryNormalizers() {
+        return _varyNormalizers;
+    }
+
+    @JsonProperty("vary")
+    public void setVaryNormalizers(Map<String, VaryNormalizerConfiguration> varyNormalizers) {
+        checkNotNull(varyNormalizers);
+        checkArgument(!varyNormalizers.containsValue(null), "vary normalizers must not be null");
+        _varyNormalizers = ImmutableMap.copyOf(varyNormalizers);
+    }
+
+    /**
+     * @return map from header name (case-insensitive) to the normalizer for its values
+     */
+    Map<String, VaryNormalizer> buildVaryNormalizers() {
+        ImmutableSortedMap.Builder<String, VaryNormalizer> result = ImmutableSortedMap.orderedBy(String.CASE_INSENSITIVE_ORDER);
+
+        for (Map.Entry<String, VaryNormalizerConfiguration> entry : _varyNormalizers.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().buildNormalizer());
+        }
+
+        return result.build();
+    }
+
+    /**
+     * Strategy used to build cache keys for cache groups that match no entry in {@link #getGroupKeyStrategies()}.
+     */
+    public CacheKeyStrategyFactory getKeyStrategy() {
+        return _keyStrategy;
+    }
+
+    @JsonProperty
+    public void setKeyStrategy(CacheKeyStrategyFactory keyStrategy) {
+        _keyStrategy = checkNotNull(keyStrategy);
+    }
+
+    /**
+     * Strategies used to build cache keys for matching cache groups. The first entry that matches a group is used.
+     */
+    public List<GroupKeyStrategyConfiguration> getGroupKeyStrategies() {
+        return _groupKeyStrategies;
+    }
+
+    @JsonProperty
+    public void setGroupKeyStrategies(List<GroupKeyStrategyConfiguration> groupKeyStrategies) {
+        checkNotNull(groupKeyStrategies);
+        checkArgument(!groupKeyStrategies.contains(null), "group key strategies must not be null");
+        _groupKeyStrategies = ImmutableList.copyOf(groupKeyStrategies);
+    }
+
+    /**
+     * @return function that maps a cache group name to the strategy used to build its cache keys
+     */
+    Function<String, CacheKeyStrategy> buildKeyStrategyMapper() {
+        final CacheKeyStrategy defaultStrategy = _keyStrategy.createStrategy();
+        final List<Map.Entry<Predicate<String>, CacheKeyStrategy>> groupStrategies = newArrayList();
+
+        for (GroupKeyStrategyConfiguration item : _groupKeyStrategies) {
+            groupStrategies.add(Maps.immutableEntry(item.buildGroupMatcher(), item.getStrategy().createStrategy()));
+        }
+
+        // Keys are built for every request, so the strategy of each group is only looked up once
+        final LoadingCache<String, CacheKeyStrategy> strategies = CacheBuilder.newBuilder().build(new CacheLoader<String, CacheKeyStrategy>() {
+            @Override
+            public CacheKeyStrategy load(String group) {
+                for (Map.Entry<Predicate<String>, CacheKeyStrategy> entry : groupStrategies) {
+                    if (entry.getKey().apply(group)) {
+                        return entry.getValue();
+                    }
+                }
+
+                return defaultStrategy;
+            }
+        });
+
+        return new Function<String, CacheKeyStrategy>() {
+            @Override
+            public CacheKeyStrategy apply(String group) {
+                return strategies.getUnchecked(group);
+            }
+        };
+    }
+
+    /**
+     * Serving of local cache hits from a servlet filter, ahead of Jersey.
+     */
+    public FastPathConfiguration getFastPath() {
+        return _fastPath;
+    }
+
+    @JsonProperty
+    public void setFastPath(FastPathConfiguration fastPath) {
+        _fastPath = checkNotNull(fastPath);
+    }
+
     public ResponseCache buildCache(MetricRegistry metricRegistry) {
-        return new ResponseCache(_local.buildCache(), _storeFactory.createStore(), metricRegistry);
+        return new ResponseCache(_local.buildCache(metricRegistry), _storeFactory.createStore(), metricRegistry, _circuitBreaker, _earlyRefreshBeta,
+                buildKeyStrategyMapper(), HttpClock.SYSTEM);
     }
 }
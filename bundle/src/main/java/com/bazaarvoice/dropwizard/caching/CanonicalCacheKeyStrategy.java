@@ -0,0 +1,286 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Ordering;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Strings.isNullOrEmpty;
+import static com.google.common.collect.Lists.newArrayList;
+
+/**
+ * Cache key strategy that builds the same key for query strings that only differ in parameter order, ignored
+ * parameters or percent-encoding.
+ * <p/>
+ * With encoding normalization, <code>?b=x%2cy&amp;a=%7e+1</code> and <code>?a=~%201&amp;b=x,y</code> both produce
+ * <code>?a=~%201&amp;b=x%2Cy</code>. The path only has the case of escapes normalized and escaped unreserved
+ * characters decoded, since escaped and unescaped reserved characters like '/' are not equivalent in a path.
+ */
+public class CanonicalCacheKeyStrategy implements CacheKeyStrategy {
+    private static final Splitter PARAMETER_SPLITTER = Splitter.on('&').omitEmptyStrings();
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    private static final Ordering<Parameter> BY_NAME = Ordering.from(new Comparator<Parameter>() {
+        @Override
+        public int compare(Parameter left, Parameter right) {
+            return left.name.compareTo(right.name);
+        }
+    });
+
+    private final boolean _sortParameters;
+    private final boolean _normalizeEncoding;
+    private final Set<String> _ignoredNames;
+    private final List<String> _ignoredPrefixes;
+
+    /**
+     * @param sortParameters    sort the query parameters by name
+     * @param normalizeEncoding rewrite the percent-encoding of the path and query parameters in a canonical form
+     * @param ignoredParameters names of query parameters to leave out of the key; names ending in '*' are prefixes
+     */
+    public CanonicalCacheKeyStrategy(boolean sortParameters, boolean normalizeEncoding, Set<String> ignoredParameters) {
+        checkNotNull(ignoredParameters);
+
+        ImmutableSet.Builder<String> names = ImmutableSet.builder();
+        ImmutableList.Builder<String> prefixes = ImmutableList.builder();
+
+        for (String parameter : ignoredParameters) {
+            if (parameter.endsWith("*")) {
+                prefixes.add(parameter.substring(0, parameter.length() - 1));
+            } else {
+                names.add(parameter);
+            }
+        }
+
+        _sortParameters = sortParameters;
+        _normalizeEncoding = normalizeEncoding;
+        _ignoredNames = names.build();
+        _ignoredPrefixes = prefixes.build();
+    }
+
+    @Override
+    public String buildResourceKey(CacheRequestContext request) {
+        URI requestUri = request.getRequestUri();
+        String path = _normalizeEncoding ? normalizePath(requestUri.getRawPath()) : requestUri.getRawPath();
+        String query = requestUri.getRawQuery();
+
+        if (isNullOrEmpty(query)) {
+            return path;
+        }
+
+        List<Parameter> parameters = newArrayList();
+
+        for (String parameter : PARAMETER_SPLITTER.split(query)) {
+            Parameter parsed = Parameter.parse(parameter, _normalizeEncoding);
+
+            if (!isIgnored(parsed.decodedName)) {
+                parameters.add(parsed);
+            }
+        }
+
+        if (parameters.isEmpty()) {
+            return path;
+        }
+
+        if (_sortParameters) {
+            // Stable sort, so the values of a repeated parameter keep their order
+            parameters = BY_NAME.sortedCopy(parameters);
+        }
+
+        StringBuilder buffer = new StringBuilder(path.length() + query.length() + 1);
+        buffer.append(path);
+
+        char separator = '?';
+
+        for (Parameter parameter : parameters) {
+            buffer.append(separator).append(parameter.text);
+            separator = '&';
+        }
+
+        return buffer.toString();
+    }
+
+    private boolean isIgnored(String name) {
+        if (_ignoredNames.contains(name)) {
+            return true;
+        }
+
+        for (String prefix : _ignoredPrefixes) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Upper-case all escapes in a raw path and decode escaped unreserved characters.
+     */
+    static String normalizePath(String rawPath) {
+        StringBuilder buffer = new StringBuilder(rawPath.length());
+        int i = 0;
+
+        while (i < rawPath.length()) {
+            char c = rawPath.charAt(i);
+
+            if (c == '%' && isEscape(rawPath, i)) {
+                int value = Character.digit(rawPath.charAt(i + 1), 16) * 16 + Character.digit(rawPath.charAt(i + 2), 16);
+
+                if (isUnreserved(value)) {
+                    buffer.append((char) value);
+                } else {
+                    appendEscape(buffer, value);
+                }
+
+                i += 3;
+            } else if (c > 0x7F) {
+                int codePoint = rawPath.codePointAt(i);
+
+                for (byte b : new String(Character.toChars(codePoint)).getBytes(Charsets.UTF_8)) {
+                    appendEscape(buffer, b & 0xFF);
+                }
+
+                i += Character.charCount(codePoint);
+            } else {
+                buffer.append(c);
+                i++;
+            }
+        }
+
+        return buffer.toString();
+    }
+
+    /**
+     * Decode a raw query string component to bytes. '+' is decoded as a space, like JAX-RS does for query parameters.
+     * A '%' that does not start a valid escape is taken literally.
+     */
+    static byte[] decodeQueryComponent(String raw) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(raw.length());
+        int i = 0;
+
+        while (i < raw.length()) {
+            char c = raw.charAt(i);
+
+            if (c == '%' && isEscape(raw, i)) {
+                bytes.write(Character.digit(raw.charAt(i + 1), 16) * 16 + Character.digit(raw.charAt(i + 2), 16));
+                i += 3;
+            } else if (c == '+') {
+                bytes.write(' ');
+                i++;
+            } else if (c > 0x7F) {
+                int codePoint = raw.codePointAt(i);
+                byte[] encoded = new String(Character.toChars(codePoint)).getBytes(Charsets.UTF_8);
+                bytes.write(encoded, 0, encoded.length);
+                i += Character.charCount(codePoint);
+            } else {
+                bytes.write(c);
+                i++;
+            }
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Encode bytes with all characters other than the unreserved characters escaped.
+     */
+    static String encodeQueryComponent(byte[] bytes) {
+        StringBuilder buffer = new StringBuilder(bytes.length);
+
+        for (byte b : bytes) {
+            int value = b & 0xFF;
+
+            if (isUnreserved(value)) {
+                buffer.append((char) value);
+            } else {
+                appendEscape(buffer, value);
+            }
+        }
+
+        return buffer.toString();
+    }
+
+    private static boolean isEscape(String text, int index) {
+        return index + 2 < text.length()
+                && Character.digit(text.charAt(index + 1), 16) >= 0
+                && Character.digit(text.charAt(index + 2), 16) >= 0;
+    }
+
+    /**
+     * Unreserved characters as defined by RFC 3986: letters, digits, '-', '.', '_' and '~'.
+     */
+    private static boolean isUnreserved(int value) {
+        return (value >= 'a' && value <= 'z') || (value >= 'A' && value <= 'Z') || (value >= '0' && value <= '9')
+                || value == '-' || value == '.' || value == '_' || value == '~';
+    }
+
+    private static void appendEscape(StringBuilder buffer, int value) {
+        buffer.append('%').append(HEX_DIGITS[value >> 4]).append(HEX_DIGITS[value & 0xF]);
+    }
+
+    private static class Parameter {
+        /**
+         * Name as it appears in the key, used for sorting.
+         */
+        final String name;
+
+        /**
+         * Decoded name, used to match ignored parameters.
+         */
+        final String decodedName;
+
+        /**
+         * Parameter as it appears in the key.
+         */
+        final String text;
+
+        Parameter(String name, String decodedName, String text) {
+            this.name = name;
+            this.decodedName = decodedName;
+            this.text = text;
+        }
+
+        static Parameter parse(String raw, boolean normalizeEncoding) {
+            int equalsIndex = raw.indexOf('=');
+            String rawName = equalsIndex < 0 ? raw : raw.substring(0, equalsIndex);
+            byte[] nameBytes = decodeQueryComponent(rawName);
+            String decodedName = new String(nameBytes, Charsets.UTF_8);
+
+            if (!normalizeEncoding) {
+                return new Parameter(rawName, decodedName, raw);
+            }
+
+            String name = encodeQueryComponent(nameBytes);
+
+            // A parameter without '=' is kept distinct from one with an empty value
+            String text = equalsIndex < 0
+                    ? name
+                    : name + '=' + encodeQueryComponent(decodeQueryComponent(raw.substring(equalsIndex + 1)));
+
+            return new Parameter(name, decodedName, text);
+        }
+    }
+}
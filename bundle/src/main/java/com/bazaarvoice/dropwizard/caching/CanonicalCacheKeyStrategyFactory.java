@@ -0,0 +1,79 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonTypeName;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Configuration options for {@link CanonicalCacheKeyStrategy}.
+ */
+@JsonTypeName("canonical")
+public class CanonicalCacheKeyStrategyFactory implements CacheKeyStrategyFactory {
+    private boolean _sortParameters = true;
+    private boolean _normalizeEncoding = true;
+    private Set<String> _ignoredParameters = ImmutableSet.of();
+
+    /**
+     * Sort the query parameters by name. Values of a repeated parameter keep their order.
+     */
+    public boolean isSortParameters() {
+        return _sortParameters;
+    }
+
+    @JsonProperty
+    public void setSortParameters(boolean sortParameters) {
+        _sortParameters = sortParameters;
+    }
+
+    /**
+     * Rewrite the percent-encoding of the path and query string in a single canonical form.
+     */
+    public boolean isNormalizeEncoding() {
+        return _normalizeEncoding;
+    }
+
+    @JsonProperty
+    public void setNormalizeEncoding(boolean normalizeEncoding) {
+        _normalizeEncoding = normalizeEncoding;
+    }
+
+    /**
+     * Names of query parameters that do not affect the response, such as tracking parameters or cache busters. A name
+     * ending in '*' matches all parameters starting with the given prefix (e.g. <code>utm_*</code>).
+     */
+    public Set<String> getIgnoredParameters() {
+        return _ignoredParameters;
+    }
+
+    @JsonProperty
+    public void setIgnoredParameters(Set<String> ignoredParameters) {
+        checkNotNull(ignoredParameters);
+        checkArgument(!ignoredParameters.contains(null), "ignoredParameters must not contain null");
+        _ignoredParameters = ImmutableSet.copyOf(ignoredParameters);
+    }
+
+    @Override
+    public CacheKeyStrategy createStrategy() {
+        return new CanonicalCacheKeyStrategy(_sortParameters, _normalizeEncoding, _ignoredParameters);
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import com.google.common.base.Ticker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Circuit breaker for calls to the response store.
+ * <p/>
+ * While closed, calls are allowed and their outcome is counted over a fixed window. Once at least
+ * <code>minimumCalls</code> calls have been made in the window and the fraction of failed calls reaches the failure
+ * rate threshold, the circuit opens. Calls that succeed, but take longer than the slow call threshold, are counted as
+ * failures.
+ * <p/>
+ * While open, calls are rejected. After the open duration has passed the circuit is half-open and a single probe call
+ * is allowed through. If the probe succeeds the circuit closes, otherwise it opens again.
+ * <p/>
+ * Calls recorded while closed only update atomic window counters, so the breaker does not serialize store calls. A
+ * lock is only taken to change state.
+ */
+class CircuitBreaker {
+    private static final Logger LOG = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final double _failureRateThreshold;
+    private final long _slowCallNanos;
+    private final int _minimumCalls;
+    private final long _windowNanos;
+    private final long _openNanos;
+    private final Ticker _ticker;
+
+    private static final long CALL = 1L << 32;
+    private static final long FAILURE = CALL | 1;
+
+    private volatile State _state = State.CLOSED;
+
+    // Start of the current window and its counts: calls in the high 32 bits and failures in the low 32 bits
+    private final AtomicLong _windowStart;
+    private final AtomicLong _counts = new AtomicLong();
+
+    // Guarded by this
+    private long _openedAt;
+    private boolean _probeInFlight;
+    private volatile long _opens;
+
+    /**
+     * @param failureRateThreshold fraction of failed calls (0 &lt; rate &lt;= 1) at which the circuit opens
+     * @param slowCallNanos        calls taking at least this long are counted as failures
+     * @param minimumCalls         number of calls in the window before the failure rate is evaluated
+     * @param windowNanos          length of the window calls are counted over
+     * @param openNanos            time the circuit stays open before a probe call is allowed
+     * @param ticker               time source
+     */
+    public CircuitBreaker(double failureRateThreshold, long slowCallNanos, int minimumCalls, long windowNanos, long openNanos, Ticker ticker) {
+        checkArgument(failureRateThreshold > 0 && failureRateThreshold <= 1, "failureRateThreshold must be > 0 and <= 1 (value: %s)", failureRateThreshold);
+        checkArgument(slowCallNanos > 0, "slowCallNanos must be > 0 (value: %s)", slowCallNanos);
+        checkArgument(minimumCalls > 0, "minimumCalls must be > 0 (value: %s)", minimumCalls);
+        checkArgument(windowNanos > 0, "windowNanos must be > 0 (value: %s)", windowNanos);
+        checkArgument(openNanos >= 0, "openNanos must be >= 0 (value: %s)", openNanos);
+
+        _failureRateThreshold = failureRateThreshold;
+        _slowCallNanos = slowCallNanos;
+        _minimumCalls = minimumCalls;
+        _windowNanos = windowNanos;
+        _openNanos = openNanos;
+        _ticker = checkNotNull(ticker);
+        _windowStart = new AtomicLong(ticker.read());
+    }
+
+    public State getState() {
+        return _state;
+    }
+
+    /**
+     * Number of times the circuit has opened.
+     */
+    public long getOpens() {
+        return _opens;
+    }
+
+    /**
+     * Check if a call may be made. Every call that is allowed must be followed by {@link #onSuccess(long)} or
+     * {@link #onFailure()}.
+     */
+    public boolean allowRequest() {
+        if (_state == State.CLOSED) {
+            return true;
+        }
+
+        synchronized (this) {
+            if (_state == State.OPEN) {
+                if (_ticker.read() - _openedAt < _openNanos) {
+                    return false;
+                }
+
+                _state = State.HALF_OPEN;
+                _probeInFlight = false;
+            }
+
+            if (_state == State.HALF_OPEN) {
+                if (_probeInFlight) {
+                    return false;
+                }
+
+                _probeInFlight = true;
+            }
+
+            return true;
+        }
+    }
+
+    /**
+     * Record a call that completed without error.
+     *
+     * @param elapsedNanos how long the call took
+     */
+    public void onSuccess(long elapsedNanos) {
+        record(elapsedNanos < _slowCallNanos);
+    }
+
+    /**
+     * Record a call that failed.
+     */
+    public void onFailure() {
+        record(false);
+    }
+
+    private void record(boolean success) {
+        long now = _ticker.read();
+
+        if (_state == State.CLOSED) {
+            long windowStart = _windowStart.get();
+
+            if (now - windowStart >= _windowNanos && _windowStart.compareAndSet(windowStart, now)) {
+                _counts.set(0);
+            }
+
+            long counts = _counts.addAndGet(success ? CALL : FAILURE);
+            int calls = (int) (counts >>> 32);
+            int failures = (int) counts;
+
+            if (calls >= _minimumCalls && failures >= _failureRateThreshold * calls) {
+                synchronized (this) {
+                    if (_state == State.CLOSED) {
+                        LOG.warn("Response cache store circuit breaker opened: calls={}, failures={}", calls, failures);
+                        open(now);
+                    }
+                }
+            }
+        } else {
+            synchronized (this) {
+                if (_state == State.HALF_OPEN) {
+                    _probeInFlight = false;
+
+                    if (success) {
+                        LOG.info("Response cache store circuit breaker closed");
+                        resetWindow(now);
+                        _state = State.CLOSED;
+                    } else {
+                        open(now);
+                    }
+                }
+
+                // Otherwise the call started before the circuit opened
+            }
+        }
+    }
+
+    private void open(long now) {
+        _state = State.OPEN;
+        _openedAt = now;
+        _opens += 1;
+    }
+
+    private void resetWindow(long now) {
+        _windowStart.set(now);
+        _counts.set(0);
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Optional;
+import com.google.common.base.Ticker;
+import io.dropwizard.util.Duration;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Configuration options for the circuit breaker around the response store.
+ * <p/>
+ * When the store is failing or slow, the circuit opens and the store is skipped until a probe call succeeds. See
+ * {@link CircuitBreaker}. The circuit breaker is disabled unless configured.
+ */
+public class CircuitBreakerConfiguration {
+    private boolean _enabled = false;
+    private double _failureRateThreshold = 0.5;
+    private Optional<Duration> _slowCallThreshold = Optional.absent();
+    private int _minimumCalls = 20;
+    private Duration _window = Duration.seconds(10);
+    private Duration _openDuration = Duration.seconds(5);
+
+    public boolean isEnabled() {
+        return _enabled;
+    }
+
+    @JsonProperty
+    public void setEnabled(boolean enabled) {
+        _enabled = enabled;
+    }
+
+    public double getFailureRateThreshold() {
+        return _failureRateThreshold;
+    }
+
+    @JsonProperty
+    public void setFailureRateThreshold(double failureRateThreshold) {
+        checkArgument(failureRateThreshold > 0 && failureRateThreshold <= 1, "failureRateThreshold must be > 0 and <= 1 (value: %s)", failureRateThreshold);
+        _failureRateThreshold = failureRateThreshold;
+    }
+
+    public Optional<Duration> getSlowCallThreshold() {
+        return _slowCallThreshold;
+    }
+
+    @JsonProperty
+    public void setSlowCallThreshold(Optional<Duration> slowCallThreshold) {
+        checkNotNull(slowCallThreshold);
+        checkArgument(!slowCallThreshold.isPresent() || slowCallThreshold.get().getQuantity() > 0, "slowCallThreshold must be > 0 (value: %s)", slowCallThreshold);
+        _slowCallThreshold = slowCallThreshold;
+    }
+
+    public int getMinimumCalls() {
+        return _minimumCalls;
+    }
+
+    @JsonProperty
+    public void setMinimumCalls(int minimumCalls) {
+        checkArgument(minimumCalls > 0, "minimumCalls must be > 0 (value: %s)", minimumCalls);
+        _minimumCalls = minimumCalls;
+    }
+
+    public Duration getWindow() {
+        return _window;
+    }
+
+    @JsonProperty
+    public void setWindow(Duration window) {
+        checkNotNull(window);
+        checkArgument(window.getQuantity() > 0, "window must be > 0 (value: %s)", window);
+        _window = window;
+    }
+
+    public Duration getOpenDuration() {
+        return _openDuration;
+    }
+
+    @JsonProperty
+    public void setOpenDuration(Duration openDuration) {
+        checkNotNull(openDuration);
+        checkArgument(openDuration.getQuantity() >= 0, "openDuration must be >= 0 (value: %s)", openDuration);
+        _openDuration = openDuration;
+    }
+
+    /**
+     * Build a circuit breaker from this configuration.
+     *
+     * @return the circuit breaker, or absent if the circuit breaker is disabled
+     */
+    Optional<CircuitBreaker> buildCircuitBreaker() {
+        if (!_enabled) {
+            return Optional.absent();
+        }
+
+        return Optional.of(new CircuitBreaker(
+                _failureRateThreshold,
+                _slowCallThreshold.isPresent() ? _slowCallThreshold.get().toNanoseconds() : Long.MAX_VALUE,
+                _minimumCalls,
+                _window.toNanoseconds(),
+                _openDuration.toNanoseconds(),
+                Ticker.systemTicker()));
+    }
+}
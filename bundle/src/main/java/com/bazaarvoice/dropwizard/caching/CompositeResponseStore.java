@@ -0,0 +1,156 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Response store made up of an ordered list of tiers, typically from fastest and smallest to slowest and largest.
+ * <p/>
+ * Gets query the tiers in order and return the first response found. If promotion is enabled, a response found in a
+ * lower tier is also put into the tiers above it. Puts are written to the tiers selected by the {@link WritePolicy}.
+ * Invalidations always go to every tier.
+ */
+public class CompositeResponseStore extends ResponseStore {
+    /**
+     * Tiers a put is written to.
+     */
+    public enum WritePolicy {
+        /**
+         * Write to every tier.
+         */
+        ALL,
+        /**
+         * Write only to the first tier.
+         */
+        FIRST,
+        /**
+         * Write only to the last tier. The tiers above it are filled by promotion on read.
+         */
+        LAST
+    }
+
+    private final List<ResponseStore> _tiers;
+    private final WritePolicy _writePolicy;
+    private final boolean _promote;
+
+    public CompositeResponseStore(List<ResponseStore> tiers, WritePolicy writePolicy, boolean promote) {
+        checkNotNull(tiers);
+        checkArgument(tiers.size() > 0, "tiers can not be empty");
+        _tiers = ImmutableList.copyOf(tiers);
+        _writePolicy = checkNotNull(writePolicy);
+        _promote = promote;
+    }
+
+    public List<ResponseStore> getTiers() {
+        return _tiers;
+    }
+
+    public WritePolicy getWritePolicy() {
+        return _writePolicy;
+    }
+
+    public boolean isPromote() {
+        return _promote;
+    }
+
+    /**
+     * Copy of this store with the same policies, but different tiers.
+     */
+    public CompositeResponseStore withTiers(List<ResponseStore> tiers) {
+        return new CompositeResponseStore(tiers, _writePolicy, _promote);
+    }
+
+    @Override
+    public Optional<CachedResponse> get(String key) {
+        for (int i = 0; i < _tiers.size(); i += 1) {
+            Optional<CachedResponse> response = _tiers.get(i).get(key);
+
+            if (response.isPresent()) {
+                if (_promote) {
+                    for (int j = 0; j < i; j += 1) {
+                        _tiers.get(j).put(key, response.get());
+                    }
+                }
+
+                return response;
+            }
+        }
+
+        return Optional.absent();
+    }
+
+    @Override
+    public void put(String key, CachedResponse response) {
+        switch (_writePolicy) {
+            case FIRST:
+                _tiers.get(0).put(key, response);
+                break;
+
+            case LAST:
+                _tiers.get(_tiers.size() - 1).put(key, response);
+                break;
+
+            default:
+                for (ResponseStore tier : _tiers) {
+                    tier.put(key, response);
+                }
+                break;
+        }
+    }
+
+    @Override
+    public void invalidate(String key) {
+        for (ResponseStore tier : _tiers) {
+            tier.invalidate(key);
+        }
+    }
+
+    /**
+     * Asks the tiers in order and returns the first response, which is promoted like a response found by {@link #get}.
+     */
+    @Override
+    public Optional<CachedResponse> awaitMiss(String key, Optional<CachedResponse> stale) {
+        for (int i = 0; i < _tiers.size(); i += 1) {
+            Optional<CachedResponse> response = _tiers.get(i).awaitMiss(key, stale);
+
+            if (response.isPresent()) {
+                if (_promote && response.get() != stale.orNull()) {
+                    for (int j = 0; j < i; j += 1) {
+                        _tiers.get(j).put(key, response.get());
+                    }
+                }
+
+                return response;
+            }
+        }
+
+        return Optional.absent();
+    }
+
+    @Override
+    public void releaseMiss(String key) {
+        for (ResponseStore tier : _tiers) {
+            tier.releaseMiss(key);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonTypeName;
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Configuration options for a chain of response stores. See {@link CompositeResponseStore}.
+ */
+@JsonTypeName("composite")
+public class CompositeResponseStoreFactory implements ResponseStoreFactory {
+    private List<ResponseStoreFactory> _tiers = ImmutableList.of();
+    private CompositeResponseStore.WritePolicy _writePolicy = CompositeResponseStore.WritePolicy.ALL;
+    private boolean _promote = true;
+
+    public List<ResponseStoreFactory> getTiers() {
+        return _tiers;
+    }
+
+    @JsonProperty
+    public void setTiers(List<ResponseStoreFactory> tiers) {
+        checkNotNull(tiers);
+        _tiers = ImmutableList.copyOf(tiers);
+    }
+
+    public CompositeResponseStore.WritePolicy getWritePolicy() {
+        return _writePolicy;
+    }
+
+    @JsonProperty
+    public void setWritePolicy(CompositeResponseStore.WritePolicy writePolicy) {
+        _writePolicy = checkNotNull(writePolicy);
+    }
+
+    public boolean isPromote() {
+        return _promote;
+    }
+
+    @JsonProperty
+    public void setPromote(boolean promote) {
+        _promote = promote;
+    }
+
+    @Override
+    public ResponseStore createStore() {
+        ImmutableList.Builder<ResponseStore> tiers = ImmutableList.builder();
+
+        for (ResponseStoreFactory factory : _tiers) {
+            ResponseStore store = factory.createStore();
+
+            if (store != ResponseStore.NULL_STORE) {
+                tiers.add(store);
+            }
+        }
+
+        List<ResponseStore> stores = tiers.build();
+
+        if (stores.isEmpty()) {
+            return ResponseStore.NULL_STORE;
+        } else if (stores.size() == 1) {
+            return stores.get(0);
+        } else {
+            return new CompositeResponseStore(stores, _writePolicy, _promote);
+        }
+    }
+}
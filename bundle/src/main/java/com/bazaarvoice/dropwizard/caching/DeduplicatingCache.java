@@ -0,0 +1,292 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.ForwardingCache;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.Maps;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Local cache that stores a single copy of identical response bodies.
+ * <p/>
+ * Bodies are hashed as they enter the cache and kept in a {@link ContentPool}. If the pool already holds a body with
+ * the same hash and bytes, the new response is stored with a reference to that body and its own copy is released. The
+ * pool counts how many cached responses hold each body and drops the body when the last of them is removed.
+ * <p/>
+ * A pooled body is charged to the memory budget once, when it enters the pool, and the charge is released with the
+ * body. The weight of each cached response only covers its key, headers and response object (see
+ * {@link CachedResponseWeigher}). When the pooled bodies and the cached responses together exceed the budget, cached
+ * responses are evicted until they fit.
+ * <p/>
+ * When bodies are held in direct buffers, bodies are compared while they are still on the heap and only a new body is
+ * copied to a direct buffer, so a duplicate body is never copied. Bodies already in direct buffers are hashed through
+ * a small heap buffer, so they can be shared the same way.
+ */
+class DeduplicatingCache extends ForwardingCache<String, CachedResponse> {
+    private static final HashFunction CONTENT_HASH = Hashing.murmur3_128();
+    private static final int HASH_CHUNK_SIZE = 8192;
+
+    private final Cache<String, CachedResponse> _delegate;
+    private final ContentPool _pool;
+    private final boolean _directContent;
+    private final Counter _deduplicated;
+
+    /**
+     * @param delegate      underlying cache, which must notify the pool of every removed entry
+     * @param pool          pool of the bodies held by the underlying cache
+     * @param directContent move new bodies to direct buffers, as {@link DirectContentCache} does
+     */
+    DeduplicatingCache(Cache<String, CachedResponse> delegate, ContentPool pool, boolean directContent, MetricRegistry metricRegistry) {
+        _delegate = checkNotNull(delegate);
+        _pool = checkNotNull(pool);
+        _directContent = directContent;
+        _deduplicated = metricRegistry.counter(MetricRegistry.name(ResponseCache.class, "local-deduplicated"));
+    }
+
+    @Override
+    protected Cache<String, CachedResponse> delegate() {
+        return _delegate;
+    }
+
+    @Override
+    public void put(String key, CachedResponse value) {
+        CachedResponse stored = deduplicate(key, value);
+        _delegate.put(key, stored);
+        stored(key, stored);
+    }
+
+    @Override
+    public CachedResponse get(final String key, final Callable<? extends CachedResponse> valueLoader) throws ExecutionException {
+        final AtomicReference<CachedResponse> loaded = new AtomicReference<CachedResponse>();
+
+        CachedResponse value = _delegate.get(key, new Callable<CachedResponse>() {
+            @Override
+            public CachedResponse call() throws Exception {
+                CachedResponse response = valueLoader.call();
+
+                if (response == null) {
+                    return null;
+                }
+
+                loaded.set(deduplicate(key, response));
+                return loaded.get();
+            }
+        });
+
+        if (loaded.get() != null) {
+            stored(key, loaded.get());
+        }
+
+        return value;
+    }
+
+    /**
+     * Response to store in place of the given one, holding a pooled body when possible.
+     */
+    CachedResponse deduplicate(String key, CachedResponse response) {
+        ByteBuffer content = response.contentBuffer();
+        HashCode hash = hash(content);
+
+        while (true) {
+            ByteBuffer pooled = _pool.find(hash);
+            boolean shared = pooled != null;
+
+            if (pooled == null) {
+                // First copy of this body. Only now is it worth moving to a direct buffer.
+                pooled = _directContent ? response.withDirectContent().contentBuffer() : content;
+            } else if (pooled != content && !pooled.equals(content)) {
+                // Hash collision, which is left unpooled
+                return _directContent ? response.withDirectContent() : response;
+            }
+
+            CachedResponse holder = _pool.acquire(hash, pooled, key, response);
+
+            if (holder != null) {
+                if (shared) {
+                    _deduplicated.inc();
+                }
+
+                return holder;
+            }
+
+            // The pooled body was added or removed concurrently, so look again
+        }
+    }
+
+    /**
+     * Release the body of a response the underlying cache did not keep and evict responses if the pool pushed the
+     * cache over its budget.
+     */
+    private void stored(String key, CachedResponse holder) {
+        if (_delegate.asMap().get(key) != holder) {
+            // Rejected by the underlying cache or already replaced. Releasing twice is harmless.
+            _pool.release(key, holder);
+        }
+
+        if (_pool.isOverBudget()) {
+            for (Iterator<String> keys = _delegate.asMap().keySet().iterator(); keys.hasNext() && _pool.isOverBudget(); ) {
+                keys.next();
+                keys.remove();
+            }
+        }
+    }
+
+    private static HashCode hash(ByteBuffer content) {
+        if (content.hasArray()) {
+            return CONTENT_HASH.hashBytes(content.array(), content.arrayOffset(), content.capacity());
+        }
+
+        Hasher hasher = CONTENT_HASH.newHasher();
+        ByteBuffer source = content.duplicate();
+        byte[] chunk = new byte[Math.min(HASH_CHUNK_SIZE, source.remaining())];
+
+        while (source.hasRemaining()) {
+            int length = Math.min(chunk.length, source.remaining());
+            source.get(chunk, 0, length);
+            hasher.putBytes(chunk, 0, length);
+        }
+
+        return hasher.hash();
+    }
+
+    /**
+     * Reference counted bodies of the responses held by a deduplicating cache, with the weight charged for them.
+     * <p/>
+     * The pool must be registered as the removal listener of every cache underneath the deduplicating cache, so it
+     * learns when a response holding a body is removed.
+     */
+    static class ContentPool implements RemovalListener<String, CachedResponse> {
+        private final long _maximumWeight;
+        private final Map<HashCode, PooledContent> _contents = Maps.newHashMap();
+        private final Map<CachedResponse, PooledContent> _holders = Maps.newIdentityHashMap();
+        private long _contentWeight;
+        private long _holderWeight;
+
+        /**
+         * @param maximumWeight budget, in bytes, for the pooled bodies and the responses holding them together
+         */
+        ContentPool(long maximumWeight) {
+            checkArgument(maximumWeight >= 0, "maximumWeight must be >= 0 (value: %s)", maximumWeight);
+            _maximumWeight = maximumWeight;
+        }
+
+        @Override
+        public void onRemoval(RemovalNotification<String, CachedResponse> notification) {
+            if (notification.getKey() != null && notification.getValue() != null) {
+                release(notification.getKey(), notification.getValue());
+            }
+        }
+
+        /**
+         * Pooled body with the given hash, or null if there is none.
+         */
+        synchronized ByteBuffer find(HashCode hash) {
+            PooledContent pooled = _contents.get(hash);
+            return pooled != null ? pooled._content : null;
+        }
+
+        /**
+         * Add a holder of a body, pooling the body if it is not pooled yet.
+         *
+         * @return a new response holding the pooled body, or null if another body was pooled under the hash meanwhile
+         */
+        synchronized CachedResponse acquire(HashCode hash, ByteBuffer content, String key, CachedResponse response) {
+            PooledContent pooled = _contents.get(hash);
+
+            if (pooled == null) {
+                pooled = new PooledContent(hash, content);
+                _contents.put(hash, pooled);
+                _contentWeight += pooled._weight;
+            } else if (pooled._content != content) {
+                return null;
+            }
+
+            CachedResponse holder = response.withSharedContent(content);
+            pooled._holders++;
+            _holders.put(holder, pooled);
+            _holderWeight += CachedResponseWeigher.INSTANCE.weigh(key, holder);
+            return holder;
+        }
+
+        /**
+         * Remove a holder of a body, dropping the body once it has no holders left. Responses that are not, or are no
+         * longer, holders are ignored.
+         */
+        synchronized void release(String key, CachedResponse holder) {
+            PooledContent pooled = _holders.remove(holder);
+
+            if (pooled == null) {
+                return;
+            }
+
+            _holderWeight -= CachedResponseWeigher.INSTANCE.weigh(key, holder);
+
+            if (--pooled._holders == 0) {
+                _contents.remove(pooled._hash);
+                _contentWeight -= pooled._weight;
+            }
+        }
+
+        synchronized boolean isOverBudget() {
+            return _contentWeight + _holderWeight > _maximumWeight;
+        }
+
+        /**
+         * Weight charged for the pooled bodies, in bytes.
+         */
+        synchronized long getContentWeight() {
+            return _contentWeight;
+        }
+
+        /**
+         * Number of pooled bodies.
+         */
+        synchronized int size() {
+            return _contents.size();
+        }
+    }
+
+    private static class PooledContent {
+        private final HashCode _hash;
+        private final ByteBuffer _content;
+        private final int _weight;
+        private int _holders;
+
+        PooledContent(HashCode hash, ByteBuffer content) {
+            _hash = hash;
+            _content = content;
+            _weight = CachedResponseWeigher.weighContent(content);
+        }
+    }
+}
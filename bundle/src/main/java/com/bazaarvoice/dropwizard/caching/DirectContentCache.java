@@ -0,0 +1,60 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.ForwardingCache;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Local cache that moves response bodies to direct buffers as they enter the cache.
+ * <p/>
+ * Direct bodies are kept outside the Java heap, so large cached responses do not add to garbage collection work, and
+ * {@link CacheFastPathFilter} can pass them to the connection without the copy the JVM makes when writing a heap
+ * buffer to a socket. The body is copied once when the response is cached.
+ */
+class DirectContentCache extends ForwardingCache<String, CachedResponse> {
+    private final Cache<String, CachedResponse> _delegate;
+
+    DirectContentCache(Cache<String, CachedResponse> delegate) {
+        _delegate = checkNotNull(delegate);
+    }
+
+    @Override
+    protected Cache<String, CachedResponse> delegate() {
+        return _delegate;
+    }
+
+    @Override
+    public void put(String key, CachedResponse value) {
+        _delegate.put(key, value.withDirectContent());
+    }
+
+    @Override
+    public CachedResponse get(String key, final Callable<? extends CachedResponse> valueLoader) throws ExecutionException {
+        return _delegate.get(key, new Callable<CachedResponse>() {
+            @Override
+            public CachedResponse call() throws Exception {
+                CachedResponse response = valueLoader.call();
+                return response == null ? null : response.withDirectContent();
+            }
+        });
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Configuration options for serving local cache hits from a servlet filter, before Jersey routes the request. See
+ * {@link CacheFastPathFilter}.
+ */
+public class FastPathConfiguration {
+    private boolean _enabled;
+    private List<String> _urlPatterns = ImmutableList.of("/*");
+    private long _maximumRoutes = 10000;
+
+    /**
+     * If true, GET requests for paths known to be handled by a caching resource method are looked up in the local cache
+     * by a servlet filter. Jersey request filters do not run for requests served this way.
+     */
+    public boolean isEnabled() {
+        return _enabled;
+    }
+
+    @JsonProperty
+    public void setEnabled(boolean enabled) {
+        _enabled = enabled;
+    }
+
+    /**
+     * Servlet URL patterns the filter is mapped to.
+     */
+    public List<String> getUrlPatterns() {
+        return _urlPatterns;
+    }
+
+    @JsonProperty
+    public void setUrlPatterns(List<String> urlPatterns) {
+        checkNotNull(urlPatterns);
+        checkArgument(!urlPatterns.isEmpty(), "urlPatterns must not be empty");
+        _urlPatterns = ImmutableList.copyOf(urlPatterns);
+    }
+
+    /**
+     * Number of request paths to remember. Requests for other paths go through Jersey.
+     */
+    public long getMaximumRoutes() {
+        return _maximumRoutes;
+    }
+
+    @JsonProperty
+    public void setMaximumRoutes(long maximumRoutes) {
+        checkArgument(maximumRoutes >= 0, "maximumRoutes must be >= 0 (value: %s)", maximumRoutes);
+        _maximumRoutes = maximumRoutes;
+    }
+
+    CacheRoutes buildRoutes() {
+        return new CacheRoutes(_maximumRoutes);
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Optional;
+import com.google.common.base.Predicate;
+
+import java.util.regex.Pattern;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Cache key strategy for the cache groups that match a group name pattern or regular expression.
+ */
+public class GroupKeyStrategyConfiguration {
+    private Optional<String> _group = Optional.absent();
+    private Optional<Pattern> _groupRegex = Optional.absent();
+    private CacheKeyStrategyFactory _strategy = new RawCacheKeyStrategyFactory();
+
+    /**
+     * Cache group name pattern, where '*' matches any characters.
+     */
+    public Optional<String> getGroup() {
+        return _group;
+    }
+
+    @JsonProperty
+    public void setGroup(Optional<String> group) {
+        checkNotNull(group);
+        checkState(!group.isPresent() || !_groupRegex.isPresent(), "only one of group or groupRegex can be specified");
+        _group = group;
+    }
+
+    public Optional<Pattern> getGroupRegex() {
+        return _groupRegex;
+    }
+
+    @JsonProperty
+    public void setGroupRegex(Optional<Pattern> groupRegex) {
+        checkNotNull(groupRegex);
+        checkState(!groupRegex.isPresent() || !_group.isPresent(), "only one of group or groupRegex can be specified");
+        _groupRegex = groupRegex;
+    }
+
+    public CacheKeyStrategyFactory getStrategy() {
+        return _strategy;
+    }
+
+    @JsonProperty
+    public void setStrategy(CacheKeyStrategyFactory strategy) {
+        _strategy = checkNotNull(strategy);
+    }
+
+    Predicate<String> buildGroupMatcher() {
+        return CacheControlConfigurationItem.buildGroupMatcher(_group, _groupRegex);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeUtils;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Clock with the one second resolution of HTTP dates.
+ * <p/>
+ * The current second, as a {@link DateTime} and as an RFC 1123 date, is computed once per second and shared by all
+ * requests in that second, instead of being created and formatted for each request.
+ */
+public class HttpClock {
+    /**
+     * Clock that follows {@link DateTimeUtils#currentTimeMillis()}.
+     */
+    public static final HttpClock SYSTEM = new HttpClock(new DateTimeUtils.MillisProvider() {
+        @Override
+        public long getMillis() {
+            return DateTimeUtils.currentTimeMillis();
+        }
+    });
+
+    private final DateTimeUtils.MillisProvider _millisProvider;
+    private volatile Tick _tick;
+
+    /**
+     * @param millisProvider source of the current time, in milliseconds since the epoch
+     */
+    public HttpClock(DateTimeUtils.MillisProvider millisProvider) {
+        _millisProvider = checkNotNull(millisProvider);
+        _tick = new Tick(epochSeconds(millisProvider.getMillis()));
+    }
+
+    /**
+     * Current time, truncated to the second.
+     */
+    public DateTime now() {
+        return tick().date;
+    }
+
+    /**
+     * Current time as an RFC 1123 date. Example: Tue, 15 Nov 1994 08:12:31 GMT
+     */
+    public String nowAsString() {
+        return tick().formatted;
+    }
+
+    /**
+     * Current time, in seconds since the epoch.
+     */
+    public long epochSeconds() {
+        return tick().epochSeconds;
+    }
+
+    private Tick tick() {
+        long epochSeconds = epochSeconds(_millisProvider.getMillis());
+        Tick tick = _tick;
+
+        if (tick.epochSeconds != epochSeconds) {
+            // Threads that race at the start of a second compute equal ticks, so the last write wins
+            tick = new Tick(epochSeconds);
+            _tick = tick;
+        }
+
+        return tick;
+    }
+
+    /**
+     * Whole seconds since the epoch of an instant in milliseconds, rounded down.
+     */
+    static long epochSeconds(long millis) {
+        long seconds = millis / 1000;
+        return millis < 0 && seconds * 1000 != millis ? seconds - 1 : seconds;
+    }
+
+    private static class Tick {
+        final long epochSeconds;
+        final DateTime date;
+        final String formatted;
+
+        Tick(long epochSeconds) {
+            this.epochSeconds = epochSeconds;
+            this.date = new DateTime(epochSeconds * 1000);
+            this.formatted = HttpHeaderUtils.dateToString(date);
+        }
+    }
+}
@@ -17,11 +17,12 @@ package com.bazaarvoice.dropwizard.caching;
 
 import com.google.common.base.Function;
 import com.google.common.base.Joiner;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Iterables;
 import com.sun.jersey.core.util.StringKeyIgnoreCaseMultivaluedMap;
 import com.sun.jersey.spi.container.ContainerResponse;
 import org.joda.time.DateTime;
-import org.joda.time.Seconds;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
 
@@ -47,12 +48,33 @@ class HttpHeaderUtils {
             .forPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'")
             .withZoneUTC();
 
+    /**
+     * Recently formatted dates, by seconds since the epoch. Responses cached in the same second with the same max-age
+     * share their date and expires headers.
+     */
+    private static final Cache<Long, String> FORMATTED_DATES = CacheBuilder.newBuilder().maximumSize(1024).build();
+
     /**
      * Convert an instant to an RFC 1123 timestamp. Example: Tue, 15 Nov 1994 08:12:31 GMT
      */
     public static String dateToString(DateTime value) {
         checkNotNull(value);
-        return RFC_1123.print(value);
+        return dateToString(value.getMillis());
+    }
+
+    /**
+     * Convert milliseconds since the epoch to an RFC 1123 timestamp. Example: Tue, 15 Nov 1994 08:12:31 GMT
+     */
+    public static String dateToString(long millis) {
+        Long epochSeconds = HttpClock.epochSeconds(millis);
+        String formatted = FORMATTED_DATES.getIfPresent(epochSeconds);
+
+        if (formatted == null) {
+            formatted = RFC_1123.print(millis);
+            FORMATTED_DATES.put(epochSeconds, formatted);
+        }
+
+        return formatted;
     }
 
     /**
@@ -86,12 +108,20 @@ class HttpHeaderUtils {
      * or null if end &lt; start.
      */
     public static String toAge(DateTime start, DateTime end) {
-        checkNotNull(start);
-        checkNotNull(end);
-        int value = Seconds.secondsBetween(start, end).getSeconds();
+        long value = ageSeconds(start, end);
         return value < 0
                 ? null
-                : Integer.toString(value);
+                : Long.toString(value);
+    }
+
+    /**
+     * Difference between two times in whole seconds, as used for the "Age" HTTP header (end - start). Negative if
+     * end &lt; start.
+     */
+    public static long ageSeconds(DateTime start, DateTime end) {
+        checkNotNull(start);
+        checkNotNull(end);
+        return (end.getMillis() - start.getMillis()) / 1000;
     }
 
     /**
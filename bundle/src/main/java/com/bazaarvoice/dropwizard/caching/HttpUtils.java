@@ -22,6 +22,8 @@ import javax.ws.rs.core.Response;
  */
 class HttpUtils {
     public static Response.StatusType GATEWAY_TIMEOUT = new SimpleStatus(504, "Gateway Timeout");
+    public static Response.StatusType PARTIAL_CONTENT = new SimpleStatus(206, "Partial Content");
+    public static Response.StatusType REQUESTED_RANGE_NOT_SATISFIABLE = new SimpleStatus(416, "Requested Range Not Satisfiable");
 
     private static class SimpleStatus implements Response.StatusType {
         private final int _statusCode;
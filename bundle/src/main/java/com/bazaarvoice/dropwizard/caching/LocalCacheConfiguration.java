@@ -15,15 +15,23 @@
  */
 package com.bazaarvoice.dropwizard.caching;
 
+import com.codahale.metrics.MetricRegistry;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.base.Optional;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.collect.ImmutableList;
 import io.dropwizard.util.Duration;
 import io.dropwizard.util.Size;
 
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Set;
+
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Sets.newHashSet;
 
 /**
  * Configuration options for local, in-memory cache.
@@ -31,6 +39,10 @@ import static com.google.common.base.Preconditions.checkNotNull;
 public class LocalCacheConfiguration {
     private Optional<Duration> _expire = Optional.absent();
     private Optional<Size> _maximumSize = Optional.absent();
+    private List<LocalCachePartitionConfiguration> _partitions = ImmutableList.of();
+    private AdaptiveSizeConfiguration _adaptive = new AdaptiveSizeConfiguration();
+    private boolean _deduplicate = false;
+    private boolean _directContent = false;
 
     public Optional<Duration> getExpire() {
         return _expire;
@@ -54,24 +66,164 @@ public class LocalCacheConfiguration {
         _maximumSize = maximumMemory;
     }
 
+    /**
+     * Partitions of the local cache for specific cache groups. A group uses the first partition that matches it.
+     * Responses of groups without a partition are cached with the {@link #getExpire()} and {@link #getMaximumSize()}
+     * settings of the local cache.
+     */
+    public List<LocalCachePartitionConfiguration> getPartitions() {
+        return _partitions;
+    }
+
+    @JsonProperty
+    public void setPartitions(List<LocalCachePartitionConfiguration> partitions) {
+        checkNotNull(partitions);
+
+        Set<String> names = newHashSet();
+
+        for (LocalCachePartitionConfiguration partition : partitions) {
+            checkArgument(partition != null, "partitions must not contain null");
+            checkArgument(!partition.getName().isEmpty(), "partition name must be set");
+            checkArgument(names.add(partition.getName()), "partition names must be unique (name: %s)", partition.getName());
+        }
+
+        _partitions = ImmutableList.copyOf(partitions);
+    }
+
+    /**
+     * Size the local cache from the heap size and shrink it under memory pressure, instead of using
+     * {@link #getMaximumSize()}. Partitions keep their own fixed budgets.
+     */
+    public AdaptiveSizeConfiguration getAdaptive() {
+        return _adaptive;
+    }
+
+    @JsonProperty
+    public void setAdaptive(AdaptiveSizeConfiguration adaptive) {
+        _adaptive = checkNotNull(adaptive);
+    }
+
+    /**
+     * Store a single copy of identical response bodies. Each body counts its size once against the memory limits, no
+     * matter how many responses hold it.
+     */
+    public boolean isDeduplicate() {
+        return _deduplicate;
+    }
+
+    @JsonProperty
+    public void setDeduplicate(boolean deduplicate) {
+        _deduplicate = deduplicate;
+    }
+
+    /**
+     * Hold cached response bodies in direct buffers outside the heap. Their size still counts against the memory limits.
+     */
+    public boolean isDirectContent() {
+        return _directContent;
+    }
+
+    @JsonProperty
+    public void setDirectContent(boolean directContent) {
+        _directContent = directContent;
+    }
+
     public Cache<String, CachedResponse> buildCache() {
-        CacheBuilder<Object, Object> cacheBuilder = CacheBuilder.newBuilder();
+        return buildCache(new MetricRegistry());
+    }
 
-        if (!_expire.isPresent() && !_maximumSize.isPresent()) {
-            cacheBuilder.maximumSize(0);
+    public Cache<String, CachedResponse> buildCache(MetricRegistry metricRegistry) {
+        if (_deduplicate) {
+            // Moves new bodies to direct buffers itself, after comparing them on the heap
+            DeduplicatingCache.ContentPool pool = new DeduplicatingCache.ContentPool(maximumWeight());
+            return new DeduplicatingCache(buildPartitionedCache(metricRegistry, pool), pool, _directContent, metricRegistry);
+        }
+
+        Cache<String, CachedResponse> cache = buildPartitionedCache(metricRegistry, null);
+        return _directContent ? new DirectContentCache(cache) : cache;
+    }
+
+    /**
+     * Combined memory limit of the local cache and its partitions, in bytes, or {@link Long#MAX_VALUE} if any of them is
+     * unbounded.
+     */
+    private long maximumWeight() {
+        long maximumWeight;
+
+        if (_adaptive.isEnabled()) {
+            maximumWeight = _adaptive.maximumBudget();
+        } else if (_maximumSize.isPresent()) {
+            maximumWeight = _maximumSize.get().toBytes();
         } else {
+            return Long.MAX_VALUE;
+        }
+
+        for (LocalCachePartitionConfiguration partition : _partitions) {
+            if (!partition.getMaximumSize().isPresent()) {
+                return Long.MAX_VALUE;
+            }
+
+            maximumWeight += partition.getMaximumSize().get().toBytes();
+        }
+
+        return maximumWeight;
+    }
+
+    private Cache<String, CachedResponse> buildPartitionedCache(MetricRegistry metricRegistry,
+                                                                @Nullable RemovalListener<String, CachedResponse> removalListener) {
+        Cache<String, CachedResponse> defaultCache;
+
+        if (_adaptive.isEnabled()) {
+            CacheBuilder<Object, Object> cacheBuilder = CacheBuilder.newBuilder().recordStats();
+
             if (_expire.isPresent()) {
-                Duration expire = _expire.get();
-                cacheBuilder.expireAfterWrite(expire.getQuantity(), expire.getUnit());
+                cacheBuilder.expireAfterWrite(_expire.get().getQuantity(), _expire.get().getUnit());
+            }
+
+            defaultCache = _adaptive.buildCache(cacheBuilder, metricRegistry, removalListener);
+        } else {
+            defaultCache = buildCache(_expire, Optional.<Duration>absent(), _maximumSize, removalListener);
+        }
+
+        if (_partitions.isEmpty()) {
+            return defaultCache;
+        }
+
+        ImmutableList.Builder<PartitionedCache.Partition> partitions = ImmutableList.builder();
+
+        for (LocalCachePartitionConfiguration partition : _partitions) {
+            partitions.add(new PartitionedCache.Partition(partition.buildGroupMatcher(), partition.buildCache(removalListener)));
+        }
+
+        return new PartitionedCache(defaultCache, partitions.build());
+    }
+
+    static Cache<String, CachedResponse> buildCache(Optional<Duration> expire, Optional<Duration> expireAfterAccess, Optional<Size> maximumSize,
+                                                    @Nullable RemovalListener<String, CachedResponse> removalListener) {
+        CacheBuilder<Object, Object> cacheBuilder = CacheBuilder.newBuilder().recordStats();
+
+        if (!expire.isPresent() && !expireAfterAccess.isPresent() && !maximumSize.isPresent()) {
+            cacheBuilder.maximumSize(0);
+        } else {
+            if (expire.isPresent()) {
+                cacheBuilder.expireAfterWrite(expire.get().getQuantity(), expire.get().getUnit());
             }
 
-            if (_maximumSize.isPresent()) {
+            if (expireAfterAccess.isPresent()) {
+                cacheBuilder.expireAfterAccess(expireAfterAccess.get().getQuantity(), expireAfterAccess.get().getUnit());
+            }
+
+            if (maximumSize.isPresent()) {
                 cacheBuilder
                         .weigher(CachedResponseWeigher.INSTANCE)
-                        .maximumWeight(_maximumSize.get().toBytes());
+                        .maximumWeight(maximumSize.get().toBytes());
             }
         }
 
+        if (removalListener != null) {
+            return cacheBuilder.removalListener(removalListener).build();
+        }
+
         return cacheBuilder.build();
     }
 }
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Optional;
+import com.google.common.base.Predicate;
+import com.google.common.cache.Cache;
+import com.google.common.cache.RemovalListener;
+import io.dropwizard.util.Duration;
+import io.dropwizard.util.Size;
+
+import javax.annotation.Nullable;
+import java.util.regex.Pattern;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Configuration options for a partition of the local cache that holds the responses of matching cache groups.
+ * <p/>
+ * Each partition evicts entries independently, so groups in a partition keep their share of memory no matter how many
+ * responses other groups produce.
+ */
+public class LocalCachePartitionConfiguration {
+    private String _name = "";
+    private Optional<String> _group = Optional.absent();
+    private Optional<Pattern> _groupRegex = Optional.absent();
+    private Optional<Duration> _expire = Optional.absent();
+    private Optional<Duration> _expireAfterAccess = Optional.absent();
+    private Optional<Size> _maximumSize = Optional.absent();
+
+    public String getName() {
+        return _name;
+    }
+
+    @JsonProperty
+    public void setName(String name) {
+        checkNotNull(name);
+        checkArgument(!name.isEmpty(), "name must not be empty");
+        _name = name;
+    }
+
+    /**
+     * Cache group name pattern, where '*' matches any characters.
+     */
+    public Optional<String> getGroup() {
+        return _group;
+    }
+
+    @JsonProperty
+    public void setGroup(Optional<String> group) {
+        checkNotNull(group);
+        checkState(!group.isPresent() || !_groupRegex.isPresent(), "only one of group or groupRegex can be specified");
+        _group = group;
+    }
+
+    public Optional<Pattern> getGroupRegex() {
+        return _groupRegex;
+    }
+
+    @JsonProperty
+    public void setGroupRegex(Optional<Pattern> groupRegex) {
+        checkNotNull(groupRegex);
+        checkState(!groupRegex.isPresent() || !_group.isPresent(), "only one of group or groupRegex can be specified");
+        _groupRegex = groupRegex;
+    }
+
+    /**
+     * Time after which entries are evicted, counted from when they were added.
+     */
+    public Optional<Duration> getExpire() {
+        return _expire;
+    }
+
+    @JsonProperty
+    public void setExpire(Optional<Duration> expire) {
+        checkNotNull(expire);
+        checkArgument(!expire.isPresent() || expire.get().getQuantity() >= 0, "expire must be >= 0 (value: %s)", expire);
+        _expire = expire;
+    }
+
+    /**
+     * Time after which entries are evicted, counted from when they were last read or added.
+     */
+    public Optional<Duration> getExpireAfterAccess() {
+        return _expireAfterAccess;
+    }
+
+    @JsonProperty
+    public void setExpireAfterAccess(Optional<Duration> expireAfterAccess) {
+        checkNotNull(expireAfterAccess);
+        checkArgument(!expireAfterAccess.isPresent() || expireAfterAccess.get().getQuantity() >= 0, "expireAfterAccess must be >= 0 (value: %s)", expireAfterAccess);
+        _expireAfterAccess = expireAfterAccess;
+    }
+
+    /**
+     * Memory budget of the partition.
+     */
+    public Optional<Size> getMaximumSize() {
+        return _maximumSize;
+    }
+
+    @JsonProperty
+    public void setMaximumSize(Optional<Size> maximumSize) {
+        checkNotNull(maximumSize);
+        checkArgument(!maximumSize.isPresent() || maximumSize.get().getQuantity() >= 0, "maximumSize must be >= 0 (value: %s)", maximumSize);
+        _maximumSize = maximumSize;
+    }
+
+    Predicate<String> buildGroupMatcher() {
+        return CacheControlConfigurationItem.buildGroupMatcher(_group, _groupRegex);
+    }
+
+    Cache<String, CachedResponse> buildCache(@Nullable RemovalListener<String, CachedResponse> removalListener) {
+        return LocalCacheConfiguration.buildCache(_expire, _expireAfterAccess, _maximumSize, removalListener);
+    }
+}
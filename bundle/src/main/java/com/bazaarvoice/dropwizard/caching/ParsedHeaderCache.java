@@ -0,0 +1,67 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Bounded, concurrent cache of immutable values parsed from header strings.
+ * <p/>
+ * Most clients and resources send one of a handful of exact header values, so parsing them once turns the common case
+ * into a map lookup. Values that fail to parse are not cached, and long values are always parsed to keep unusual
+ * headers from filling the cache.
+ */
+abstract class ParsedHeaderCache<T> {
+    private static final int MAX_CACHED_LENGTH = 256;
+
+    private final Cache<String, T> _parsed;
+
+    ParsedHeaderCache(int maximumSize) {
+        checkArgument(maximumSize > 0, "maximumSize must be > 0 (value: %s)", maximumSize);
+        _parsed = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+    }
+
+    /**
+     * Get the parsed value of a header.
+     *
+     * @throws IllegalArgumentException if the header value can not be parsed
+     */
+    T get(String value) {
+        checkNotNull(value);
+
+        if (value.length() > MAX_CACHED_LENGTH) {
+            return parse(value);
+        }
+
+        T parsed = _parsed.getIfPresent(value);
+
+        if (parsed == null) {
+            parsed = parse(value);
+            _parsed.put(value, parsed);
+        }
+
+        return parsed;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the header value can not be parsed
+     */
+    protected abstract T parse(String value);
+}
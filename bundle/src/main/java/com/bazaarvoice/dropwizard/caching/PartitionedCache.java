@@ -0,0 +1,236 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import com.google.common.base.Predicate;
+import com.google.common.cache.AbstractCache;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Lists.newArrayList;
+
+/**
+ * Local cache split into partitions that each hold the responses of some cache groups and evict independently.
+ * <p/>
+ * The partition of an entry is chosen by the cache group in its key (see {@link ResponseCache#groupOf(String)}).
+ * Groups that match no partition use the default cache.
+ */
+class PartitionedCache extends AbstractCache<String, CachedResponse> {
+    private final Cache<String, CachedResponse> _defaultCache;
+    private final List<Partition> _partitions;
+    private final List<Cache<String, CachedResponse>> _caches;
+    private final ConcurrentMap<String, Cache<String, CachedResponse>> _groupCaches = new ConcurrentHashMap<String, Cache<String, CachedResponse>>();
+    private final ConcurrentMap<String, CachedResponse> _asMap = new AsMap();
+
+    PartitionedCache(Cache<String, CachedResponse> defaultCache, List<Partition> partitions) {
+        _defaultCache = checkNotNull(defaultCache);
+        _partitions = ImmutableList.copyOf(partitions);
+
+        ImmutableList.Builder<Cache<String, CachedResponse>> caches = ImmutableList.builder();
+        caches.add(defaultCache);
+
+        for (Partition partition : partitions) {
+            caches.add(partition.cache);
+        }
+
+        _caches = caches.build();
+    }
+
+    @Override
+    public CachedResponse getIfPresent(Object key) {
+        return cacheFor(key).getIfPresent(key);
+    }
+
+    @Override
+    public CachedResponse get(String key, Callable<? extends CachedResponse> valueLoader) throws ExecutionException {
+        return cacheFor(key).get(key, valueLoader);
+    }
+
+    @Override
+    public void put(String key, CachedResponse value) {
+        cacheFor(key).put(key, value);
+    }
+
+    @Override
+    public void invalidate(Object key) {
+        cacheFor(key).invalidate(key);
+    }
+
+    @Override
+    public void invalidateAll() {
+        for (Cache<String, CachedResponse> cache : _caches) {
+            cache.invalidateAll();
+        }
+    }
+
+    @Override
+    public long size() {
+        long size = 0;
+
+        for (Cache<String, CachedResponse> cache : _caches) {
+            size += cache.size();
+        }
+
+        return size;
+    }
+
+    @Override
+    public CacheStats stats() {
+        CacheStats stats = new CacheStats(0, 0, 0, 0, 0, 0);
+
+        for (Cache<String, CachedResponse> cache : _caches) {
+            stats = stats.plus(cache.stats());
+        }
+
+        return stats;
+    }
+
+    @Override
+    public void cleanUp() {
+        for (Cache<String, CachedResponse> cache : _caches) {
+            cache.cleanUp();
+        }
+    }
+
+    @Override
+    public ConcurrentMap<String, CachedResponse> asMap() {
+        return _asMap;
+    }
+
+    private Cache<String, CachedResponse> cacheFor(Object key) {
+        if (!(key instanceof String)) {
+            return _defaultCache;
+        }
+
+        String group = ResponseCache.groupOf((String) key);
+        Cache<String, CachedResponse> cache = _groupCaches.get(group);
+
+        if (cache == null) {
+            cache = _defaultCache;
+
+            for (Partition partition : _partitions) {
+                if (partition.groupMatcher.apply(group)) {
+                    cache = partition.cache;
+                    break;
+                }
+            }
+
+            // Cache groups are declared by annotations, so there are only a few of them
+            _groupCaches.put(group, cache);
+        }
+
+        return cache;
+    }
+
+    static class Partition {
+        final Predicate<String> groupMatcher;
+        final Cache<String, CachedResponse> cache;
+
+        Partition(Predicate<String> groupMatcher, Cache<String, CachedResponse> cache) {
+            this.groupMatcher = checkNotNull(groupMatcher);
+            this.cache = checkNotNull(cache);
+        }
+    }
+
+    /**
+     * Map view of all partitions.
+     */
+    private class AsMap extends AbstractMap<String, CachedResponse> implements ConcurrentMap<String, CachedResponse> {
+        @Override
+        public CachedResponse get(Object key) {
+            return cacheFor(key).asMap().get(key);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return cacheFor(key).asMap().containsKey(key);
+        }
+
+        @Override
+        public CachedResponse put(String key, CachedResponse value) {
+            return cacheFor(key).asMap().put(key, value);
+        }
+
+        @Override
+        public CachedResponse remove(Object key) {
+            return cacheFor(key).asMap().remove(key);
+        }
+
+        @Override
+        public CachedResponse putIfAbsent(String key, CachedResponse value) {
+            return cacheFor(key).asMap().putIfAbsent(key, value);
+        }
+
+        @Override
+        public boolean remove(Object key, Object value) {
+            return cacheFor(key).asMap().remove(key, value);
+        }
+
+        @Override
+        public boolean replace(String key, CachedResponse oldValue, CachedResponse newValue) {
+            return cacheFor(key).asMap().replace(key, oldValue, newValue);
+        }
+
+        @Override
+        public CachedResponse replace(String key, CachedResponse value) {
+            return cacheFor(key).asMap().replace(key, value);
+        }
+
+        @Override
+        public int size() {
+            return (int) Math.min(PartitionedCache.this.size(), Integer.MAX_VALUE);
+        }
+
+        @Override
+        public void clear() {
+            invalidateAll();
+        }
+
+        @Override
+        public Set<Entry<String, CachedResponse>> entrySet() {
+            return new AbstractSet<Entry<String, CachedResponse>>() {
+                @Override
+                public Iterator<Entry<String, CachedResponse>> iterator() {
+                    List<Iterator<Entry<String, CachedResponse>>> iterators = newArrayList();
+
+                    for (Cache<String, CachedResponse> cache : _caches) {
+                        iterators.add(cache.asMap().entrySet().iterator());
+                    }
+
+                    return Iterators.concat(iterators.iterator());
+                }
+
+                @Override
+                public int size() {
+                    return AsMap.this.size();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import com.fasterxml.jackson.annotation.JsonTypeName;
+
+/**
+ * Configuration for {@link CacheKeyStrategy#RAW}, which uses the path and query string exactly as sent.
+ */
+@JsonTypeName("raw")
+public class RawCacheKeyStrategyFactory implements CacheKeyStrategyFactory {
+    @Override
+    public CacheKeyStrategy createStrategy() {
+        return CacheKeyStrategy.RAW;
+    }
+}
@@ -37,6 +37,13 @@ public class RequestCacheControl {
 
     private static final Pattern WHITESPACE = Pattern.compile("\\s");
 
+    private static final ParsedHeaderCache<RequestCacheControl> PARSED = new ParsedHeaderCache<RequestCacheControl>(1000) {
+        @Override
+        protected RequestCacheControl parse(String value) {
+            return RequestCacheControl.parse(value);
+        }
+    };
+
     private boolean _noCache;
     private boolean _noStore;
     private int _maxAge = -1;
@@ -47,13 +54,17 @@ public class RequestCacheControl {
     private Map<String, Optional<String>> _cacheExtension;
 
     /**
-     * Creates a new instance of public class RequestCacheControl by parsing the supplied string.
+     * Parses the supplied string into a RequestCacheControl.
      *
      * @param value the cache control string
-     * @return the newly created RequestCacheControl
+     * @return the RequestCacheControl, which may be shared with other callers that parsed the same string
      * @throws IllegalArgumentException if the supplied string cannot be parsed
      */
     public static RequestCacheControl valueOf(String value) {
+        return PARSED.get(value);
+    }
+
+    private static RequestCacheControl parse(String value) {
         checkNotNull(value);
 
         try {
@@ -17,69 +17,280 @@ package com.bazaarvoice.dropwizard.caching;
 
 import com.codahale.metrics.Counter;
 import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import com.codahale.metrics.Timer;
+import com.google.common.base.Charsets;
+import com.google.common.base.Function;
 import com.google.common.base.Optional;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.google.common.cache.Cache;
+import com.google.common.cache.CacheStats;
 import org.joda.time.DateTime;
-import org.joda.time.Seconds;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.ws.rs.core.CacheControl;
 import javax.ws.rs.core.Response;
-import java.net.URI;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
-import static com.google.common.base.Strings.isNullOrEmpty;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newHashMap;
+import static com.google.common.net.HttpHeaders.ACCEPT_RANGES;
+import static com.google.common.net.HttpHeaders.CONTENT_RANGE;
+import static com.google.common.net.HttpHeaders.CONTENT_TYPE;
+import static com.google.common.net.HttpHeaders.ETAG;
+import static com.google.common.net.HttpHeaders.LAST_MODIFIED;
+import static com.google.common.net.HttpHeaders.WARNING;
 
 public class ResponseCache {
     private static final Logger LOG = LoggerFactory.getLogger(ResponseCache.class);
 
+    /**
+     * Separates the cache group name from the rest of the cache key.
+     */
+    private static final char GROUP_SEPARATOR = '@';
+
+    private static final Function<String, CacheKeyStrategy> RAW_KEY_STRATEGY = new Function<String, CacheKeyStrategy>() {
+        public CacheKeyStrategy apply(String input) {
+            return CacheKeyStrategy.RAW;
+        }
+    };
+
+    /**
+     * How long the per-group local cache statistics are reused before the local cache is scanned again.
+     */
+    private static final long LOCAL_STATS_REFRESH_SECONDS = 5;
+
+    /**
+     * Warning added to an expired response served while another instance regenerates it.
+     */
+    private static final String STALE_WARNING = "110 - \"Response is Stale\"";
+
+    private final MetricRegistry _metricRegistry;
+    private final ConcurrentMap<String, CacheGroupMetrics> _groupMetrics = new ConcurrentHashMap<String, CacheGroupMetrics>();
     private final LocalCache _localCache;
     private final ResponseStore _store;
     private final Counter _hits;
     private final Counter _misses;
+    private final Timer _getTimer;
+    private final Timer _putTimer;
+    private final Timer _buildKeyTimer;
+    private final Function<String, CacheKeyStrategy> _keyStrategyMapper;
+    private final HttpClock _clock;
+    private final Histogram _entrySizes;
+    private final Counter _earlyRefreshes;
+    private final double _earlyRefreshBeta;
+    private final Random _random;
 
     public ResponseCache(Cache<String, CachedResponse> localCache, ResponseStore store, MetricRegistry metricRegistry) {
+        this(localCache, store, metricRegistry, new CircuitBreakerConfiguration(), 0);
+    }
+
+    /**
+     * @param earlyRefreshBeta scale of the probabilistic early refresh (see {@link #isEarlyRefresh}), or 0 to only
+     *                         refresh responses once they expire
+     */
+    public ResponseCache(Cache<String, CachedResponse> localCache, ResponseStore store, MetricRegistry metricRegistry,
+                         CircuitBreakerConfiguration circuitBreaker, double earlyRefreshBeta) {
+        this(localCache, store, metricRegistry, circuitBreaker, earlyRefreshBeta, RAW_KEY_STRATEGY, HttpClock.SYSTEM);
+    }
+
+    /**
+     * @param keyStrategyMapper maps a cache group name to the strategy used to build the cache keys of the group (see
+     *                          {@link CachingConfiguration#buildKeyStrategyMapper()})
+     * @param clock             source of the current time for response dates, ages and expiration
+     */
+    public ResponseCache(Cache<String, CachedResponse> localCache, ResponseStore store, MetricRegistry metricRegistry,
+                         CircuitBreakerConfiguration circuitBreaker, double earlyRefreshBeta,
+                         Function<String, CacheKeyStrategy> keyStrategyMapper, HttpClock clock) {
+        this(localCache, store, metricRegistry, circuitBreaker, earlyRefreshBeta, keyStrategyMapper, clock, null);
+    }
+
+    /**
+     * @param random source of the early refresh draws, or null to use {@link ThreadLocalRandom}
+     */
+    ResponseCache(Cache<String, CachedResponse> localCache, ResponseStore store, MetricRegistry metricRegistry,
+                  CircuitBreakerConfiguration circuitBreaker, double earlyRefreshBeta,
+                  Function<String, CacheKeyStrategy> keyStrategyMapper, HttpClock clock, Random random) {
         checkNotNull(localCache, "localCache");
         checkNotNull(store, "store");
         checkNotNull(metricRegistry, "metricRegistry");
-
+        checkNotNull(circuitBreaker, "circuitBreaker");
+        checkArgument(earlyRefreshBeta >= 0, "earlyRefreshBeta must be >= 0 (value: %s)", earlyRefreshBeta);
+        checkNotNull(keyStrategyMapper, "keyStrategyMapper");
+        checkNotNull(clock, "clock");
+
+        _metricRegistry = metricRegistry;
+        _earlyRefreshBeta = earlyRefreshBeta;
+        _keyStrategyMapper = keyStrategyMapper;
+        _clock = clock;
+        _random = random;
         _localCache = new LocalCache(localCache, metricRegistry);
-        _store = failTrap(store, metricRegistry);
+        _store = failTrap(store, metricRegistry, circuitBreaker);
 
         _hits = newCounter(metricRegistry, "hits");
         _misses = newCounter(metricRegistry, "misses");
+        _getTimer = newTimer(metricRegistry, "get");
+        _putTimer = newTimer(metricRegistry, "put");
+        _buildKeyTimer = newTimer(metricRegistry, "build-key");
+        _entrySizes = newHistogram(metricRegistry, "entry-size");
+        _earlyRefreshes = newCounter(metricRegistry, "early-refreshes");
+
+        metricRegistry.register(MetricRegistry.name(ResponseCache.class, "hit-ratio"), new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                long hits = _hits.getCount();
+                return Ratio.of(hits, hits + _misses.getCount());
+            }
+        });
+    }
+
+    /**
+     * Get the metrics for a cache group, registering them if this is the first time the group has been seen.
+     *
+     * @param group cache group name or empty string for resource methods without an explicit group
+     * @return metrics for the group
+     */
+    CacheGroupMetrics groupMetrics(String group) {
+        CacheGroupMetrics metrics = _groupMetrics.get(group);
+
+        if (metrics == null) {
+            synchronized (_groupMetrics) {
+                metrics = _groupMetrics.get(group);
+
+                if (metrics == null) {
+                    metrics = new CacheGroupMetrics(_metricRegistry, group, _localCache.groupStats);
+                    _groupMetrics.put(group, metrics);
+                }
+            }
+        }
+
+        return metrics;
     }
 
     public Optional<Response> get(CacheRequestContext request) {
+        return get(request, false);
+    }
+
+    /**
+     * @param earlyRefreshDecided true if {@link #getLocal(CacheRequestContext)} already decided to refresh the response
+     *                            for this request early, so the lookup does not decide again
+     */
+    Optional<Response> get(CacheRequestContext request, boolean earlyRefreshDecided) {
+        Timer.Context timer = _getTimer.time();
+
+        try {
+            return doGet(request, earlyRefreshDecided);
+        } finally {
+            timer.stop();
+        }
+    }
+
+    /**
+     * Look up a response in the local cache only, for the servlet filter fast path. A request without a usable local
+     * response is not counted as a miss, since it continues through Jersey and is looked up again.
+     *
+     * @return the response, or a lookup without a response if the request should be handled by Jersey
+     */
+    LocalLookup getLocal(CacheRequestContext request) {
+        Timer.Context timer = _getTimer.time();
+
+        try {
+            if (isServableFromCache(request)) {
+                String cacheKey = timedBuildKey(request);
+                CachedResponse cachedResponse = _localCache.getIfPresent(cacheKey);
+
+                if (cachedResponse != null && cachedResponse.hasExpiration()) {
+                    DateTime now = _clock.now();
+
+                    if (isCacheAcceptable(request, now, cachedResponse)) {
+                        if (!isEarlyRefresh(request, now, cachedResponse)) {
+                            return new LocalLookup(buildResponse(request, cacheKey, cachedResponse, now, groupMetrics(request.getCacheGroup()), false), false);
+                        }
+
+                        _earlyRefreshes.inc();
+                        return LocalLookup.EARLY_REFRESH;
+                    }
+                }
+            }
+
+            return LocalLookup.MISS;
+        } finally {
+            timer.stop();
+        }
+    }
+
+    private Optional<Response> doGet(CacheRequestContext request, boolean earlyRefreshDecided) {
+        CacheGroupMetrics groupMetrics = groupMetrics(request.getCacheGroup());
+
         // If request allows a cached response to be returned
         if (isServableFromCache(request)) {
-            String cacheKey = buildKey(request);
+            String cacheKey = timedBuildKey(request);
             StoreLoader loader = new StoreLoader(_store, cacheKey);
             CachedResponse cachedResponse = _localCache.get(cacheKey, loader);
+            DateTime now = _clock.now();
+            boolean storeMissed = loader.invoked;
 
             if (cachedResponse != null && cachedResponse.hasExpiration()) {
-                DateTime now = DateTime.now();
-
                 // If cached response is acceptable for request cache control options
                 if (isCacheAcceptable(request, now, cachedResponse)) {
-                    return buildResponse(request, cacheKey, cachedResponse, now);
+                    if (!earlyRefreshDecided && !isEarlyRefresh(request, now, cachedResponse)) {
+                        return buildResponse(request, cacheKey, cachedResponse, now, groupMetrics, loader.invoked);
+                    }
+
+                    // Treat as a miss so this request regenerates the response before it expires. An early refresh
+                    // decided by the fast path was already counted.
+                    if (!earlyRefreshDecided) {
+                        _earlyRefreshes.inc();
+                    }
+
+                    storeMissed = false;
                 } else if (!loader.invoked && cachedResponse.isExpired(now)) {
-                    // Check if the backing store has a fresher copy of the response
+                    // Check if the backing store has a fresher copy of the response. The stale copy is only replaced
+                    // by a stored one, so it can still be served while another instance regenerates the response.
+                    Optional<CachedResponse> storedResponse = _store.get(cacheKey);
+                    storeMissed = true;
 
-                    _localCache.invalidate(cacheKey);
-                    cachedResponse = _localCache.get(cacheKey, loader);
+                    if (storedResponse.isPresent()) {
+                        cachedResponse = storedResponse.get();
+                        _localCache.put(cacheKey, cachedResponse);
 
-                    if (cachedResponse != null && cachedResponse.hasExpiration() && isCacheAcceptable(request, now, cachedResponse)) {
-                        return buildResponse(request, cacheKey, cachedResponse, now);
+                        if (cachedResponse.hasExpiration() && isCacheAcceptable(request, now, cachedResponse)) {
+                            return buildResponse(request, cacheKey, cachedResponse, now, groupMetrics, true);
+                        }
                     }
+                } else if (!cachedResponse.isExpired(now)) {
+                    // Fresh, but not acceptable to this request
+                    storeMissed = false;
+                }
+            }
+
+            if (storeMissed && !isOnlyCacheAllowed(request)) {
+                Optional<Response> awaited = awaitMiss(request, cacheKey, cachedResponse, now, groupMetrics);
+
+                if (awaited.isPresent()) {
+                    return awaited;
                 }
             }
         }
 
         _misses.inc();
+        groupMetrics.miss();
 
         if (isOnlyCacheAllowed(request)) {
             return Optional.of(Response.status(HttpUtils.GATEWAY_TIMEOUT).build());
@@ -88,58 +299,379 @@ public class ResponseCache {
         }
     }
 
-    private Optional<Response> buildResponse(CacheRequestContext request, String cacheKey, CachedResponse response, DateTime now) {
+    /**
+     * Let the store coordinate the regeneration of a response that is missing or expired. If another instance is
+     * already regenerating it, the store may return the response it stored, or the expired response this request would
+     * otherwise regenerate.
+     *
+     * @param stale cached response that has expired, if any
+     */
+    private Optional<Response> awaitMiss(CacheRequestContext request, String cacheKey, CachedResponse stale, DateTime now,
+                                         CacheGroupMetrics groupMetrics) {
+        if (stale != null && (!stale.hasExpiration() || !isStaleServable(request, stale))) {
+            stale = null;
+        }
+
+        request.setMissAwaited();
+        Optional<CachedResponse> awaited = _store.awaitMiss(cacheKey, Optional.fromNullable(stale));
+
+        if (!awaited.isPresent()) {
+            return Optional.absent();
+        }
+
+        CachedResponse response = awaited.get();
+
+        if (response == stale) {
+            Optional<Response> staleResponse = buildResponse(request, cacheKey, response, now, groupMetrics, false);
+            staleResponse.get().getMetadata().add(WARNING, STALE_WARNING);
+            return staleResponse;
+        }
+
+        _localCache.put(cacheKey, response);
+
+        if (response.hasExpiration() && isCacheAcceptable(request, now, response)) {
+            return buildResponse(request, cacheKey, response, now, groupMetrics, true);
+        }
+
+        return Optional.absent();
+    }
+
+    private Optional<Response> buildResponse(CacheRequestContext request, String cacheKey, CachedResponse response, DateTime now,
+                                             CacheGroupMetrics groupMetrics, boolean fromStore) {
         // If request specifies that response MUST NOT be cached
         if (!isResponseCacheable(request)) {
             _store.invalidate(cacheKey);
             _localCache.invalidate(cacheKey);
         }
 
+        Optional<String> range = request.getRange();
+        Response result = null;
+        int bytesServed = response.getContentLength();
+
+        if (range.isPresent() && isRangeApplicable(request, response)) {
+            Optional<List<ByteRange>> ranges = ByteRange.parse(range.get(), response.getContentLength());
+
+            if (ranges.isPresent()) {
+                result = rangeResponse(response, ranges.get(), now);
+                bytesServed = result.getEntity() instanceof byte[] ? ((byte[]) result.getEntity()).length : 0;
+            }
+        }
+
+        if (result == null) {
+            result = hitResponse(response, now).build();
+        }
+
         _hits.inc();
+        groupMetrics.hit(fromStore, bytesServed);
+        return Optional.of(result);
+    }
+
+    /**
+     * Response builder for a cached response. Complete responses advertise that byte ranges of them can be requested.
+     */
+    private static Response.ResponseBuilder hitResponse(CachedResponse response, DateTime now) {
+        Response.ResponseBuilder builder = response.response(now);
 
-        return Optional.of(response.response(now).build());
+        if (response.getStatusCode() == 200) {
+            builder.header(ACCEPT_RANGES, null).header(ACCEPT_RANGES, "bytes");
+        }
+
+        return builder;
+    }
+
+    /**
+     * Ranges are only served from complete GET responses and, if the request is conditional on <code>If-Range</code>,
+     * only if the validator matches the cached response.
+     */
+    private static boolean isRangeApplicable(CacheRequestContext request, CachedResponse response) {
+        if (!request.getRequestMethod().equals("GET") || response.getStatusCode() != 200) {
+            return false;
+        }
+
+        Optional<String> ifRange = request.getIfRange();
+
+        if (ifRange.isPresent()) {
+            String validator = ifRange.get().trim();
+
+            if (validator.startsWith("W/")) {
+                // Weak entity tags can not be used for sub-range retrieval
+                return false;
+            }
+
+            return validator.equals(response.getFirstHeader(ETAG)) || validator.equals(response.getFirstHeader(LAST_MODIFIED));
+        }
+
+        return true;
+    }
+
+    /**
+     * Build a partial content response for byte ranges of a cached response. A single range is returned as the body,
+     * multiple ranges as a <code>multipart/byteranges</code> body. If no range can be satisfied, the response is 416.
+     */
+    private static Response rangeResponse(CachedResponse response, List<ByteRange> ranges, DateTime now) {
+        ByteBuffer content = response.getContent();
+        int contentLength = content.remaining();
+
+        if (ranges.isEmpty()) {
+            return Response
+                    .status(HttpUtils.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header(CONTENT_RANGE, "bytes */" + contentLength)
+                    .build();
+        }
+
+        Response.ResponseBuilder builder = hitResponse(response, now).status(HttpUtils.PARTIAL_CONTENT);
+
+        if (ranges.size() == 1) {
+            ByteRange range = ranges.get(0);
+
+            return builder
+                    .entity(copyRange(content, range))
+                    .header(CONTENT_RANGE, range.contentRange(contentLength))
+                    .build();
+        }
+
+        String boundary = Long.toHexString(ThreadLocalRandom.current().nextLong() | Long.MIN_VALUE);
+        String contentType = response.getFirstHeader(CONTENT_TYPE);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        for (ByteRange range : ranges) {
+            StringBuilder partHeader = new StringBuilder()
+                    .append("--").append(boundary).append("\r\n");
+
+            if (contentType != null) {
+                partHeader.append(CONTENT_TYPE).append(": ").append(contentType).append("\r\n");
+            }
+
+            partHeader.append(CONTENT_RANGE).append(": ").append(range.contentRange(contentLength)).append("\r\n\r\n");
+
+            byte[] partHeaderBytes = partHeader.toString().getBytes(Charsets.US_ASCII);
+            body.write(partHeaderBytes, 0, partHeaderBytes.length);
+            byte[] part = copyRange(content, range);
+            body.write(part, 0, part.length);
+            body.write('\r');
+            body.write('\n');
+        }
+
+        byte[] trailer = ("--" + boundary + "--\r\n").getBytes(Charsets.US_ASCII);
+        body.write(trailer, 0, trailer.length);
+
+        return builder
+                .entity(body.toByteArray())
+                .header(CONTENT_TYPE, null)
+                .header(CONTENT_TYPE, "multipart/byteranges; boundary=" + boundary)
+                .build();
+    }
+
+    /**
+     * Copy of the bytes of a range, read without copying the rest of the body.
+     */
+    private static byte[] copyRange(ByteBuffer content, ByteRange range) {
+        byte[] part = new byte[range.getLength()];
+        content.position(range.getFirst());
+        content.get(part);
+        return part;
+    }
+
+    /**
+     * Decide whether a request should regenerate a response that is still fresh.
+     * <p/>
+     * This implements probabilistic early expiration ("XFetch"): a request refreshes the response if
+     * <code>computeTime * beta * -ln(random)</code> reaches past the expiration time. The closer the response is to
+     * expiring and the longer it took to generate, the more likely a refresh. Requests across all instances then
+     * refresh a popular response at slightly different times ahead of expiry, instead of all at once when it expires.
+     */
+    private boolean isEarlyRefresh(CacheRequestContext request, DateTime now, CachedResponse response) {
+        if (_earlyRefreshBeta == 0 || response.getComputeMillis() == 0 || isOnlyCacheAllowed(request)) {
+            return false;
+        }
+
+        long remainingMillis = response.getExpires().get().getMillis() - now.getMillis();
+
+        if (remainingMillis <= 0) {
+            // Stale response the request explicitly accepts
+            return false;
+        }
+
+        double random = 1 - (_random != null ? _random : ThreadLocalRandom.current()).nextDouble();
+        return -response.getComputeMillis() * _earlyRefreshBeta * Math.log(random) >= remainingMillis;
     }
 
     public void put(CacheRequestContext request, CacheResponseContext response, byte[] content) {
-        if (isResponseCacheable(request) && isResponseCacheable(response)) {
+        put(request, response, content, 0);
+    }
+
+    /**
+     * @param computeMillis time the resource method took to generate the response, or 0 if unknown
+     */
+    public void put(CacheRequestContext request, CacheResponseContext response, byte[] content, long computeMillis) {
+        Timer.Context timer = _putTimer.time();
+
+        try {
+            doPut(request, response, content, (int) Math.min(Math.max(computeMillis, 0), Integer.MAX_VALUE));
+        } finally {
+            timer.stop();
+        }
+    }
+
+    private void doPut(CacheRequestContext request, CacheResponseContext response, byte[] content, int computeMillis) {
+        // The response to a HEAD request has no body, so it can not be used for the GET response it shares a key with
+        if (!isHead(request) && isResponseCacheable(request) && isResponseCacheable(response)) {
+            DateTime now = _clock.now();
             DateTime responseDate = response.getDate().orNull();
 
             if (responseDate == null) {
-                responseDate = DateTime.now();
+                responseDate = now;
                 response.setDate(responseDate);
                 response.setAge(0);
             } else {
-                response.setAge(responseDate, DateTime.now());
+                response.setAge(responseDate, now);
             }
 
             response.setExpires(responseDate.plusSeconds(response.getSharedCacheMaxAge()));
 
-            CachedResponse cachedResponse = CachedResponse.build(response.getStatusCode(), response.getHttpContext().getHttpHeaders(), content);
-            String cacheKey = buildKey(request);
+            CachedResponse cachedResponse = CachedResponse.build(response.getStatusCode(), response.getHttpContext().getHttpHeaders(), content, computeMillis, now);
+            String cacheKey = timedBuildKey(request);
 
+            _entrySizes.update(content.length);
             _localCache.put(cacheKey, cachedResponse);
             _store.put(cacheKey, cachedResponse);
+        } else {
+            release(request);
         }
     }
 
-    private static String buildKey(CacheRequestContext request) {
-        StringBuilder buffer = new StringBuilder();
-        buffer.append(request.getRequestMethod());
-        buffer.append(':');
+    /**
+     * Called when the response generated for a request will not be cached. If the request missed and the store told
+     * it to generate the response, the store is told it will not be stored.
+     */
+    void release(CacheRequestContext request) {
+        if (request.isMissAwaited()) {
+            _store.releaseMiss(timedBuildKey(request));
+        }
+    }
+
+    /**
+     * Remove a response from the local cache and the store.
+     *
+     * @param cacheKey key of the response to remove
+     */
+    public void invalidate(String cacheKey) {
+        checkNotNull(cacheKey);
+        _localCache.invalidate(cacheKey);
+        _store.invalidate(cacheKey);
+    }
 
-        URI requestUri = request.getRequestUri();
-        String query = requestUri.getRawQuery();
+    /**
+     * Remove all responses for a cache group from the local cache. Responses held in the store are not affected, since
+     * stores can not be enumerated.
+     *
+     * @param group cache group name or empty string for resource methods without an explicit group
+     * @return number of local cache entries removed
+     */
+    public int invalidateGroup(String group) {
+        checkNotNull(group);
+        int count = 0;
+
+        for (String cacheKey : _localCache.keys()) {
+            if (groupOf(cacheKey).equals(group)) {
+                _localCache.invalidate(cacheKey);
+                count += 1;
+            }
+        }
 
-        buffer.append(requestUri.getRawPath());
+        return count;
+    }
 
-        if (!isNullOrEmpty(query)) {
-            buffer.append('?').append(query);
+    /**
+     * Remove all responses from the local cache. Responses held in the store are not affected, since stores can not be
+     * enumerated.
+     */
+    public void invalidateAll() {
+        _localCache.invalidateAll();
+    }
+
+    /**
+     * Unmodifiable, live view of the local cache entries. Reading from the view does not affect cache statistics or
+     * eviction order.
+     */
+    Map<String, CachedResponse> localEntries() {
+        return _localCache.entries();
+    }
+
+    CacheStats localStats() {
+        return _localCache.stats();
+    }
+
+    HttpClock clock() {
+        return _clock;
+    }
+
+    /**
+     * Get a response from the store, bypassing the local cache.
+     */
+    Optional<CachedResponse> storeGet(String cacheKey) {
+        return _store.get(cacheKey);
+    }
+
+    private String timedBuildKey(CacheRequestContext request) {
+        Timer.Context timer = _buildKeyTimer.time();
+
+        try {
+            return buildKey(request, _keyStrategyMapper.apply(request.getCacheGroup()));
+        } finally {
+            timer.stop();
         }
+    }
+
+    static String buildKey(CacheRequestContext request) {
+        return buildKey(request, CacheKeyStrategy.RAW);
+    }
 
+    static String buildKey(CacheRequestContext request, CacheKeyStrategy keyStrategy) {
+        StringBuilder buffer = new StringBuilder();
+
+        // HEAD requests are answered from the GET response, without the body
+        buffer.append(isHead(request) ? "GET" : request.getRequestMethod());
+        buffer.append(':');
+        buffer.append(keyStrategy.buildResourceKey(request));
         buffer.append('#').append(request.getRequestHash());
+
+        if (!request.getCacheGroup().isEmpty()) {
+            buffer.append(GROUP_SEPARATOR).append(request.getCacheGroup());
+        }
+
         return buffer.toString();
     }
 
+    /**
+     * Extract the cache group name from a cache key.
+     *
+     * @param cacheKey key generated by {@link #buildKey(CacheRequestContext)}
+     * @return cache group name or empty string if the key does not belong to an explicit group
+     */
+    static String groupOf(String cacheKey) {
+        // The raw path and query can not contain '#' and the base 64 request hash can not contain the group separator
+        int hashIndex = cacheKey.indexOf('#');
+        int groupIndex = hashIndex < 0 ? -1 : cacheKey.indexOf(GROUP_SEPARATOR, hashIndex);
+
+        return groupIndex < 0 ? "" : cacheKey.substring(groupIndex + 1);
+    }
+
+    /**
+     * True if an expired response may be served while another instance regenerates it, even though the request did
+     * not ask for a stale response with max-stale.
+     */
+    private static boolean isStaleServable(CacheRequestContext request, CachedResponse response) {
+        CacheControl responseCacheControl = response.sharedCacheControl().orNull();
+
+        if (responseCacheControl != null && (responseCacheControl.isProxyRevalidate() || responseCacheControl.isMustRevalidate())) {
+            return false;
+        }
+
+        RequestCacheControl requestCacheControl = request.getCacheControl();
+        return requestCacheControl.getMaxAge() < 0 && requestCacheControl.getMinFresh() < 0;
+    }
+
     /**
      * False if the response MUST NOT be served from the cache and the request must be re-validated with the origin
      * server. True if the response may be served from the cache if all other request options allow it.
@@ -174,6 +706,10 @@ public class ResponseCache {
         return !request.getCacheControl().isNoStore();
     }
 
+    private static boolean isHead(CacheRequestContext request) {
+        return request.getRequestMethod().equals("HEAD");
+    }
+
     /**
      * False if the response to the request MUST NOT be stored in a cache. True if the response may be cached if all
      * other request options allow it.
@@ -182,7 +718,7 @@ public class ResponseCache {
      * @return true if the response may be cached, false if the response must not be cached
      */
     private static boolean isResponseCacheable(CacheResponseContext response) {
-        CacheControl cacheControl = response.getCacheControl();
+        CacheControl cacheControl = response.sharedCacheControl();
 
         return !cacheControl.isNoStore() &&
                 !cacheControl.isNoCache() &&
@@ -212,7 +748,7 @@ public class ResponseCache {
         RequestCacheControl requestCacheControl = request.getCacheControl();
 
         if (requestCacheControl.getMaxAge() > 0) {
-            int age = Seconds.secondsBetween(responseDate, now).getSeconds();
+            long age = secondsBetween(responseDate, now);
 
             if (age > requestCacheControl.getMaxAge()) {
                 return false;
@@ -220,14 +756,14 @@ public class ResponseCache {
         }
 
         if (requestCacheControl.getMinFresh() >= 0 || requestCacheControl.getMaxStale() >= 0) {
-            int freshness = Seconds.secondsBetween(now, responseExpires).getSeconds();
+            long freshness = secondsBetween(now, responseExpires);
 
             if (requestCacheControl.getMinFresh() >= 0 && freshness < requestCacheControl.getMinFresh()) {
                 return false;
             }
 
             if (requestCacheControl.getMaxStale() >= 0) {
-                CacheControl responseCacheControl = response.getCacheControl().orNull();
+                CacheControl responseCacheControl = response.sharedCacheControl().orNull();
                 boolean responseMustRevalidate = responseCacheControl != null && (responseCacheControl.isProxyRevalidate() || responseCacheControl.isMustRevalidate());
 
                 if (!responseMustRevalidate) {
@@ -239,8 +775,34 @@ public class ResponseCache {
         return !responseExpires.isBefore(now);
     }
 
+    private static long secondsBetween(DateTime start, DateTime end) {
+        return (end.getMillis() - start.getMillis()) / 1000;
+    }
+
+    /**
+     * Outcome of a fast path lookup with {@link #getLocal(CacheRequestContext)}.
+     */
+    static class LocalLookup {
+        static final LocalLookup MISS = new LocalLookup(Optional.<Response>absent(), false);
+        static final LocalLookup EARLY_REFRESH = new LocalLookup(Optional.<Response>absent(), true);
+
+        final Optional<Response> response;
+
+        /**
+         * True if the request should refresh the cached response early. Pass this on to
+         * {@link #get(CacheRequestContext, boolean)} when the request is handled by Jersey.
+         */
+        final boolean earlyRefresh;
+
+        LocalLookup(Optional<Response> response, boolean earlyRefresh) {
+            this.response = response;
+            this.earlyRefresh = earlyRefresh;
+        }
+    }
+
     private static class StoreLoader implements Callable<CachedResponse> {
         boolean invoked;
+        long elapsedNanos;
         final ResponseStore store;
         final String key;
 
@@ -256,7 +818,14 @@ public class ResponseCache {
             }
 
             this.invoked = true;
-            Optional<CachedResponse> response = this.store.get(this.key);
+            long start = System.nanoTime();
+            Optional<CachedResponse> response;
+
+            try {
+                response = this.store.get(this.key);
+            } finally {
+                this.elapsedNanos += System.nanoTime() - start;
+            }
 
             if (!response.isPresent()) {
                 throw new CacheKeyNotFoundException();
@@ -270,18 +839,39 @@ public class ResponseCache {
         return registry.counter(MetricRegistry.name(ResponseCache.class, name));
     }
 
+    private static Timer newTimer(MetricRegistry registry, String name) {
+        return registry.timer(MetricRegistry.name(ResponseCache.class, name));
+    }
+
+    private static Histogram newHistogram(MetricRegistry registry, String name) {
+        return registry.histogram(MetricRegistry.name(ResponseCache.class, name));
+    }
+
     private static class CacheKeyNotFoundException extends RuntimeException {
     }
 
     /**
      * Wrap the given store so that any exceptions for store methods are logged with the given logger and not
-     * propagated. If the store is absent, {@link ResponseStore#NULL_STORE} is returned.
+     * propagated. Gets and puts are skipped while the circuit breaker is open. If the store is absent,
+     * {@link ResponseStore#NULL_STORE} is returned.
+     * <p/>
+     * The tiers of a {@link CompositeResponseStore} are each wrapped with their own metrics (named
+     * <code>store-tier-&lt;index&gt;-*</code>) and circuit breaker, so a failing tier does not disable the others.
      */
-    private static ResponseStore failTrap(ResponseStore store, MetricRegistry metricRegistry) {
+    private static ResponseStore failTrap(ResponseStore store, MetricRegistry metricRegistry, CircuitBreakerConfiguration circuitBreaker) {
         if (store == ResponseStore.NULL_STORE) {
             return ResponseStore.NULL_STORE;
+        } else if (store instanceof CompositeResponseStore) {
+            CompositeResponseStore composite = (CompositeResponseStore) store;
+            List<ResponseStore> tiers = newArrayList();
+
+            for (ResponseStore tier : composite.getTiers()) {
+                tiers.add(new FailTrap(tier, metricRegistry, "store-tier-" + tiers.size(), circuitBreaker.buildCircuitBreaker()));
+            }
+
+            return new FailTrap(composite.withTiers(tiers), metricRegistry, "store", Optional.<CircuitBreaker>absent());
         } else {
-            return new FailTrap(store, metricRegistry);
+            return new FailTrap(store, metricRegistry, "store", circuitBreaker.buildCircuitBreaker());
         }
     }
 
@@ -291,25 +881,66 @@ public class ResponseCache {
         private final Counter _exceptions;
         private final Counter _puts;
         private final Counter _evictions;
+        private final Timer _getTimer;
+        private final Timer _putTimer;
+        private final Timer _invalidateTimer;
+        private final Histogram _entrySizes;
+        private final Counter _shortCircuits;
         private final ResponseStore _delegate;
+        private final CircuitBreaker _circuitBreaker;
 
-        public FailTrap(ResponseStore delegate, MetricRegistry metricRegistry) {
+        /**
+         * @param metricPrefix prefix for the names of the store metrics, e.g. <code>store</code> for
+         *                     <code>store-hits</code>
+         */
+        public FailTrap(ResponseStore delegate, MetricRegistry metricRegistry, String metricPrefix, Optional<CircuitBreaker> circuitBreaker) {
             _delegate = checkNotNull(delegate);
+            _circuitBreaker = circuitBreaker.orNull();
+
+            _hits = newCounter(metricRegistry, metricPrefix + "-hits");
+            _misses = newCounter(metricRegistry, metricPrefix + "-misses");
+            _exceptions = newCounter(metricRegistry, metricPrefix + "-exceptions");
+            _puts = newCounter(metricRegistry, metricPrefix + "-puts");
+            _evictions = newCounter(metricRegistry, metricPrefix + "-evictions");
+            _getTimer = newTimer(metricRegistry, metricPrefix + "-get");
+            _putTimer = newTimer(metricRegistry, metricPrefix + "-put");
+            _invalidateTimer = newTimer(metricRegistry, metricPrefix + "-invalidate");
+            _entrySizes = newHistogram(metricRegistry, metricPrefix + "-entry-size");
+            _shortCircuits = newCounter(metricRegistry, metricPrefix + "-short-circuits");
+
+            if (_circuitBreaker != null) {
+                metricRegistry.register(MetricRegistry.name(ResponseCache.class, metricPrefix + "-circuit-state"), new Gauge<String>() {
+                    @Override
+                    public String getValue() {
+                        return _circuitBreaker.getState().name();
+                    }
+                });
 
-            _hits = newCounter(metricRegistry, "store-hits");
-            _misses = newCounter(metricRegistry, "store-misses");
-            _exceptions = newCounter(metricRegistry, "store-exceptions");
-            _puts = newCounter(metricRegistry, "store-puts");
-            _evictions = newCounter(metricRegistry, "store-evictions");
+                metricRegistry.register(MetricRegistry.name(ResponseCache.class, metricPrefix + "-circuit-opens"), new Gauge<Long>() {
+                    @Override
+                    public Long getValue() {
+                        return _circuitBreaker.getOpens();
+                    }
+                });
+            }
         }
 
         @Override
         public Optional<CachedResponse> get(String key) {
+            if (!allowRequest()) {
+                return Optional.absent();
+            }
+
+            Timer.Context timer = _getTimer.time();
+            boolean success = false;
+
             try {
                 Optional<CachedResponse> result = _delegate.get(key);
+                success = true;
 
                 if (result.isPresent()) {
                     _hits.inc();
+                    _entrySizes.update(result.get().getContentLength());
                 } else {
                     _misses.inc();
                 }
@@ -319,28 +950,95 @@ public class ResponseCache {
                 LOG.warn("Response cache store get operation failed: key={}", key, ex);
                 _exceptions.inc();
                 return Optional.absent();
+            } finally {
+                complete(timer, success);
             }
         }
 
         @Override
         public void put(String key, CachedResponse response) {
+            if (!allowRequest()) {
+                return;
+            }
+
+            Timer.Context timer = _putTimer.time();
+            boolean success = false;
+
             try {
                 _delegate.put(key, response);
+                success = true;
                 _puts.inc();
             } catch (Exception ex) {
                 LOG.warn("Response cache store put operation failed: key={}, response={}", key, response, ex);
                 _exceptions.inc();
+            } finally {
+                complete(timer, success);
             }
         }
 
         @Override
         public void invalidate(String key) {
+            // Invalidation is not short-circuited, so an explicit purge always reaches the store
+            Timer.Context timer = _invalidateTimer.time();
+
             try {
                 _delegate.invalidate(key);
                 _evictions.inc();
             } catch (Exception ex) {
                 LOG.warn("Response cache store invalidation operation failed: key={}", key, ex);
                 _exceptions.inc();
+            } finally {
+                timer.stop();
+            }
+        }
+
+        /**
+         * Not timed for the circuit breaker, since waiting for another instance to store the response says nothing
+         * about the health of the store. Skipped unless the circuit is closed.
+         */
+        @Override
+        public Optional<CachedResponse> awaitMiss(String key, Optional<CachedResponse> stale) {
+            if (_circuitBreaker != null && _circuitBreaker.getState() != CircuitBreaker.State.CLOSED) {
+                return Optional.absent();
+            }
+
+            try {
+                return _delegate.awaitMiss(key, stale);
+            } catch (Exception ex) {
+                LOG.warn("Response cache store await miss operation failed: key={}", key, ex);
+                _exceptions.inc();
+                return Optional.absent();
+            }
+        }
+
+        @Override
+        public void releaseMiss(String key) {
+            try {
+                _delegate.releaseMiss(key);
+            } catch (Exception ex) {
+                LOG.warn("Response cache store release miss operation failed: key={}", key, ex);
+                _exceptions.inc();
+            }
+        }
+
+        private boolean allowRequest() {
+            if (_circuitBreaker == null || _circuitBreaker.allowRequest()) {
+                return true;
+            }
+
+            _shortCircuits.inc();
+            return false;
+        }
+
+        private void complete(Timer.Context timer, boolean success) {
+            long elapsedNanos = timer.stop();
+
+            if (_circuitBreaker != null) {
+                if (success) {
+                    _circuitBreaker.onSuccess(elapsedNanos);
+                } else {
+                    _circuitBreaker.onFailure();
+                }
             }
         }
     }
@@ -351,6 +1049,14 @@ public class ResponseCache {
         private final Counter _hits;
         private final Counter _misses;
         private final Counter _evictions;
+        private final Timer _getTimer;
+        private final Timer _putTimer;
+
+        /**
+         * Entry count and weight of the local cache by group name. The local cache is scanned at most once every
+         * {@link #LOCAL_STATS_REFRESH_SECONDS} no matter how many group gauges are read.
+         */
+        final Supplier<Map<String, CacheGroupMetrics.LocalStats>> groupStats;
 
         public LocalCache(Cache<String, CachedResponse> delegate, MetricRegistry metricRegistry) {
             _delegate = checkNotNull(delegate);
@@ -358,6 +1064,8 @@ public class ResponseCache {
             _hits = newCounter(metricRegistry, "local-hits");
             _misses = newCounter(metricRegistry, "local-misses");
             _evictions = newCounter(metricRegistry, "local-evictions");
+            _getTimer = newTimer(metricRegistry, "local-get");
+            _putTimer = newTimer(metricRegistry, "local-put");
 
             metricRegistry.register(MetricRegistry.name(ResponseCache.class, "local-count"),
                     new Gauge<Long>() {
@@ -366,6 +1074,28 @@ public class ResponseCache {
                             return _delegate.size();
                         }
                     });
+
+            groupStats = Suppliers.memoizeWithExpiration(new Supplier<Map<String, CacheGroupMetrics.LocalStats>>() {
+                @Override
+                public Map<String, CacheGroupMetrics.LocalStats> get() {
+                    Map<String, CacheGroupMetrics.LocalStats> stats = newHashMap();
+
+                    for (Map.Entry<String, CachedResponse> entry : _delegate.asMap().entrySet()) {
+                        String group = groupOf(entry.getKey());
+                        CacheGroupMetrics.LocalStats entryStats = stats.get(group);
+
+                        if (entryStats == null) {
+                            entryStats = new CacheGroupMetrics.LocalStats();
+                            stats.put(group, entryStats);
+                        }
+
+                        entryStats.count += 1;
+                        entryStats.weight += CachedResponseWeigher.INSTANCE.weigh(entry.getKey(), entry.getValue());
+                    }
+
+                    return stats;
+                }
+            }, LOCAL_STATS_REFRESH_SECONDS, TimeUnit.SECONDS);
         }
 
         public void invalidate(String key) {
@@ -373,8 +1103,47 @@ public class ResponseCache {
             _evictions.inc();
         }
 
+        public void invalidateAll() {
+            _evictions.inc(_delegate.size());
+            _delegate.invalidateAll();
+        }
+
+        public Iterable<String> keys() {
+            return _delegate.asMap().keySet();
+        }
+
+        public Map<String, CachedResponse> entries() {
+            return Collections.unmodifiableMap(_delegate.asMap());
+        }
+
+        public CacheStats stats() {
+            return _delegate.stats();
+        }
+
+        /**
+         * Local response without loading from the store. Only hits are counted.
+         */
+        public CachedResponse getIfPresent(String key) {
+            Timer.Context timer = _getTimer.time();
+            CachedResponse response;
+
+            try {
+                response = _delegate.getIfPresent(key);
+            } finally {
+                timer.stop();
+            }
+
+            if (response != null) {
+                _hits.inc();
+            }
+
+            return response;
+        }
+
         public CachedResponse get(String key, StoreLoader loader) {
             CachedResponse response;
+            long start = System.nanoTime();
+            long loaderNanos = loader.elapsedNanos;
 
             try {
                 response = _delegate.get(key, loader);
@@ -386,6 +1155,9 @@ public class ResponseCache {
                 response = null;
             }
 
+            // Only record the time spent in the local tier. Time spent loading from the store is recorded separately.
+            _getTimer.update((System.nanoTime() - start) - (loader.elapsedNanos - loaderNanos), TimeUnit.NANOSECONDS);
+
             if (response == null) {
                 _misses.inc();
             } else if (!loader.invoked) {
@@ -396,7 +1168,13 @@ public class ResponseCache {
         }
 
         public void put(String key, CachedResponse response) {
-            _delegate.put(key, response);
+            Timer.Context timer = _putTimer.time();
+
+            try {
+                _delegate.put(key, response);
+            } finally {
+                timer.stop();
+            }
         }
     }
 }
@@ -43,4 +43,27 @@ public abstract class ResponseStore {
     public abstract void put(String key, CachedResponse response);
 
     public abstract void invalidate(String key);
+
+    /**
+     * Called after {@link #get} missed, before the caller generates the response itself. A store that coordinates
+     * regeneration across instances may wait here for another instance to store the response.
+     * <p/>
+     * The default implementation returns absent immediately.
+     *
+     * @param stale expired response the caller could serve instead of waiting, if any
+     * @return the response to serve, which may be <code>stale</code>, or absent if the caller should generate it
+     */
+    public Optional<CachedResponse> awaitMiss(String key, Optional<CachedResponse> stale) {
+        return Optional.absent();
+    }
+
+    /**
+     * Called when a caller that was told by {@link #awaitMiss} to generate a response will not store it, so other
+     * callers waiting for the response can stop waiting.
+     * <p/>
+     * The default implementation does nothing.
+     */
+    public void releaseMiss(String key) {
+        // Do nothing
+    }
 }
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Optional;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Ordering;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Lists.newArrayList;
+
+/**
+ * Reduces the values of a request header listed in {@link Vary} to a canonical form before they are hashed into the
+ * cache key, so requests that ask for the same representation in different ways share a cache entry.
+ * <p/>
+ * The header value is treated as a comma separated list of tokens with optional parameters, such as
+ * <code>Accept-Encoding: gzip;q=1.0, deflate</code>. Token names are compared case-insensitively.
+ */
+public class VaryNormalizer {
+    private static final Splitter TOKEN_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
+    private static final Splitter PARAMETER_SPLITTER = Splitter.on(';').trimResults().omitEmptyStrings();
+    private static final Joiner TOKEN_JOINER = Joiner.on(',');
+    private static final Joiner PARAMETER_JOINER = Joiner.on(';');
+
+    private static final Comparator<Token> BY_QUALITY = new Comparator<Token>() {
+        @Override
+        public int compare(Token left, Token right) {
+            return Double.compare(right.quality, left.quality);
+        }
+    };
+
+    private static final Comparator<Token> BY_TEXT = new Comparator<Token>() {
+        @Override
+        public int compare(Token left, Token right) {
+            return left.text.compareTo(right.text);
+        }
+    };
+
+    private final boolean _sortTokens;
+    private final boolean _collapseQualityValues;
+    private final List<String> _supportedValues;
+    private final Optional<String> _defaultValue;
+
+    /**
+     * @param sortTokens            sort the tokens, for headers where the order of the tokens is not significant
+     * @param collapseQualityValues drop tokens with <code>q=0</code>, order the rest by quality and remove all
+     *                              token parameters
+     * @param supportedValues       values the resource can produce; if not empty, the header is reduced to the most
+     *                              preferred supported value
+     * @param defaultValue          value to use if none of the supported values are acceptable
+     */
+    VaryNormalizer(boolean sortTokens, boolean collapseQualityValues, List<String> supportedValues, Optional<String> defaultValue) {
+        _sortTokens = sortTokens;
+        _collapseQualityValues = collapseQualityValues;
+        _supportedValues = ImmutableList.copyOf(supportedValues);
+        _defaultValue = checkNotNull(defaultValue);
+    }
+
+    /**
+     * Normalize the values of a header.
+     *
+     * @param values all values of the header in the request
+     * @return canonical value for the header
+     */
+    public String normalize(List<String> values) {
+        checkNotNull(values);
+
+        List<Token> tokens = newArrayList();
+
+        for (String value : values) {
+            if (value != null) {
+                for (String token : TOKEN_SPLITTER.split(value)) {
+                    tokens.add(Token.parse(token));
+                }
+            }
+        }
+
+        if (!_supportedValues.isEmpty()) {
+            return selectSupported(acceptable(tokens));
+        }
+
+        if (_collapseQualityValues) {
+            tokens = acceptable(tokens);
+        }
+
+        if (_sortTokens) {
+            Collections.sort(tokens, BY_TEXT);
+        }
+
+        List<String> result = newArrayList();
+
+        for (Token token : tokens) {
+            result.add(_collapseQualityValues ? token.name : token.text);
+        }
+
+        return TOKEN_JOINER.join(result);
+    }
+
+    /**
+     * Tokens with a non-zero quality, most preferred first.
+     */
+    private static List<Token> acceptable(List<Token> tokens) {
+        List<Token> result = newArrayList();
+
+        for (Token token : tokens) {
+            if (token.quality > 0) {
+                result.add(token);
+            }
+        }
+
+        // Stable sort, so tokens with equal quality keep the order the client sent them in
+        return Ordering.from(BY_QUALITY).sortedCopy(result);
+    }
+
+    private String selectSupported(List<Token> tokens) {
+        for (Token token : tokens) {
+            for (String supported : _supportedValues) {
+                if (matches(token.name, supported)) {
+                    return supported;
+                }
+            }
+        }
+
+        return _defaultValue.or("");
+    }
+
+    /**
+     * A token matches a supported value if it is the same value, a more specific language tag (<code>en-gb</code>
+     * matches <code>en</code>) or the <code>*</code> wildcard.
+     */
+    private static boolean matches(String token, String supported) {
+        String value = supported.toLowerCase(Locale.ENGLISH);
+        return token.equals("*") || token.equals(value) || token.startsWith(value + "-");
+    }
+
+    private static class Token {
+        final String name;
+        final String text;
+        final double quality;
+
+        Token(String name, String text, double quality) {
+            this.name = name;
+            this.text = text;
+            this.quality = quality;
+        }
+
+        static Token parse(String token) {
+            Iterator<String> parts = PARAMETER_SPLITTER.split(token.toLowerCase(Locale.ENGLISH)).iterator();
+            String name = parts.hasNext() ? parts.next() : "";
+            List<String> parameters = newArrayList();
+            double quality = 1;
+
+            while (parts.hasNext()) {
+                String parameter = parts.next().replace(" ", "");
+
+                if (parameter.startsWith("q=")) {
+                    quality = parseQuality(parameter.substring(2));
+                } else {
+                    parameters.add(parameter);
+                }
+            }
+
+            String text = parameters.isEmpty() ? name : name + ";" + PARAMETER_JOINER.join(parameters);
+
+            if (quality != 1) {
+                text = text + ";q=" + quality;
+            }
+
+            return new Token(name, text, quality);
+        }
+
+        private static double parseQuality(String value) {
+            try {
+                double quality = Double.parseDouble(value);
+                return quality >= 0 && quality <= 1 ? quality : 1;
+            } catch (NumberFormatException ex) {
+                return 1;
+            }
+        }
+    }
+}
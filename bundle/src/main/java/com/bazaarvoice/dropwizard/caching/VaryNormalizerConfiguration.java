@@ -0,0 +1,91 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Configuration options for normalizing the value of a header listed in {@link Vary} before it is included in the
+ * cache key.
+ */
+public class VaryNormalizerConfiguration {
+    private boolean _sortTokens;
+    private boolean _collapseQualityValues;
+    private List<String> _supportedValues = ImmutableList.of();
+    private Optional<String> _defaultValue = Optional.absent();
+
+    /**
+     * Sort the tokens of the header, for headers where their order does not matter (e.g. Accept-Encoding).
+     */
+    public boolean isSortTokens() {
+        return _sortTokens;
+    }
+
+    @JsonProperty
+    public void setSortTokens(boolean sortTokens) {
+        _sortTokens = sortTokens;
+    }
+
+    /**
+     * Drop tokens with a quality of 0, order the remaining tokens by quality and remove the quality values.
+     */
+    public boolean isCollapseQualityValues() {
+        return _collapseQualityValues;
+    }
+
+    @JsonProperty
+    public void setCollapseQualityValues(boolean collapseQualityValues) {
+        _collapseQualityValues = collapseQualityValues;
+    }
+
+    /**
+     * Values the resource can produce, in order of preference. If set, the header is reduced to the supported value
+     * the client prefers most.
+     */
+    public List<String> getSupportedValues() {
+        return _supportedValues;
+    }
+
+    @JsonProperty
+    public void setSupportedValues(List<String> supportedValues) {
+        checkNotNull(supportedValues);
+        checkArgument(!supportedValues.contains(null), "supportedValues must not contain null");
+        _supportedValues = ImmutableList.copyOf(supportedValues);
+    }
+
+    /**
+     * Value to use when the client accepts none of the supported values. Defaults to an empty value.
+     */
+    public Optional<String> getDefaultValue() {
+        return _defaultValue;
+    }
+
+    @JsonProperty
+    public void setDefaultValue(Optional<String> defaultValue) {
+        _defaultValue = checkNotNull(defaultValue);
+    }
+
+    VaryNormalizer buildNormalizer() {
+        return new VaryNormalizer(_sortTokens, _collapseQualityValues, _supportedValues, _defaultValue);
+    }
+}
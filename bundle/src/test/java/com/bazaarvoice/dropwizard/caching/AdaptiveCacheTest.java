@@ -0,0 +1,139 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.CacheBuilder;
+import com.sun.jersey.core.util.MultivaluedMapImpl;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.Callable;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Tests for {@link com.bazaarvoice.dropwizard.caching.AdaptiveCache}.
+ */
+public class AdaptiveCacheTest {
+    private static final CachedResponse RESPONSE = new CachedResponse(200, new MultivaluedMapImpl(), new byte[1000]);
+    private static final int WEIGHT = CachedResponseWeigher.INSTANCE.weigh("key-00", RESPONSE);
+
+    private MetricRegistry _metricRegistry;
+    private AdaptiveCache _cache;
+
+    @BeforeMethod
+    public void setUp() {
+        _metricRegistry = new MetricRegistry();
+        _cache = new AdaptiveCache(CacheBuilder.newBuilder(), 100L * WEIGHT, 10L * WEIGHT, 0.8, 0.6, 0.5, _metricRegistry);
+    }
+
+    @Test
+    public void tracksWeight() {
+        fill(10);
+        assertEquals(_cache.getWeight(), 10L * WEIGHT);
+
+        _cache.invalidate("key-00");
+        assertEquals(_cache.getWeight(), 9L * WEIGHT);
+
+        _cache.put("key-01", RESPONSE);
+        assertEquals(_cache.getWeight(), 9L * WEIGHT);
+    }
+
+    @Test
+    public void shrinkUnderPressure() {
+        fill(80);
+
+        _cache.onCollection(0.9);
+
+        assertEquals(_cache.getBudget(), 50L * WEIGHT);
+        assertTrue(_cache.getWeight() < 80L * WEIGHT);
+        assertEquals(_cache.size() * WEIGHT, _cache.getWeight());
+        assertEquals(_metricRegistry.getGauges().get("com.bazaarvoice.dropwizard.caching.ResponseCache.local-budget").getValue(), 50L * WEIGHT);
+    }
+
+    @Test
+    public void minimumBudget() {
+        for (int i = 0; i < 10; i++) {
+            _cache.onCollection(0.9);
+        }
+
+        assertEquals(_cache.getBudget(), 10L * WEIGHT);
+    }
+
+    @Test
+    public void growWhenPressureEases() {
+        _cache.onCollection(0.9);
+        _cache.onCollection(0.9);
+        assertEquals(_cache.getBudget(), 25L * WEIGHT);
+
+        // Between the thresholds the budget holds
+        _cache.onCollection(0.7);
+        assertEquals(_cache.getBudget(), 25L * WEIGHT);
+
+        _cache.onCollection(0.5);
+        assertEquals(_cache.getBudget(), 50L * WEIGHT);
+
+        _cache.onCollection(0.5);
+        _cache.onCollection(0.5);
+        assertEquals(_cache.getBudget(), 100L * WEIGHT);
+    }
+
+    @Test
+    public void admission() throws Exception {
+        _cache.onCollection(0.9);
+        _cache.onCollection(0.9);
+        _cache.onCollection(0.9);
+        fill(20);
+
+        // Budget of 12.5 entries
+        assertEquals(_cache.size(), 12);
+
+        CachedResponse loaded = _cache.get("key-99", new Callable<CachedResponse>() {
+            @Override
+            public CachedResponse call() throws Exception {
+                return RESPONSE;
+            }
+        });
+
+        assertNotNull(loaded);
+        assertNull(_cache.getIfPresent("key-99"));
+    }
+
+    @Test
+    public void rejectedReplacementInvalidatesOldValue() {
+        _cache.onCollection(0.9);
+        _cache.onCollection(0.9);
+        _cache.onCollection(0.9);
+        fill(12);
+
+        CachedResponse replacement = new CachedResponse(200, new MultivaluedMapImpl(), new byte[2000]);
+        _cache.put("key-00", replacement);
+
+        assertNull(_cache.getIfPresent("key-00"));
+        assertEquals(_cache.size(), 11);
+        assertEquals(_cache.getWeight(), 11L * WEIGHT);
+    }
+
+    private void fill(int count) {
+        for (int i = 0; i < count; i++) {
+            _cache.put(String.format("key-%02d", i), RESPONSE);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * Tests for {@link ByteRange}.
+ */
+public class ByteRangeTest {
+    @DataProvider
+    public static Object[][] parseData() {
+        return new Object[][]{
+                {"bytes=0-499", 1000, ranges(0, 499)},
+                {"bytes=500-999", 1000, ranges(500, 999)},
+                {"bytes=500-5000", 1000, ranges(500, 999)},
+                {"bytes=-500", 1000, ranges(500, 999)},
+                {"bytes=-5000", 1000, ranges(0, 999)},
+                {"bytes=9500-", 10000, ranges(9500, 9999)},
+                {"bytes=0-0,-1", 10000, ranges(0, 0, 9999, 9999)},
+                {"BYTES = 0-1", 10, null},
+                {"Bytes=0-1, 4-5", 10, ranges(0, 1, 4, 5)},
+
+                // Unsatisfiable
+                {"bytes=1000-", 1000, ranges()},
+                {"bytes=-0", 1000, ranges()},
+                {"bytes=0-1", 0, ranges()},
+
+                // Ignored
+                {"items=0-1", 1000, null},
+                {"bytes=", 1000, null},
+                {"bytes=5-1", 1000, null},
+                {"bytes=a-b", 1000, null},
+                {"bytes=1", 1000, null},
+                {"bytes=0-0,1-1,2-2,3-3,4-4,5-5,6-6,7-7,8-8,9-9,10-10,11-11,12-12,13-13,14-14,15-15,16-16", 1000, null}
+        };
+    }
+
+    @Test(dataProvider = "parseData")
+    public void parse(String header, int length, List<ByteRange> expected) {
+        assertEquals(ByteRange.parse(header, length), Optional.fromNullable(expected));
+    }
+
+    @Test
+    public void contentRange() {
+        assertEquals(new ByteRange(0, 499).contentRange(1234), "bytes 0-499/1234");
+        assertEquals(new ByteRange(0, 499).getLength(), 500);
+    }
+
+    private static List<ByteRange> ranges(int... bounds) {
+        ImmutableList.Builder<ByteRange> ranges = ImmutableList.builder();
+
+        for (int i = 0; i < bounds.length; i += 2) {
+            ranges.add(new ByteRange(bounds[i], bounds[i + 1]));
+        }
+
+        return ranges.build();
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import io.dropwizard.jackson.Jackson;
+import org.testng.annotations.Test;
+
+import java.util.Map;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Tests for {@link CacheControlConfiguration}.
+ */
+public class CacheControlConfigurationTest {
+    private static final ObjectMapper YAML = new ObjectMapper(new YAMLFactory());
+    private static final ObjectMapper MAPPER = Jackson.newObjectMapper();
+
+    @Test
+    public void statusMaxAge() throws Exception {
+        CacheControlConfiguration configuration = parse(
+                "- group: items\n" +
+                "  maxAge: 5m\n" +
+                "  statusMaxAge:\n" +
+                "    404: 30s\n" +
+                "    410: 1h\n");
+
+        Function<String, Map<Integer, String>> statusMapper = configuration.buildStatusMapper();
+
+        assertEquals(statusMapper.apply("items"), ImmutableMap.of(404, "max-age=30", 410, "max-age=3600"));
+        assertEquals(configuration.buildMapper().apply("items"), Optional.of("max-age=300"));
+    }
+
+    @Test
+    public void statusMaxAge_firstMatchingGroup() throws Exception {
+        CacheControlConfiguration configuration = parse(
+                "- group: items\n" +
+                "  maxAge: 5m\n" +
+                "- groupRegex: .*\n" +
+                "  maxAge: 1m\n" +
+                "  statusMaxAge:\n" +
+                "    404: 10s\n");
+
+        Function<String, Map<Integer, String>> statusMapper = configuration.buildStatusMapper();
+
+        // A group matched by an item without statusMaxAge does not fall through to later items
+        assertTrue(statusMapper.apply("items").isEmpty());
+        assertEquals(statusMapper.apply("other"), ImmutableMap.of(404, "max-age=10"));
+    }
+
+    @Test
+    public void statusMaxAge_noItems() {
+        CacheControlConfiguration configuration = new CacheControlConfiguration();
+
+        assertTrue(configuration.buildStatusMapper().apply("items").isEmpty());
+        assertFalse(configuration.buildMapper().apply("items").isPresent());
+    }
+
+    @Test(expectedExceptions = JsonMappingException.class)
+    public void statusMaxAge_invalidStatus() throws Exception {
+        parse("- group: items\n" +
+                "  statusMaxAge:\n" +
+                "    99: 30s\n");
+    }
+
+    private static CacheControlConfiguration parse(String yaml) throws Exception {
+        return MAPPER.treeToValue(YAML.readTree(yaml), CacheControlConfiguration.class);
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import org.testng.annotations.Test;
+
+import javax.ws.rs.core.CacheControl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+
+/**
+ * Tests for {@link CacheControlUtils}.
+ */
+public class CacheControlUtilsTest {
+    @Test
+    public void valueOfReturnsCopy() {
+        CacheControl first = CacheControlUtils.valueOf("no-cache=\"x-a\", max-age=10, x-ext=1");
+        first.setMaxAge(99);
+        first.getNoCacheFields().add("x-b");
+        first.getCacheExtension().put("x-other", "2");
+
+        CacheControl second = CacheControlUtils.valueOf("no-cache=\"x-a\", max-age=10, x-ext=1");
+        assertNotSame(second, first);
+        assertEquals(second.getMaxAge(), 10);
+        assertEquals(second.getNoCacheFields().size(), 1);
+        assertFalse(second.getCacheExtension().containsKey("x-other"));
+    }
+
+    @Test
+    public void copyOf() {
+        CacheControl original = CacheControl.valueOf("private=\"x-a\", no-store, no-transform, must-revalidate, proxy-revalidate, max-age=10, s-maxage=20, x-ext=1");
+        CacheControl copy = CacheControlUtils.copyOf(original);
+
+        assertNotSame(copy, original);
+        assertEquals(copy, original);
+        assertNotSame(copy.getPrivateFields(), original.getPrivateFields());
+        assertNotSame(copy.getCacheExtension(), original.getCacheExtension());
+    }
+}
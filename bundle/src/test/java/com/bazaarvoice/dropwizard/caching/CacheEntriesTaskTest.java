@@ -0,0 +1,110 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Function;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMultimap;
+import com.sun.jersey.core.util.MultivaluedMapImpl;
+import org.joda.time.DateTimeUtils;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.ws.rs.core.MultivaluedMap;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * Tests for {@link com.bazaarvoice.dropwizard.caching.CacheEntriesTask}.
+ */
+public class CacheEntriesTaskTest {
+    private static final long NOW = 1400000000000L;
+
+    private Cache<String, CachedResponse> _localCache;
+    private CacheEntriesTask _task;
+
+    @BeforeMethod
+    public void setUp() {
+        HttpClock clock = new HttpClock(new DateTimeUtils.MillisProvider() {
+            @Override
+            public long getMillis() {
+                return NOW;
+            }
+        });
+
+        _localCache = CacheBuilder.newBuilder().build();
+        _task = new CacheEntriesTask(new ResponseCache(_localCache, ResponseStore.NULL_STORE, new MetricRegistry(),
+                new CircuitBreakerConfiguration(), 0, new Function<String, CacheKeyStrategy>() {
+                    public CacheKeyStrategy apply(String input) {
+                        return CacheKeyStrategy.RAW;
+                    }
+                }, clock));
+
+        _localCache.put("GET:/small#abc", response(10, 30));
+        _localCache.put("GET:/large#abc@group", response(1000, 5));
+        _localCache.put("GET:/old#abc@group", response(100, 120));
+    }
+
+    @Test
+    public void sortByWeight() throws Exception {
+        assertEquals(execute(ImmutableMultimap.<String, String>of()),
+                line("GET:/large#abc@group", 5) + line("GET:/old#abc@group", 120) + line("GET:/small#abc", 30));
+    }
+
+    @Test
+    public void sortByAgeWithLimit() throws Exception {
+        assertEquals(execute(ImmutableMultimap.of("sort", "age", "limit", "2")),
+                line("GET:/old#abc@group", 120) + line("GET:/small#abc", 30));
+    }
+
+    @Test
+    public void filterByGroup() throws Exception {
+        assertEquals(execute(ImmutableMultimap.of("group", "")), line("GET:/small#abc", 30));
+    }
+
+    @Test
+    public void futureDate() throws Exception {
+        _localCache.put("GET:/future#abc@other", response(10, -30));
+        assertEquals(execute(ImmutableMultimap.of("group", "other")), line("GET:/future#abc@other", 0));
+    }
+
+    @Test
+    public void invalidOptions() throws Exception {
+        assertEquals(execute(ImmutableMultimap.of("sort", "size")), "Invalid sort option: size\n");
+        assertEquals(execute(ImmutableMultimap.of("limit", "many")), "Invalid limit: many\n");
+    }
+
+    private String line(String key, int age) {
+        CachedResponse response = _localCache.getIfPresent(key);
+        return CachedResponseWeigher.INSTANCE.weigh(key, response) + "\t" + age + "\t200\t" + key + "\n";
+    }
+
+    private String execute(ImmutableMultimap<String, String> parameters) throws Exception {
+        StringWriter output = new StringWriter();
+        _task.execute(parameters, new PrintWriter(output));
+        return output.toString().replace(System.getProperty("line.separator"), "\n");
+    }
+
+    private static CachedResponse response(int size, int ageSeconds) {
+        MultivaluedMap<String, String> headers = new MultivaluedMapImpl();
+        headers.add("Date", HttpHeaderUtils.dateToString(NOW - ageSeconds * 1000L));
+        return new CachedResponse(200, headers, new byte[size]);
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Charsets;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.sun.jersey.core.util.MultivaluedMapImpl;
+import org.eclipse.jetty.server.HttpOutput;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.core.MultivaluedMap;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Set;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+
+/**
+ * Tests for {@link com.bazaarvoice.dropwizard.caching.CacheFastPathFilter}.
+ */
+public class CacheFastPathFilterTest {
+    private static final Set<String> VARY = HttpHeaderUtils.headerNames("Accept");
+
+    private Cache<String, CachedResponse> _localCache;
+    private CacheRoutes _routes;
+    private CacheFastPathFilter _filter;
+    private HttpServletRequest _request;
+    private HttpServletResponse _response;
+    private FilterChain _chain;
+    private ByteArrayOutputStream _body;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        _localCache = CacheBuilder.newBuilder().build();
+        _routes = new CacheRoutes(100);
+
+        ResponseCache cache = new ResponseCache(_localCache, ResponseStore.NULL_STORE, new MetricRegistry());
+        _filter = new CacheFastPathFilter(cache, _routes, ImmutableMap.<String, VaryNormalizer>of(), new MetricRegistry());
+
+        _request = mock(HttpServletRequest.class);
+        when(_request.getMethod()).thenReturn("GET");
+        when(_request.getRequestURI()).thenReturn("/the/path");
+        when(_request.getRequestURL()).thenReturn(new StringBuffer("http://localhost/the/path"));
+        when(_request.getQueryString()).thenReturn("a=b");
+        when(_request.getHeaderNames()).thenReturn(Collections.enumeration(ImmutableList.of("Accept")));
+        when(_request.getHeaders("Accept")).thenReturn(Collections.enumeration(ImmutableList.of("text/plain")));
+
+        _body = new ByteArrayOutputStream();
+        _response = mock(HttpServletResponse.class);
+        when(_response.getOutputStream()).thenReturn(new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                _body.write(b);
+            }
+        });
+
+        _chain = mock(FilterChain.class);
+    }
+
+    @Test
+    public void servesLocalHit() throws Exception {
+        _routes.learn("/the/path", "group", VARY);
+        cacheResponse("group", VARY);
+
+        _filter.doFilter(_request, _response, _chain);
+
+        verifyZeroInteractions(_chain);
+        verify(_response).setStatus(200);
+        verify(_response).addHeader("Content-Type", "text/plain");
+        verify(_response).setContentLength(5);
+        assertEquals(new String(_body.toByteArray(), Charsets.UTF_8), "hello");
+    }
+
+    @Test
+    public void sendsContentThroughJetty() throws Exception {
+        HttpOutput output = mock(HttpOutput.class);
+        when(_response.getOutputStream()).thenReturn(output);
+        _routes.learn("/the/path", "group", VARY);
+        cacheResponse("group", VARY);
+
+        _filter.doFilter(_request, _response, _chain);
+
+        verify(output).sendContent(ByteBuffer.wrap("hello".getBytes(Charsets.UTF_8)));
+    }
+
+    @Test
+    public void servesDirectContent() throws Exception {
+        _routes.learn("/the/path", "group", VARY);
+        cacheResponse("group", VARY);
+        String key = _localCache.asMap().keySet().iterator().next();
+        _localCache.put(key, _localCache.getIfPresent(key).withDirectContent());
+
+        _filter.doFilter(_request, _response, _chain);
+
+        verify(_response).setContentLength(5);
+        assertEquals(new String(_body.toByteArray(), Charsets.UTF_8), "hello");
+    }
+
+    @Test
+    public void missGoesToJersey() throws Exception {
+        _routes.learn("/the/path", "group", VARY);
+
+        _filter.doFilter(_request, _response, _chain);
+
+        verify(_chain).doFilter(_request, _response);
+    }
+
+    @Test
+    public void unknownPathGoesToJersey() throws Exception {
+        cacheResponse("group", VARY);
+
+        _filter.doFilter(_request, _response, _chain);
+
+        verify(_chain).doFilter(_request, _response);
+    }
+
+    @Test
+    public void otherMethodsGoToJersey() throws Exception {
+        _routes.learn("/the/path", "group", VARY);
+        cacheResponse("group", VARY);
+        when(_request.getMethod()).thenReturn("POST");
+
+        _filter.doFilter(_request, _response, _chain);
+
+        verify(_chain).doFilter(_request, _response);
+    }
+
+    private void cacheResponse(String group, Set<String> vary) {
+        // Key as the Jersey path builds it for the same request
+        CacheRequestContext request = CacheRequestContext.build(_request, group, vary, ImmutableMap.<String, VaryNormalizer>of());
+
+        MultivaluedMap<String, String> headers = new MultivaluedMapImpl();
+        headers.add("Content-Type", "text/plain");
+        headers.add("Cache-Control", "max-age=60");
+        headers.add("Date", HttpHeaderUtils.dateToString(HttpClock.SYSTEM.now()));
+
+        _localCache.put(ResponseCache.buildKey(request), new CachedResponse(200, headers, "hello".getBytes(Charsets.UTF_8)));
+
+        // Header enumerations are consumed by building the context
+        when(_request.getHeaderNames()).thenReturn(Collections.enumeration(ImmutableList.of("Accept")));
+        when(_request.getHeaders("Accept")).thenReturn(Collections.enumeration(ImmutableList.of("text/plain")));
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableMap;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Map;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * Tests for {@link com.bazaarvoice.dropwizard.caching.CacheGroupMetrics}.
+ */
+public class CacheGroupMetricsTest {
+    private MetricRegistry _metricRegistry;
+    private Map<String, CacheGroupMetrics.LocalStats> _localStats;
+    private Supplier<Map<String, CacheGroupMetrics.LocalStats>> _localStatsSupplier;
+
+    @BeforeMethod
+    public void setUp() {
+        _metricRegistry = new MetricRegistry();
+        _localStats = ImmutableMap.of();
+        _localStatsSupplier = new Supplier<Map<String, CacheGroupMetrics.LocalStats>>() {
+            @Override
+            public Map<String, CacheGroupMetrics.LocalStats> get() {
+                return _localStats;
+            }
+        };
+    }
+
+    @Test
+    public void hitsAndMisses() {
+        CacheGroupMetrics metrics = new CacheGroupMetrics(_metricRegistry, "group", _localStatsSupplier);
+
+        metrics.hit(false, 10);
+        metrics.hit(true, 5);
+        metrics.miss();
+
+        assertEquals(_metricRegistry.counter(name("group.group.hits")).getCount(), 2);
+        assertEquals(_metricRegistry.counter(name("group.group.local-hits")).getCount(), 1);
+        assertEquals(_metricRegistry.counter(name("group.group.store-hits")).getCount(), 1);
+        assertEquals(_metricRegistry.counter(name("group.group.misses")).getCount(), 1);
+        assertEquals(_metricRegistry.counter(name("group.group.bytes-served")).getCount(), 15);
+        assertEquals((Double) _metricRegistry.getGauges().get(name("group.group.hit-ratio")).getValue(), 2.0 / 3, 0.0001);
+    }
+
+    @Test
+    public void ungroupedIsSeparateFromDefaultGroup() {
+        CacheGroupMetrics ungrouped = new CacheGroupMetrics(_metricRegistry, "", _localStatsSupplier);
+        CacheGroupMetrics defaultGroup = new CacheGroupMetrics(_metricRegistry, "default", _localStatsSupplier);
+
+        ungrouped.hit(false, 1);
+        defaultGroup.miss();
+
+        assertEquals(_metricRegistry.counter(name("ungrouped.hits")).getCount(), 1);
+        assertEquals(_metricRegistry.counter(name("ungrouped.misses")).getCount(), 0);
+        assertEquals(_metricRegistry.counter(name("group.default.hits")).getCount(), 0);
+        assertEquals(_metricRegistry.counter(name("group.default.misses")).getCount(), 1);
+    }
+
+    @Test
+    public void localStats() {
+        new CacheGroupMetrics(_metricRegistry, "group", _localStatsSupplier);
+        new CacheGroupMetrics(_metricRegistry, "other", _localStatsSupplier);
+
+        CacheGroupMetrics.LocalStats stats = new CacheGroupMetrics.LocalStats();
+        stats.count = 3;
+        stats.weight = 300;
+        _localStats = ImmutableMap.of("group", stats);
+
+        assertEquals(_metricRegistry.getGauges().get(name("group.group.local-count")).getValue(), 3L);
+        assertEquals(_metricRegistry.getGauges().get(name("group.group.local-weight")).getValue(), 300L);
+        assertEquals(_metricRegistry.getGauges().get(name("group.other.local-count")).getValue(), 0L);
+    }
+
+    private static String name(String metric) {
+        return ResponseCache.class.getName() + "." + metric;
+    }
+}
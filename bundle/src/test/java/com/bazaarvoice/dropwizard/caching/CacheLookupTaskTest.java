@@ -0,0 +1,90 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMultimap;
+import com.sun.jersey.core.util.MultivaluedMapImpl;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.ws.rs.core.MultivaluedMap;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Tests for {@link com.bazaarvoice.dropwizard.caching.CacheLookupTask}.
+ */
+public class CacheLookupTaskTest {
+    private ResponseStore _store;
+    private CacheLookupTask _task;
+
+    @BeforeMethod
+    public void setUp() {
+        MultivaluedMap<String, String> headers = new MultivaluedMapImpl();
+        headers.add("Content-Type", "text/plain");
+
+        Cache<String, CachedResponse> localCache = CacheBuilder.newBuilder().build();
+        localCache.put("GET:/local#abc", new CachedResponse(200, headers, new byte[12]));
+
+        _store = mock(ResponseStore.class);
+        when(_store.get("GET:/stored#abc")).thenReturn(Optional.of(new CachedResponse(404, headers, new byte[3])));
+        when(_store.get("GET:/missing#abc")).thenReturn(Optional.<CachedResponse>absent());
+
+        _task = new CacheLookupTask(new ResponseCache(localCache, _store, new MetricRegistry()));
+    }
+
+    @Test
+    public void localEntry() throws Exception {
+        String output = execute(ImmutableMultimap.of("key", "GET:/local#abc"));
+
+        assertTrue(output.contains("key: GET:/local#abc\nsource: local\nstatus: 200\n"), output);
+        assertTrue(output.contains("size: 12\n"), output);
+        assertTrue(output.contains("Content-Type: text/plain\n"), output);
+    }
+
+    @Test
+    public void storeOnlyWhenRequested() throws Exception {
+        String output = execute(ImmutableMultimap.of("key", "GET:/stored#abc"));
+
+        assertTrue(output.contains("key: GET:/stored#abc\nnot found\n"), output);
+        verify(_store, never()).get("GET:/stored#abc");
+    }
+
+    @Test
+    public void storeEntry() throws Exception {
+        String output = execute(ImmutableMultimap.of("key", "GET:/stored#abc", "key", "GET:/missing#abc", "store", "true"));
+
+        assertTrue(output.contains("key: GET:/stored#abc\nsource: store\nstatus: 404\n"), output);
+        assertTrue(output.contains("size: 3\n"), output);
+        assertTrue(output.contains("key: GET:/missing#abc\nnot found\n"), output);
+    }
+
+    private String execute(ImmutableMultimap<String, String> parameters) throws Exception {
+        StringWriter output = new StringWriter();
+        _task.execute(parameters, new PrintWriter(output));
+        return output.toString().replace(System.getProperty("line.separator"), "\n");
+    }
+}
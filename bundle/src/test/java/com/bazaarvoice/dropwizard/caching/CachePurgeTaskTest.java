@@ -0,0 +1,86 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.sun.jersey.core.util.MultivaluedMapImpl;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Tests for {@link com.bazaarvoice.dropwizard.caching.CachePurgeTask}.
+ */
+public class CachePurgeTaskTest {
+    private Cache<String, CachedResponse> _localCache;
+    private ResponseStore _store;
+    private CachePurgeTask _task;
+
+    @BeforeMethod
+    public void setUp() {
+        _localCache = CacheBuilder.newBuilder().build();
+        _store = mock(ResponseStore.class);
+        _task = new CachePurgeTask(new ResponseCache(_localCache, _store, new MetricRegistry()));
+
+        for (String key : new String[]{"GET:/a#abc", "GET:/b#abc@group", "GET:/c#abc@group", "GET:/d#abc@other"}) {
+            _localCache.put(key, new CachedResponse(200, new MultivaluedMapImpl(), new byte[0]));
+        }
+    }
+
+    @Test
+    public void purgeKey() throws Exception {
+        String output = execute(ImmutableMultimap.of("key", "GET:/a#abc"));
+
+        assertEquals(output, "Purged key: GET:/a#abc\n");
+        assertFalse(_localCache.asMap().containsKey("GET:/a#abc"));
+        assertEquals(_localCache.size(), 3);
+        verify(_store).invalidate("GET:/a#abc");
+    }
+
+    @Test
+    public void purgeGroup() throws Exception {
+        String output = execute(ImmutableMultimap.of("group", "group"));
+
+        assertEquals(output, "Purged group: group (2 local entries)\n");
+        assertEquals(_localCache.asMap().keySet(), ImmutableSet.of("GET:/a#abc", "GET:/d#abc@other"));
+    }
+
+    @Test
+    public void purgeAll() throws Exception {
+        String output = execute(ImmutableMultimap.of("all", "true"));
+
+        assertEquals(output, "Purged all local entries\n");
+        assertTrue(_localCache.asMap().isEmpty());
+    }
+
+    private String execute(ImmutableMultimap<String, String> parameters) throws Exception {
+        StringWriter output = new StringWriter();
+        _task.execute(parameters, new PrintWriter(output));
+        return output.toString().replace(System.getProperty("line.separator"), "\n");
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Charsets;
+import com.google.common.base.Functions;
+import com.google.common.base.Optional;
+import com.google.common.base.Suppliers;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.sun.jersey.api.core.HttpContext;
+import com.sun.jersey.api.model.AbstractResourceMethod;
+import com.sun.jersey.api.model.AbstractSubResourceMethod;
+import com.sun.jersey.core.header.InBoundHeaders;
+import com.sun.jersey.core.header.OutBoundHeaders;
+import com.sun.jersey.core.util.MultivaluedMapImpl;
+import com.sun.jersey.server.impl.modelapi.annotation.IntrospectionModeller;
+import com.sun.jersey.spi.container.ContainerRequest;
+import com.sun.jersey.spi.container.ContainerResponse;
+import com.sun.jersey.spi.container.ContainerResponseWriter;
+import com.sun.jersey.spi.container.ResourceMethodDispatchProvider;
+import com.sun.jersey.spi.container.WebApplication;
+import com.sun.jersey.spi.dispatch.RequestDispatcher;
+import org.testng.annotations.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.util.Map;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+/**
+ * Tests for {@link com.bazaarvoice.dropwizard.caching.CacheResourceMethodDispatchAdapter}.
+ */
+public class CacheResourceMethodDispatchAdapterTest {
+    @Test
+    public void captureMetrics() throws Exception {
+        MetricRegistry metricRegistry = new MetricRegistry();
+        Cache<String, CachedResponse> localCache = CacheBuilder.newBuilder().build();
+        ResponseCache cache = new ResponseCache(localCache, ResponseStore.NULL_STORE, new MetricRegistry());
+        CacheRequestContext request = new CacheRequestContext("GET", URI.create("http://host/the/path"), new MultivaluedMapImpl(), "abc");
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        ContainerResponseWriter wrapped = mock(ContainerResponseWriter.class);
+        when(wrapped.writeStatusAndHeaders(anyLong(), any(ContainerResponse.class))).thenReturn(body);
+
+        ContainerResponse response = mock(ContainerResponse.class);
+        when(response.getStatus()).thenReturn(200);
+        when(response.getHttpHeaders()).thenReturn(new OutBoundHeaders());
+
+        CacheResourceMethodDispatchAdapter.CachingResponseWriter writer = new CacheResourceMethodDispatchAdapter.CachingResponseWriter(
+                wrapped, request, cache, Optional.of("max-age=60"), ImmutableMap.<Integer, String>of(),
+                new CacheResourceMethodDispatchAdapter.CaptureMetrics(metricRegistry));
+
+        writer.writeStatusAndHeaders(-1, response).write("hello".getBytes(Charsets.UTF_8));
+        writer.finish();
+
+        String prefix = CacheResourceMethodDispatchAdapter.class.getName();
+        assertEquals(metricRegistry.timer(prefix + ".capture").getCount(), 1);
+        assertEquals(metricRegistry.histogram(prefix + ".capture-size").getSnapshot().getMax(), 5);
+        assertEquals(localCache.size(), 1);
+        assertEquals(new String(body.toByteArray(), Charsets.UTF_8), "hello");
+        verify(wrapped).finish();
+    }
+
+    @Test
+    public void producesVariantsNotLearned() {
+        CacheRoutes routes = new CacheRoutes(100);
+        CacheResourceMethodDispatchAdapter.DispatchProvider dispatchProvider = dispatchProvider(routes);
+        Map<String, RequestDispatcher> dispatchers = Maps.newHashMap();
+
+        for (AbstractSubResourceMethod method : IntrospectionModeller.createResource(VariantResource.class).getSubResourceMethods()) {
+            dispatchers.put(method.getMethod().getName(), dispatchProvider.create(method));
+        }
+
+        dispatch(dispatchers.get("json"), "/items/1");
+        dispatch(dispatchers.get("single"), "/items/single");
+
+        assertNull(routes.get("/items/1"));
+        assertEquals(routes.get("/items/single").group, "items");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void invalidGroupName() {
+        AbstractResourceMethod method = IntrospectionModeller.createResource(InvalidGroupResource.class).getResourceMethods().get(0);
+        dispatchProvider(new CacheRoutes(100)).create(method);
+    }
+
+    private static CacheResourceMethodDispatchAdapter.DispatchProvider dispatchProvider(CacheRoutes routes) {
+        ResponseCache cache = new ResponseCache(CacheBuilder.newBuilder().<String, CachedResponse>build(), ResponseStore.NULL_STORE, new MetricRegistry());
+        ResourceMethodDispatchProvider provider = mock(ResourceMethodDispatchProvider.class);
+        when(provider.create(any(AbstractResourceMethod.class))).thenReturn(mock(RequestDispatcher.class));
+
+        return new CacheResourceMethodDispatchAdapter.DispatchProvider(
+                provider, cache, Functions.forMap(ImmutableMap.<String, Optional<String>>of(), Optional.<String>absent()),
+                Functions.<String, Map<Integer, String>>forMap(ImmutableMap.<String, Map<Integer, String>>of(), ImmutableMap.<Integer, String>of()),
+                ImmutableMap.<String, VaryNormalizer>of(), Optional.of(routes), Suppliers.<HttpServletRequest>ofInstance(null),
+                new CacheResourceMethodDispatchAdapter.CaptureMetrics(new MetricRegistry()));
+    }
+
+    private static void dispatch(RequestDispatcher dispatcher, String path) {
+        ContainerRequest request = new ContainerRequest(mock(WebApplication.class), "GET", URI.create("http://host/"),
+                URI.create("http://host" + path), new InBoundHeaders(), new ByteArrayInputStream(new byte[0]));
+        ContainerResponse response = mock(ContainerResponse.class);
+        when(response.getHttpHeaders()).thenReturn(new OutBoundHeaders());
+        when(response.getContainerResponseWriter()).thenReturn(mock(ContainerResponseWriter.class));
+
+        HttpContext context = mock(HttpContext.class);
+        when(context.getRequest()).thenReturn(request);
+        when(context.getResponse()).thenReturn(response);
+
+        dispatcher.dispatch(new VariantResource(), context);
+    }
+
+    @Path("/items")
+    public static class VariantResource {
+        @GET
+        @Path("{id}")
+        @Produces("application/json")
+        @CacheGroup("items")
+        public String json() {
+            return "{}";
+        }
+
+        @GET
+        @Path("{id}")
+        @Produces("text/plain")
+        @CacheGroup("items")
+        public String text() {
+            return "";
+        }
+
+        @GET
+        @Path("single")
+        @CacheGroup("items")
+        public String single() {
+            return "";
+        }
+    }
+
+    @Path("/invalid")
+    public static class InvalidGroupResource {
+        @GET
+        @CacheGroup("bad group")
+        public String get() {
+            return "";
+        }
+    }
+}
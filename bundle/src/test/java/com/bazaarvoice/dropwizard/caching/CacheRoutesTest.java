@@ -0,0 +1,105 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import com.google.common.collect.ImmutableSet;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Set;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Tests for {@link com.bazaarvoice.dropwizard.caching.CacheRoutes}.
+ */
+public class CacheRoutesTest {
+    private static final Set<String> VARY = HttpHeaderUtils.headerNames("Accept");
+
+    private CacheRoutes _routes;
+
+    @BeforeMethod
+    public void setUp() {
+        _routes = new CacheRoutes(100);
+    }
+
+    @Test
+    public void learn() {
+        _routes.learn("/the/path", "group", VARY);
+        _routes.learn("/the/path", "group", VARY);
+
+        CacheRoutes.Route route = _routes.get("/the/path");
+        assertEquals(route.group, "group");
+        assertEquals(route.vary, VARY);
+        assertNull(_routes.get("/other/path"));
+    }
+
+    @Test
+    public void conflictingSettings() {
+        _routes.learn("/the/path", "group", VARY);
+        _routes.learn("/the/path", "other", VARY);
+        assertNull(_routes.get("/the/path"));
+
+        // Stays ambiguous
+        _routes.learn("/the/path", "group", VARY);
+        assertNull(_routes.get("/the/path"));
+    }
+
+    @Test
+    public void conflictingVary() {
+        _routes.learn("/the/path", "group", VARY);
+        _routes.learn("/the/path", "group", ImmutableSet.<String>of());
+        assertNull(_routes.get("/the/path"));
+    }
+
+    @Test
+    public void forget() {
+        _routes.learn("/the/path", "group", VARY);
+        _routes.forget("/the/path");
+        assertNull(_routes.get("/the/path"));
+
+        _routes.learn("/the/path", "group", VARY);
+        assertNull(_routes.get("/the/path"));
+    }
+
+    @Test
+    public void forgetUnknownPath() {
+        _routes.forget("/the/path");
+        _routes.learn("/the/path", "group", VARY);
+        assertEquals(_routes.get("/the/path").group, "group");
+    }
+
+    @Test
+    public void sharedTemplate() {
+        _routes.register("Resource /items");
+        _routes.register("Resource /item");
+        assertFalse(_routes.isShared("Resource /items"));
+
+        _routes.register("Resource /items");
+        assertTrue(_routes.isShared("Resource /items"));
+        assertFalse(_routes.isShared("Resource /item"));
+    }
+
+    @Test
+    public void exclude() {
+        _routes.exclude("/the/path");
+        _routes.learn("/the/path", "group", VARY);
+        assertNull(_routes.get("/the/path"));
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMultimap;
+import com.sun.jersey.core.util.MultivaluedMapImpl;
+import org.testng.annotations.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Tests for {@link com.bazaarvoice.dropwizard.caching.CacheStatsTask}.
+ */
+public class CacheStatsTaskTest {
+    @Test
+    public void printsStats() throws Exception {
+        Cache<String, CachedResponse> localCache = CacheBuilder.newBuilder().recordStats().build();
+        CachedResponse response = new CachedResponse(200, new MultivaluedMapImpl(), new byte[10]);
+        localCache.put("GET:/a#abc", response);
+        localCache.getIfPresent("GET:/a#abc");
+        localCache.getIfPresent("GET:/b#abc");
+
+        StringWriter output = new StringWriter();
+        new CacheStatsTask(new ResponseCache(localCache, ResponseStore.NULL_STORE, new MetricRegistry()))
+                .execute(ImmutableMultimap.<String, String>of(), new PrintWriter(output));
+        String text = output.toString();
+
+        assertTrue(text.contains("entries: 1"), text);
+        assertTrue(text.contains("weight: " + CachedResponseWeigher.INSTANCE.weigh("GET:/a#abc", response)), text);
+        assertTrue(text.contains("requests: 2"), text);
+        assertTrue(text.contains("hits: 1"), text);
+        assertTrue(text.contains("misses: 1"), text);
+        assertTrue(text.contains("hit-rate: 0.5000"), text);
+    }
+}
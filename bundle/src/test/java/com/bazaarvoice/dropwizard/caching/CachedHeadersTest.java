@@ -0,0 +1,107 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import com.google.common.collect.ImmutableList;
+import com.sun.jersey.core.header.OutBoundHeaders;
+import com.sun.jersey.core.util.MultivaluedMapImpl;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.testng.annotations.Test;
+
+import javax.ws.rs.core.MultivaluedMap;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+/**
+ * Tests for {@link com.bazaarvoice.dropwizard.caching.CachedHeaders} and how {@link CachedResponse} holds its headers.
+ */
+public class CachedHeadersTest {
+    @Test
+    public void lookup() {
+        CachedHeaders headers = CachedHeaders.of(ImmutableList.of("Vary", "Accept", "Content-Type", "text/plain", "Vary", "Accept-Encoding"));
+
+        assertEquals(headers.size(), 3);
+        assertEquals(headers.getFirst("content-type"), "text/plain");
+        assertEquals(headers.get("VARY"), ImmutableList.of("Accept", "Accept-Encoding"));
+        assertNull(headers.getFirst("ETag"));
+        assertNull(headers.get("ETag"));
+    }
+
+    @Test
+    public void intern() {
+        CachedHeaders first = CachedHeaders.of(ImmutableList.of("Content-Type", "text/plain")).intern();
+        CachedHeaders second = CachedHeaders.of(ImmutableList.of("Content-Type", new String("text/plain"))).intern();
+
+        assertSame(second, first);
+    }
+
+    @Test
+    public void sharedHeaders() {
+        // Headers unique to this test, so no other response has interned them
+        CachedResponse first = response("text/shared", "Sat, 18 Oct 2014 12:00:00 GMT");
+        CachedResponse second = response("text/shared", "Sat, 18 Oct 2014 12:00:05 GMT");
+
+        // Each response holding the interned headers is charged for them
+        assertSame(second.getHeaders(), first.getHeaders());
+        assertEquals(CachedResponseWeigher.INSTANCE.weigh("key", second), CachedResponseWeigher.INSTANCE.weigh("key", first));
+    }
+
+    @Test
+    public void datesHeldOutsideHeaders() {
+        CachedResponse response = response("text/plain", "Sat, 18 Oct 2014 12:00:00 GMT");
+
+        assertNull(response.getHeaders().getFirst("Date"));
+        assertNull(response.getHeaders().getFirst("Expires"));
+        assertEquals(response.getFirstHeader("date"), "Sat, 18 Oct 2014 12:00:00 GMT");
+        assertEquals(response.getResponseHeaders().getFirst("Expires"), "Sat, 18 Oct 2014 13:00:00 GMT");
+        assertEquals(response.getDate().getMillis(), 1413633600000L);
+        assertEquals(response.getExpires().get().getMillis(), 1413637200000L);
+    }
+
+    @Test
+    public void nonStandardDateKept() {
+        // RFC 850 format is accepted from older servers but can not be reproduced from the parsed value
+        CachedResponse response = response("text/plain", "Saturday, 18-Oct-14 12:00:00 GMT");
+
+        assertEquals(response.getHeaders().getFirst("Date"), "Saturday, 18-Oct-14 12:00:00 GMT");
+        assertEquals(response.getFirstHeader("Date"), "Saturday, 18-Oct-14 12:00:00 GMT");
+        assertFalse(response.getResponseHeaders().get("Date").isEmpty());
+    }
+
+    @Test
+    public void missingDateFromCaller() {
+        MultivaluedMap<String, Object> headers = new OutBoundHeaders();
+        headers.add("Content-Type", "text/plain");
+        DateTime now = new DateTime(1413633600000L, DateTimeZone.UTC);
+
+        CachedResponse response = CachedResponse.build(200, headers, new byte[0], 0, now);
+
+        assertEquals(response.getDate(), now);
+    }
+
+    private static CachedResponse response(String contentType, String date) {
+        MultivaluedMap<String, String> headers = new MultivaluedMapImpl();
+        headers.add("Content-Type", contentType);
+        headers.add("Cache-Control", "max-age=3600");
+        headers.add("Date", date);
+        headers.add("Expires", "Sat, 18 Oct 2014 13:00:00 GMT");
+        return new CachedResponse(200, headers, new byte[0]);
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import com.sun.jersey.core.header.OutBoundHeaders;
+import org.testng.annotations.Test;
+
+import javax.ws.rs.core.MultivaluedMap;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Tests for {@link com.bazaarvoice.dropwizard.caching.CachedResponseWeigher}.
+ */
+public class CachedResponseWeigherTest {
+    // Sizes on a 64-bit JVM with compressed references, worked out by hand from the objects each one covers
+    private static final int ENTRY = 92;
+    private static final int RESPONSE = 72;
+    private static final int HEADERS = 68;
+    private static final int HEAP_BUFFER = 48;
+    private static final int DIRECT_BUFFER = 136;
+    private static final int ARRAY_HEADER = 16;
+
+    @Test
+    public void weightGrowsWithContent() {
+        CachedResponse small = response(0, 10);
+        CachedResponse large = response(1, 1010);
+
+        assertEquals(weigh(large) - weigh(small), 1000);
+        assertTrue(weigh("a-much-longer-cache-key", small) > weigh(small));
+    }
+
+    @Test
+    public void knownWeight() {
+        CachedResponse response = response("\"known\"", 10);
+
+        int expected = ENTRY + string("key") + RESPONSE
+                + HEADERS + align(ARRAY_HEADER + 2 * 2 * 4)
+                + string("Content-Type") + string("text/plain") + string("ETag") + string("\"known\"")
+                + HEAP_BUFFER + align(ARRAY_HEADER + 10);
+
+        assertEquals(weigh(response), expected);
+        assertEquals(expected, 624);
+    }
+
+    @Test
+    public void repeatedHeaderNameCountedOnce() {
+        CachedResponse one = response("\"vary-one\"", 10, "Accept");
+        CachedResponse two = response("\"vary-two\"", 10, "Accept", "Accept-Encoding");
+
+        // One more name and value pair in the header array and the second value, but not the name again
+        int expected = align(ARRAY_HEADER + 4 * 2 * 4) - align(ARRAY_HEADER + 3 * 2 * 4) + string("Accept-Encoding");
+
+        assertEquals(weigh(two) - weigh(one), expected);
+    }
+
+    @Test
+    public void directContent() {
+        CachedResponse heap = response("\"direct\"", 10);
+        CachedResponse direct = heap.withDirectContent();
+
+        assertEquals(weigh(direct) - weigh(heap), DIRECT_BUFFER + 10 - HEAP_BUFFER - align(ARRAY_HEADER + 10));
+    }
+
+    @Test
+    public void sharedHeadersAndContent() {
+        CachedResponse first = response("\"shared\"", 10);
+        CachedResponse second = response("\"shared\"", 10);
+        CachedResponse shared = second.withSharedContent(first.contentBuffer());
+
+        // Both responses are charged for the interned headers. The pool charges the body.
+        assertSame(second.getHeaders(), first.getHeaders());
+        assertEquals(weigh(shared), weigh(first) - HEAP_BUFFER - align(ARRAY_HEADER + 10));
+        assertEquals(CachedResponseWeigher.weighContent(shared.contentBuffer()), HEAP_BUFFER + align(ARRAY_HEADER + 10));
+    }
+
+    private static CachedResponse response(String etag, int contentLength, String... vary) {
+        MultivaluedMap<String, Object> headers = new OutBoundHeaders();
+        headers.add("Content-Type", "text/plain");
+        headers.add("ETag", etag);
+
+        for (String value : vary) {
+            headers.add("Vary", value);
+        }
+
+        return CachedResponse.build(200, headers, new byte[contentLength]);
+    }
+
+    private static CachedResponse response(int index, int contentLength) {
+        MultivaluedMap<String, Object> headers = new OutBoundHeaders();
+        headers.add(copy("Date"), copy("Sat, 18 Oct 2014 12:00:00 GMT"));
+        headers.add(copy("Expires"), copy("Sat, 18 Oct 2014 13:00:00 GMT"));
+        headers.add(copy("Cache-Control"), copy("max-age=3600"));
+        headers.add(copy("Content-Type"), copy("application/json"));
+        headers.add(copy("ETag"), "\"" + index + "\"");
+        headers.add(copy("Vary"), copy("Accept"));
+        headers.add(copy("Vary"), copy("Accept-Encoding"));
+        return CachedResponse.build(200, headers, new byte[contentLength]);
+    }
+
+    /**
+     * Copy of a string that does not share its characters with the original, as with headers read off the wire.
+     */
+    private static String copy(String value) {
+        return new String(value.toCharArray());
+    }
+
+    private static int weigh(CachedResponse response) {
+        return weigh("key", response);
+    }
+
+    private static int weigh(String key, CachedResponse response) {
+        return CachedResponseWeigher.INSTANCE.weigh(key, response);
+    }
+
+    /**
+     * String object and its char array.
+     */
+    private static int string(String value) {
+        return align(12 + 4 + 4) + align(ARRAY_HEADER + 2 * value.length());
+    }
+
+    private static int align(int size) {
+        return (size + 7) & ~7;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import com.google.common.base.Function;
+import com.sun.jersey.core.util.MultivaluedMapImpl;
+import io.dropwizard.jackson.Jackson;
+import org.testng.annotations.Test;
+
+import java.net.URI;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * Tests for {@link CachingConfiguration}.
+ */
+public class CachingConfigurationTest {
+    private static final ObjectMapper YAML = new ObjectMapper(new YAMLFactory());
+    private static final ObjectMapper MAPPER = Jackson.newObjectMapper();
+
+    @Test
+    public void groupKeyStrategies() throws Exception {
+        CachingConfiguration config = parse("" +
+                "keyStrategy:\n" +
+                "  type: canonical\n" +
+                "groupKeyStrategies:\n" +
+                "  - group: legacy-*\n" +
+                "    strategy:\n" +
+                "      type: raw\n" +
+                "  - groupRegex: report[0-9]+\n" +
+                "    strategy:\n" +
+                "      type: raw\n");
+        Function<String, CacheKeyStrategy> mapper = config.buildKeyStrategyMapper();
+
+        assertEquals(resourceKey(mapper, "legacy-items"), "/items?b=2&a=1");
+        assertEquals(resourceKey(mapper, "report12"), "/items?b=2&a=1");
+        assertEquals(resourceKey(mapper, "items"), "/items?a=1&b=2");
+        assertEquals(resourceKey(mapper, ""), "/items?a=1&b=2");
+    }
+
+    @Test
+    public void firstMatchingGroupKeyStrategy() throws Exception {
+        CachingConfiguration config = parse("" +
+                "groupKeyStrategies:\n" +
+                "  - group: legacy\n" +
+                "    strategy:\n" +
+                "      type: raw\n" +
+                "  - group: '*'\n" +
+                "    strategy:\n" +
+                "      type: canonical\n");
+        Function<String, CacheKeyStrategy> mapper = config.buildKeyStrategyMapper();
+
+        assertEquals(resourceKey(mapper, "legacy"), "/items?b=2&a=1");
+        assertEquals(resourceKey(mapper, "other"), "/items?a=1&b=2");
+    }
+
+    private static String resourceKey(Function<String, CacheKeyStrategy> mapper, String group) {
+        CacheRequestContext request = new CacheRequestContext("GET", URI.create("http://host/items?b=2&a=1"), new MultivaluedMapImpl(), "abc");
+        return mapper.apply(group).buildResourceKey(request);
+    }
+
+    private static CachingConfiguration parse(String yaml) throws Exception {
+        return MAPPER.treeToValue(YAML.readTree(yaml), CachingConfiguration.class);
+    }
+}
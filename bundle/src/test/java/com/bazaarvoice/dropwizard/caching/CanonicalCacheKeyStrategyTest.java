@@ -0,0 +1,70 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import com.google.common.collect.ImmutableSet;
+import com.sun.jersey.core.util.MultivaluedMapImpl;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.net.URI;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * Tests for {@link com.bazaarvoice.dropwizard.caching.CanonicalCacheKeyStrategy}.
+ */
+public class CanonicalCacheKeyStrategyTest {
+    private static final CacheKeyStrategy STRATEGY = new CanonicalCacheKeyStrategy(true, true, ImmutableSet.of("_", "utm_*"));
+
+    @DataProvider
+    public Object[][] buildResourceKeyData() {
+        return new Object[][]{
+                {"http://host/the/path", "/the/path"},
+                {"http://host/the/path?", "/the/path"},
+                {"http://host/the/path?b=2&a=1", "/the/path?a=1&b=2"},
+                {"http://host/the/path?a=2&b=1&a=1", "/the/path?a=2&a=1&b=1"},
+                {"http://host/the/path?a=1&utm_source=x&utm_medium=y&_=12345", "/the/path?a=1"},
+                {"http://host/the/path?utm_source=x", "/the/path"},
+                {"http://host/the/path?b=x%2cy&a=%7e+1", "/the/path?a=~%201&b=x%2Cy"},
+                {"http://host/the/path?a=~%201&b=x,y", "/the/path?a=~%201&b=x%2Cy"},
+                {"http://host/the/path?a&b=", "/the/path?a&b="},
+                {"http://host/the/path?&&a=1&&", "/the/path?a=1"},
+                {"http://host/the%7epath/a%2fb%3a", "/the~path/a%2Fb%3A"},
+                {"http://host/%75tm?%75tm_source=x", "/utm"},
+        };
+    }
+
+    @Test(dataProvider = "buildResourceKeyData")
+    public void buildResourceKey(String uri, String resourceKey) {
+        assertEquals(STRATEGY.buildResourceKey(request(uri)), resourceKey);
+    }
+
+    @Test
+    public void noNormalization() {
+        CacheKeyStrategy strategy = new CanonicalCacheKeyStrategy(false, false, ImmutableSet.of("utm_*"));
+        assertEquals(strategy.buildResourceKey(request("http://host/p%7e?b=%2c&utm_source=x&a")), "/p%7e?b=%2c&a");
+    }
+
+    @Test
+    public void raw() {
+        assertEquals(CacheKeyStrategy.RAW.buildResourceKey(request("http://host/p%7e?b=%2c&a")), "/p%7e?b=%2c&a");
+    }
+
+    private static CacheRequestContext request(String uri) {
+        return new CacheRequestContext("GET", URI.create(uri), new MultivaluedMapImpl(), "abc");
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Tests for {@link CircuitBreaker}.
+ */
+public class CircuitBreakerTest {
+    private static final long SLOW_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final long OPEN_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    @Test
+    public void stays_closed_below_minimum_calls() {
+        CircuitBreaker breaker = new CircuitBreaker(0.5, SLOW_NANOS, 4, WINDOW_NANOS, OPEN_NANOS, new FakeTicker());
+        fail(breaker, 3);
+        assertEquals(breaker.getState(), CircuitBreaker.State.CLOSED);
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void stays_closed_below_failure_rate() {
+        CircuitBreaker breaker = new CircuitBreaker(0.5, SLOW_NANOS, 4, WINDOW_NANOS, OPEN_NANOS, new FakeTicker());
+        succeed(breaker, 3);
+        fail(breaker, 2);
+        assertEquals(breaker.getState(), CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    public void opens_at_failure_rate() {
+        CircuitBreaker breaker = new CircuitBreaker(0.5, SLOW_NANOS, 4, WINDOW_NANOS, OPEN_NANOS, new FakeTicker());
+        succeed(breaker, 2);
+        fail(breaker, 2);
+        assertEquals(breaker.getState(), CircuitBreaker.State.OPEN);
+        assertFalse(breaker.allowRequest());
+        assertEquals(breaker.getOpens(), 1);
+    }
+
+    @Test
+    public void slow_calls_count_as_failures() {
+        CircuitBreaker breaker = new CircuitBreaker(0.5, SLOW_NANOS, 4, WINDOW_NANOS, OPEN_NANOS, new FakeTicker());
+
+        for (int i = 0; i < 4; i += 1) {
+            assertTrue(breaker.allowRequest());
+            breaker.onSuccess(SLOW_NANOS);
+        }
+
+        assertEquals(breaker.getState(), CircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    public void window_resets_counts() {
+        FakeTicker ticker = new FakeTicker();
+        CircuitBreaker breaker = new CircuitBreaker(0.5, SLOW_NANOS, 4, WINDOW_NANOS, OPEN_NANOS, ticker);
+        fail(breaker, 3);
+        ticker.advance(WINDOW_NANOS);
+        fail(breaker, 1);
+        assertEquals(breaker.getState(), CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    public void half_open_probe_success_closes() {
+        FakeTicker ticker = new FakeTicker();
+        CircuitBreaker breaker = new CircuitBreaker(0.5, SLOW_NANOS, 1, WINDOW_NANOS, OPEN_NANOS, ticker);
+        fail(breaker, 1);
+        assertFalse(breaker.allowRequest());
+
+        ticker.advance(OPEN_NANOS);
+        assertTrue(breaker.allowRequest());
+        assertEquals(breaker.getState(), CircuitBreaker.State.HALF_OPEN);
+
+        // Only one probe at a time
+        assertFalse(breaker.allowRequest());
+
+        breaker.onSuccess(0);
+        assertEquals(breaker.getState(), CircuitBreaker.State.CLOSED);
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void half_open_probe_failure_reopens() {
+        FakeTicker ticker = new FakeTicker();
+        CircuitBreaker breaker = new CircuitBreaker(0.5, SLOW_NANOS, 1, WINDOW_NANOS, OPEN_NANOS, ticker);
+        fail(breaker, 1);
+
+        ticker.advance(OPEN_NANOS);
+        assertTrue(breaker.allowRequest());
+        breaker.onFailure();
+
+        assertEquals(breaker.getState(), CircuitBreaker.State.OPEN);
+        assertFalse(breaker.allowRequest());
+        assertEquals(breaker.getOpens(), 2);
+    }
+
+    @Test
+    public void closing_starts_new_window() {
+        FakeTicker ticker = new FakeTicker();
+        CircuitBreaker breaker = new CircuitBreaker(0.5, SLOW_NANOS, 2, WINDOW_NANOS, OPEN_NANOS, ticker);
+        fail(breaker, 2);
+
+        ticker.advance(OPEN_NANOS);
+        succeed(breaker, 1);
+        fail(breaker, 1);
+
+        assertEquals(breaker.getState(), CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    public void concurrent_failures_open_once() throws Exception {
+        final CircuitBreaker breaker = new CircuitBreaker(0.5, SLOW_NANOS, 100, WINDOW_NANOS, OPEN_NANOS, new FakeTicker());
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = Lists.newArrayList();
+
+        for (int i = 0; i < 8; i += 1) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    Uninterruptibles.awaitUninterruptibly(start);
+
+                    for (int j = 0; j < 1000; j += 1) {
+                        breaker.onFailure();
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+
+        start.countDown();
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(breaker.getState(), CircuitBreaker.State.OPEN);
+        assertEquals(breaker.getOpens(), 1);
+    }
+
+    private static void succeed(CircuitBreaker breaker, int calls) {
+        for (int i = 0; i < calls; i += 1) {
+            assertTrue(breaker.allowRequest());
+            breaker.onSuccess(0);
+        }
+    }
+
+    private static void fail(CircuitBreaker breaker, int calls) {
+        for (int i = 0; i < calls; i += 1) {
+            assertTrue(breaker.allowRequest());
+            breaker.onFailure();
+        }
+    }
+
+    private static class FakeTicker extends Ticker {
+        private long _nanos;
+
+        @Override
+        public long read() {
+            return _nanos;
+        }
+
+        void advance(long nanos) {
+            _nanos += nanos;
+        }
+    }
+}
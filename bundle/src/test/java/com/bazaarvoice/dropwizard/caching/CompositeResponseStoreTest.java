@@ -0,0 +1,162 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+
+/**
+ * Tests for {@link CompositeResponseStore}.
+ */
+public class CompositeResponseStoreTest {
+    @Test
+    public void get_promotes() {
+        ResponseStore tier1 = store();
+        ResponseStore tier2 = store();
+        ResponseStore tier3 = store();
+        CachedResponse response = mock(CachedResponse.class);
+        when(tier3.get("key")).thenReturn(Optional.of(response));
+
+        CompositeResponseStore store = new CompositeResponseStore(ImmutableList.of(tier1, tier2, tier3), CompositeResponseStore.WritePolicy.ALL, true);
+
+        assertSame(store.get("key").get(), response);
+        verify(tier1).put("key", response);
+        verify(tier2).put("key", response);
+        verify(tier3, never()).put("key", response);
+    }
+
+    @Test
+    public void get_stops_at_first_hit() {
+        ResponseStore tier1 = store();
+        ResponseStore tier2 = store();
+        CachedResponse response = mock(CachedResponse.class);
+        when(tier1.get("key")).thenReturn(Optional.of(response));
+
+        CompositeResponseStore store = new CompositeResponseStore(ImmutableList.of(tier1, tier2), CompositeResponseStore.WritePolicy.ALL, true);
+
+        assertSame(store.get("key").get(), response);
+        verify(tier2, never()).get("key");
+        verify(tier1, never()).put("key", response);
+    }
+
+    @Test
+    public void get_without_promotion() {
+        ResponseStore tier1 = store();
+        ResponseStore tier2 = store();
+        CachedResponse response = mock(CachedResponse.class);
+        when(tier2.get("key")).thenReturn(Optional.of(response));
+
+        CompositeResponseStore store = new CompositeResponseStore(ImmutableList.of(tier1, tier2), CompositeResponseStore.WritePolicy.ALL, false);
+
+        assertSame(store.get("key").get(), response);
+        verify(tier1, never()).put("key", response);
+    }
+
+    @Test
+    public void get_miss() {
+        CompositeResponseStore store = new CompositeResponseStore(ImmutableList.of(store(), store()), CompositeResponseStore.WritePolicy.ALL, true);
+        assertFalse(store.get("key").isPresent());
+    }
+
+    @DataProvider
+    public static Object[][] putData() {
+        return new Object[][]{
+                {CompositeResponseStore.WritePolicy.ALL, true, true},
+                {CompositeResponseStore.WritePolicy.FIRST, true, false},
+                {CompositeResponseStore.WritePolicy.LAST, false, true}
+        };
+    }
+
+    @Test(dataProvider = "putData")
+    public void put(CompositeResponseStore.WritePolicy writePolicy, boolean writeFirst, boolean writeLast) {
+        ResponseStore tier1 = store();
+        ResponseStore tier2 = store();
+        CachedResponse response = mock(CachedResponse.class);
+
+        new CompositeResponseStore(ImmutableList.of(tier1, tier2), writePolicy, true).put("key", response);
+
+        verify(tier1, writeFirst ? times(1) : never()).put("key", response);
+        verify(tier2, writeLast ? times(1) : never()).put("key", response);
+    }
+
+    @Test
+    public void invalidate_all_tiers() {
+        ResponseStore tier1 = store();
+        ResponseStore tier2 = store();
+
+        new CompositeResponseStore(ImmutableList.of(tier1, tier2), CompositeResponseStore.WritePolicy.FIRST, true).invalidate("key");
+
+        verify(tier1).invalidate("key");
+        verify(tier2).invalidate("key");
+    }
+
+    @Test
+    public void awaitMiss_promotes() {
+        ResponseStore tier1 = store();
+        ResponseStore tier2 = store();
+        CachedResponse response = mock(CachedResponse.class);
+        when(tier2.awaitMiss("key", Optional.<CachedResponse>absent())).thenReturn(Optional.of(response));
+
+        CompositeResponseStore store = new CompositeResponseStore(ImmutableList.of(tier1, tier2), CompositeResponseStore.WritePolicy.ALL, true);
+
+        assertSame(store.awaitMiss("key", Optional.<CachedResponse>absent()).get(), response);
+        verify(tier1).put("key", response);
+    }
+
+    @Test
+    public void awaitMiss_does_not_promote_stale() {
+        ResponseStore tier1 = store();
+        ResponseStore tier2 = store();
+        CachedResponse stale = mock(CachedResponse.class);
+        when(tier2.awaitMiss("key", Optional.of(stale))).thenReturn(Optional.of(stale));
+
+        CompositeResponseStore store = new CompositeResponseStore(ImmutableList.of(tier1, tier2), CompositeResponseStore.WritePolicy.ALL, true);
+
+        assertSame(store.awaitMiss("key", Optional.of(stale)).get(), stale);
+        verify(tier1, never()).put("key", stale);
+    }
+
+    @Test
+    public void releaseMiss_all_tiers() {
+        ResponseStore tier1 = store();
+        ResponseStore tier2 = store();
+
+        new CompositeResponseStore(ImmutableList.of(tier1, tier2), CompositeResponseStore.WritePolicy.FIRST, true).releaseMiss("key");
+
+        verify(tier1).releaseMiss("key");
+        verify(tier2).releaseMiss("key");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ResponseStore store() {
+        ResponseStore store = mock(ResponseStore.class);
+        when(store.get("key")).thenReturn(Optional.<CachedResponse>absent());
+        when(store.awaitMiss(eq("key"), any(Optional.class))).thenReturn(Optional.<CachedResponse>absent());
+        return store;
+    }
+}
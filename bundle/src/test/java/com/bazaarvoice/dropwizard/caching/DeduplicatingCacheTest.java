@@ -0,0 +1,204 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.sun.jersey.core.util.MultivaluedMapImpl;
+import io.dropwizard.util.Size;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.Callable;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Tests for {@link com.bazaarvoice.dropwizard.caching.DeduplicatingCache}.
+ */
+public class DeduplicatingCacheTest {
+    private MetricRegistry _metricRegistry;
+    private DeduplicatingCache.ContentPool _pool;
+    private DeduplicatingCache _cache;
+
+    @BeforeMethod
+    public void setUp() {
+        _metricRegistry = new MetricRegistry();
+        _pool = new DeduplicatingCache.ContentPool(Long.MAX_VALUE);
+        _cache = new DeduplicatingCache(CacheBuilder.newBuilder().removalListener(_pool).build(), _pool, false, _metricRegistry);
+    }
+
+    @Test
+    public void sharesIdenticalBodies() {
+        _cache.put("key-1", response("body"));
+        _cache.put("key-2", response("body"));
+
+        CachedResponse first = _cache.getIfPresent("key-1");
+        CachedResponse second = _cache.getIfPresent("key-2");
+
+        assertSame(second.getResponseContent(), first.getResponseContent());
+        assertTrue(first.isContentShared());
+        assertTrue(second.isContentShared());
+        assertEquals(second, response("body"));
+        assertEquals(deduplicated(), 1);
+        assertEquals(_pool.size(), 1);
+    }
+
+    @Test
+    public void pooledBodyChargedOnce() {
+        _cache.put("key-1", response("body"));
+        _cache.put("key-2", response("body"));
+
+        int first = CachedResponseWeigher.INSTANCE.weigh("key-1", _cache.getIfPresent("key-1"));
+        int unpooled = CachedResponseWeigher.INSTANCE.weigh("key-1", response("body"));
+
+        assertEquals(CachedResponseWeigher.INSTANCE.weigh("key-2", _cache.getIfPresent("key-2")), first);
+        assertEquals(_pool.getContentWeight(), unpooled - first);
+    }
+
+    @Test
+    public void pooledBodyReleasedWithLastHolder() {
+        _cache.put("key-1", response("body"));
+        _cache.put("key-2", response("body"));
+
+        _cache.invalidate("key-1");
+        assertTrue(_cache.getIfPresent("key-2").isContentShared());
+        assertEquals(_pool.size(), 1);
+
+        _cache.invalidate("key-2");
+        assertEquals(_pool.size(), 0);
+        assertEquals(_pool.getContentWeight(), 0);
+    }
+
+    @Test
+    public void replacedHolderReleased() {
+        _cache.put("key-1", response("body"));
+        _cache.put("key-1", response("other"));
+
+        assertEquals(_pool.size(), 1);
+        assertEquals(_cache.getIfPresent("key-1"), response("other"));
+    }
+
+    @Test
+    public void rejectedHolderReleased() {
+        DeduplicatingCache.ContentPool pool = new DeduplicatingCache.ContentPool(Long.MAX_VALUE);
+        DeduplicatingCache cache = new DeduplicatingCache(CacheBuilder.newBuilder().maximumSize(0).removalListener(pool).build(), pool, false, _metricRegistry);
+        cache.put("key-1", response("body"));
+
+        assertEquals(cache.size(), 0);
+        assertEquals(pool.size(), 0);
+    }
+
+    @Test
+    public void identicalBodiesExceedBodyBudget() {
+        // Without the pool, only maximumSize / bodySize = 10 responses would fit
+        LocalCacheConfiguration config = new LocalCacheConfiguration();
+        config.setMaximumSize(Optional.of(Size.kilobytes(100)));
+        config.setDeduplicate(true);
+        Cache<String, CachedResponse> cache = config.buildCache(_metricRegistry);
+
+        for (int i = 0; i < 50; i++) {
+            cache.put("key-" + i, new CachedResponse(200, new MultivaluedMapImpl(), new byte[10 * 1024]));
+        }
+
+        assertTrue(cache.size() > 10, "size: " + cache.size());
+        assertEquals(cache.size(), 50);
+    }
+
+    @Test
+    public void pooledBodiesCountAgainstBudget() {
+        DeduplicatingCache.ContentPool pool = new DeduplicatingCache.ContentPool(100 * 1024);
+        DeduplicatingCache cache = new DeduplicatingCache(CacheBuilder.newBuilder().removalListener(pool).build(), pool, false, _metricRegistry);
+
+        for (int i = 0; i < 50; i++) {
+            byte[] body = new byte[10 * 1024];
+            body[0] = (byte) i;
+            cache.put("key-" + i, new CachedResponse(200, new MultivaluedMapImpl(), body));
+        }
+
+        assertTrue(cache.size() < 10, "size: " + cache.size());
+        assertEquals(pool.size(), cache.size());
+        assertFalse(pool.isOverBudget());
+    }
+
+    @Test
+    public void distinctBodies() {
+        _cache.put("key-1", response("body"));
+        _cache.put("key-2", response("other"));
+
+        assertNotSame(_cache.getIfPresent("key-2").getResponseContent(), _cache.getIfPresent("key-1").getResponseContent());
+        assertEquals(deduplicated(), 0);
+        assertEquals(_pool.size(), 2);
+    }
+
+    @Test
+    public void replacementShares() {
+        _cache.put("key-1", response("body"));
+        _cache.put("key-2", response("body"));
+        _cache.put("key-1", response("body"));
+
+        assertTrue(_cache.getIfPresent("key-1").isContentShared());
+        assertSame(_cache.getIfPresent("key-1").getResponseContent(), _cache.getIfPresent("key-2").getResponseContent());
+        assertEquals(deduplicated(), 2);
+    }
+
+    @Test
+    public void sharesLoadedBodies() throws Exception {
+        _cache.put("key-1", response("body"));
+
+        CachedResponse loaded = _cache.get("key-2", new Callable<CachedResponse>() {
+            @Override
+            public CachedResponse call() {
+                return response("body");
+            }
+        });
+
+        assertTrue(loaded.isContentShared());
+        assertSame(loaded.getResponseContent(), _cache.getIfPresent("key-1").getResponseContent());
+    }
+
+    @Test
+    public void sharesDirectBodies() {
+        DeduplicatingCache.ContentPool pool = new DeduplicatingCache.ContentPool(Long.MAX_VALUE);
+        DeduplicatingCache cache = new DeduplicatingCache(CacheBuilder.newBuilder().removalListener(pool).build(), pool, true, _metricRegistry);
+        cache.put("key-1", response("body"));
+        cache.put("key-2", response("body"));
+        cache.put("key-3", response("other"));
+
+        CachedResponse first = cache.getIfPresent("key-1");
+        CachedResponse second = cache.getIfPresent("key-2");
+
+        assertTrue(first.isContentDirect());
+        assertTrue(cache.getIfPresent("key-3").isContentDirect());
+        assertSame(second.contentBuffer(), first.contentBuffer());
+        assertTrue(second.isContentShared());
+        assertEquals(second, response("body"));
+    }
+
+    private long deduplicated() {
+        return _metricRegistry.counter("com.bazaarvoice.dropwizard.caching.ResponseCache.local-deduplicated").getCount();
+    }
+
+    private static CachedResponse response(String body) {
+        return new CachedResponse(200, new MultivaluedMapImpl(), body.getBytes());
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeUtils;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+
+/**
+ * Tests for {@link com.bazaarvoice.dropwizard.caching.HttpClock}.
+ */
+public class HttpClockTest {
+    @Test
+    public void now() {
+        ManualMillis millis = new ManualMillis(784887151500L);
+        HttpClock clock = new HttpClock(millis);
+
+        assertEquals(clock.now().getMillis(), 784887151000L);
+        assertEquals(clock.epochSeconds(), 784887151L);
+        assertEquals(clock.nowAsString(), "Tue, 15 Nov 1994 08:12:31 GMT");
+    }
+
+    @Test
+    public void sameSecond() {
+        ManualMillis millis = new ManualMillis(784887151000L);
+        HttpClock clock = new HttpClock(millis);
+        DateTime first = clock.now();
+
+        millis.value = 784887151999L;
+        assertSame(clock.now(), first);
+
+        millis.value = 784887152000L;
+        assertNotSame(clock.now(), first);
+        assertEquals(clock.now().getMillis(), 784887152000L);
+        assertEquals(clock.nowAsString(), "Tue, 15 Nov 1994 08:12:32 GMT");
+    }
+
+    @Test
+    public void epochSeconds() {
+        assertEquals(HttpClock.epochSeconds(1999), 1);
+        assertEquals(HttpClock.epochSeconds(0), 0);
+        assertEquals(HttpClock.epochSeconds(-1), -1);
+        assertEquals(HttpClock.epochSeconds(-1000), -1);
+        assertEquals(HttpClock.epochSeconds(-1001), -2);
+    }
+
+    private static class ManualMillis implements DateTimeUtils.MillisProvider {
+        long value;
+
+        ManualMillis(long value) {
+            this.value = value;
+        }
+
+        @Override
+        public long getMillis() {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import com.google.common.base.Predicates;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.sun.jersey.core.util.MultivaluedMapImpl;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+/**
+ * Tests for {@link com.bazaarvoice.dropwizard.caching.PartitionedCache}.
+ */
+public class PartitionedCacheTest {
+    private Cache<String, CachedResponse> _defaultCache;
+    private Cache<String, CachedResponse> _searchCache;
+    private PartitionedCache _cache;
+
+    @BeforeMethod
+    public void setUp() {
+        _defaultCache = CacheBuilder.newBuilder().recordStats().build();
+        _searchCache = CacheBuilder.newBuilder().recordStats().maximumSize(1).build();
+        _cache = new PartitionedCache(_defaultCache, ImmutableList.of(
+                new PartitionedCache.Partition(Predicates.equalTo("search"), _searchCache)));
+    }
+
+    @Test
+    public void routesByGroup() {
+        CachedResponse response = response();
+        _cache.put("GET:/products#abc", response);
+        _cache.put("GET:/products#abc@products", response);
+        _cache.put("GET:/search?q=a#abc@search", response);
+
+        assertEquals(_defaultCache.asMap().keySet(), ImmutableSet.of("GET:/products#abc", "GET:/products#abc@products"));
+        assertEquals(_searchCache.asMap().keySet(), ImmutableSet.of("GET:/search?q=a#abc@search"));
+        assertSame(_cache.getIfPresent("GET:/search?q=a#abc@search"), response);
+        assertEquals(_cache.size(), 3);
+    }
+
+    @Test
+    public void independentEviction() {
+        CachedResponse response = response();
+        _cache.put("GET:/products#abc@products", response);
+        _cache.put("GET:/search?q=a#abc@search", response);
+        _cache.put("GET:/search?q=b#abc@search", response);
+
+        // The search partition holds one entry, and filling it does not evict other groups
+        assertSame(_cache.getIfPresent("GET:/products#abc@products"), response);
+        assertNull(_cache.getIfPresent("GET:/search?q=a#abc@search"));
+        assertSame(_cache.getIfPresent("GET:/search?q=b#abc@search"), response);
+    }
+
+    @Test
+    public void asMap() {
+        CachedResponse response = response();
+        _cache.put("GET:/products#abc", response);
+        _cache.put("GET:/search?q=a#abc@search", response);
+
+        assertEquals(_cache.asMap(), ImmutableMap.of("GET:/products#abc", response, "GET:/search?q=a#abc@search", response));
+        assertSame(_cache.asMap().get("GET:/search?q=a#abc@search"), response);
+
+        _cache.invalidate("GET:/search?q=a#abc@search");
+        assertEquals(_cache.asMap().keySet(), Sets.newHashSet("GET:/products#abc"));
+
+        _cache.invalidateAll();
+        assertEquals(_cache.size(), 0);
+    }
+
+    @Test
+    public void stats() {
+        _cache.getIfPresent("GET:/products#abc");
+        _cache.getIfPresent("GET:/search?q=a#abc@search");
+
+        assertEquals(_cache.stats().missCount(), 2);
+    }
+
+    private static CachedResponse response() {
+        return new CachedResponse(200, new MultivaluedMapImpl(), new byte[0]);
+    }
+}
@@ -25,6 +25,7 @@ import org.testng.annotations.Test;
 import java.util.Map;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
 
 /**
  * Tests for {@link RequestCacheControl}.
@@ -82,4 +83,20 @@ public class RequestCacheControlTest {
     public void testToString(String value) {
         assertEquals(RequestCacheControl.valueOf(value).toString(), value);
     }
+
+    @Test
+    public void valueOfShared() {
+        assertSame(RequestCacheControl.valueOf("max-age=0"), RequestCacheControl.valueOf("max-age=0"));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void valueOfInvalid() {
+        try {
+            RequestCacheControl.valueOf("max-age=abc");
+        } catch (IllegalArgumentException ex) {
+            // Failures are not cached, so parsing the same value again fails again
+        }
+
+        RequestCacheControl.valueOf("max-age=abc");
+    }
 }
@@ -0,0 +1,585 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Charsets;
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.sun.jersey.api.core.HttpResponseContext;
+import com.sun.jersey.core.header.OutBoundHeaders;
+import com.sun.jersey.core.util.MultivaluedMapImpl;
+import com.sun.jersey.spi.container.ContainerResponse;
+import com.sun.jersey.spi.container.ContainerResponseWriter;
+import io.dropwizard.util.Duration;
+import org.joda.time.DateTimeUtils;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.AdditionalAnswers.returnsSecondArg;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Tests for {@link com.bazaarvoice.dropwizard.caching.ResponseCache}.
+ */
+public class ResponseCacheTest {
+    private static final Function<String, CacheKeyStrategy> RAW_KEYS = new Function<String, CacheKeyStrategy>() {
+        public CacheKeyStrategy apply(String input) {
+            return CacheKeyStrategy.RAW;
+        }
+    };
+
+    private long _millis;
+    private HttpClock _clock;
+    private MetricRegistry _metricRegistry;
+    private Cache<String, CachedResponse> _localCache;
+    private ResponseCache _cache;
+
+    @BeforeMethod
+    public void setUp() {
+        _millis = 1400000000000L;
+        _clock = new HttpClock(new DateTimeUtils.MillisProvider() {
+            @Override
+            public long getMillis() {
+                return _millis;
+            }
+        });
+        _metricRegistry = new MetricRegistry();
+        _localCache = CacheBuilder.newBuilder().build();
+        _cache = new ResponseCache(_localCache, ResponseStore.NULL_STORE, _metricRegistry, new CircuitBreakerConfiguration(), 0, RAW_KEYS, _clock);
+    }
+
+    @DataProvider
+    public Object[][] buildKeyData() {
+        return new Object[][]{
+                {"GET", "http://host/the/path", "GET:/the/path#abc"},
+                {"HEAD", "http://host/the/path", "GET:/the/path#abc"},
+                {"POST", "http://host/the/path", "POST:/the/path#abc"},
+                {"HEAD", "http://host/the/path?a=b%20c", "GET:/the/path?a=b%20c#abc"},
+        };
+    }
+
+    @Test(dataProvider = "buildKeyData")
+    public void buildKey(String method, String uri, String key) {
+        CacheRequestContext request = new CacheRequestContext(method, URI.create(uri), new MultivaluedMapImpl(), "abc");
+        assertEquals(ResponseCache.buildKey(request), key);
+    }
+
+    @Test
+    public void getMetrics() {
+        CacheRequestContext request = request();
+        _localCache.put(ResponseCache.buildKey(request), cachedResponse("hello", 60));
+
+        assertTrue(_cache.get(request).isPresent());
+        assertTrue(!_cache.get(request("/other")).isPresent());
+
+        assertEquals(_metricRegistry.timer(name("get")).getCount(), 2);
+        assertEquals(_metricRegistry.timer(name("build-key")).getCount(), 2);
+        assertEquals(_metricRegistry.timer(name("local-get")).getCount(), 2);
+        assertEquals(_metricRegistry.counter(name("hits")).getCount(), 1);
+        assertEquals(_metricRegistry.counter(name("misses")).getCount(), 1);
+        assertEquals(_metricRegistry.counter(name("local-hits")).getCount(), 1);
+        assertEquals(_metricRegistry.counter(name("local-misses")).getCount(), 1);
+    }
+
+    @Test
+    public void putMetrics() {
+        _cache.put(request(), responseContext(200, "max-age=60"), bytes("hello"));
+        _cache.put(request("/other"), responseContext(200, "no-store"), bytes("not cached"));
+
+        assertEquals(_metricRegistry.timer(name("put")).getCount(), 2);
+        assertEquals(_metricRegistry.timer(name("local-put")).getCount(), 1);
+        assertEquals(_metricRegistry.histogram(name("entry-size")).getCount(), 1);
+        assertEquals(_metricRegistry.histogram(name("entry-size")).getSnapshot().getMax(), 5);
+        assertEquals(_localCache.size(), 1);
+    }
+
+    @Test
+    public void groupMetrics() {
+        CacheRequestContext grouped = new CacheRequestContext("GET", URI.create("http://host/a"), new MultivaluedMapImpl(), "abc", "group");
+        _localCache.put(ResponseCache.buildKey(grouped), cachedResponse("hello", 60));
+        _localCache.put(ResponseCache.buildKey(request("/b")), cachedResponse("hello", 60));
+        _localCache.put(ResponseCache.buildKey(request("/c")), cachedResponse("hello", 60));
+
+        assertTrue(_cache.get(grouped).isPresent());
+        assertTrue(!_cache.get(request("/d")).isPresent());
+
+        assertEquals(_metricRegistry.counter(name("group.group.hits")).getCount(), 1);
+        assertEquals(_metricRegistry.counter(name("group.group.bytes-served")).getCount(), 5);
+        assertEquals(_metricRegistry.counter(name("ungrouped.misses")).getCount(), 1);
+
+        // Local stats come from one scan of the local cache, split by the group in the cache key
+        assertEquals(_metricRegistry.getGauges().get(name("group.group.local-count")).getValue(), 1L);
+        assertEquals(_metricRegistry.getGauges().get(name("ungrouped.local-count")).getValue(), 2L);
+        assertEquals(_metricRegistry.getGauges().get(name("group.group.local-weight")).getValue(),
+                (long) CachedResponseWeigher.INSTANCE.weigh(ResponseCache.buildKey(grouped), _localCache.getIfPresent(ResponseCache.buildKey(grouped))));
+    }
+
+    @Test
+    public void earlyRefresh_farFromExpiry() {
+        earlyRefreshCache(1);
+        CacheRequestContext request = request();
+        _localCache.put(ResponseCache.buildKey(request), cachedResponse("hello", 60, 2000));
+
+        // 2000ms * -ln(0.5) is well short of the 60s left
+        assertTrue(_cache.get(request).isPresent());
+        assertEquals(_metricRegistry.counter(name("early-refreshes")).getCount(), 0);
+    }
+
+    @Test
+    public void earlyRefresh_nearExpiry() {
+        earlyRefreshCache(1);
+        CacheRequestContext request = request();
+        _localCache.put(ResponseCache.buildKey(request), cachedResponse("hello", 60, 2000));
+        _millis += 59000;
+
+        // 2000ms * -ln(0.5) reaches past the 1s left
+        assertFalse(_cache.get(request).isPresent());
+        assertEquals(_metricRegistry.counter(name("early-refreshes")).getCount(), 1);
+        assertEquals(_metricRegistry.counter(name("misses")).getCount(), 1);
+    }
+
+    @Test
+    public void earlyRefresh_nearExpiryFastCompute() {
+        earlyRefreshCache(1);
+        CacheRequestContext request = request();
+        _localCache.put(ResponseCache.buildKey(request), cachedResponse("hello", 60, 100));
+        _millis += 59000;
+
+        assertTrue(_cache.get(request).isPresent());
+        assertEquals(_metricRegistry.counter(name("early-refreshes")).getCount(), 0);
+    }
+
+    @Test
+    public void earlyRefresh_disabled() {
+        CacheRequestContext request = request();
+        _localCache.put(ResponseCache.buildKey(request), cachedResponse("hello", 60, 2000));
+        _millis += 59000;
+
+        assertTrue(_cache.get(request).isPresent());
+    }
+
+    @Test
+    public void earlyRefresh_decidedByFastPath() {
+        earlyRefreshCache(1);
+        CacheRequestContext request = request();
+        _localCache.put(ResponseCache.buildKey(request), cachedResponse("hello", 60, 2000));
+        _millis += 59000;
+
+        ResponseCache.LocalLookup lookup = _cache.getLocal(request);
+        assertFalse(lookup.response.isPresent());
+        assertTrue(lookup.earlyRefresh);
+
+        // The Jersey lookup for the same request does not draw again and is not counted twice
+        assertFalse(_cache.get(request, lookup.earlyRefresh).isPresent());
+        assertEquals(_metricRegistry.counter(name("early-refreshes")).getCount(), 1);
+
+        // Without the fast path decision the response is still served far from expiry
+        _millis -= 59000;
+        assertTrue(_cache.get(request, false).isPresent());
+        assertFalse(_cache.get(request, true).isPresent());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void awaitMiss_servesStale() {
+        ResponseStore store = missingStore();
+        when(store.awaitMiss(eq(key()), any(Optional.class))).then(returnsSecondArg());
+        storeCache(store, new CircuitBreakerConfiguration());
+
+        CachedResponse stale = cachedResponse("hello", 60);
+        _localCache.put(key(), stale);
+        _millis += 120000;
+
+        Optional<Response> response = _cache.get(request());
+
+        assertTrue(response.isPresent());
+        assertEquals(response.get().getMetadata().getFirst("Warning"), "110 - \"Response is Stale\"");
+        verify(store).awaitMiss(key(), Optional.of(stale));
+
+        // The stale copy stays cached until a fresh one replaces it
+        assertSame(_localCache.getIfPresent(key()), stale);
+    }
+
+    @Test
+    public void awaitMiss_mustRevalidateNotServedStale() {
+        ResponseStore store = missingStore();
+        storeCache(store, new CircuitBreakerConfiguration());
+
+        MultivaluedMap<String, String> headers = new MultivaluedMapImpl();
+        headers.add("Date", _clock.nowAsString());
+        headers.add("Cache-Control", "max-age=60, must-revalidate");
+        _localCache.put(key(), new CachedResponse(200, headers, bytes("hello")));
+        _millis += 120000;
+
+        assertFalse(_cache.get(request()).isPresent());
+        verify(store).awaitMiss(key(), Optional.<CachedResponse>absent());
+    }
+
+    @Test
+    public void awaitMiss_servesStoredResponse() {
+        ResponseStore store = missingStore();
+        CachedResponse stored = cachedResponse("hello", 60);
+        when(store.awaitMiss(key(), Optional.<CachedResponse>absent())).thenReturn(Optional.of(stored));
+        storeCache(store, new CircuitBreakerConfiguration());
+
+        assertTrue(_cache.get(request()).isPresent());
+        assertSame(_localCache.getIfPresent(key()), stored);
+        assertEquals(_metricRegistry.counter(name("misses")).getCount(), 0);
+    }
+
+    @Test
+    public void awaitMiss_notTimedByCircuitBreaker() {
+        ResponseStore store = new ResponseStore() {
+            @Override
+            public Optional<CachedResponse> get(String key) {
+                return Optional.absent();
+            }
+
+            @Override
+            public void put(String key, CachedResponse response) {
+            }
+
+            @Override
+            public void invalidate(String key) {
+            }
+
+            @Override
+            public Optional<CachedResponse> awaitMiss(String key, Optional<CachedResponse> stale) {
+                // Waiting for another instance to store the response
+                Uninterruptibles.sleepUninterruptibly(50, TimeUnit.MILLISECONDS);
+                return Optional.absent();
+            }
+        };
+
+        CircuitBreakerConfiguration circuitBreaker = new CircuitBreakerConfiguration();
+        circuitBreaker.setEnabled(true);
+        circuitBreaker.setMinimumCalls(1);
+        circuitBreaker.setSlowCallThreshold(Optional.of(Duration.milliseconds(20)));
+        storeCache(store, circuitBreaker);
+
+        assertFalse(_cache.get(request()).isPresent());
+        assertEquals(_metricRegistry.getGauges().get(name("store-circuit-state")).getValue(), "CLOSED");
+    }
+
+    @Test
+    public void uncachedResponseReleasesMiss() {
+        ResponseStore store = missingStore();
+        storeCache(store, new CircuitBreakerConfiguration());
+
+        CacheRequestContext request = request();
+        assertFalse(_cache.get(request).isPresent());
+        _cache.put(request, responseContext(500, "no-store"), bytes("error"));
+
+        verify(store).releaseMiss(key());
+        verify(store, never()).put(anyString(), any(CachedResponse.class));
+    }
+
+    @Test
+    public void uncachedResponseWithoutMiss() {
+        ResponseStore store = missingStore();
+        storeCache(store, new CircuitBreakerConfiguration());
+
+        _cache.put(request(), responseContext(200, "no-store"), bytes("hello"));
+
+        verify(store, never()).releaseMiss(anyString());
+    }
+
+    @Test
+    public void statusMaxAge() throws Exception {
+        OutBoundHeaders headers = generate(404, Optional.of("max-age=300"), ImmutableMap.of(404, "max-age=30"));
+
+        assertEquals(headers.getFirst("Cache-Control"), "max-age=30");
+
+        Optional<Response> response = _cache.get(request());
+        assertTrue(response.isPresent());
+        assertEquals(response.get().getStatus(), 404);
+        assertEquals(response.get().getMetadata().getFirst("Cache-Control"), "max-age=30");
+
+        _millis += 31000;
+        assertFalse(_cache.get(request()).isPresent());
+    }
+
+    @Test
+    public void negativeCaching() throws Exception {
+        // 410 is cacheable by default, 404 only with a status policy
+        generate(410, Optional.of("max-age=60"), ImmutableMap.<Integer, String>of());
+        assertEquals(_cache.get(request()).get().getStatus(), 410);
+
+        _localCache.invalidateAll();
+        OutBoundHeaders headers = generate(404, Optional.of("max-age=60"), ImmutableMap.<Integer, String>of());
+        assertFalse(headers.containsKey("Cache-Control"));
+        assertFalse(_cache.get(request()).isPresent());
+
+        generate(404, Optional.of("max-age=60"), ImmutableMap.of(404, "max-age=10"));
+        assertEquals(_cache.get(request()).get().getStatus(), 404);
+    }
+
+    @Test
+    public void partialContentNotCached() throws Exception {
+        OutBoundHeaders headers = generate(206, Optional.of("max-age=60"), ImmutableMap.<Integer, String>of());
+
+        assertFalse(headers.containsKey("Cache-Control"));
+        assertEquals(_localCache.size(), 0);
+        assertFalse(_cache.get(request()).isPresent());
+    }
+
+    @Test
+    public void range_single() {
+        _localCache.put(key(), rangeResponse());
+
+        Response response = _cache.get(rangeRequest("bytes=2-5", null)).get();
+
+        assertEquals(response.getStatus(), 206);
+        assertEquals(response.getMetadata().getFirst("Content-Range"), "bytes 2-5/10");
+        assertEquals(response.getMetadata().getFirst("Accept-Ranges"), "bytes");
+        assertEquals((byte[]) response.getEntity(), bytes("2345"));
+
+        // Only the bytes of the range were sent
+        assertEquals(_metricRegistry.counter(name("ungrouped.bytes-served")).getCount(), 4);
+    }
+
+    @Test
+    public void range_multipart() {
+        _localCache.put(key(), rangeResponse());
+
+        Response response = _cache.get(rangeRequest("bytes=0-1,8-", null)).get();
+        String contentType = (String) response.getMetadata().getFirst("Content-Type");
+
+        assertEquals(response.getStatus(), 206);
+        assertTrue(contentType.startsWith("multipart/byteranges; boundary="), contentType);
+
+        String boundary = contentType.substring(contentType.indexOf('=') + 1);
+        String body = new String((byte[]) response.getEntity(), Charsets.US_ASCII);
+
+        assertEquals(body, "" +
+                "--" + boundary + "\r\n" +
+                "Content-Type: text/plain\r\n" +
+                "Content-Range: bytes 0-1/10\r\n" +
+                "\r\n" +
+                "01\r\n" +
+                "--" + boundary + "\r\n" +
+                "Content-Type: text/plain\r\n" +
+                "Content-Range: bytes 8-9/10\r\n" +
+                "\r\n" +
+                "89\r\n" +
+                "--" + boundary + "--\r\n");
+        assertEquals(_metricRegistry.counter(name("ungrouped.bytes-served")).getCount(), body.length());
+    }
+
+    @Test
+    public void range_unsatisfiable() {
+        _localCache.put(key(), rangeResponse());
+
+        Response response = _cache.get(rangeRequest("bytes=20-30", null)).get();
+
+        assertEquals(response.getStatus(), 416);
+        assertEquals(response.getMetadata().getFirst("Content-Range"), "bytes */10");
+        assertEquals(_metricRegistry.counter(name("ungrouped.bytes-served")).getCount(), 0);
+    }
+
+    @DataProvider
+    public Object[][] ifRangeData() {
+        return new Object[][]{
+                {"\"v1\"", 206},
+                {"\"v2\"", 200},
+                {"W/\"v1\"", 200},
+                {"Thu, 01 May 2014 00:00:00 GMT", 206},
+                {"Fri, 02 May 2014 00:00:00 GMT", 200},
+        };
+    }
+
+    @Test(dataProvider = "ifRangeData")
+    public void range_ifRange(String ifRange, int status) {
+        _localCache.put(key(), rangeResponse());
+
+        Response response = _cache.get(rangeRequest("bytes=2-5", ifRange)).get();
+
+        assertEquals(response.getStatus(), status);
+
+        if (status == 200) {
+            // Validator does not match, so the full response is served
+            assertEquals(response.getMetadata().getFirst("Accept-Ranges"), "bytes");
+            assertEquals(_metricRegistry.counter(name("ungrouped.bytes-served")).getCount(), 10);
+        }
+    }
+
+    @Test
+    public void acceptRanges() {
+        _localCache.put(key(), cachedResponse("hello", 60));
+
+        Response response = _cache.get(request()).get();
+
+        assertEquals(response.getStatus(), 200);
+        assertEquals(response.getMetadata().get("Accept-Ranges"), ImmutableList.of("bytes"));
+    }
+
+    private CacheRequestContext rangeRequest(String range, String ifRange) {
+        MultivaluedMap<String, String> headers = new MultivaluedMapImpl();
+        headers.add("Range", range);
+
+        if (ifRange != null) {
+            headers.add("If-Range", ifRange);
+        }
+
+        return request("/the/path", headers);
+    }
+
+    private CachedResponse rangeResponse() {
+        MultivaluedMap<String, String> headers = new MultivaluedMapImpl();
+        headers.add("Date", _clock.nowAsString());
+        headers.add("Cache-Control", "max-age=60");
+        headers.add("Content-Type", "text/plain");
+        headers.add("ETag", "\"v1\"");
+        headers.add("Last-Modified", "Thu, 01 May 2014 00:00:00 GMT");
+        return new CachedResponse(200, headers, bytes("0123456789"));
+    }
+
+    /**
+     * Run a generated response for {@link #request()} through the caching response writer.
+     *
+     * @return headers of the response sent to the client
+     */
+    private OutBoundHeaders generate(int status, Optional<String> cacheControl, Map<Integer, String> statusCacheControl) throws Exception {
+        OutBoundHeaders headers = new OutBoundHeaders();
+        ContainerResponse response = mock(ContainerResponse.class);
+        when(response.getStatus()).thenReturn(status);
+        when(response.getHttpHeaders()).thenReturn(headers);
+
+        ContainerResponseWriter wrapped = mock(ContainerResponseWriter.class);
+        when(wrapped.writeStatusAndHeaders(anyLong(), any(ContainerResponse.class))).thenReturn(new ByteArrayOutputStream());
+
+        CacheResourceMethodDispatchAdapter.CachingResponseWriter writer = new CacheResourceMethodDispatchAdapter.CachingResponseWriter(
+                wrapped, request(), _cache, cacheControl, statusCacheControl, new CacheResourceMethodDispatchAdapter.CaptureMetrics(new MetricRegistry()));
+        writer.writeStatusAndHeaders(-1, response).write(bytes("body"));
+        writer.finish();
+        return headers;
+    }
+
+    /**
+     * Store that misses every get and does not coordinate misses.
+     */
+    @SuppressWarnings("unchecked")
+    private static ResponseStore missingStore() {
+        ResponseStore store = mock(ResponseStore.class);
+        when(store.get(anyString())).thenReturn(Optional.<CachedResponse>absent());
+        when(store.awaitMiss(anyString(), any(Optional.class))).thenReturn(Optional.<CachedResponse>absent());
+        return store;
+    }
+
+    private void storeCache(ResponseStore store, CircuitBreakerConfiguration circuitBreaker) {
+        _metricRegistry = new MetricRegistry();
+        _cache = new ResponseCache(_localCache, store, _metricRegistry, circuitBreaker, 0, RAW_KEYS, _clock);
+    }
+
+    private String key() {
+        return ResponseCache.buildKey(request());
+    }
+
+    /**
+     * Replace the cache with one that refreshes early, drawing 0.5 every time.
+     */
+    private void earlyRefreshCache(double beta) {
+        _metricRegistry = new MetricRegistry();
+        _cache = new ResponseCache(_localCache, ResponseStore.NULL_STORE, _metricRegistry, new CircuitBreakerConfiguration(), beta, RAW_KEYS,
+                _clock, new FixedRandom(0.5));
+    }
+
+    /**
+     * Random source whose draws always return the same value.
+     */
+    private static class FixedRandom extends Random {
+        private static final long serialVersionUID = 1L;
+
+        private final double _value;
+
+        FixedRandom(double value) {
+            _value = value;
+        }
+
+        @Override
+        public double nextDouble() {
+            return _value;
+        }
+    }
+
+    private CacheRequestContext request() {
+        return request("/the/path");
+    }
+
+    private CacheRequestContext request(String path) {
+        return request(path, new MultivaluedMapImpl());
+    }
+
+    private CacheRequestContext request(String path, MultivaluedMap<String, String> headers) {
+        return new CacheRequestContext("GET", URI.create("http://host" + path), headers, "abc");
+    }
+
+    private CachedResponse cachedResponse(String body, int maxAge) {
+        return cachedResponse(body, maxAge, 0);
+    }
+
+    private CachedResponse cachedResponse(String body, int maxAge, int computeMillis) {
+        MultivaluedMap<String, String> headers = new MultivaluedMapImpl();
+        headers.add("Date", _clock.nowAsString());
+        headers.add("Cache-Control", "max-age=" + maxAge);
+        headers.add("Content-Type", "text/plain");
+        return new CachedResponse(200, headers, bytes(body), computeMillis);
+    }
+
+    private static CacheResponseContext responseContext(int status, String cacheControl) {
+        OutBoundHeaders headers = new OutBoundHeaders();
+        headers.putSingle("Cache-Control", cacheControl);
+
+        HttpResponseContext response = mock(HttpResponseContext.class);
+        when(response.getStatus()).thenReturn(status);
+        when(response.getHttpHeaders()).thenReturn(headers);
+        return new CacheResponseContext(response);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(Charsets.UTF_8);
+    }
+
+    private static String name(String metric) {
+        return MetricRegistry.name(ResponseCache.class, metric);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * Tests for {@link com.bazaarvoice.dropwizard.caching.VaryNormalizer}.
+ */
+public class VaryNormalizerTest {
+    private static final List<String> NONE = ImmutableList.of();
+
+    @DataProvider
+    public Object[][] sortTokensData() {
+        return new Object[][]{
+                {Arrays.asList("gzip, deflate"), "deflate,gzip"},
+                {Arrays.asList("deflate,gzip"), "deflate,gzip"},
+                {Arrays.asList("GZIP", "deflate"), "deflate,gzip"},
+                {Arrays.asList("gzip;q=0.5, deflate"), "deflate,gzip;q=0.5"},
+                {Arrays.asList(""), ""},
+        };
+    }
+
+    @Test(dataProvider = "sortTokensData")
+    public void sortTokens(List<String> values, String normalized) {
+        VaryNormalizer normalizer = new VaryNormalizer(true, false, NONE, Optional.<String>absent());
+        assertEquals(normalizer.normalize(values), normalized);
+    }
+
+    @DataProvider
+    public Object[][] collapseQualityValuesData() {
+        return new Object[][]{
+                {Arrays.asList("en-US,en;q=0.9"), "en-us,en"},
+                {Arrays.asList("en-US, en;q=0.8"), "en-us,en"},
+                {Arrays.asList("en;q=0.8, en-US"), "en-us,en"},
+                {Arrays.asList("en-US, fr;q=0"), "en-us"},
+                {Arrays.asList("fr;q=0.5, de;q=0.5, en;q=invalid"), "en,fr,de"},
+        };
+    }
+
+    @Test(dataProvider = "collapseQualityValuesData")
+    public void collapseQualityValues(List<String> values, String normalized) {
+        VaryNormalizer normalizer = new VaryNormalizer(false, true, NONE, Optional.<String>absent());
+        assertEquals(normalizer.normalize(values), normalized);
+    }
+
+    @DataProvider
+    public Object[][] supportedValuesData() {
+        return new Object[][]{
+                {Arrays.asList("en-US,en;q=0.9"), "en"},
+                {Arrays.asList("fr-CA, en;q=0.5"), "fr"},
+                {Arrays.asList("fr;q=0.5, de"), "de"},
+                {Arrays.asList("fr;q=0, en;q=0.1"), "en"},
+                {Arrays.asList("es, it"), "en"},
+                {Arrays.asList("es, *;q=0.1"), "en"},
+                {NONE, "en"},
+        };
+    }
+
+    @Test(dataProvider = "supportedValuesData")
+    public void supportedValues(List<String> values, String normalized) {
+        VaryNormalizer normalizer = new VaryNormalizer(false, false, ImmutableList.of("en", "fr", "de"), Optional.of("en"));
+        assertEquals(normalizer.normalize(values), normalized);
+    }
+
+    @Test
+    public void noDefaultValue() {
+        VaryNormalizer normalizer = new VaryNormalizer(false, false, ImmutableList.of("gzip"), Optional.<String>absent());
+        assertEquals(normalizer.normalize(Arrays.asList("br")), "");
+    }
+}
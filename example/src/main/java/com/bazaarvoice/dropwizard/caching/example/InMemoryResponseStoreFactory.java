@@ -0,0 +1,68 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching.example;
+
+import com.bazaarvoice.dropwizard.caching.CachedResponse;
+import com.bazaarvoice.dropwizard.caching.ResponseStore;
+import com.bazaarvoice.dropwizard.caching.ResponseStoreFactory;
+import com.fasterxml.jackson.annotation.JsonTypeName;
+import com.google.common.base.Optional;
+import org.joda.time.DateTime;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Response store that keeps responses in an unbounded map in the application process. Stands in for a shared store,
+ * such as memcached, when load testing.
+ */
+@JsonTypeName("in-memory")
+public class InMemoryResponseStoreFactory implements ResponseStoreFactory {
+    @Override
+    public ResponseStore createStore() {
+        return new InMemoryResponseStore();
+    }
+
+    private static class InMemoryResponseStore extends ResponseStore {
+        private final ConcurrentMap<String, CachedResponse> _responses = new ConcurrentHashMap<String, CachedResponse>();
+
+        @Override
+        public Optional<CachedResponse> get(String key) {
+            CachedResponse response = _responses.get(key);
+
+            if (response != null && response.getExpires().get().isBeforeNow()) {
+                _responses.remove(key, response);
+                response = null;
+            }
+
+            return Optional.fromNullable(response);
+        }
+
+        @Override
+        public void put(String key, CachedResponse response) {
+            DateTime expires = response.getExpires().orNull();
+
+            if (expires != null) {
+                _responses.put(key, response);
+            }
+        }
+
+        @Override
+        public void invalidate(String key) {
+            _responses.remove(key);
+        }
+    }
+}
@@ -0,0 +1,451 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching.example;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import com.google.common.io.Resources;
+import io.dropwizard.lifecycle.ServerLifecycleListener;
+import io.dropwizard.setup.Environment;
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+import net.sourceforge.argparse4j.inf.Namespace;
+import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.Lists.newArrayList;
+
+/**
+ * End-to-end load test for the caching bundle.
+ * <p/>
+ * Starts {@link ExampleApplication} in this process, backed by an in-memory store, and sends requests to it over HTTP
+ * loopback. Each scenario is a mix of four request types:
+ * <ul>
+ * <li>hit: one of a fixed set of cached URLs, primed before the scenario starts</li>
+ * <li>miss: a cached URL that has never been requested, so the resource is invoked and the response stored</li>
+ * <li>stale: a cached URL that is in the cache, but with a <code>min-fresh</code> requirement the entry can not meet,
+ * so the cache is consulted, the entry rejected and the resource invoked</li>
+ * <li>uncached: a URL for a resource method without caching, for comparing against the cost of the resource alone</li>
+ * </ul>
+ * For each scenario, throughput, latency percentiles and allocation per request are reported. Allocation is split
+ * between the load generator threads and everything else in the process (Jetty, Jersey and the caching layer).
+ * <p/>
+ * Example: <code>mvn -q -pl example exec:java -Dexec.mainClass=com.bazaarvoice.dropwizard.caching.example.LoadTest
+ * -Dexec.args="--threads 8 --requests 200000 --scenario mostly-hits:90:5:5:0"</code>
+ */
+public class LoadTest {
+    private static final List<String> DEFAULT_SCENARIOS = ImmutableList.of(
+            "uncached:0:0:0:1",
+            "hit:1:0:0:0",
+            "miss:0:1:0:0",
+            "stale:0:0:1:0",
+            "mixed:80:15:5:0"
+    );
+
+    private static final String STALE_CACHE_CONTROL = "min-fresh=86400";
+
+    private final int _threads;
+    private final int _requests;
+    private final int _warmupRequests;
+    private final int _keys;
+    private final String _baseUrl;
+    private final AtomicLong _uniqueIds = new AtomicLong();
+
+    private LoadTest(int threads, int requests, int warmupRequests, int keys, String baseUrl) {
+        _threads = threads;
+        _requests = requests;
+        _warmupRequests = warmupRequests;
+        _keys = keys;
+        _baseUrl = baseUrl;
+    }
+
+    public static void main(String[] args) throws Exception {
+        ArgumentParser parser = ArgumentParsers.newArgumentParser("LoadTest")
+                .defaultHelp(true)
+                .description("In-process load test for the dropwizard caching bundle");
+        parser.addArgument("--threads").type(Integer.class).setDefault(4).help("number of client threads");
+        parser.addArgument("--requests").type(Integer.class).setDefault(50000).help("measured requests per scenario");
+        parser.addArgument("--warmup").type(Integer.class).setDefault(10000).help("unmeasured requests before each scenario");
+        parser.addArgument("--keys").type(Integer.class).setDefault(100).help("number of distinct URLs for hit and stale requests");
+        parser.addArgument("--size").type(Integer.class).setDefault(2048).help("response body size in bytes");
+        parser.addArgument("--config").help("application configuration file (default: bundled loadtest.yaml)");
+        parser.addArgument("--scenario").action(net.sourceforge.argparse4j.impl.Arguments.append())
+                .help("scenario as name:hit:miss:stale:uncached relative weights; may be repeated (default: " + DEFAULT_SCENARIOS + ")");
+
+        Namespace namespace;
+
+        try {
+            namespace = parser.parseArgs(args);
+        } catch (ArgumentParserException ex) {
+            parser.handleError(ex);
+            System.exit(1);
+            return;
+        }
+
+        List<Scenario> scenarios = newArrayList();
+        List<String> scenarioArgs = namespace.getList("scenario");
+
+        for (String scenario : scenarioArgs == null ? DEFAULT_SCENARIOS : scenarioArgs) {
+            scenarios.add(Scenario.parse(scenario));
+        }
+
+        String configPath = namespace.getString("config");
+
+        if (configPath == null) {
+            File configFile = File.createTempFile("loadtest", ".yaml");
+            configFile.deleteOnExit();
+            Resources.asByteSource(Resources.getResource("loadtest.yaml")).copyTo(Files.asByteSink(configFile));
+            configPath = configFile.getAbsolutePath();
+        }
+
+        LoadTestApplication application = new LoadTestApplication(namespace.getInt("size"));
+        application.run(new String[]{"server", configPath});
+        Server server = application.getServer();
+
+        try {
+            LoadTest loadTest = new LoadTest(
+                    namespace.getInt("threads"),
+                    namespace.getInt("requests"),
+                    namespace.getInt("warmup"),
+                    namespace.getInt("keys"),
+                    "http://localhost:" + applicationPort(server));
+
+            System.out.println(Result.HEADER);
+
+            for (Scenario scenario : scenarios) {
+                System.out.println(loadTest.run(scenario));
+            }
+        } finally {
+            server.stop();
+        }
+
+        System.exit(0);
+    }
+
+    private Result run(final Scenario scenario) throws Exception {
+        // Prime the keys used for hits and stale requests
+        for (int key = 0; key < _keys; key += 1) {
+            request("/load/cached/" + key, null);
+        }
+
+        runRequests(scenario, _warmupRequests, false);
+        return runRequests(scenario, _requests, true);
+    }
+
+    private Result runRequests(final Scenario scenario, int requests, final boolean record) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(_threads);
+        final int requestsPerThread = Math.max(requests / _threads, 1);
+        List<Future<ClientStats>> futures = newArrayList();
+        List<GarbageCollection> gcBefore = GarbageCollection.snapshot();
+        long allocatedBefore = totalAllocatedBytes();
+        long start = System.nanoTime();
+
+        try {
+            for (int i = 0; i < _threads; i += 1) {
+                futures.add(executor.submit(new Callable<ClientStats>() {
+                    @Override
+                    public ClientStats call() throws Exception {
+                        return runClient(scenario, requestsPerThread, record);
+                    }
+                }));
+            }
+
+            long[] latencies = new long[0];
+            long clientAllocated = 0;
+
+            for (Future<ClientStats> future : futures) {
+                ClientStats stats = future.get();
+                latencies = concat(latencies, stats.latencies);
+                clientAllocated += stats.allocatedBytes;
+            }
+
+            long elapsed = System.nanoTime() - start;
+            long allocated = totalAllocatedBytes() - allocatedBefore;
+            long gcCount = GarbageCollection.countSince(gcBefore);
+
+            return new Result(scenario.name, latencies, elapsed, allocated - clientAllocated, clientAllocated, gcCount);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private ClientStats runClient(Scenario scenario, int requests, boolean record) throws IOException {
+        Random random = new Random();
+        long[] latencies = new long[record ? requests : 0];
+        long allocatedBefore = threadAllocatedBytes();
+
+        for (int i = 0; i < requests; i += 1) {
+            String path;
+            String cacheControl = null;
+
+            switch (scenario.next(random)) {
+                case HIT:
+                    path = "/load/cached/" + random.nextInt(_keys);
+                    break;
+                case MISS:
+                    path = "/load/cached/miss-" + _uniqueIds.incrementAndGet();
+                    break;
+                case STALE:
+                    path = "/load/cached/" + random.nextInt(_keys);
+                    cacheControl = STALE_CACHE_CONTROL;
+                    break;
+                default:
+                    path = "/load/uncached/" + random.nextInt(_keys);
+                    break;
+            }
+
+            long start = System.nanoTime();
+            request(path, cacheControl);
+
+            if (record) {
+                latencies[i] = System.nanoTime() - start;
+            }
+        }
+
+        return new ClientStats(latencies, threadAllocatedBytes() - allocatedBefore);
+    }
+
+    private void request(String path, String cacheControl) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(_baseUrl + path).openConnection();
+
+        if (cacheControl != null) {
+            connection.setRequestProperty("Cache-Control", cacheControl);
+        }
+
+        int status = connection.getResponseCode();
+        checkState(status == 200, "Unexpected response status: path=%s, status=%s", path, status);
+
+        // Read the full response and close the stream so the connection is kept alive and reused
+        InputStream input = connection.getInputStream();
+
+        try {
+            ByteStreams.copy(input, ByteStreams.nullOutputStream());
+        } finally {
+            input.close();
+        }
+    }
+
+    private static int applicationPort(Server server) {
+        // Application connectors are created before admin connectors
+        for (Connector connector : server.getConnectors()) {
+            if (connector instanceof ServerConnector) {
+                return ((ServerConnector) connector).getLocalPort();
+            }
+        }
+
+        throw new IllegalStateException("No application connector found");
+    }
+
+    private static long threadAllocatedBytes() {
+        return allocationBean().getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static long totalAllocatedBytes() {
+        com.sun.management.ThreadMXBean threadBean = allocationBean();
+        long total = 0;
+
+        for (long allocated : threadBean.getThreadAllocatedBytes(threadBean.getAllThreadIds())) {
+            if (allocated > 0) {
+                total += allocated;
+            }
+        }
+
+        return total;
+    }
+
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        return (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    }
+
+    private static long[] concat(long[] a, long[] b) {
+        long[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
+    private enum RequestType {
+        HIT, MISS, STALE, UNCACHED
+    }
+
+    private static class Scenario {
+        final String name;
+        final int[] cumulativeWeights;
+
+        Scenario(String name, int hit, int miss, int stale, int uncached) {
+            checkArgument(hit >= 0 && miss >= 0 && stale >= 0 && uncached >= 0, "weights must be >= 0");
+            checkArgument(hit + miss + stale + uncached > 0, "at least one weight must be > 0");
+
+            this.name = name;
+            this.cumulativeWeights = new int[]{hit, hit + miss, hit + miss + stale, hit + miss + stale + uncached};
+        }
+
+        static Scenario parse(String value) {
+            List<String> parts = Splitter.on(':').trimResults().splitToList(value);
+            checkArgument(parts.size() == 5, "scenario must be name:hit:miss:stale:uncached (value: %s)", value);
+
+            return new Scenario(parts.get(0),
+                    Integer.parseInt(parts.get(1)),
+                    Integer.parseInt(parts.get(2)),
+                    Integer.parseInt(parts.get(3)),
+                    Integer.parseInt(parts.get(4)));
+        }
+
+        RequestType next(Random random) {
+            int value = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+
+            for (int i = 0; i < cumulativeWeights.length; i += 1) {
+                if (value < cumulativeWeights[i]) {
+                    return RequestType.values()[i];
+                }
+            }
+
+            throw new IllegalStateException();
+        }
+    }
+
+    private static class ClientStats {
+        final long[] latencies;
+        final long allocatedBytes;
+
+        ClientStats(long[] latencies, long allocatedBytes) {
+            this.latencies = latencies;
+            this.allocatedBytes = allocatedBytes;
+        }
+    }
+
+    private static class Result {
+        static final String HEADER = String.format("%-12s %10s %10s %9s %9s %9s %9s %9s %12s %12s %6s",
+                "scenario", "requests", "req/s", "p50(us)", "p90(us)", "p99(us)", "p99.9(us)", "max(us)",
+                "server(B/r)", "client(B/r)", "gcs");
+
+        final String scenario;
+        final long[] latencies;
+        final long elapsedNanos;
+        final long serverAllocated;
+        final long clientAllocated;
+        final long gcCount;
+
+        Result(String scenario, long[] latencies, long elapsedNanos, long serverAllocated, long clientAllocated, long gcCount) {
+            this.scenario = scenario;
+            this.latencies = latencies;
+            this.elapsedNanos = elapsedNanos;
+            this.serverAllocated = serverAllocated;
+            this.clientAllocated = clientAllocated;
+            this.gcCount = gcCount;
+            Arrays.sort(this.latencies);
+        }
+
+        long percentileMicros(double percentile) {
+            int index = (int) Math.ceil(percentile * latencies.length) - 1;
+            return latencies[Math.max(Math.min(index, latencies.length - 1), 0)] / 1000;
+        }
+
+        @Override
+        public String toString() {
+            int requests = latencies.length;
+            return String.format("%-12s %10d %10.0f %9d %9d %9d %9d %9d %12d %12d %6d",
+                    scenario, requests, requests / (elapsedNanos / 1e9),
+                    percentileMicros(0.5), percentileMicros(0.9), percentileMicros(0.99), percentileMicros(0.999),
+                    percentileMicros(1.0),
+                    serverAllocated / requests, clientAllocated / requests, gcCount);
+        }
+    }
+
+    private static class GarbageCollection {
+        static List<GarbageCollection> snapshot() {
+            List<GarbageCollection> result = newArrayList();
+
+            for (java.lang.management.GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+                result.add(new GarbageCollection(bean.getName(), bean.getCollectionCount()));
+            }
+
+            return result;
+        }
+
+        static long countSince(List<GarbageCollection> before) {
+            long count = 0;
+
+            for (GarbageCollection after : snapshot()) {
+                for (GarbageCollection previous : before) {
+                    if (previous.name.equals(after.name)) {
+                        count += after.count - previous.count;
+                    }
+                }
+            }
+
+            return count;
+        }
+
+        final String name;
+        final long count;
+
+        GarbageCollection(String name, long count) {
+            this.name = name;
+            this.count = count;
+        }
+    }
+
+    /**
+     * Example application with the load test resource and a hook to capture the Jetty server once it has started.
+     */
+    private static class LoadTestApplication extends ExampleApplication {
+        private final int _payloadSize;
+        private volatile Server _server;
+
+        LoadTestApplication(int payloadSize) {
+            _payloadSize = payloadSize;
+        }
+
+        @Override
+        public void run(ExampleConfiguration configuration, Environment environment) throws Exception {
+            super.run(configuration, environment);
+            environment.jersey().register(new LoadTestResource(_payloadSize));
+            environment.lifecycle().addServerLifecycleListener(new ServerLifecycleListener() {
+                @Override
+                public void serverStarted(Server server) {
+                    _server = server;
+                }
+            });
+        }
+
+        Server getServer() {
+            checkState(_server != null, "Server failed to start");
+            return _server;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching.example;
+
+import com.bazaarvoice.dropwizard.caching.CacheGroup;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Resource used by {@link LoadTest}. Every response is a fixed size payload, so differences between scenarios come
+ * from the caching layer rather than the resource.
+ */
+@Path("/load")
+@Produces(MediaType.APPLICATION_OCTET_STREAM)
+public class LoadTestResource {
+    private final byte[] _payload;
+
+    public LoadTestResource(int payloadSize) {
+        checkArgument(payloadSize >= 0, "payloadSize must be >= 0");
+        _payload = new byte[payloadSize];
+        Arrays.fill(_payload, (byte) 'x');
+    }
+
+    @GET
+    @Path("/cached/{id}")
+    @CacheGroup("load-cached")
+    public byte[] cached(@PathParam("id") String id) {
+        return _payload;
+    }
+
+    @GET
+    @Path("/uncached/{id}")
+    public byte[] uncached(@PathParam("id") String id) {
+        return _payload;
+    }
+}
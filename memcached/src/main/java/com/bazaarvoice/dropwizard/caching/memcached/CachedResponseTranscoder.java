@@ -47,6 +47,11 @@ public class CachedResponseTranscoder implements Transcoder<CachedResponse> {
     private static final Splitter STATUS_SPLITTER = Splitter.on(' ').trimResults();
     private static final Splitter HEADER_SPLITTER = Splitter.on(':').trimResults().limit(2);
 
+    /**
+     * The response compute time is stored in the reason phrase of the status line, which older versions ignore.
+     */
+    private static final String COMPUTE_PREFIX = "compute=";
+
     public static final CachedResponseTranscoder INSTANCE = new CachedResponseTranscoder();
 
     private CachedResponseTranscoder() {
@@ -64,7 +69,7 @@ public class CachedResponseTranscoder implements Transcoder<CachedResponse> {
             ByteArrayOutputStream buffer = new ByteArrayOutputStream();
             OutputStreamWriter writer = new OutputStreamWriter(buffer, Charsets.US_ASCII);
 
-            writer.write(format("HTTP/1.1 %d \r\n", o.getStatusCode()));
+            writer.write(format("HTTP/1.1 %d %s\r\n", o.getStatusCode(), o.getComputeMillis() > 0 ? COMPUTE_PREFIX + o.getComputeMillis() : ""));
 
             for (Map.Entry<String, List<String>> entry : o.getResponseHeaders().entrySet()) {
                 for (String value : entry.getValue()) {
@@ -102,11 +107,13 @@ public class CachedResponseTranscoder implements Transcoder<CachedResponse> {
                     Charsets.US_ASCII)
             );
 
-            int statusCode = readStatusCode(headerReader);
+            List<String> statusLine = readStatusLine(headerReader);
+            int statusCode = readStatusCode(statusLine);
+            int computeMillis = readComputeMillis(statusLine);
             MultivaluedMap<String, String> headers = readHeaders(headerReader);
             byte[] responseContent = Arrays.copyOfRange(cachedData, headerSeparatorIndex + HEADER_SEPARATOR.length, cachedData.length);
 
-            return new CachedResponse(statusCode, headers, responseContent);
+            return new CachedResponse(statusCode, headers, responseContent, computeMillis);
         } catch (IOException ex) {
             throw new RuntimeException("Corrupted cache entry", ex);
         }
@@ -143,7 +150,7 @@ public class CachedResponseTranscoder implements Transcoder<CachedResponse> {
         return headers;
     }
 
-    private static int readStatusCode(BufferedReader reader) throws IOException {
+    private static List<String> readStatusLine(BufferedReader reader) throws IOException {
         String statusLine = reader.readLine();
 
         if (statusLine == null) {
@@ -156,10 +163,28 @@ public class CachedResponseTranscoder implements Transcoder<CachedResponse> {
             throw new IOException("Corrupt status line");
         }
 
+        return parts;
+    }
+
+    private static int readStatusCode(List<String> statusLine) throws IOException {
         try {
-            return Integer.parseInt(parts.get(1));
+            return Integer.parseInt(statusLine.get(1));
         } catch (NumberFormatException ex) {
             throw new IOException("Corrupt status line", ex);
         }
     }
+
+    private static int readComputeMillis(List<String> statusLine) {
+        String reason = statusLine.get(2);
+
+        if (reason.startsWith(COMPUTE_PREFIX)) {
+            try {
+                return Math.max(Integer.parseInt(reason.substring(COMPUTE_PREFIX.length())), 0);
+            } catch (NumberFormatException ex) {
+                // Compute time is only a hint, so ignore it rather than reject the entry
+            }
+        }
+
+        return 0;
+    }
 }
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching.memcached;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Optional;
+import com.google.common.base.Ticker;
+import io.dropwizard.util.Duration;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Configuration options for replicating frequently read keys across memcached servers.
+ * <p/>
+ * Each key is stored on a single server, so a key with a very high read rate can saturate that server. Keys detected
+ * as hot are also written to <code>replicas</code> additional keys, which hash to other servers, and reads of hot keys
+ * pick one of the copies at random.
+ */
+public class HotKeyConfiguration {
+    private int _replicas;
+    private int _threshold = 1000;
+    private int _sampleRate = 16;
+    private int _sketchWidth = 4096;
+    private Duration _window = Duration.seconds(10);
+
+    /**
+     * Number of additional copies to keep of hot keys. Zero disables hot key detection.
+     */
+    public int getReplicas() {
+        return _replicas;
+    }
+
+    @JsonProperty
+    public void setReplicas(int replicas) {
+        checkArgument(replicas >= 0, "replicas must be >= 0 (value: %s)", replicas);
+        _replicas = replicas;
+    }
+
+    /**
+     * Reads per second, per application instance, at which a key is considered hot.
+     */
+    public int getThreshold() {
+        return _threshold;
+    }
+
+    @JsonProperty
+    public void setThreshold(int threshold) {
+        checkArgument(threshold > 0, "threshold must be > 0 (value: %s)", threshold);
+        _threshold = threshold;
+    }
+
+    /**
+     * One in this many reads is counted.
+     */
+    public int getSampleRate() {
+        return _sampleRate;
+    }
+
+    @JsonProperty
+    public void setSampleRate(int sampleRate) {
+        checkArgument(sampleRate > 0, "sampleRate must be > 0 (value: %s)", sampleRate);
+        _sampleRate = sampleRate;
+    }
+
+    /**
+     * Number of counters in each row of the frequency sketch.
+     */
+    public int getSketchWidth() {
+        return _sketchWidth;
+    }
+
+    @JsonProperty
+    public void setSketchWidth(int sketchWidth) {
+        checkArgument(sketchWidth > 0 && sketchWidth <= (1 << 24), "sketchWidth must be > 0 and <= 2^24 (value: %s)", sketchWidth);
+        _sketchWidth = sketchWidth;
+    }
+
+    /**
+     * Length of the window reads are counted over. Counts start over after each window.
+     */
+    public Duration getWindow() {
+        return _window;
+    }
+
+    @JsonProperty
+    public void setWindow(Duration window) {
+        checkNotNull(window);
+        checkArgument(window.getQuantity() > 0, "window must be > 0 (value: %s)", window);
+        _window = window;
+    }
+
+    /**
+     * @return the hot key detector, or absent if hot key replication is disabled
+     */
+    Optional<HotKeyDetector> buildDetector() {
+        if (_replicas == 0) {
+            return Optional.absent();
+        }
+
+        return Optional.of(new HotKeyDetector(_replicas, _threshold, _sampleRate, _sketchWidth, _window.toNanoseconds(), Ticker.systemTicker()));
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching.memcached;
+
+import com.google.common.base.Ticker;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Detects frequently read keys.
+ * <p/>
+ * One in <code>sampleRate</code> reads is counted in a count-min sketch, which estimates the count of each key in a
+ * fixed amount of memory. Estimates can only be too high, never too low, and are only significantly off for keys that
+ * are much less frequent than the keys the detector is looking for. Counts start over at the end of each window, and
+ * the counts of the window that just ended are kept for one more window.
+ * <p/>
+ * A key is hot when its estimated read count in the current or the previous window reaches the threshold rate times
+ * the window length. A key read at the threshold rate is therefore hot by the end of its first window and stays hot
+ * while it is read at that rate; a key that is no longer read cools down within two windows. Counting is approximate
+ * and not strictly thread-safe: concurrent updates may occasionally be lost, which only delays detection.
+ */
+class HotKeyDetector {
+    private static final int DEPTH = 4;
+
+    private final int _replicas;
+    private final int _sampleRate;
+    private final int _sampledThreshold;
+    private final int _mask;
+    private final AtomicIntegerArray _counts;
+    private final AtomicIntegerArray _previousCounts;
+    private final long _windowNanos;
+    private final AtomicLong _windowEnd;
+    private final Ticker _ticker;
+
+    /**
+     * @param replicas          number of additional copies to keep of hot keys
+     * @param thresholdPerSecond read rate at which a key is considered hot
+     * @param sampleRate        one in this many reads is counted
+     * @param width             number of counters per sketch row, rounded up to a power of 2
+     * @param windowNanos       time after which counts start over
+     * @param ticker            time source
+     */
+    public HotKeyDetector(int replicas, int thresholdPerSecond, int sampleRate, int width, long windowNanos, Ticker ticker) {
+        checkArgument(replicas > 0, "replicas must be > 0 (value: %s)", replicas);
+        checkArgument(thresholdPerSecond > 0, "thresholdPerSecond must be > 0 (value: %s)", thresholdPerSecond);
+        checkArgument(sampleRate > 0, "sampleRate must be > 0 (value: %s)", sampleRate);
+        checkArgument(width > 0 && width <= (1 << 24), "width must be > 0 and <= 2^24 (value: %s)", width);
+        checkArgument(windowNanos > 0, "windowNanos must be > 0 (value: %s)", windowNanos);
+
+        int roundedWidth = Integer.highestOneBit(width - 1) << 1;
+
+        _replicas = replicas;
+        _sampleRate = sampleRate;
+        _sampledThreshold = (int) Math.max(1, Math.min(Integer.MAX_VALUE, thresholdPerSecond * (windowNanos / 1e9) / sampleRate));
+        _mask = Math.max(roundedWidth, 1) - 1;
+        _counts = new AtomicIntegerArray(DEPTH * (_mask + 1));
+        _previousCounts = new AtomicIntegerArray(_counts.length());
+        _windowNanos = windowNanos;
+        _ticker = checkNotNull(ticker);
+        _windowEnd = new AtomicLong(ticker.read() + windowNanos);
+    }
+
+    /**
+     * Number of additional copies to keep of hot keys.
+     */
+    public int getReplicas() {
+        return _replicas;
+    }
+
+    /**
+     * Record a read of a key.
+     *
+     * @return true if the key is hot
+     */
+    public boolean recordRead(String key) {
+        maybeRollWindow();
+
+        boolean sample = _sampleRate == 1 || ThreadLocalRandom.current().nextInt(_sampleRate) == 0;
+        int hash1 = key.hashCode();
+        int hash2 = spread(hash1);
+        int width = _mask + 1;
+        int estimate = Integer.MAX_VALUE;
+
+        for (int row = 0; row < DEPTH; row += 1) {
+            int index = row * width + ((hash1 + row * hash2) & _mask);
+            int count = sample ? _counts.incrementAndGet(index) : _counts.get(index);
+            estimate = Math.min(estimate, count);
+        }
+
+        return estimate >= _sampledThreshold || estimate(_previousCounts, hash1, hash2) >= _sampledThreshold;
+    }
+
+    /**
+     * Check if a key is hot without recording a read.
+     */
+    public boolean isHot(String key) {
+        // Roll the window first, so a key that has not been read for a while cools down
+        maybeRollWindow();
+
+        int hash1 = key.hashCode();
+        int hash2 = spread(hash1);
+
+        return estimate(_counts, hash1, hash2) >= _sampledThreshold || estimate(_previousCounts, hash1, hash2) >= _sampledThreshold;
+    }
+
+    private int estimate(AtomicIntegerArray counts, int hash1, int hash2) {
+        int width = _mask + 1;
+        int estimate = Integer.MAX_VALUE;
+
+        for (int row = 0; row < DEPTH; row += 1) {
+            estimate = Math.min(estimate, counts.get(row * width + ((hash1 + row * hash2) & _mask)));
+        }
+
+        return estimate;
+    }
+
+    private void maybeRollWindow() {
+        long windowEnd = _windowEnd.get();
+        long now = _ticker.read();
+
+        if (now - windowEnd >= 0 && _windowEnd.compareAndSet(windowEnd, now + _windowNanos)) {
+            // Counts of a window that ended more than one window ago are too old to keep
+            boolean skipped = now - windowEnd >= _windowNanos;
+
+            for (int i = 0; i < _counts.length(); i += 1) {
+                int count = _counts.getAndSet(i, 0);
+                _previousCounts.set(i, skipped ? 0 : count);
+            }
+        }
+    }
+
+    /**
+     * Second, independent hash derived from the key hash code (murmur3 finalizer), forced odd so every row probes a
+     * different counter.
+     */
+    private static int spread(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash | 1;
+    }
+}
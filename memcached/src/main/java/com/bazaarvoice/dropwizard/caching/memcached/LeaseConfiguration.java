@@ -0,0 +1,90 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching.memcached;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Duration;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Configuration options for miss leases.
+ * <p/>
+ * When a response is missing from memcached, the first instance to miss claims a lease for the key with a memcached
+ * <code>add</code> and regenerates the response. Other instances that miss while the lease is held serve their expired
+ * local copy of the response if they have one. Otherwise they poll memcached for the response for up to
+ * <code>wait</code>, and only regenerate the response themselves if it does not show up in time. The instance holding
+ * the lease releases it when the response is stored or turns out not to be cacheable. It expires after
+ * <code>ttl</code> if that instance fails.
+ */
+public class LeaseConfiguration {
+    private boolean _enabled;
+    private Duration _ttl = Duration.seconds(10);
+    private Duration _wait = Duration.milliseconds(500);
+    private Duration _pollInterval = Duration.milliseconds(20);
+
+    public boolean isEnabled() {
+        return _enabled;
+    }
+
+    @JsonProperty
+    public void setEnabled(boolean enabled) {
+        _enabled = enabled;
+    }
+
+    /**
+     * Time after which an unreleased lease expires. Should be longer than the time to regenerate a response.
+     */
+    public Duration getTtl() {
+        return _ttl;
+    }
+
+    @JsonProperty
+    public void setTtl(Duration ttl) {
+        checkNotNull(ttl);
+        checkArgument(ttl.toSeconds() >= 1, "ttl must be >= 1 second (value: %s)", ttl);
+        _ttl = ttl;
+    }
+
+    /**
+     * Maximum time to wait for another instance to store the response.
+     */
+    public Duration getWait() {
+        return _wait;
+    }
+
+    @JsonProperty
+    public void setWait(Duration wait) {
+        checkNotNull(wait);
+        checkArgument(wait.getQuantity() >= 0, "wait must be >= 0 (value: %s)", wait);
+        _wait = wait;
+    }
+
+    /**
+     * Time between checks for the response while waiting.
+     */
+    public Duration getPollInterval() {
+        return _pollInterval;
+    }
+
+    @JsonProperty
+    public void setPollInterval(Duration pollInterval) {
+        checkNotNull(pollInterval);
+        checkArgument(pollInterval.toMilliseconds() >= 1, "pollInterval must be >= 1ms (value: %s)", pollInterval);
+        _pollInterval = pollInterval;
+    }
+}
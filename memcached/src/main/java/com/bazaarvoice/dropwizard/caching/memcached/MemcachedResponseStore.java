@@ -18,31 +18,95 @@ package com.bazaarvoice.dropwizard.caching.memcached;
 import com.bazaarvoice.dropwizard.caching.CachedResponse;
 import com.bazaarvoice.dropwizard.caching.ResponseStore;
 import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
 import net.spy.memcached.MemcachedClient;
 import org.joda.time.DateTime;
 
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
  * HTTP response cache store backed by memcached.
+ * <p/>
+ * The store can be given several clients connected to the same servers, in which case keys are spread over the clients
+ * by hash. Each client has a single IO thread, which limits the throughput of a single client on machines with many
+ * cores. All operations for a key, including its replicas and lease, go through the same client, so they reach the
+ * server in the order they were issued.
+ * <p/>
+ * If a {@link HotKeyDetector} is given, keys that are read very frequently are also stored under replica keys, which
+ * hash to other servers. Reads of a hot key pick the primary key or one of the replicas at random. A replica that has
+ * not been written yet is filled from the primary key on read. Writes of a key that is not hot delete its replicas.
+ * <p/>
+ * If miss leases are enabled, only one instance regenerates a missing response while the others wait for it. See
+ * {@link LeaseConfiguration}.
  */
 public class MemcachedResponseStore extends ResponseStore {
-    private final MemcachedClient _client;
+    private static final String LEASE_VALUE = "1";
+
+    private final List<MemcachedClient> _clients;
     private final String _keyPrefix;
     private final boolean _readOnly;
+    private final HotKeyDetector _hotKeys;
+    private final boolean _lease;
+    private final int _leaseTtlSeconds;
+    private final long _leaseWaitNanos;
+    private final long _leasePollMillis;
+
+    /**
+     * Keys this instance holds the lease of. Only those leases are released, so a put after a hit or a refresh does
+     * not cost an extra round trip or release a lease another instance holds. Claims are dropped once the lease has
+     * expired in memcached as well.
+     */
+    private final Cache<String, Boolean> _claims;
 
     public MemcachedResponseStore(MemcachedClient client, String keyPrefix, boolean readOnly) {
-        _client = checkNotNull(client);
+        this(ImmutableList.of(checkNotNull(client)), keyPrefix, readOnly);
+    }
+
+    public MemcachedResponseStore(List<MemcachedClient> clients, String keyPrefix, boolean readOnly) {
+        this(clients, keyPrefix, readOnly, Optional.<HotKeyDetector>absent(), new LeaseConfiguration());
+    }
+
+    MemcachedResponseStore(List<MemcachedClient> clients, String keyPrefix, boolean readOnly, Optional<HotKeyDetector> hotKeys,
+                           LeaseConfiguration lease) {
+        checkNotNull(clients);
+        checkArgument(clients.size() > 0, "clients can not be empty");
+        checkNotNull(lease);
+        _clients = ImmutableList.copyOf(clients);
         _readOnly = readOnly;
         _keyPrefix = checkNotNull(keyPrefix);
+        _hotKeys = hotKeys.orNull();
+
+        // A read-only store never stores the response, so other instances would wait for nothing
+        _lease = lease.isEnabled() && !readOnly;
+        _leaseTtlSeconds = (int) lease.getTtl().toSeconds();
+        _leaseWaitNanos = lease.getWait().toNanoseconds();
+        _leasePollMillis = lease.getPollInterval().toMilliseconds();
+        _claims = CacheBuilder.newBuilder().expireAfterWrite(_leaseTtlSeconds, TimeUnit.SECONDS).build();
     }
 
     @Override
     public Optional<CachedResponse> get(String key) {
         checkNotNull(key);
         checkArgument(key.length() > 0, "key can not be empty");
-        return Optional.fromNullable(_client.get(buildKey(key), CachedResponseTranscoder.INSTANCE));
+
+        if (_hotKeys != null && _hotKeys.recordRead(key)) {
+            int replica = ThreadLocalRandom.current().nextInt(_hotKeys.getReplicas() + 1);
+
+            if (replica > 0) {
+                return getReplica(key, replica);
+            }
+        }
+
+        return Optional.fromNullable(client(key).get(buildKey(key), CachedResponseTranscoder.INSTANCE));
     }
 
     @Override
@@ -55,7 +119,23 @@ public class MemcachedResponseStore extends ResponseStore {
             DateTime expires = response.getExpires().orNull();
 
             if (expires != null) {
-                _client.set(buildKey(key), (int) (expires.getMillis() / 1000), response, CachedResponseTranscoder.INSTANCE);
+                set(key, buildKey(key), expires, response);
+
+                releaseClaim(key);
+
+                if (_hotKeys != null) {
+                    boolean hot = _hotKeys.isHot(key);
+
+                    // Replicas of a key that is no longer hot are deleted, since it may have been hot when they were
+                    // written and would serve the previous response once it is hot again
+                    for (int replica = 1; replica <= _hotKeys.getReplicas(); replica += 1) {
+                        if (hot) {
+                            set(key, buildReplicaKey(key, replica), expires, response);
+                        } else {
+                            client(key).delete(buildReplicaKey(key, replica));
+                        }
+                    }
+                }
             }
         }
     }
@@ -66,14 +146,138 @@ public class MemcachedResponseStore extends ResponseStore {
         checkArgument(key.length() > 0, "key can not be empty");
 
         if (!_readOnly) {
-            _client.delete(buildKey(key));
+            client(key).delete(buildKey(key));
+
+            // Replicas are deleted whether or not the key is currently hot, since it may have been hot when written
+            if (_hotKeys != null) {
+                for (int replica = 1; replica <= _hotKeys.getReplicas(); replica += 1) {
+                    client(key).delete(buildReplicaKey(key, replica));
+                }
+            }
         }
     }
 
+    /**
+     * Claim the lease for a missing key or, if another instance holds it, wait for that instance to store the response.
+     * A stale response is returned right away instead of waiting.
+     *
+     * @return the response stored by the lease holder, the stale response, or absent if this instance should generate
+     * the response
+     */
+    @Override
+    public Optional<CachedResponse> awaitMiss(String key, Optional<CachedResponse> stale) {
+        checkNotNull(key);
+        checkArgument(key.length() > 0, "key can not be empty");
+        checkNotNull(stale);
+
+        if (!_lease) {
+            return Optional.absent();
+        }
+
+        if (addLease(key)) {
+            _claims.put(key, Boolean.TRUE);
+            return Optional.absent();
+        }
+
+        if (stale.isPresent()) {
+            return stale;
+        }
+
+        long deadline = System.nanoTime() + _leaseWaitNanos;
+
+        while (System.nanoTime() - deadline < 0) {
+            try {
+                Thread.sleep(_leasePollMillis);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return Optional.absent();
+            }
+
+            CachedResponse response = client(key).get(buildKey(key), CachedResponseTranscoder.INSTANCE);
+
+            if (response != null) {
+                return Optional.of(response);
+            }
+        }
+
+        return Optional.absent();
+    }
+
+    /**
+     * Release the lease for a key if this instance holds it, so instances waiting for the response stop waiting.
+     */
+    @Override
+    public void releaseMiss(String key) {
+        checkNotNull(key);
+        checkArgument(key.length() > 0, "key can not be empty");
+
+        releaseClaim(key);
+    }
+
+    private void releaseClaim(String key) {
+        if (_lease && _claims.asMap().remove(key) != null) {
+            client(key).delete(buildLeaseKey(key));
+        }
+    }
+
+    private boolean addLease(String key) {
+        try {
+            return client(key).add(buildLeaseKey(key), _leaseTtlSeconds, LEASE_VALUE).get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw Throwables.propagate(ex);
+        } catch (ExecutionException ex) {
+            throw Throwables.propagate(ex.getCause());
+        }
+    }
+
+    private Optional<CachedResponse> getReplica(String key, int replica) {
+        String replicaKey = buildReplicaKey(key, replica);
+        CachedResponse response = client(key).get(replicaKey, CachedResponseTranscoder.INSTANCE);
+
+        if (response == null) {
+            // Replica has not been written since the key became hot
+            response = client(key).get(buildKey(key), CachedResponseTranscoder.INSTANCE);
+
+            if (response != null && !_readOnly) {
+                DateTime expires = response.getExpires().orNull();
+
+                if (expires != null) {
+                    set(key, replicaKey, expires, response);
+                }
+            }
+        }
+
+        return Optional.fromNullable(response);
+    }
+
+    private void set(String key, String memcacheKey, DateTime expires, CachedResponse response) {
+        client(key).set(memcacheKey, (int) (expires.getMillis() / 1000), response, CachedResponseTranscoder.INSTANCE);
+    }
+
+    /**
+     * Client for all operations on a key.
+     */
+    MemcachedClient client(String key) {
+        if (_clients.size() == 1) {
+            return _clients.get(0);
+        }
+
+        return _clients.get((key.hashCode() & Integer.MAX_VALUE) % _clients.size());
+    }
+
     private String buildKey(String key) {
         return KeyUtils.truncateKey(
                 _keyPrefix.length() > 0
                         ? _keyPrefix + key
                         : key);
     }
+
+    private String buildLeaseKey(String key) {
+        return KeyUtils.truncateKey(_keyPrefix + key + "~lease");
+    }
+
+    private String buildReplicaKey(String key, int replica) {
+        return KeyUtils.truncateKey(_keyPrefix + key + "~" + replica);
+    }
 }
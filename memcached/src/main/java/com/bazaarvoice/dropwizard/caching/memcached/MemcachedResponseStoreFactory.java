@@ -21,11 +21,17 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonTypeName;
 import com.google.common.base.Function;
+import com.google.common.base.Optional;
 import com.google.common.base.Throwables;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 import com.google.common.net.HostAndPort;
-import net.spy.memcached.BinaryConnectionFactory;
+import io.dropwizard.util.Duration;
+import net.spy.memcached.ConnectionFactory;
+import net.spy.memcached.ConnectionFactoryBuilder;
+import net.spy.memcached.DefaultHashAlgorithm;
+import net.spy.memcached.FailureMode;
 import net.spy.memcached.MemcachedClient;
 
 import java.io.IOException;
@@ -33,6 +39,7 @@ import java.net.InetSocketAddress;
 import java.util.Arrays;
 import java.util.List;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
@@ -43,6 +50,16 @@ public class MemcachedResponseStoreFactory implements ResponseStoreFactory {
     private List<InetSocketAddress> _servers = ImmutableList.of();
     private String _keyPrefix = "";
     private boolean _readOnly;
+    private int _connections = 1;
+    private Optional<Duration> _operationTimeout = Optional.absent();
+    private Optional<Duration> _operationQueueMaxBlockTime = Optional.absent();
+    private Optional<Duration> _maxReconnectDelay = Optional.absent();
+    private Optional<Integer> _timeoutExceptionThreshold = Optional.absent();
+    private Optional<DefaultHashAlgorithm> _hashAlgorithm = Optional.absent();
+    private Optional<ConnectionFactoryBuilder.Locator> _locator = Optional.absent();
+    private Optional<FailureMode> _failureMode = Optional.absent();
+    private HotKeyConfiguration _hotKeys = new HotKeyConfiguration();
+    private LeaseConfiguration _lease = new LeaseConfiguration();
 
     public boolean isReadOnly() {
         return _readOnly;
@@ -91,17 +108,202 @@ public class MemcachedResponseStoreFactory implements ResponseStoreFactory {
                 .toList();
     }
 
+    /**
+     * Number of memcached clients to create. Each client has its own connection to every server and its own IO thread.
+     * Keys are spread over the clients by hash, so the operations for one key stay in order.
+     */
+    public int getConnections() {
+        return _connections;
+    }
+
+    @JsonProperty
+    public void setConnections(int connections) {
+        checkArgument(connections > 0, "connections must be > 0 (value: %s)", connections);
+        _connections = connections;
+    }
+
+    /**
+     * Time to wait for an operation to complete before it is cancelled.
+     */
+    public Optional<Duration> getOperationTimeout() {
+        return _operationTimeout;
+    }
+
+    @JsonProperty
+    public void setOperationTimeout(Optional<Duration> operationTimeout) {
+        checkNotNull(operationTimeout);
+        checkArgument(!operationTimeout.isPresent() || operationTimeout.get().getQuantity() > 0, "operationTimeout must be > 0 (value: %s)", operationTimeout);
+        _operationTimeout = operationTimeout;
+    }
+
+    /**
+     * Time to wait to add an operation to a full operation queue before failing the operation.
+     */
+    public Optional<Duration> getOperationQueueMaxBlockTime() {
+        return _operationQueueMaxBlockTime;
+    }
+
+    @JsonProperty
+    public void setOperationQueueMaxBlockTime(Optional<Duration> operationQueueMaxBlockTime) {
+        checkNotNull(operationQueueMaxBlockTime);
+        checkArgument(!operationQueueMaxBlockTime.isPresent() || operationQueueMaxBlockTime.get().getQuantity() >= 0, "operationQueueMaxBlockTime must be >= 0 (value: %s)", operationQueueMaxBlockTime);
+        _operationQueueMaxBlockTime = operationQueueMaxBlockTime;
+    }
+
+    /**
+     * Maximum time to wait between attempts to reconnect to a failed server. The client works in whole seconds, so the
+     * delay must be at least 1 second.
+     */
+    public Optional<Duration> getMaxReconnectDelay() {
+        return _maxReconnectDelay;
+    }
+
+    @JsonProperty
+    public void setMaxReconnectDelay(Optional<Duration> maxReconnectDelay) {
+        checkNotNull(maxReconnectDelay);
+        checkArgument(!maxReconnectDelay.isPresent() || maxReconnectDelay.get().toSeconds() >= 1, "maxReconnectDelay must be >= 1 second (value: %s)", maxReconnectDelay);
+        _maxReconnectDelay = maxReconnectDelay;
+    }
+
+    /**
+     * Number of consecutive operation timeouts after which a connection is considered failed and is reconnected.
+     */
+    public Optional<Integer> getTimeoutExceptionThreshold() {
+        return _timeoutExceptionThreshold;
+    }
+
+    @JsonProperty
+    public void setTimeoutExceptionThreshold(Optional<Integer> timeoutExceptionThreshold) {
+        checkNotNull(timeoutExceptionThreshold);
+        checkArgument(!timeoutExceptionThreshold.isPresent() || timeoutExceptionThreshold.get() > 0, "timeoutExceptionThreshold must be > 0 (value: %s)", timeoutExceptionThreshold);
+        _timeoutExceptionThreshold = timeoutExceptionThreshold;
+    }
+
+    /**
+     * Algorithm used to hash keys to servers (e.g. NATIVE_HASH, FNV1A_32_HASH, KETAMA_HASH).
+     */
+    public Optional<DefaultHashAlgorithm> getHashAlgorithm() {
+        return _hashAlgorithm;
+    }
+
+    @JsonProperty
+    public void setHashAlgorithm(Optional<DefaultHashAlgorithm> hashAlgorithm) {
+        _hashAlgorithm = checkNotNull(hashAlgorithm);
+    }
+
+    /**
+     * Strategy used to map key hashes to servers: ARRAY_MOD or CONSISTENT. CONSISTENT (ketama) only remaps the keys of
+     * a server that is added or removed.
+     */
+    public Optional<ConnectionFactoryBuilder.Locator> getLocator() {
+        return _locator;
+    }
+
+    @JsonProperty
+    public void setLocator(Optional<ConnectionFactoryBuilder.Locator> locator) {
+        checkNotNull(locator);
+        checkArgument(!locator.isPresent() || locator.get() != ConnectionFactoryBuilder.Locator.VBUCKET, "VBUCKET locator is not supported");
+        _locator = locator;
+    }
+
+    /**
+     * Behavior when a server is down: Redistribute, Retry or Cancel.
+     */
+    public Optional<FailureMode> getFailureMode() {
+        return _failureMode;
+    }
+
+    @JsonProperty
+    public void setFailureMode(Optional<FailureMode> failureMode) {
+        _failureMode = checkNotNull(failureMode);
+    }
+
+    public HotKeyConfiguration getHotKeys() {
+        return _hotKeys;
+    }
+
+    @JsonProperty
+    public void setHotKeys(HotKeyConfiguration hotKeys) {
+        _hotKeys = checkNotNull(hotKeys);
+    }
+
+    public LeaseConfiguration getLease() {
+        return _lease;
+    }
+
+    @JsonProperty
+    public void setLease(LeaseConfiguration lease) {
+        _lease = checkNotNull(lease);
+    }
+
+    ConnectionFactory buildConnectionFactory() {
+        ConnectionFactoryBuilder builder = new ConnectionFactoryBuilder()
+                .setProtocol(ConnectionFactoryBuilder.Protocol.BINARY);
+
+        if (_operationTimeout.isPresent()) {
+            builder.setOpTimeout(_operationTimeout.get().toMilliseconds());
+        }
+
+        if (_operationQueueMaxBlockTime.isPresent()) {
+            builder.setOpQueueMaxBlockTime(_operationQueueMaxBlockTime.get().toMilliseconds());
+        }
+
+        if (_maxReconnectDelay.isPresent()) {
+            builder.setMaxReconnectDelay(_maxReconnectDelay.get().toSeconds());
+        }
+
+        if (_timeoutExceptionThreshold.isPresent()) {
+            builder.setTimeoutExceptionThreshold(_timeoutExceptionThreshold.get());
+        }
+
+        if (_hashAlgorithm.isPresent()) {
+            builder.setHashAlg(_hashAlgorithm.get());
+        }
+
+        if (_locator.isPresent()) {
+            builder.setLocatorType(_locator.get());
+        }
+
+        if (_failureMode.isPresent()) {
+            builder.setFailureMode(_failureMode.get());
+        }
+
+        return builder.build();
+    }
+
     @Override
     public ResponseStore createStore() {
         try {
             if (getServers().size() == 0) {
                 return ResponseStore.NULL_STORE;
             } else {
-                MemcachedClient client = new MemcachedClient(new BinaryConnectionFactory(), getServers());
-                return new MemcachedResponseStore(client, _keyPrefix, _readOnly);
+                ConnectionFactory connectionFactory = buildConnectionFactory();
+                List<MemcachedClient> clients = Lists.newArrayListWithCapacity(_connections);
+
+                try {
+                    for (int i = 0; i < _connections; i += 1) {
+                        clients.add(newClient(connectionFactory, getServers()));
+                    }
+
+                    return new MemcachedResponseStore(ImmutableList.copyOf(clients), _keyPrefix, _readOnly, _hotKeys.buildDetector(), _lease);
+                } catch (IOException | RuntimeException ex) {
+                    // Stop the I/O threads of the clients that were already connected
+                    for (MemcachedClient client : clients) {
+                        client.shutdown();
+                    }
+
+                    throw ex;
+                }
             }
         } catch (IOException ex) {
             throw Throwables.propagate(ex);
         }
     }
+
+    /**
+     * Connect one client. Separate so tests can make a connection fail.
+     */
+    MemcachedClient newClient(ConnectionFactory connectionFactory, List<InetSocketAddress> servers) throws IOException {
+        return new MemcachedClient(connectionFactory, servers);
+    }
 }
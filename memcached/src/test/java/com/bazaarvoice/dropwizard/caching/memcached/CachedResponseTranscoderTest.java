@@ -69,6 +69,17 @@ public class CachedResponseTranscoderTest {
         assertEquals(decoded, response);
     }
 
+    @Test
+    public void compute_time() {
+        CachedResponse response = new CachedResponse(200, headers(), bytes("{}"), 1500);
+        CachedData data = CachedResponseTranscoder.INSTANCE.encode(response);
+        assertEquals(data.getData(), bytes("HTTP/1.1 200 compute=1500\r\n\r\n{}"));
+
+        CachedResponse decoded = CachedResponseTranscoder.INSTANCE.decode(data);
+        assertEquals(decoded, response);
+        assertEquals(decoded.getComputeMillis(), 1500);
+    }
+
     private static CachedResponse response(int code, MultivaluedMap<String, String> headers, byte[] content) {
         return new CachedResponse(code, headers, content);
     }
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching.memcached;
+
+import com.google.common.base.Ticker;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Tests for {@link HotKeyDetector}.
+ */
+public class HotKeyDetectorTest {
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void hot_at_threshold() {
+        HotKeyDetector detector = new HotKeyDetector(2, 100, 1, 1024, WINDOW_NANOS, new FakeTicker());
+
+        for (int i = 0; i < 99; i += 1) {
+            assertFalse(detector.recordRead("hot"));
+        }
+
+        assertTrue(detector.recordRead("hot"));
+        assertTrue(detector.isHot("hot"));
+        assertFalse(detector.isHot("cold"));
+    }
+
+    @Test
+    public void cold_keys_stay_cold() {
+        HotKeyDetector detector = new HotKeyDetector(2, 100, 1, 1024, WINDOW_NANOS, new FakeTicker());
+
+        for (int i = 0; i < 10000; i += 1) {
+            assertFalse(detector.recordRead("key" + (i % 500)));
+        }
+    }
+
+    @Test
+    public void steady_rate_at_threshold() {
+        FakeTicker ticker = new FakeTicker();
+        HotKeyDetector detector = new HotKeyDetector(2, 100, 1, 1024, WINDOW_NANOS, ticker);
+
+        for (int window = 0; window < 5; window += 1) {
+            for (int i = 0; i < 99; i += 1) {
+                detector.recordRead("key");
+            }
+
+            assertTrue(detector.recordRead("key"));
+            ticker.advance(WINDOW_NANOS);
+        }
+    }
+
+    @Test
+    public void steady_rate_below_threshold() {
+        FakeTicker ticker = new FakeTicker();
+        HotKeyDetector detector = new HotKeyDetector(2, 100, 1, 1024, WINDOW_NANOS, ticker);
+
+        for (int window = 0; window < 5; window += 1) {
+            for (int i = 0; i < 99; i += 1) {
+                assertFalse(detector.recordRead("key"));
+            }
+
+            ticker.advance(WINDOW_NANOS);
+        }
+    }
+
+    @Test
+    public void counts_expire() {
+        FakeTicker ticker = new FakeTicker();
+        HotKeyDetector detector = new HotKeyDetector(2, 100, 1, 1024, WINDOW_NANOS, ticker);
+
+        for (int i = 0; i < 100; i += 1) {
+            detector.recordRead("key");
+        }
+
+        assertTrue(detector.isHot("key"));
+
+        // Still hot from the previous window
+        ticker.advance(WINDOW_NANOS);
+        assertFalse(detector.recordRead("other"));
+        assertTrue(detector.isHot("key"));
+
+        ticker.advance(WINDOW_NANOS);
+        assertFalse(detector.recordRead("other"));
+        assertFalse(detector.isHot("key"));
+    }
+
+    @Test
+    public void idle_windows_expire_counts() {
+        FakeTicker ticker = new FakeTicker();
+        HotKeyDetector detector = new HotKeyDetector(2, 100, 1, 1024, WINDOW_NANOS, ticker);
+
+        for (int i = 0; i < 100; i += 1) {
+            detector.recordRead("key");
+        }
+
+        ticker.advance(3 * WINDOW_NANOS);
+        assertFalse(detector.recordRead("other"));
+        assertFalse(detector.isHot("key"));
+    }
+
+    private static class FakeTicker extends Ticker {
+        private long _nanos;
+
+        @Override
+        public long read() {
+            return _nanos;
+        }
+
+        void advance(long nanos) {
+            _nanos += nanos;
+        }
+    }
+}
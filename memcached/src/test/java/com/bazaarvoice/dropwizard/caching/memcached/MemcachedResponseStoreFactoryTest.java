@@ -0,0 +1,119 @@
+/*
+ * Copyright 2014 Bazaarvoice, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bazaarvoice.dropwizard.caching.memcached;
+
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import io.dropwizard.jackson.Jackson;
+import io.dropwizard.util.Duration;
+import net.spy.memcached.ConnectionFactory;
+import net.spy.memcached.ConnectionFactoryBuilder;
+import net.spy.memcached.DefaultHashAlgorithm;
+import net.spy.memcached.FailureMode;
+import net.spy.memcached.MemcachedClient;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+/**
+ * Tests for {@link MemcachedResponseStoreFactory}.
+ */
+public class MemcachedResponseStoreFactoryTest {
+    private static final ObjectMapper YAML = new ObjectMapper(new YAMLFactory());
+    private static final ObjectMapper MAPPER = Jackson.newObjectMapper();
+
+    @Test
+    public void deserialize() throws Exception {
+        MemcachedResponseStoreFactory factory = parse(
+                "servers: [\"localhost:11211\"]\n" +
+                "connections: 4\n" +
+                "operationTimeout: 500ms\n" +
+                "operationQueueMaxBlockTime: 10ms\n" +
+                "maxReconnectDelay: 5s\n" +
+                "timeoutExceptionThreshold: 100\n" +
+                "hashAlgorithm: KETAMA_HASH\n" +
+                "locator: CONSISTENT\n" +
+                "failureMode: Cancel\n");
+
+        assertEquals(factory.getServers().get(0), new InetSocketAddress("localhost", 11211));
+        assertEquals(factory.getConnections(), 4);
+        assertEquals(factory.getOperationTimeout().get(), Duration.milliseconds(500));
+        assertEquals(factory.getOperationQueueMaxBlockTime().get(), Duration.milliseconds(10));
+        assertEquals(factory.getMaxReconnectDelay().get(), Duration.seconds(5));
+        assertEquals(factory.getTimeoutExceptionThreshold().get(), (Integer) 100);
+        assertEquals(factory.getHashAlgorithm().get(), DefaultHashAlgorithm.KETAMA_HASH);
+        assertEquals(factory.getLocator().get(), ConnectionFactoryBuilder.Locator.CONSISTENT);
+        assertEquals(factory.getFailureMode().get(), FailureMode.Cancel);
+    }
+
+    @Test
+    public void defaults() throws Exception {
+        MemcachedResponseStoreFactory factory = parse("servers: [\"localhost:11211\"]\n");
+
+        assertEquals(factory.getConnections(), 1);
+        assertFalse(factory.getOperationTimeout().isPresent());
+        assertFalse(factory.getMaxReconnectDelay().isPresent());
+        assertFalse(factory.getLocator().isPresent());
+    }
+
+    @Test(expectedExceptions = JsonMappingException.class)
+    public void subSecondReconnectDelay() throws Exception {
+        parse("maxReconnectDelay: 500ms\n");
+    }
+
+    @Test(expectedExceptions = JsonMappingException.class)
+    public void zeroConnections() throws Exception {
+        parse("connections: 0\n");
+    }
+
+    @Test(expectedExceptions = JsonMappingException.class)
+    public void vbucketLocator() throws Exception {
+        parse("locator: VBUCKET\n");
+    }
+
+    @Test
+    public void failedConnectionShutsDownClients() throws Exception {
+        MemcachedResponseStoreFactory factory = spy(parse("servers: [\"localhost:11211\"]\nconnections: 3\n"));
+        MemcachedClient connected = mock(MemcachedClient.class);
+        doReturn(connected).doThrow(new IOException("refused")).when(factory).newClient(any(ConnectionFactory.class), anyListOf(InetSocketAddress.class));
+
+        try {
+            factory.createStore();
+            fail("Expected the connection failure");
+        } catch (RuntimeException ex) {
+            assertTrue(ex.getCause() instanceof IOException);
+        }
+
+        verify(connected).shutdown();
+    }
+
+    private static MemcachedResponseStoreFactory parse(String yaml) throws Exception {
+        return MAPPER.treeToValue(YAML.readTree("type: memcached\n" + yaml), MemcachedResponseStoreFactory.class);
+    }
+}
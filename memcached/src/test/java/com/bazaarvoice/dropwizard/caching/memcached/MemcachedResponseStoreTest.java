@@ -17,20 +17,39 @@ package com.bazaarvoice.dropwizard.caching.memcached;
 
 import com.bazaarvoice.dropwizard.caching.CachedResponse;
 import com.google.common.base.Optional;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import io.dropwizard.util.Duration;
 import net.spy.memcached.MemcachedClient;
+import net.spy.memcached.internal.OperationFuture;
 import net.spy.memcached.transcoders.Transcoder;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertSame;
 
@@ -125,6 +144,292 @@ public class MemcachedResponseStoreTest {
         verify(client).get(eq(memcacheKey), any(Transcoder.class));
     }
 
+    @Test
+    public void clients_by_key() {
+        MemcachedClient client1 = mock(MemcachedClient.class);
+        MemcachedClient client2 = mock(MemcachedClient.class);
+        MemcachedResponseStore store = new MemcachedResponseStore(ImmutableList.of(client1, client2), "", false);
+        Set<MemcachedClient> used = Sets.newIdentityHashSet();
+
+        for (int i = 0; i < 20; i += 1) {
+            String key = "key" + i;
+            assertSame(store.client(key), store.client(key));
+            used.add(store.client(key));
+        }
+
+        assertEquals(used.size(), 2);
+    }
+
+    @Test
+    public void put_and_lease_release_use_one_client() throws Exception {
+        MemcachedClient client1 = mock(MemcachedClient.class);
+        MemcachedClient client2 = mock(MemcachedClient.class);
+        MemcachedResponseStore store = new MemcachedResponseStore(ImmutableList.of(client1, client2), "", false,
+                Optional.<HotKeyDetector>absent(), leaseConfiguration());
+        CachedResponse response = response(new DateTime(2014, 1, 1, 0, 0, 0, 0, DateTimeZone.UTC));
+        MemcachedClient client = store.client("key");
+        OperationFuture<Boolean> added = future(true);
+        when(client.add(eq("key~lease"), eq(10), any())).thenReturn(added);
+
+        store.awaitMiss("key", Optional.<CachedResponse>absent());
+        store.put("key", response);
+
+        verify(client).add(eq("key~lease"), eq(10), any());
+        verify(client).set(eq("key"), eq(1388534400), same(response), any(Transcoder.class));
+        verify(client).delete("key~lease");
+        verifyNoMoreInteractions(client1, client2);
+    }
+
+    @Test
+    public void put_hot_key_replicas() {
+        MemcachedClient client = mock(MemcachedClient.class);
+        MemcachedResponseStore store = hotKeyStore(client);
+        CachedResponse response = response(new DateTime(2014, 1, 1, 0, 0, 0, 0, DateTimeZone.UTC));
+
+        store.get("key");
+        store.put("key", response);
+
+        verify(client).set(eq("key"), eq(1388534400), same(response), any(Transcoder.class));
+        verify(client).set(eq("key~1"), eq(1388534400), same(response), any(Transcoder.class));
+        verify(client).set(eq("key~2"), eq(1388534400), same(response), any(Transcoder.class));
+    }
+
+    @Test
+    public void put_cold_key() {
+        MemcachedClient client = mock(MemcachedClient.class);
+        MemcachedResponseStore store = hotKeyStore(client);
+        CachedResponse response = response(new DateTime(2014, 1, 1, 0, 0, 0, 0, DateTimeZone.UTC));
+
+        store.put("key", response);
+
+        verify(client).set(eq("key"), eq(1388534400), same(response), any(Transcoder.class));
+        verify(client).delete("key~1");
+        verify(client).delete("key~2");
+        verifyNoMoreInteractions(client);
+    }
+
+    @Test
+    public void put_cooled_key_replaces_replicas() {
+        Map<String, Object> values = Maps.newHashMap();
+        MemcachedClient client = mapClient(values);
+        final AtomicLong nanos = new AtomicLong();
+        HotKeyDetector detector = new HotKeyDetector(2, 1, 1, 1024, TimeUnit.SECONDS.toNanos(1), new Ticker() {
+            @Override
+            public long read() {
+                return nanos.get();
+            }
+        });
+        MemcachedResponseStore store = new MemcachedResponseStore(ImmutableList.of(client), "", false, Optional.of(detector),
+                new LeaseConfiguration());
+        CachedResponse previous = response(new DateTime(2014, 1, 1, 0, 0, 0, 0, DateTimeZone.UTC));
+        CachedResponse updated = response(new DateTime(2014, 1, 1, 0, 0, 1, 0, DateTimeZone.UTC));
+
+        // Hot when the previous response is stored, then cold when it is updated
+        store.get("key");
+        store.put("key", previous);
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(3));
+        store.put("key", updated);
+
+        // Hot again: every copy read is the updated response
+        for (int i = 0; i < 100; i += 1) {
+            assertSame(store.get("key").get(), updated);
+        }
+    }
+
+    @Test
+    public void get_hot_key_fills_replica() {
+        MemcachedClient client = mock(MemcachedClient.class);
+        MemcachedResponseStore store = hotKeyStore(client);
+        CachedResponse response = response(new DateTime(2014, 1, 1, 0, 0, 0, 0, DateTimeZone.UTC));
+
+        when(client.get(eq("key"), any(Transcoder.class))).thenReturn(response);
+
+        // Reads pick a random copy, so read until a replica has been read
+        for (int i = 0; i < 100; i += 1) {
+            assertSame(store.get("key").get(), response);
+        }
+
+        verify(client, atLeastOnce()).set(eq("key~1"), eq(1388534400), same(response), any(Transcoder.class));
+        verify(client, atLeastOnce()).set(eq("key~2"), eq(1388534400), same(response), any(Transcoder.class));
+    }
+
+    @Test
+    public void invalidate_hot_key_replicas() {
+        MemcachedClient client = mock(MemcachedClient.class);
+        MemcachedResponseStore store = hotKeyStore(client);
+        store.invalidate("key");
+
+        verify(client).delete("key");
+        verify(client).delete("key~1");
+        verify(client).delete("key~2");
+        verifyNoMoreInteractions(client);
+    }
+
+    /**
+     * Client backed by a map, for sequences of operations that depend on what was stored before.
+     */
+    private static MemcachedClient mapClient(final Map<String, Object> values) {
+        MemcachedClient client = mock(MemcachedClient.class);
+
+        when(client.get(anyString(), any(Transcoder.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                return values.get((String) invocation.getArguments()[0]);
+            }
+        });
+        when(client.set(anyString(), anyInt(), any(), any(Transcoder.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                values.put((String) invocation.getArguments()[0], invocation.getArguments()[2]);
+                return null;
+            }
+        });
+        when(client.delete(anyString())).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                values.remove((String) invocation.getArguments()[0]);
+                return null;
+            }
+        });
+
+        return client;
+    }
+
+    private static MemcachedResponseStore hotKeyStore(MemcachedClient client) {
+        // Every read counted, a key is hot after one read
+        HotKeyDetector detector = new HotKeyDetector(2, 1, 1, 1024, TimeUnit.SECONDS.toNanos(1), Ticker.systemTicker());
+        return new MemcachedResponseStore(ImmutableList.of(client), "", false, Optional.of(detector), new LeaseConfiguration());
+    }
+
+    @Test
+    public void get_miss_does_not_lease() {
+        MemcachedClient client = mock(MemcachedClient.class);
+
+        assertFalse(leaseStore(client).get("key").isPresent());
+        verify(client).get(eq("key"), any(Transcoder.class));
+        verifyNoMoreInteractions(client);
+    }
+
+    @Test
+    public void awaitMiss_acquires_lease() throws Exception {
+        MemcachedClient client = mock(MemcachedClient.class);
+        OperationFuture<Boolean> added = future(true);
+        when(client.add(eq("key~lease"), eq(10), any())).thenReturn(added);
+
+        assertFalse(leaseStore(client).awaitMiss("key", Optional.<CachedResponse>absent()).isPresent());
+        verify(client).add(eq("key~lease"), eq(10), any());
+        verifyNoMoreInteractions(client);
+    }
+
+    @Test
+    public void awaitMiss_waits_for_lease_holder() throws Exception {
+        MemcachedClient client = mock(MemcachedClient.class);
+        OperationFuture<Boolean> notAdded = future(false);
+        CachedResponse response = mock(CachedResponse.class);
+        when(client.add(eq("key~lease"), eq(10), any())).thenReturn(notAdded);
+        when(client.get(eq("key"), any(Transcoder.class))).thenReturn(null, null, response);
+
+        assertSame(leaseStore(client).awaitMiss("key", Optional.<CachedResponse>absent()).get(), response);
+        verify(client, times(3)).get(eq("key"), any(Transcoder.class));
+    }
+
+    @Test
+    public void awaitMiss_returns_stale_while_leased() throws Exception {
+        MemcachedClient client = mock(MemcachedClient.class);
+        OperationFuture<Boolean> notAdded = future(false);
+        CachedResponse stale = mock(CachedResponse.class);
+        when(client.add(eq("key~lease"), eq(10), any())).thenReturn(notAdded);
+
+        assertSame(leaseStore(client).awaitMiss("key", Optional.of(stale)).get(), stale);
+        verify(client).add(eq("key~lease"), eq(10), any());
+        verifyNoMoreInteractions(client);
+    }
+
+    @Test
+    public void awaitMiss_without_leases() {
+        MemcachedClient client = mock(MemcachedClient.class);
+        MemcachedResponseStore store = new MemcachedResponseStore(ImmutableList.of(client), "", false);
+
+        assertFalse(store.awaitMiss("key", Optional.<CachedResponse>absent()).isPresent());
+        store.releaseMiss("key");
+        verifyNoMoreInteractions(client);
+    }
+
+    @Test
+    public void releaseMiss_deletes_claimed_lease() throws Exception {
+        MemcachedClient client = mock(MemcachedClient.class);
+        OperationFuture<Boolean> added = future(true);
+        when(client.add(eq("key~lease"), eq(10), any())).thenReturn(added);
+        MemcachedResponseStore store = leaseStore(client);
+
+        store.awaitMiss("key", Optional.<CachedResponse>absent());
+        store.releaseMiss("key");
+        store.releaseMiss("key");
+
+        verify(client).add(eq("key~lease"), eq(10), any());
+        verify(client).delete("key~lease");
+        verifyNoMoreInteractions(client);
+    }
+
+    @Test
+    public void releaseMiss_keeps_lease_of_other_instance() throws Exception {
+        MemcachedClient client = mock(MemcachedClient.class);
+        OperationFuture<Boolean> notAdded = future(false);
+        when(client.add(eq("key~lease"), eq(10), any())).thenReturn(notAdded);
+        MemcachedResponseStore store = leaseStore(client);
+
+        store.awaitMiss("key", Optional.of(mock(CachedResponse.class)));
+        store.releaseMiss("key");
+
+        verify(client, never()).delete("key~lease");
+    }
+
+    @Test
+    public void put_releases_claimed_lease() throws Exception {
+        MemcachedClient client = mock(MemcachedClient.class);
+        OperationFuture<Boolean> added = future(true);
+        when(client.add(eq("key~lease"), eq(10), any())).thenReturn(added);
+        CachedResponse response = response(new DateTime(2014, 1, 1, 0, 0, 0, 0, DateTimeZone.UTC));
+        MemcachedResponseStore store = leaseStore(client);
+
+        store.awaitMiss("key", Optional.<CachedResponse>absent());
+        store.put("key", response);
+
+        verify(client).set(eq("key"), eq(1388534400), same(response), any(Transcoder.class));
+        verify(client).delete("key~lease");
+    }
+
+    @Test
+    public void put_without_claim_keeps_lease() {
+        MemcachedClient client = mock(MemcachedClient.class);
+        CachedResponse response = response(new DateTime(2014, 1, 1, 0, 0, 0, 0, DateTimeZone.UTC));
+
+        leaseStore(client).put("key", response);
+
+        verify(client).set(eq("key"), eq(1388534400), same(response), any(Transcoder.class));
+        verifyNoMoreInteractions(client);
+    }
+
+    private static MemcachedResponseStore leaseStore(MemcachedClient client) {
+        return new MemcachedResponseStore(ImmutableList.of(client), "", false, Optional.<HotKeyDetector>absent(), leaseConfiguration());
+    }
+
+    private static LeaseConfiguration leaseConfiguration() {
+        LeaseConfiguration lease = new LeaseConfiguration();
+        lease.setEnabled(true);
+        lease.setTtl(Duration.seconds(10));
+        lease.setWait(Duration.seconds(5));
+        lease.setPollInterval(Duration.milliseconds(1));
+        return lease;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static OperationFuture<Boolean> future(boolean value) throws Exception {
+        OperationFuture<Boolean> future = mock(OperationFuture.class);
+        when(future.get()).thenReturn(value);
+        return future;
+    }
+
     private static CachedResponse response(DateTime expires) {
         CachedResponse response = mock(CachedResponse.class);
         when(response.getExpires()).thenReturn(Optional.fromNullable(expires));